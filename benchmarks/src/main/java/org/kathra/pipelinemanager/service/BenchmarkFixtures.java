@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.kathra.core.model.Membership;
+import org.kathra.pipelinemanager.Config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic fixtures shaped like the data met in production.
+ *
+ * Every generator is seeded, the same parameters give the same fixture on every run and on every commit,
+ * so results stay comparable.
+ */
+final class BenchmarkFixtures {
+
+    static final long SEED = 42;
+
+    private static final String[] GUEST = {"hudson.model.Item.Read", "hudson.model.View.Read"};
+    private static final String[] CONTRIBUTOR = {"hudson.model.Item.Read", "hudson.model.Item.Build", "hudson.model.Item.Cancel", "hudson.model.View.Read"};
+    private static final String[] MANAGER = {"hudson.model.Item.Build", "hudson.model.Item.Cancel", "hudson.model.Item.Configure",
+            "hudson.model.Item.Create", "hudson.model.Item.Delete", "hudson.model.Item.Discover",
+            "hudson.model.Item.Move", "hudson.model.Item.Read", "hudson.model.Item.Workspace",
+            "hudson.model.Run.Delete", "hudson.model.Run.Replay", "hudson.model.Run.Update",
+            "hudson.model.View.Configure", "hudson.model.View.Create", "hudson.model.View.Delete",
+            "hudson.model.View.Read"};
+
+    private static final String[] LOG_LINES = {
+            "[INFO] Downloading from central: https://repo.maven.apache.org/maven2/org/apache/maven/plugins/maven-surefire-plugin/2.19/maven-surefire-plugin-2.19.pom",
+            "[INFO] Downloaded from central: https://repo.maven.apache.org/maven2/org/apache/maven/plugins/maven-surefire-plugin/2.19/maven-surefire-plugin-2.19.pom (10 kB at 214 kB/s)",
+            "[INFO] --- maven-compiler-plugin:3.8.1:compile (default-compile) @ kathra-pipelinemanager-jenkins ---",
+            "[INFO] Compiling 42 source files to /home/jenkins/workspace/kathra/services/pipelinemanager/target/classes",
+            "[INFO] Tests run: 12, Failures: 0, Errors: 0, Skipped: 0, Time elapsed: 0.873 s - in org.kathra.pipelinemanager.service.JenkinsServiceTest",
+            "[Pipeline] sh",
+            "+ docker build -t registry.kathra.org/kathra/pipelinemanager:1.2.0 .",
+            "Step 4/9 : COPY target/*.jar /opt/app/app.jar",
+            " ---> Using cache",
+            "[WARNING] The requested profile \"kathra\" could not be activated because it does not exist."
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Config of a service built on a fake Jenkins, the build cache is disabled
+     * @param jenkinsUrl url of the fake Jenkins
+     * @return config
+     */
+    static Config config(String jenkinsUrl) {
+        Config config = new Config();
+        config.setJenkinsUrl(jenkinsUrl);
+        config.setJenkinsAccountName("kathra");
+        config.setJenkinsAccountApiToken("token");
+        config.setJenkinsBuildCacheMaxEntries(0);
+        return config;
+    }
+
+    static String memberName(int index) {
+        return String.format("kathra/group-%04d", index);
+    }
+
+    /**
+     * Permissions of a folder ACL, members get guest, contributor and manager roles in turn
+     * @param members number of members
+     * @return permissions as "permission:member"
+     */
+    static List<String> permissions(int members) {
+        List<String> permissions = new ArrayList<>();
+        for (int member = 0; member < members; member++) {
+            for (String permission : role(member)) {
+                permissions.add(permission + ":" + memberName(member));
+            }
+        }
+        return permissions;
+    }
+
+    private static String[] role(int member) {
+        switch (member % 3) {
+            case 0:
+                return GUEST;
+            case 1:
+                return CONTRIBUTOR;
+            default:
+                return MANAGER;
+        }
+    }
+
+    /**
+     * Folder config.xml as stored by the cloudbees-folder plugin: the authorization matrix is surrounded by
+     * folder credentials, views and health metrics, so the parser has to go through a large document.
+     * @param members number of members in the authorization matrix
+     * @return folder config.xml
+     */
+    static String folderConfigXml(int members) {
+        Random random = new Random(SEED);
+        StringBuilder xml = new StringBuilder(4096 + members * 600);
+        xml.append("<?xml version='1.1' encoding='UTF-8'?>\n")
+                .append("<com.cloudbees.hudson.plugins.folder.Folder plugin=\"cloudbees-folder@6.9\">\n")
+                .append("  <actions/>\n")
+                .append("  <description>Folder of the group kathra, managed by the pipeline manager</description>\n")
+                .append("  <properties>\n")
+                .append("    <org.jenkinsci.plugins.pipeline.modeldefinition.config.FolderConfig plugin=\"pipeline-model-definition@1.3.9\">\n")
+                .append("      <dockerLabel></dockerLabel>\n")
+                .append("      <registry plugin=\"docker-commons@1.15\"/>\n")
+                .append("    </org.jenkinsci.plugins.pipeline.modeldefinition.config.FolderConfig>\n")
+                .append("    <com.cloudbees.hudson.plugins.folder.properties.AuthorizationMatrixProperty>\n")
+                .append("      <inheritanceStrategy class=\"org.jenkinsci.plugins.matrixauth.inheritance.InheritGlobalStrategy\"/>\n");
+        for (String permission : permissions(members)) {
+            xml.append("      <permission>").append(permission).append("</permission>\n");
+        }
+        xml.append("    </com.cloudbees.hudson.plugins.folder.properties.AuthorizationMatrixProperty>\n")
+                .append("    <com.cloudbees.hudson.plugins.folder.properties.FolderCredentialsProvider_-FolderCredentialsProperty>\n")
+                .append("      <domainCredentialsMap class=\"hudson.util.CopyOnWriteMap$Hash\">\n")
+                .append("        <entry>\n")
+                .append("          <com.cloudbees.plugins.credentials.domains.Domain plugin=\"credentials@2.3.0\">\n")
+                .append("            <specifications/>\n")
+                .append("          </com.cloudbees.plugins.credentials.domains.Domain>\n")
+                .append("          <java.util.concurrent.CopyOnWriteArrayList>\n");
+        for (int credential = 0; credential < Math.max(10, members / 2); credential++) {
+            xml.append("            <com.cloudbees.jenkins.plugins.sshcredentials.impl.BasicSSHUserPrivateKey plugin=\"ssh-credentials@1.17.3\">\n")
+                    .append("              <scope>GLOBAL</scope>\n")
+                    .append("              <id>").append(String.format("kathra-deploy-key-%04d", credential)).append("</id>\n")
+                    .append("              <description>Deploy key</description>\n")
+                    .append("              <username>git</username>\n")
+                    .append("              <privateKeySource class=\"com.cloudbees.jenkins.plugins.sshcredentials.impl.BasicSSHUserPrivateKey$DirectEntryPrivateKeySource\">\n")
+                    .append("                <privateKey>{").append(randomBase64(random, 1200)).append("}</privateKey>\n")
+                    .append("              </privateKeySource>\n")
+                    .append("            </com.cloudbees.jenkins.plugins.sshcredentials.impl.BasicSSHUserPrivateKey>\n");
+        }
+        xml.append("          </java.util.concurrent.CopyOnWriteArrayList>\n")
+                .append("        </entry>\n")
+                .append("      </domainCredentialsMap>\n")
+                .append("    </com.cloudbees.hudson.plugins.folder.properties.FolderCredentialsProvider_-FolderCredentialsProperty>\n")
+                .append("  </properties>\n")
+                .append("  <folderViews class=\"com.cloudbees.hudson.plugins.folder.views.DefaultFolderViewHolder\">\n")
+                .append("    <views>\n")
+                .append("      <hudson.model.AllView>\n")
+                .append("        <owner class=\"com.cloudbees.hudson.plugins.folder.Folder\" reference=\"../../../..\"/>\n")
+                .append("        <name>All</name>\n")
+                .append("        <filterExecutors>false</filterExecutors>\n")
+                .append("        <filterQueue>false</filterQueue>\n")
+                .append("        <properties class=\"hudson.model.View$PropertyList\"/>\n")
+                .append("      </hudson.model.AllView>\n")
+                .append("    </views>\n")
+                .append("    <tabBar class=\"hudson.views.DefaultViewsTabBar\"/>\n")
+                .append("  </folderViews>\n")
+                .append("  <healthMetrics>\n")
+                .append("    <com.cloudbees.hudson.plugins.folder.health.WorstChildHealthMetric>\n")
+                .append("      <nonRecursive>false</nonRecursive>\n")
+                .append("    </com.cloudbees.hudson.plugins.folder.health.WorstChildHealthMetric>\n")
+                .append("  </healthMetrics>\n")
+                .append("  <icon class=\"com.cloudbees.hudson.plugins.folder.icons.StockFolderIcon\"/>\n")
+                .append("</com.cloudbees.hudson.plugins.folder.Folder>\n");
+        return xml.toString();
+    }
+
+    /**
+     * Memberships changing the role of some members of {@link #folderConfigXml(int)}
+     * @param path folder path
+     * @param members number of members to change
+     * @return memberships
+     */
+    static List<Membership> roleChanges(String path, int members) {
+        List<Membership> memberships = new ArrayList<>();
+        for (int member = 0; member < members; member++) {
+            memberships.add(new Membership().path(path)
+                    .memberType(Membership.MemberTypeEnum.GROUP)
+                    .memberName(memberName(member))
+                    .role(member % 3 == 2 ? Membership.RoleEnum.GUEST : Membership.RoleEnum.MANAGER));
+        }
+        return memberships;
+    }
+
+    /**
+     * Console log of a Maven and Docker build
+     * @param bytes approximate size of the log
+     * @return console log, ending with a new line
+     */
+    static String consoleLog(int bytes) {
+        Random random = new Random(SEED);
+        StringBuilder log = new StringBuilder(bytes + 256);
+        long timestamp = 1577836800000L;
+        while (log.length() < bytes) {
+            timestamp += random.nextInt(500);
+            log.append('[').append(timestamp).append("] ")
+                    .append(LOG_LINES[random.nextInt(LOG_LINES.length)]).append('\n');
+        }
+        log.append("Finished: SUCCESS\n");
+        return log.toString();
+    }
+
+    /**
+     * Job template with one string parameter per metadata key
+     * @param keys number of metadata keys
+     * @return template source
+     */
+    static String templateWithMetadata(int keys) {
+        StringBuilder template = new StringBuilder();
+        template.append("<?xml version='1.0' encoding='UTF-8'?>\n")
+                .append("<flow-definition plugin=\"workflow-job@2.9\">\n")
+                .append("    <actions/>\n")
+                .append("    <description>${description}</description>\n")
+                .append("    <keepDependencies>false</keepDependencies>\n")
+                .append("    <properties>\n")
+                .append("        <hudson.model.ParametersDefinitionProperty>\n")
+                .append("            <parameterDefinitions>\n");
+        for (int key = 0; key < keys; key++) {
+            template.append("                <hudson.model.StringParameterDefinition>\n")
+                    .append("                    <name>").append(metadataKey(key).toUpperCase().replace('.', '_')).append("</name>\n")
+                    .append("                    <description></description>\n")
+                    .append("                    <defaultValue>${").append(metadataKey(key)).append("}</defaultValue>\n")
+                    .append("                </hudson.model.StringParameterDefinition>\n");
+        }
+        template.append("            </parameterDefinitions>\n")
+                .append("        </hudson.model.ParametersDefinitionProperty>\n")
+                .append("    </properties>\n")
+                .append("    <definition class=\"org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition\" plugin=\"workflow-cps@2.24\">\n")
+                .append("        <scm class=\"hudson.plugins.git.GitSCM\" plugin=\"git@3.0.1\">\n")
+                .append("            <userRemoteConfigs>\n")
+                .append("                <hudson.plugins.git.UserRemoteConfig>\n")
+                .append("                    <url>${repoUrl}</url>\n")
+                .append("                    <credentialsId>${credentialId}</credentialsId>\n")
+                .append("                </hudson.plugins.git.UserRemoteConfig>\n")
+                .append("            </userRemoteConfigs>\n")
+                .append("        </scm>\n")
+                .append("        <scriptPath>templates/maven/deploy</scriptPath>\n")
+                .append("    </definition>\n")
+                .append("    <triggers/>\n")
+                .append("</flow-definition>\n");
+        return template.toString();
+    }
+
+    /**
+     * Values of {@link #templateWithMetadata(int)}, some of them have to be escaped
+     * @param keys number of metadata keys
+     * @return values by placeholder
+     */
+    static Map<String, Object> templateValues(int keys) {
+        Random random = new Random(SEED);
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("description", "Pipeline of <kathra> & friends");
+        values.put("repoUrl", "git@gitlab.com:kathra/kathra/kathra-services/kathra-pipelinemanager.git");
+        values.put("credentialId", "kathra-deploy-key-0001");
+        values.put("dockerBinaryRepositoryHost", "registry.kathra.org");
+        for (int key = 0; key < keys; key++) {
+            values.put(metadataKey(key), random.nextInt(4) == 0 ? "value \"" + key + "\" <escaped>" : "value-" + randomBase64(random, 24));
+        }
+        return values;
+    }
+
+    private static String metadataKey(int key) {
+        return String.format("metadata.key_%04d", key);
+    }
+
+    private static String randomBase64(Random random, int length) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        StringBuilder value = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.kathra.core.model.Build;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handling of multi-MB console logs when builds are mapped: selection of the last lines and
+ * tails served by the {@link BuildCache} from a cached full log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class ConsoleLogBenchmark {
+
+    private static final String PATH = "kathra/services/pipelinemanager";
+    private static final String BUILD_NUMBER = "42";
+    private static final LogSelection TAIL_LINES = LogSelection.tailLines(100);
+    private static final LogSelection TAIL_BYTES = LogSelection.tailBytes(64 * 1024);
+
+    @Param({"1", "8"})
+    public int logMegabytes;
+
+    private String log;
+    private BuildCache buildCache;
+
+    @Setup
+    public void setUp() {
+        log = BenchmarkFixtures.consoleLog(logMegabytes * 1024 * 1024);
+        buildCache = new BuildCache(16, 256L * 1024 * 1024);
+        buildCache.put(PATH, new Build().path(PATH).buildNumber(BUILD_NUMBER).status(Build.StatusEnum.SUCCESS).logs(log), LogSelection.FULL);
+    }
+
+    @Benchmark
+    public String lastLines() {
+        return LogSelection.lastLines(log, TAIL_LINES.getLimit(), false);
+    }
+
+    @Benchmark
+    public Build cachedTailLines() {
+        return buildCache.get(PATH, BUILD_NUMBER, TAIL_LINES);
+    }
+
+    @Benchmark
+    public Build cachedTailBytes() {
+        return buildCache.get(PATH, BUILD_NUMBER, TAIL_BYTES);
+    }
+
+    @Benchmark
+    public Build cachedFull() {
+        return buildCache.get(PATH, BUILD_NUMBER, LogSelection.FULL);
+    }
+}
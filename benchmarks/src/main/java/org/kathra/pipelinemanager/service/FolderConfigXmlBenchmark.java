@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and rewriting of the authorization matrix of large folder config.xml
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FolderConfigXmlBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int members;
+
+    private String xml;
+    private List<String> extraPermissions;
+    private Document document;
+
+    @Setup
+    public void setUp() throws Exception {
+        xml = BenchmarkFixtures.folderConfigXml(members);
+        // ten new members, as added by a membership request
+        List<String> permissions = BenchmarkFixtures.permissions(members + 10);
+        extraPermissions = new ArrayList<>(permissions.subList(BenchmarkFixtures.permissions(members).size(), permissions.size()));
+        document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public List<String> readPermissions() throws Exception {
+        return FolderConfigXml.readPermissions(xml);
+    }
+
+    @Benchmark
+    public String patchPermissions() throws Exception {
+        return FolderConfigXml.patchPermissions(xml, permissions -> {
+            List<String> patched = new ArrayList<>(permissions);
+            patched.addAll(extraPermissions);
+            return patched;
+        });
+    }
+
+    @Benchmark
+    public String getStringFromDocument() throws Exception {
+        return JenkinsService.getStringFromDocument(document);
+    }
+}
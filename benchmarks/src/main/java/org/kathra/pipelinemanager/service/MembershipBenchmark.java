@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.kathra.core.model.Membership;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memberships read from and written to folder ACLs through {@link JenkinsService}, on {@link FakeJenkins}.
+ *
+ * getMemberships covers the mapping of permissions to memberships, addMemberships covers the mapping of
+ * memberships to permissions and the rewrite of the folder and of its parent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MembershipBenchmark {
+
+    private static final String PARENT = "kathra";
+    private static final String FOLDER = PARENT + "/services";
+
+    @Param({"10", "100", "500"})
+    public int members;
+
+    private FakeJenkins jenkins;
+    private JenkinsService jenkinsService;
+    private List<Membership> roleChanges;
+
+    @Setup
+    public void setUp() throws Exception {
+        // every invocation sees the same ACLs
+        jenkins = new FakeJenkins().configUpdatesIgnored(true);
+        jenkins.folder(PARENT, BenchmarkFixtures.folderConfigXml(members));
+        jenkins.folder(FOLDER, BenchmarkFixtures.folderConfigXml(members));
+        jenkinsService = new JenkinsService(BenchmarkFixtures.config(jenkins.getUrl()));
+        // a tenth of the members change role
+        roleChanges = BenchmarkFixtures.roleChanges(FOLDER, Math.max(1, members / 10));
+    }
+
+    @TearDown
+    public void tearDown() {
+        jenkinsService.close();
+        jenkins.close();
+    }
+
+    @Benchmark
+    public List<Membership> getMemberships() throws Exception {
+        return jenkinsService.getMemberships(FOLDER);
+    }
+
+    @Benchmark
+    public List<Membership> addMemberships() throws Exception {
+        return jenkinsService.addMemberships(roleChanges);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of the job templates, {@link JenkinsService#getTemplateXML(JenkinsTemplate, Map)}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PipelineTemplateBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int metadataKeys;
+
+    private FakeJenkins jenkins;
+    private JenkinsService jenkinsService;
+    private String source;
+    private PipelineTemplate template;
+    private Map<String, Object> values;
+
+    @Setup
+    public void setUp() throws Exception {
+        jenkins = new FakeJenkins();
+        jenkinsService = new JenkinsService(BenchmarkFixtures.config(jenkins.getUrl()));
+        source = BenchmarkFixtures.templateWithMetadata(metadataKeys);
+        template = PipelineTemplate.compile("metadata", source);
+        values = BenchmarkFixtures.templateValues(metadataKeys);
+    }
+
+    @TearDown
+    public void tearDown() {
+        jenkinsService.close();
+        jenkins.close();
+    }
+
+    @Benchmark
+    public String getTemplateXML() {
+        return jenkinsService.getTemplateXML(JenkinsTemplate.JavaService, values);
+    }
+
+    @Benchmark
+    public String render() {
+        return template.render(values);
+    }
+
+    @Benchmark
+    public PipelineTemplate compile() {
+        return PipelineTemplate.compile("metadata", source);
+    }
+}
@@ -20,6 +20,7 @@
 
 package org.kathra.pipelinemanager;
 
+import org.apache.log4j.Logger;
 import org.kathra.utils.ConfigManager;
 import org.kathra.utils.KathraException;
 
@@ -30,14 +31,68 @@ import java.io.IOException;
  */
 public class Config extends ConfigManager {
 
+    private static Logger logger = Logger.getLogger(Config.class);
+
     private String jenkinsAccountName;
     private String jenkinsAccountApiToken;
     private String jenkinsUrl;
+    private int jenkinsCircuitBreakerFailureThreshold;
+    private int jenkinsCircuitBreakerOpenDurationMs;
+    private int jenkinsCircuitBreakerProbeCalls;
+    private int jenkinsBuildCacheMaxEntries;
+    private int jenkinsBuildCacheMaxBytes;
+    private int jenkinsHttpConnectTimeoutMs;
+    private int jenkinsHttpReadTimeoutMs;
+    private int jenkinsHttpMaxRequestsPerRoute;
+    private String jenkinsLogStoreDirectory;
+    private int jenkinsLogStoreMaxMb;
+    private String jenkinsLogIndexDirectory;
+    private int jenkinsLogIndexMaxBuilds;
+    private int jenkinsBuildStateReconcileSeconds;
+    private String jenkinsWebhookToken;
+    private int jenkinsSubscriptionBatchMs;
+    private String jenkinsSubscriptionAllowedHosts;
+    private String jenkinsBuildHistoryDirectory;
+    private int jenkinsBuildHistoryMaxBuilds;
 
     public Config() {
         jenkinsAccountName = getProperty("JENKINS_ACCOUNT_NAME");
         jenkinsAccountApiToken = getProperty("JENKINS_ACCOUNT_API_TOKEN");
         jenkinsUrl = getProperty("JENKINS_URL");
+        jenkinsCircuitBreakerFailureThreshold = getIntProperty("JENKINS_CIRCUIT_BREAKER_FAILURE_THRESHOLD", 5);
+        jenkinsCircuitBreakerOpenDurationMs = getIntProperty("JENKINS_CIRCUIT_BREAKER_OPEN_DURATION_MS", 30000);
+        jenkinsCircuitBreakerProbeCalls = getIntProperty("JENKINS_CIRCUIT_BREAKER_PROBE_CALLS", 2);
+        jenkinsBuildCacheMaxEntries = getIntProperty("JENKINS_BUILD_CACHE_MAX_ENTRIES", 1000);
+        jenkinsBuildCacheMaxBytes = getIntProperty("JENKINS_BUILD_CACHE_MAX_BYTES", 64 * 1024 * 1024);
+        jenkinsHttpConnectTimeoutMs = getIntProperty("JENKINS_HTTP_CONNECT_TIMEOUT_MS", 10000);
+        jenkinsHttpReadTimeoutMs = getIntProperty("JENKINS_HTTP_READ_TIMEOUT_MS", 60000);
+        jenkinsHttpMaxRequestsPerRoute = getIntProperty("JENKINS_HTTP_MAX_REQUESTS_PER_ROUTE", 20);
+        // logs are stored only when a directory, on a persistent volume, is given
+        jenkinsLogStoreDirectory = getProperty("JENKINS_LOG_STORE_DIRECTORY");
+        jenkinsLogStoreMaxMb = getIntProperty("JENKINS_LOG_STORE_MAX_MB", 1024);
+        // the log search is enabled only when a directory, on a persistent volume, is given
+        jenkinsLogIndexDirectory = getProperty("JENKINS_LOG_INDEX_DIRECTORY");
+        jenkinsLogIndexMaxBuilds = getIntProperty("JENKINS_LOG_INDEX_MAX_BUILDS", 100000);
+        jenkinsBuildStateReconcileSeconds = getIntProperty("JENKINS_BUILD_STATE_RECONCILE_SECONDS", 300);
+        jenkinsWebhookToken = getProperty("JENKINS_WEBHOOK_TOKEN");
+        jenkinsSubscriptionBatchMs = getIntProperty("JENKINS_SUBSCRIPTION_BATCH_MS", 1000);
+        jenkinsSubscriptionAllowedHosts = getProperty("JENKINS_SUBSCRIPTION_ALLOWED_HOSTS");
+        // the history is kept only when a directory, on a persistent volume, is given
+        jenkinsBuildHistoryDirectory = getProperty("JENKINS_BUILD_HISTORY_DIRECTORY");
+        jenkinsBuildHistoryMaxBuilds = getIntProperty("JENKINS_BUILD_HISTORY_MAX_BUILDS", 1000000);
+    }
+
+    private int getIntProperty(String name, int defaultValue) {
+        String value = getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn(name + " is not a number : '" + value + "', default value " + defaultValue + " is used");
+            return defaultValue;
+        }
     }
 
     public String getJenkinsAccountName() {
@@ -63,4 +118,151 @@ public class Config extends ConfigManager {
     public void setJenkinsUrl(String jenkinsUrl) {
         this.jenkinsUrl = jenkinsUrl;
     }
+
+    public int getJenkinsCircuitBreakerFailureThreshold() {
+        return jenkinsCircuitBreakerFailureThreshold;
+    }
+
+    public void setJenkinsCircuitBreakerFailureThreshold(int jenkinsCircuitBreakerFailureThreshold) {
+        this.jenkinsCircuitBreakerFailureThreshold = jenkinsCircuitBreakerFailureThreshold;
+    }
+
+    public int getJenkinsCircuitBreakerOpenDurationMs() {
+        return jenkinsCircuitBreakerOpenDurationMs;
+    }
+
+    public void setJenkinsCircuitBreakerOpenDurationMs(int jenkinsCircuitBreakerOpenDurationMs) {
+        this.jenkinsCircuitBreakerOpenDurationMs = jenkinsCircuitBreakerOpenDurationMs;
+    }
+
+    public int getJenkinsCircuitBreakerProbeCalls() {
+        return jenkinsCircuitBreakerProbeCalls;
+    }
+
+    public void setJenkinsCircuitBreakerProbeCalls(int jenkinsCircuitBreakerProbeCalls) {
+        this.jenkinsCircuitBreakerProbeCalls = jenkinsCircuitBreakerProbeCalls;
+    }
+
+    public int getJenkinsBuildCacheMaxEntries() {
+        return jenkinsBuildCacheMaxEntries;
+    }
+
+    public void setJenkinsBuildCacheMaxEntries(int jenkinsBuildCacheMaxEntries) {
+        this.jenkinsBuildCacheMaxEntries = jenkinsBuildCacheMaxEntries;
+    }
+
+    public int getJenkinsBuildCacheMaxBytes() {
+        return jenkinsBuildCacheMaxBytes;
+    }
+
+    public void setJenkinsBuildCacheMaxBytes(int jenkinsBuildCacheMaxBytes) {
+        this.jenkinsBuildCacheMaxBytes = jenkinsBuildCacheMaxBytes;
+    }
+
+    public int getJenkinsHttpConnectTimeoutMs() {
+        return jenkinsHttpConnectTimeoutMs;
+    }
+
+    public void setJenkinsHttpConnectTimeoutMs(int jenkinsHttpConnectTimeoutMs) {
+        this.jenkinsHttpConnectTimeoutMs = jenkinsHttpConnectTimeoutMs;
+    }
+
+    public int getJenkinsHttpReadTimeoutMs() {
+        return jenkinsHttpReadTimeoutMs;
+    }
+
+    public void setJenkinsHttpReadTimeoutMs(int jenkinsHttpReadTimeoutMs) {
+        this.jenkinsHttpReadTimeoutMs = jenkinsHttpReadTimeoutMs;
+    }
+
+    public int getJenkinsHttpMaxRequestsPerRoute() {
+        return jenkinsHttpMaxRequestsPerRoute;
+    }
+
+    public void setJenkinsHttpMaxRequestsPerRoute(int jenkinsHttpMaxRequestsPerRoute) {
+        this.jenkinsHttpMaxRequestsPerRoute = jenkinsHttpMaxRequestsPerRoute;
+    }
+
+    public String getJenkinsLogStoreDirectory() {
+        return jenkinsLogStoreDirectory;
+    }
+
+    public void setJenkinsLogStoreDirectory(String jenkinsLogStoreDirectory) {
+        this.jenkinsLogStoreDirectory = jenkinsLogStoreDirectory;
+    }
+
+    public int getJenkinsLogStoreMaxMb() {
+        return jenkinsLogStoreMaxMb;
+    }
+
+    public void setJenkinsLogStoreMaxMb(int jenkinsLogStoreMaxMb) {
+        this.jenkinsLogStoreMaxMb = jenkinsLogStoreMaxMb;
+    }
+
+    public String getJenkinsLogIndexDirectory() {
+        return jenkinsLogIndexDirectory;
+    }
+
+    public void setJenkinsLogIndexDirectory(String jenkinsLogIndexDirectory) {
+        this.jenkinsLogIndexDirectory = jenkinsLogIndexDirectory;
+    }
+
+    public int getJenkinsLogIndexMaxBuilds() {
+        return jenkinsLogIndexMaxBuilds;
+    }
+
+    public void setJenkinsLogIndexMaxBuilds(int jenkinsLogIndexMaxBuilds) {
+        this.jenkinsLogIndexMaxBuilds = jenkinsLogIndexMaxBuilds;
+    }
+
+    public int getJenkinsBuildStateReconcileSeconds() {
+        return jenkinsBuildStateReconcileSeconds;
+    }
+
+    public void setJenkinsBuildStateReconcileSeconds(int jenkinsBuildStateReconcileSeconds) {
+        this.jenkinsBuildStateReconcileSeconds = jenkinsBuildStateReconcileSeconds;
+    }
+
+    public String getJenkinsWebhookToken() {
+        return jenkinsWebhookToken;
+    }
+
+    public void setJenkinsWebhookToken(String jenkinsWebhookToken) {
+        this.jenkinsWebhookToken = jenkinsWebhookToken;
+    }
+
+    public int getJenkinsSubscriptionBatchMs() {
+        return jenkinsSubscriptionBatchMs;
+    }
+
+    public void setJenkinsSubscriptionBatchMs(int jenkinsSubscriptionBatchMs) {
+        this.jenkinsSubscriptionBatchMs = jenkinsSubscriptionBatchMs;
+    }
+
+    public String getJenkinsBuildHistoryDirectory() {
+        return jenkinsBuildHistoryDirectory;
+    }
+
+    public void setJenkinsBuildHistoryDirectory(String jenkinsBuildHistoryDirectory) {
+        this.jenkinsBuildHistoryDirectory = jenkinsBuildHistoryDirectory;
+    }
+
+    public int getJenkinsBuildHistoryMaxBuilds() {
+        return jenkinsBuildHistoryMaxBuilds;
+    }
+
+    public void setJenkinsBuildHistoryMaxBuilds(int jenkinsBuildHistoryMaxBuilds) {
+        this.jenkinsBuildHistoryMaxBuilds = jenkinsBuildHistoryMaxBuilds;
+    }
+
+    /**
+     * @return hosts the webhook subscriptions may call, separated by commas, none if empty
+     */
+    public String getJenkinsSubscriptionAllowedHosts() {
+        return jenkinsSubscriptionAllowedHosts;
+    }
+
+    public void setJenkinsSubscriptionAllowedHosts(String jenkinsSubscriptionAllowedHosts) {
+        this.jenkinsSubscriptionAllowedHosts = jenkinsSubscriptionAllowedHosts;
+    }
 }
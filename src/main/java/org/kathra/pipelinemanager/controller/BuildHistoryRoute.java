@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.cdi.ContextName;
+import org.apache.camel.model.rest.RestBindingMode;
+import org.apache.commons.lang3.StringUtils;
+import org.kathra.core.model.Build;
+
+import javax.inject.Inject;
+import java.util.List;
+
+/**
+ * Exposes the build history on GET /history/builds, as JSON
+ *
+ * Query parameters: path, branch, from and to (creation time in ms since epoch), maxResult.
+ * Builds are read from the {@link org.kathra.pipelinemanager.service.BuildHistoryStore}, including the builds
+ * discarded by Jenkins, without their logs.
+ */
+@ContextName("PipelineManager")
+public class BuildHistoryRoute extends RouteBuilder {
+
+    static final String JSON_CONTENT_TYPE = "application/json";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private PipelineManagerController controller;
+
+    @Override
+    public void configure() {
+        rest("/history/builds")
+                .get()
+                .produces(JSON_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:buildHistory");
+
+        from("direct:buildHistory")
+                .routeId("buildHistory")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    String path = in.getHeader("path", String.class);
+                    try {
+                        String maxResult = in.getHeader("maxResult", String.class);
+                        List<Build> builds = controller.getBuildHistory(path, in.getHeader("branch", String.class),
+                                toLong(in.getHeader("from", String.class)), toLong(in.getHeader("to", String.class)),
+                                StringUtils.isEmpty(maxResult) ? null : Integer.valueOf(maxResult));
+                        in.setHeader(Exchange.CONTENT_TYPE, JSON_CONTENT_TYPE);
+                        in.setBody(mapper.writeValueAsString(builds));
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "read build history of " + path, e);
+                    }
+                });
+    }
+
+    private static Long toLong(String value) {
+        return StringUtils.isEmpty(value) ? null : Long.valueOf(value);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.cdi.ContextName;
+import org.apache.camel.model.rest.RestBindingMode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpStatus;
+import org.kathra.core.model.Build;
+import org.kathra.pipelinemanager.service.QueuedBuild;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Exposes the build operations which are not part of the generated interface, as JSON
+ *
+ * GET /builds/detail returns a build with the part of its console log selected by the logs query parameter:
+ * "none", "full" (default), "tail:&lt;lines&gt;" or "bytes:&lt;bytes&gt;". Other query parameters: path, buildNumber.
+ * GET /builds/list returns the last builds of a pipeline, without logs unless selected. Query parameters: path,
+ * branch, maxResult, logs.
+ *
+ * GET /builds/wait waits for a build to finish instead of polling it. Query parameters: path, buildNumber,
+ * timeout (seconds), logs ("none", "full", "tail:&lt;lines&gt;" or "bytes:&lt;bytes&gt;").
+ * The finished build is returned with 200, the build as it stands with 408 when the timeout is reached first.
+ *
+ * POST /builds/async triggers the build of the body without waiting for Jenkins to start it, it answers 202 with
+ * the queued build and its queue id. GET /builds/queue/{id} returns the queued build, with its build number once
+ * Jenkins has started it, 404 once the queue item is unknown or expired.
+ */
+@ContextName("PipelineManager")
+public class BuildRoute extends RouteBuilder {
+
+    static final String JSON_CONTENT_TYPE = "application/json";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private PipelineManagerController controller;
+
+    @Override
+    public void configure() {
+        rest("/builds")
+                .get("/detail")
+                .produces(JSON_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:buildDetail")
+                .get("/list")
+                .produces(JSON_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:buildList")
+                .get("/wait")
+                .produces(JSON_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:waitForBuild")
+                .post("/async")
+                .consumes(JSON_CONTENT_TYPE)
+                .produces(JSON_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:createBuildAsync")
+                .get("/queue/{id}")
+                .produces(JSON_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:queuedBuild");
+
+        from("direct:createBuildAsync")
+                .routeId("createBuildAsync")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    try {
+                        QueuedBuild queuedBuild = controller.createBuildAsync(readBuild(in.getBody(String.class)));
+                        in.setHeader(Exchange.HTTP_RESPONSE_CODE, HttpStatus.SC_ACCEPTED);
+                        in.setHeader(Exchange.CONTENT_TYPE, JSON_CONTENT_TYPE);
+                        in.setBody(mapper.writeValueAsString(queuedBuild));
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "trigger build", e);
+                    }
+                });
+
+        from("direct:queuedBuild")
+                .routeId("queuedBuild")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    String id = in.getHeader("id", String.class);
+                    try {
+                        QueuedBuild queuedBuild = controller.getQueuedBuild(id);
+                        in.setHeader(Exchange.CONTENT_TYPE, JSON_CONTENT_TYPE);
+                        in.setBody(mapper.writeValueAsString(queuedBuild));
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "read queued build " + id, e);
+                    }
+                });
+
+        from("direct:buildDetail")
+                .routeId("buildDetail")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    String path = in.getHeader("path", String.class);
+                    String buildNumber = in.getHeader("buildNumber", String.class);
+                    try {
+                        Build build = controller.getBuild(path, buildNumber, in.getHeader("logs", String.class));
+                        in.setHeader(Exchange.CONTENT_TYPE, JSON_CONTENT_TYPE);
+                        in.setBody(mapper.writeValueAsString(build));
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "read build " + buildNumber + " of " + path, e);
+                    }
+                });
+
+        from("direct:buildList")
+                .routeId("buildList")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    String path = in.getHeader("path", String.class);
+                    try {
+                        String maxResult = in.getHeader("maxResult", String.class);
+                        List<Build> builds = controller.getBuilds(path, in.getHeader("branch", String.class),
+                                StringUtils.isEmpty(maxResult) ? null : Integer.valueOf(maxResult), in.getHeader("logs", String.class));
+                        in.setHeader(Exchange.CONTENT_TYPE, JSON_CONTENT_TYPE);
+                        in.setBody(mapper.writeValueAsString(builds));
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "read builds of " + path, e);
+                    }
+                });
+
+        from("direct:waitForBuild")
+                .routeId("waitForBuild")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    String path = in.getHeader("path", String.class);
+                    String buildNumber = in.getHeader("buildNumber", String.class);
+                    try {
+                        String timeout = in.getHeader("timeout", String.class);
+                        Build build = controller.waitForBuild(path, buildNumber,
+                                StringUtils.isEmpty(timeout) ? null : Integer.valueOf(timeout), in.getHeader("logs", String.class));
+                        if (!isFinished(build)) {
+                            in.setHeader(Exchange.HTTP_RESPONSE_CODE, HttpStatus.SC_REQUEST_TIMEOUT);
+                        }
+                        in.setHeader(Exchange.CONTENT_TYPE, JSON_CONTENT_TYPE);
+                        in.setBody(mapper.writeValueAsString(build));
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "wait for build " + buildNumber + " of " + path, e);
+                    }
+                });
+    }
+
+    private static Build readBuild(String body) {
+        if (body == null)
+            throw new IllegalArgumentException("Build must be a JSON object.");
+        try {
+            return mapper.readValue(body, Build.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Build is malformed : " + e.getMessage());
+        }
+    }
+
+    private static boolean isFinished(Build build) {
+        return build.getStatus() != Build.StatusEnum.PROCESSING && build.getStatus() != Build.StatusEnum.SCHEDULED;
+    }
+}
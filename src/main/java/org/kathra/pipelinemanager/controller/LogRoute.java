@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.cdi.ContextName;
+import org.apache.camel.model.rest.RestBindingMode;
+import org.apache.commons.lang3.StringUtils;
+import org.kathra.pipelinemanager.service.LogChunk;
+import org.kathra.pipelinemanager.service.LogSearchHit;
+
+import javax.inject.Inject;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Exposes the console logs of builds read from a byte offset on GET /logs
+ *
+ * Query parameters: path, buildNumber, start (byte offset, 0 by default).
+ * The response holds the log from the offset, X-Text-Size gives the offset to read the next part from
+ * and X-More-Data is true while the build is running.
+ * Logs of finished builds are streamed from the {@link org.kathra.pipelinemanager.service.BuildLogStore}.
+ * With follow=true, the log is streamed until the build has finished or for timeout seconds,
+ * a client resumes from the offset of the last byte received.
+ *
+ * GET /logs/search finds the finished builds whose log matches a search, as JSON. Query parameters: q (terms and
+ * quoted phrases), folder, branch, from and to (start time in ms since epoch), limit.
+ */
+@ContextName("PipelineManager")
+public class LogRoute extends RouteBuilder {
+
+    static final String CONTENT_TYPE = "text/plain; charset=utf-8";
+    static final String TEXT_SIZE_HEADER = "X-Text-Size";
+    static final String MORE_DATA_HEADER = "X-More-Data";
+    static final String JSON_CONTENT_TYPE = "application/json";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private PipelineManagerController controller;
+
+    @Override
+    public void configure() {
+        rest("/logs")
+                .get()
+                .produces(CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:logs");
+
+        rest("/logs/search")
+                .get()
+                .produces(JSON_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:searchLogs");
+
+        from("direct:searchLogs")
+                .routeId("searchLogs")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    String text = in.getHeader("q", String.class);
+                    try {
+                        List<LogSearchHit> hits = controller.searchLogs(text, in.getHeader("folder", String.class), in.getHeader("branch", String.class),
+                                toLong(in.getHeader("from", String.class)), toLong(in.getHeader("to", String.class)),
+                                StringUtils.isEmpty(in.getHeader("limit", String.class)) ? null : Integer.valueOf(in.getHeader("limit", String.class)));
+                        in.setHeader(Exchange.CONTENT_TYPE, JSON_CONTENT_TYPE);
+                        in.setBody(mapper.writeValueAsString(hits));
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "search logs for '" + text + "'", e);
+                    }
+                });
+
+        from("direct:logs")
+                .routeId("logs")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    String path = in.getHeader("path", String.class);
+                    String buildNumber = in.getHeader("buildNumber", String.class);
+                    try {
+                        String start = in.getHeader("start", String.class);
+                        String timeout = in.getHeader("timeout", String.class);
+                        Long offset = StringUtils.isEmpty(start) ? null : Long.valueOf(start);
+                        in.setHeader(Exchange.CONTENT_TYPE, CONTENT_TYPE);
+                        if ("true".equalsIgnoreCase(in.getHeader("follow", String.class))) {
+                            // without length, the stream is sent chunked as it is read
+                            in.setBody(controller.followBuildLog(path, buildNumber, offset,
+                                    StringUtils.isEmpty(timeout) ? null : Integer.valueOf(timeout)));
+                        } else {
+                            LogChunk chunk = controller.getBuildLog(path, buildNumber, offset);
+                            in.setHeader(TEXT_SIZE_HEADER, chunk.getEnd());
+                            in.setHeader(MORE_DATA_HEADER, chunk.isMoreData());
+                            // a stored log is streamed from disk, as stored if the client accepts gzip
+                            String acceptEncoding = in.getHeader("Accept-Encoding", String.class);
+                            InputStream gzip = StringUtils.containsIgnoreCase(acceptEncoding, "gzip") ? chunk.openGzip() : null;
+                            if (gzip != null) {
+                                in.setHeader("Content-Encoding", "gzip");
+                                in.setBody(gzip);
+                            } else {
+                                in.setBody(chunk.openText());
+                            }
+                        }
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "read logs of build " + buildNumber + " of " + path, e);
+                    }
+                });
+    }
+
+    private static Long toLong(String value) {
+        return StringUtils.isEmpty(value) ? null : Long.valueOf(value);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.cdi.ContextName;
+import org.apache.camel.model.rest.RestBindingMode;
+import org.kathra.core.model.Membership;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Exposes the membership operations which are not part of the generated interface, as JSON
+ *
+ * POST /memberships/bulk adds the memberships of a JSON array, each folder is written at most once.
+ * The response holds the memberships added.
+ */
+@ContextName("PipelineManager")
+public class MembershipRoute extends RouteBuilder {
+
+    static final String JSON_CONTENT_TYPE = "application/json";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private PipelineManagerController controller;
+
+    @Override
+    public void configure() {
+        rest("/memberships")
+                .post("/bulk")
+                .consumes(JSON_CONTENT_TYPE)
+                .produces(JSON_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:addMemberships");
+
+        from("direct:addMemberships")
+                .routeId("addMemberships")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    try {
+                        List<Membership> memberships = controller.addMemberships(readMemberships(in.getBody(String.class)));
+                        in.setHeader(Exchange.CONTENT_TYPE, JSON_CONTENT_TYPE);
+                        in.setBody(mapper.writeValueAsString(memberships));
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "add memberships", e);
+                    }
+                });
+    }
+
+    private static List<Membership> readMemberships(String body) {
+        if (body == null)
+            throw new IllegalArgumentException("Memberships must be a JSON array.");
+        try {
+            return mapper.readValue(body, new TypeReference<List<Membership>>() {});
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Memberships are malformed : " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.controller;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.cdi.ContextName;
+import org.apache.camel.model.rest.RestBindingMode;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+import org.kathra.pipelinemanager.metrics.PrometheusFormat;
+
+/**
+ * Exposes the application metrics in the Prometheus text format on GET /metrics
+ */
+@ContextName("PipelineManager")
+public class MetricsRoute extends RouteBuilder {
+
+    @Override
+    public void configure() {
+        rest("/metrics")
+                .get()
+                .produces(PrometheusFormat.CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:metrics");
+
+        from("direct:metrics")
+                .routeId("metrics")
+                .process(exchange -> {
+                    exchange.getIn().setHeader(Exchange.CONTENT_TYPE, PrometheusFormat.CONTENT_TYPE);
+                    exchange.getIn().setBody(PrometheusFormat.write(MetricsRegistry.getDefault().getMetrics()));
+                });
+    }
+}
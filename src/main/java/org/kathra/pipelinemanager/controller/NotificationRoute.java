@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.controller;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.cdi.ContextName;
+import org.apache.camel.model.rest.RestBindingMode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpStatus;
+
+import javax.inject.Inject;
+
+/**
+ * Receives the job events of the Jenkins Notification plugin on POST /webhooks/jenkins
+ *
+ * The plugin is configured on the jobs with a JSON/HTTP endpoint to this url. Requests must carry JENKINS_WEBHOOK_TOKEN
+ * as the token query parameter or the X-Kathra-Token header, notifications are refused while it is not set.
+ */
+@ContextName("PipelineManager")
+public class NotificationRoute extends RouteBuilder {
+
+    static final String TOKEN_HEADER = "X-Kathra-Token";
+
+    @Inject
+    private PipelineManagerController controller;
+
+    @Override
+    public void configure() {
+        rest("/webhooks/jenkins")
+                .post()
+                .consumes("application/json")
+                .bindingMode(RestBindingMode.off)
+                .to("direct:jenkinsNotification");
+
+        from("direct:jenkinsNotification")
+                .routeId("jenkinsNotification")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    String token = in.getHeader("token", String.class);
+                    if (StringUtils.isEmpty(token)) {
+                        token = in.getHeader(TOKEN_HEADER, String.class);
+                    }
+                    try {
+                        controller.onJenkinsNotification(in.getBody(String.class), token);
+                        in.setHeader(Exchange.HTTP_RESPONSE_CODE, HttpStatus.SC_NO_CONTENT);
+                        in.setBody(null);
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "handle Jenkins notification", e);
+                    }
+                });
+    }
+}
@@ -22,20 +22,33 @@ package org.kathra.pipelinemanager.controller;
 
 import javassist.NotFoundException;
 import org.apache.camel.cdi.ContextName;
-import org.apache.http.HttpStatus;
 import org.apache.log4j.Logger;
 import org.kathra.core.model.Build;
 import org.kathra.core.model.Membership;
 import org.kathra.core.model.Pipeline;
 import org.kathra.pipelinemanager.Config;
+import org.kathra.pipelinemanager.metrics.RequestMetrics;
 import org.kathra.pipelinemanager.model.Credential;
 import org.kathra.pipelinemanager.service.JenkinsService;
+import org.kathra.pipelinemanager.service.JenkinsServiceProvider;
+import org.kathra.pipelinemanager.service.LogChunk;
+import org.kathra.pipelinemanager.service.LogSearchHit;
+import org.kathra.pipelinemanager.service.LogSearchQuery;
+import org.kathra.pipelinemanager.service.LogSelection;
+import org.kathra.pipelinemanager.service.PipelineCreation;
 import org.kathra.pipelinemanager.service.PipelineManagerService;
-import org.kathra.utils.ApiException;
+import org.kathra.pipelinemanager.service.QueuedBuild;
+import org.kathra.pipelinemanager.utils.RetryExecutor;
 import org.kathra.utils.KathraException;
 
+import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Quentin Sémanne <Quentin.Semanne@kathra.org>
@@ -45,16 +58,29 @@ import java.util.List;
 public class PipelineManagerController implements PipelineManagerService {
 
 
+    private static final int DEFAULT_BUILD_WAIT_SECONDS = 60;
+    private static final int DEFAULT_LOG_FOLLOW_SECONDS = 600;
+    private static final int DEFAULT_EVENT_STREAM_SECONDS = 600;
+
     private int maxAttempt = 5;
     private int attemptWaitMs = 250;
+    private int maxAttemptWaitMs = 4000;
+    private int maxRetryDurationMs = 15000;
+    // pipeline operations in progress, beyond them operations are rejected instead of queued
+    private int maxPendingOperations = 200;
+    private RetryExecutor retryExecutor = newRetryExecutor();
+    private final RequestMetrics operationMetrics = new RequestMetrics("kathra_pipelinemanager_operation", "PipelineManager operations");
 
     private Config config;
     private JenkinsService jenkinsService;
 
+    @Inject
+    private JenkinsServiceProvider jenkinsServiceProvider;
+
     private static Logger logger = Logger.getLogger(PipelineManagerController.class);
 
     /**
-     * Default, auto configuring PipelineManagerController, JenkinsServer, JenkinsService
+     * Default, auto configuring PipelineManagerController, JenkinsService is shared through {@link JenkinsServiceProvider}
      */
     public PipelineManagerController() {
         config = new Config();
@@ -73,11 +99,64 @@ public class PipelineManagerController implements PipelineManagerService {
         if (jenkinsService != null)  {
             return jenkinsService;
         }
-        return new JenkinsService(config);
+        JenkinsServiceProvider provider = jenkinsServiceProvider;
+        return (provider == null ? getDefaultProvider() : provider).get(config);
+    }
+
+    /**
+     * Provider of a controller built outside CDI, shared by its calls
+     */
+    private synchronized JenkinsServiceProvider getDefaultProvider() {
+        if (jenkinsServiceProvider == null) {
+            jenkinsServiceProvider = new JenkinsServiceProvider();
+        }
+        return jenkinsServiceProvider;
     }
 
     public void setMaxAttempt(int maxAttempt) {
         this.maxAttempt = maxAttempt;
+        this.retryExecutor = newRetryExecutor();
+    }
+
+    private RetryExecutor newRetryExecutor() {
+        return new RetryExecutor(maxAttempt, attemptWaitMs, maxAttemptWaitMs, maxRetryDurationMs, maxPendingOperations);
+    }
+
+    /**
+     * Execute an operation, recording its latency and errors
+     *
+     * @param operation operation name
+     * @param call operation
+     * @param <T> result type
+     * @return operation result
+     * @throws Exception error of the operation
+     */
+    private <T> T measure(String operation, Callable<T> call) throws Exception {
+        return operationMetrics.record(operation, call);
+    }
+
+    /**
+     * Wait for an asynchronous operation and rethrow its own exception
+     *
+     * @param stage asynchronous operation
+     * @param <T> result type
+     * @return operation result
+     * @throws Exception error of the operation
+     */
+    private <T> T await(CompletionStage<T> stage) throws Exception {
+        try {
+            return stage.toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
     }
 
     /**
@@ -88,112 +167,300 @@ public class PipelineManagerController implements PipelineManagerService {
      */
     private void manageException(Exception e) throws KathraException {
         logger.warn(e.getStackTrace());
-        if (e instanceof IllegalArgumentException) {
-            throw new KathraException(e.getMessage()).errorCode(KathraException.ErrorCode.BAD_REQUEST);
-        } else if (e instanceof IllegalAccessException) {
-            throw new KathraException(e.getMessage()).errorCode(KathraException.ErrorCode.UNAUTHORIZED);
-        } else if (e instanceof IllegalStateException) {
-            if (e.getMessage().matches(".*Pipeline.*already existing.*")) {
-                throw new KathraException(e.getMessage()).errorCode(KathraException.ErrorCode.CONFLICT);
-            } else {
-                throw new KathraException(e.getMessage()).errorCode(KathraException.ErrorCode.INTERNAL_SERVER_ERROR);
-            }
-        } else if (e instanceof NotFoundException) {
-            throw new KathraException(e.getMessage()).errorCode(KathraException.ErrorCode.NOT_FOUND);
-        } else if (e instanceof ApiException && ((ApiException) e).getCode() == HttpStatus.SC_FORBIDDEN) {
-            throw new KathraException(e.getMessage()).errorCode(KathraException.ErrorCode.UNAUTHORIZED);
-        } else if (e instanceof KathraException) {
+        if (e instanceof KathraException) {
             throw (KathraException) e;
-        } else {
-            throw new KathraException(e.getMessage()).errorCode(KathraException.ErrorCode.INTERNAL_SERVER_ERROR);
         }
+        throw new KathraException(e.getMessage()).errorCode(RouteErrors.getErrorCode(e));
     }
 
     @Override
     public Credential addCredential(Credential credential) throws Exception {
-        return getJenkinsService().addCredential(credential);
+        return measure("addCredential", () -> getJenkinsService().addCredential(credential));
     }
 
     @Override
     public Membership addMembership(Membership membership) throws Exception {
         try {
-            return getJenkinsService().addMembership(membership);
+            return measure("addMembership", () -> getJenkinsService().addMembership(membership));
         } catch (Exception e) {
             manageException(e);
             return null;
         }
     }
 
+    /**
+     * Add memberships in bulk, each folder is written at most once, errors are mapped to HTTP statuses by {@link MembershipRoute}
+     *
+     * @param memberships memberships to add
+     * @return memberships added
+     * @throws Exception
+     */
+    public List<Membership> addMemberships(List<Membership> memberships) throws Exception {
+        return measure("addMemberships", () -> getJenkinsService().addMemberships(memberships));
+    }
+
     @Override
     public Build createBuild(Build build) throws Exception {
-        return getJenkinsService().createBuild(build);
+        return measure("createBuild", () -> getJenkinsService().createBuild(build));
+    }
+
+    /**
+     * Trigger a build without waiting for Jenkins to start it, errors are mapped to HTTP statuses by {@link BuildRoute}
+     *
+     * @param build build to trigger
+     * @return queued build with its queue id, see {@link #getQueuedBuild(String)}
+     * @throws Exception
+     */
+    public QueuedBuild createBuildAsync(Build build) throws Exception {
+        return measure("createBuildAsync", () -> getJenkinsService().createBuildAsync(build));
+    }
+
+    /**
+     * Get a build triggered by {@link #createBuildAsync(Build)}, its build number is set once Jenkins has started it,
+     * errors are mapped to HTTP statuses by {@link BuildRoute}
+     *
+     * @param queueId Jenkins queue id
+     * @return queued build
+     * @throws Exception
+     */
+    public QueuedBuild getQueuedBuild(String queueId) throws Exception {
+        long id;
+        try {
+            id = Long.parseLong(queueId);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Queue id must be a number");
+        }
+        QueuedBuild queuedBuild = measure("getQueuedBuild", () -> getJenkinsService().getQueuedBuild(id));
+        if (queuedBuild == null) {
+            throw new NotFoundException("Queue item " + queueId + " is unknown or expired");
+        }
+        return queuedBuild;
     }
 
     @Override
     public Boolean createFolder(String path) throws Exception {
-        return getJenkinsService().createFolder(path);
+        return measure("createFolder", () -> getJenkinsService().createFolder(path));
     }
 
+    /**
+     * Blocks the calling thread during the retries, the REST route calls {@link #createPipelineAsync} instead, see {@link PipelineRoute}
+     */
     @Override
     public Pipeline createPipeline(Pipeline pipeline) throws Exception {
-        int attempt = 0;
-        Exception lastException;
-        do {
-            try {
-                pipeline = getJenkinsService().createPipeline(pipeline);
-                lastException = null;
-                break;
-            } catch (Exception e) {
-                long wait = (long) (attemptWaitMs * Math.pow(2, attempt));
-                logger.warn("Unable to create pipeline " + pipeline.getPath() + ", wait  " + wait + " ms and retry (" + attempt + "/" + maxAttempt + ")");
-                lastException = e;
-                Thread.sleep(wait);
-                attempt++;
-            }
-        } while(attempt < maxAttempt);
-        if (lastException != null) {
-            lastException.printStackTrace();
-            throw lastException;
-        }
-        return pipeline;
+        return await(createPipelineAsync(pipeline));
     }
 
+    /**
+     * Create pipeline, retrying transient errors without holding the calling thread, errors are mapped to HTTP statuses by {@link PipelineRoute}
+     *
+     * @param pipeline pipeline to create
+     * @return created pipeline, {@link java.util.concurrent.RejectedExecutionException} if too many operations are in progress
+     */
+    public CompletionStage<Pipeline> createPipelineAsync(Pipeline pipeline) {
+        String path = pipeline == null ? null : pipeline.getPath();
+        return operationMetrics.recordAsync("createPipeline",
+                () -> retryExecutor.execute("createPipeline", "create pipeline " + path, () -> getJenkinsService().createPipeline(pipeline)));
+    }
+
+    /**
+     * Create pipelines in bulk, each failed pipeline is reported in its result, errors are mapped to HTTP statuses by {@link PipelineRoute}
+     *
+     * @param pipelines pipelines to create
+     * @return result for each pipeline, in the same order
+     * @throws Exception
+     */
+    public List<PipelineCreation> createPipelines(List<Pipeline> pipelines) throws Exception {
+        return measure("createPipelines", () -> getJenkinsService().createPipelines(pipelines));
+    }
+
+    /**
+     * Blocks the calling thread during the retries, the REST route calls {@link #deletePipelineAsync} instead, see {@link PipelineRoute}
+     */
     @Override
     public String deletePipeline(String path) throws Exception {
-        int attempt = 0;
-        Exception lastException;
-        do {
-            try {
-                getJenkinsService().deletePipeline(new Pipeline().path(path));
-                lastException = null;
-                break;
-            } catch (Exception e) {
-                long wait = (long) (attemptWaitMs * Math.pow(2, attempt));
-                logger.warn("Unable to create pipeline " + path + ", wait  " + wait + " ms and retry (" + attempt + "/" + maxAttempt + ")");
-                lastException = e;
-                Thread.sleep(wait);
-                attempt++;
-            }
-        } while(attempt < maxAttempt);
-        if (lastException != null) {
-            lastException.printStackTrace();
-            throw lastException;
-        }
-        return "OK";
+        return await(deletePipelineAsync(path));
+    }
+
+    /**
+     * Delete pipeline, retrying transient errors without holding the calling thread, errors are mapped to HTTP statuses by {@link PipelineRoute}
+     *
+     * @param path pipeline path
+     * @return "OK" once deleted, {@link java.util.concurrent.RejectedExecutionException} if too many operations are in progress
+     */
+    public CompletionStage<String> deletePipelineAsync(String path) {
+        return operationMetrics.recordAsync("deletePipeline", () -> retryExecutor.execute("deletePipeline", "delete pipeline " + path, () -> {
+            getJenkinsService().deletePipeline(new Pipeline().path(path));
+            return "OK";
+        }));
     }
 
     @Override
     public Build getBuild(String path, String buildNumber) throws Exception {
-        return getJenkinsService().getBuild(path, buildNumber);
+        return measure("getBuild", () -> getJenkinsService().getBuild(path, buildNumber));
+    }
+
+    /**
+     * Get a build with a part of its console log, errors are mapped to HTTP statuses by {@link BuildRoute}
+     *
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param logs "none", "full" (default), "tail:&lt;lines&gt;" or "bytes:&lt;bytes&gt;"
+     * @return build
+     * @throws Exception
+     */
+    public Build getBuild(String path, String buildNumber, String logs) throws Exception {
+        LogSelection selection = LogSelection.parse(logs, LogSelection.FULL);
+        return measure("getBuild", () -> getJenkinsService().getBuild(path, buildNumber, selection));
+    }
+
+    /**
+     * Wait for a build to finish, instead of polling {@link #getBuild(String, String, String)}, errors are mapped to HTTP statuses by {@link BuildRoute}
+     *
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param timeoutSeconds deadline of the wait, {@value #DEFAULT_BUILD_WAIT_SECONDS} s by default
+     * @param logs "none", "full" (default), "tail:&lt;lines&gt;" or "bytes:&lt;bytes&gt;"
+     * @return finished build, or the build as it stands when the deadline is reached
+     * @throws Exception
+     */
+    public Build waitForBuild(String path, String buildNumber, Integer timeoutSeconds, String logs) throws Exception {
+        long timeoutMs = TimeUnit.SECONDS.toMillis(timeoutSeconds == null ? DEFAULT_BUILD_WAIT_SECONDS : timeoutSeconds);
+        LogSelection selection = LogSelection.parse(logs, LogSelection.FULL);
+        return measure("waitForBuild", () -> getJenkinsService().waitForBuild(path, buildNumber, timeoutMs, selection));
+    }
+
+    /**
+     * Read the console log of a build from a byte offset, errors are mapped to HTTP statuses by {@link LogRoute}
+     *
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param start offset to read from, 0 by default
+     * @return log from the offset, with the offset to read the next part from
+     * @throws Exception
+     */
+    public LogChunk getBuildLog(String path, String buildNumber, Long start) throws Exception {
+        return measure("getBuildLog", () -> getJenkinsService().getLogChunk(path, buildNumber, start == null ? 0 : start));
+    }
+
+    /**
+     * Follow the console log of a build from a byte offset, errors are mapped to HTTP statuses by {@link LogRoute}
+     *
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param start offset to read from, 0 by default
+     * @param timeoutSeconds the stream ends after this delay, {@value #DEFAULT_LOG_FOLLOW_SECONDS} s by default
+     * @return log from the offset, ending when the build has finished
+     * @throws Exception
+     */
+    public InputStream followBuildLog(String path, String buildNumber, Long start, Integer timeoutSeconds) throws Exception {
+        long timeoutMs = TimeUnit.SECONDS.toMillis(timeoutSeconds == null ? DEFAULT_LOG_FOLLOW_SECONDS : timeoutSeconds);
+        return measure("followBuildLog", () -> getJenkinsService().followLog(path, buildNumber, start == null ? 0 : start, timeoutMs));
+    }
+
+    /**
+     * Find the finished builds whose console log matches a search, errors are mapped to HTTP statuses by {@link LogRoute}
+     *
+     * @param text terms and quoted phrases, all required
+     * @param folder only builds of pipelines in this folder, if defined
+     * @param branch only builds of this branch, if defined
+     * @param from only builds started at or after this time, in ms since epoch, if defined
+     * @param to only builds started at or before this time, in ms since epoch, if defined
+     * @param limit max number of builds
+     * @return matching builds, most recent first, with their first matching line
+     * @throws Exception
+     */
+    public List<LogSearchHit> searchLogs(String text, String folder, String branch, Long from, Long to, Integer limit) throws Exception {
+        LogSearchQuery query = LogSearchQuery.parse(text).folder(folder).branch(branch).from(from).to(to).limit(limit);
+        return measure("searchLogs", () -> getJenkinsService().searchLogs(query));
+    }
+
+    /**
+     * Receive a job event of the Jenkins Notification plugin, errors are mapped to HTTP statuses by {@link NotificationRoute}
+     *
+     * @param body event, as JSON
+     * @param token token of the webhook request
+     * @throws Exception
+     */
+    public void onJenkinsNotification(String body, String token) throws Exception {
+        measure("onJenkinsNotification", () -> {
+            getJenkinsService().onNotification(body, token);
+            return null;
+        });
+    }
+
+    /**
+     * Register a webhook receiving the build status changes of a pipeline or folder, errors are mapped to HTTP statuses by {@link SubscriptionRoute}
+     *
+     * @param path pipeline path or folder prefix, empty for every pipeline
+     * @param callbackUrl url receiving the batches of events
+     * @return subscription id
+     * @throws Exception
+     */
+    public String subscribeBuildEvents(String path, String callbackUrl) throws Exception {
+        return measure("subscribeBuildEvents", () -> getJenkinsService().subscribe(path, callbackUrl));
+    }
+
+    /**
+     * @param id subscription id
+     * @throws Exception
+     */
+    public void unsubscribeBuildEvents(String id) throws Exception {
+        measure("unsubscribeBuildEvents", () -> {
+            getJenkinsService().unsubscribe(id);
+            return null;
+        });
+    }
+
+    /**
+     * Stream the build status changes of a pipeline or folder as server-sent events
+     *
+     * @param path pipeline path or folder prefix, empty for every pipeline
+     * @param timeoutSeconds the stream ends after this delay, {@value #DEFAULT_EVENT_STREAM_SECONDS} s by default
+     * @return event stream
+     * @throws Exception
+     */
+    public InputStream streamBuildEvents(String path, Integer timeoutSeconds) throws Exception {
+        long timeoutMs = TimeUnit.SECONDS.toMillis(timeoutSeconds == null ? DEFAULT_EVENT_STREAM_SECONDS : timeoutSeconds);
+        return measure("streamBuildEvents", () -> getJenkinsService().streamBuildEvents(path, timeoutMs));
+    }
+
+    /**
+     * Read the recorded builds of a pipeline, including the builds discarded by Jenkins, errors are mapped to HTTP statuses by {@link BuildHistoryRoute}
+     *
+     * @param path pipeline path
+     * @param branch only builds of this branch, if defined
+     * @param from only builds created at or after this time, in ms since epoch, if defined
+     * @param to only builds created at or before this time, in ms since epoch, if defined
+     * @param maxResult max number of builds
+     * @return builds, most recent first
+     * @throws Exception
+     */
+    public List<Build> getBuildHistory(String path, String branch, Long from, Long to, Integer maxResult) throws Exception {
+        return measure("getBuildHistory", () -> getJenkinsService().getBuildHistory(path, branch, from, to, maxResult));
     }
 
     @Override
     public List<Build> getBuilds(String path, String branch, Integer maxResult) throws Exception {
-        return getJenkinsService().getBuilds(path, branch, maxResult);
+        return measure("getBuilds", () -> getJenkinsService().getBuilds(path, branch, maxResult));
+    }
+
+    /**
+     * Get the last builds of a pipeline with a part of their console logs, errors are mapped to HTTP statuses by {@link BuildRoute}
+     *
+     * @param path pipeline path
+     * @param branch only builds of this branch, if defined
+     * @param maxResult max number of builds
+     * @param logs "none" (default), "full", "tail:&lt;lines&gt;" or "bytes:&lt;bytes&gt;"
+     * @return builds
+     * @throws Exception
+     */
+    public List<Build> getBuilds(String path, String branch, Integer maxResult, String logs) throws Exception {
+        LogSelection selection = LogSelection.parse(logs, LogSelection.NONE);
+        return measure("getBuilds", () -> getJenkinsService().getBuilds(path, branch, maxResult, selection));
     }
 
     @Override
     public List<Membership> getMemberships(String path) throws Exception {
-        return getJenkinsService().getMemberships(path);
+        return measure("getMemberships", () -> getJenkinsService().getMemberships(path));
     }
 }
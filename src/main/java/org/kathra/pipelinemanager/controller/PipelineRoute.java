@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.cdi.ContextName;
+import org.apache.camel.model.rest.RestBindingMode;
+import org.apache.http.HttpStatus;
+import org.kathra.core.model.Pipeline;
+import org.kathra.pipelinemanager.service.PipelineCreation;
+import org.kathra.pipelinemanager.utils.Errors;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+
+/**
+ * Exposes the pipeline operations which are not part of the generated interface, as JSON
+ *
+ * POST /pipelines/bulk creates the pipelines of a JSON array. The response holds the result of each pipeline
+ * in the same order, a failed pipeline does not fail the others.
+ *
+ * POST /pipelines/async creates the pipeline of the body and DELETE /pipelines/async?path= deletes a pipeline,
+ * retrying transient errors. The response is written when the operation completes, the Camel thread is released meanwhile
+ * if the consumer supports asynchronous processing. Beyond the operations in progress allowed, requests are rejected with 503.
+ *
+ * POST /pipelines and DELETE /pipelines of the generated interface take the same asynchronous path: their calls
+ * to the controller bean are intercepted, the response body stays the one of the bean method.
+ */
+@ContextName("PipelineManager")
+public class PipelineRoute extends RouteBuilder {
+
+    static final String JSON_CONTENT_TYPE = "application/json";
+
+    // calls of the generated routes to the controller bean, whatever the parameters of the method
+    static final String CREATE_PIPELINE_ENDPOINT = "bean:(//)?PipelineManagerController\\?method=createPipeline(\\W.*)?";
+    static final String DELETE_PIPELINE_ENDPOINT = "bean:(//)?PipelineManagerController\\?method=deletePipeline(\\W.*)?";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private PipelineManagerController controller;
+
+    @Override
+    public void configure() {
+        interceptSendToEndpoint(CREATE_PIPELINE_ENDPOINT)
+                .skipSendToOriginalEndpoint()
+                .process(new StageProcessor<>("create pipeline",
+                        in -> controller.createPipelineAsync(toPipeline(in.getBody())),
+                        Message::setBody));
+
+        interceptSendToEndpoint(DELETE_PIPELINE_ENDPOINT)
+                .skipSendToOriginalEndpoint()
+                .process(new StageProcessor<>("delete pipeline",
+                        in -> controller.deletePipelineAsync(in.getHeader("path", String.class)),
+                        Message::setBody));
+
+        rest("/pipelines")
+                .post("/bulk")
+                .consumes(JSON_CONTENT_TYPE)
+                .produces(JSON_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:createPipelines")
+                .post("/async")
+                .consumes(JSON_CONTENT_TYPE)
+                .produces(JSON_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:createPipelineAsync")
+                .delete("/async")
+                .bindingMode(RestBindingMode.off)
+                .to("direct:deletePipelineAsync");
+
+        from("direct:createPipelineAsync")
+                .routeId("createPipelineAsync")
+                .process(new StageProcessor<>("create pipeline",
+                        in -> controller.createPipelineAsync(readPipeline(in.getBody(String.class))),
+                        (in, pipeline) -> {
+                            in.setHeader(Exchange.HTTP_RESPONSE_CODE, HttpStatus.SC_CREATED);
+                            in.setHeader(Exchange.CONTENT_TYPE, JSON_CONTENT_TYPE);
+                            in.setBody(mapper.writeValueAsString(pipeline));
+                        }));
+
+        from("direct:deletePipelineAsync")
+                .routeId("deletePipelineAsync")
+                .process(new StageProcessor<>("delete pipeline",
+                        in -> controller.deletePipelineAsync(in.getHeader("path", String.class)),
+                        (in, result) -> in.setBody(result)));
+
+        from("direct:createPipelines")
+                .routeId("createPipelines")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    try {
+                        List<PipelineCreation> results = controller.createPipelines(readPipelines(in.getBody(String.class)));
+                        in.setHeader(Exchange.CONTENT_TYPE, JSON_CONTENT_TYPE);
+                        in.setBody(mapper.writeValueAsString(results));
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "create pipelines", e);
+                    }
+                });
+    }
+
+    private static Pipeline toPipeline(Object body) {
+        return body instanceof Pipeline ? (Pipeline) body : readPipeline(body == null ? null : body.toString());
+    }
+
+    private static Pipeline readPipeline(String body) {
+        if (body == null)
+            throw new IllegalArgumentException("Pipeline must be a JSON object.");
+        try {
+            return mapper.readValue(body, Pipeline.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Pipeline is malformed : " + e.getMessage());
+        }
+    }
+
+    private static List<Pipeline> readPipelines(String body) {
+        if (body == null)
+            throw new IllegalArgumentException("Pipelines must be a JSON array.");
+        try {
+            return mapper.readValue(body, new TypeReference<List<Pipeline>>() {});
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Pipelines are malformed : " + e.getMessage());
+        }
+    }
+
+    private interface ResponseWriter<T> {
+        void write(Message in, T value) throws Exception;
+    }
+
+    /**
+     * Answers when the stage of an operation completes, without holding the Camel thread meanwhile
+     */
+    private static class StageProcessor<T> implements AsyncProcessor {
+        private final String description;
+        private final Function<Message, CompletionStage<T>> operation;
+        private final ResponseWriter<T> writer;
+
+        private StageProcessor(String description, Function<Message, CompletionStage<T>> operation, ResponseWriter<T> writer) {
+            this.description = description;
+            this.operation = operation;
+            this.writer = writer;
+        }
+
+        @Override
+        public void process(Exchange exchange) throws Exception {
+            // synchronous consumers wait for the operation
+            CountDownLatch done = new CountDownLatch(1);
+            process(exchange, doneSync -> done.countDown());
+            done.await();
+        }
+
+        @Override
+        public boolean process(Exchange exchange, AsyncCallback callback) {
+            Message in = exchange.getIn();
+            CompletableFuture<T> result;
+            try {
+                result = operation.apply(in).toCompletableFuture();
+            } catch (RuntimeException e) {
+                result = new CompletableFuture<>();
+                result.completeExceptionally(e);
+            }
+            if (result.isDone()) {
+                respond(in, result);
+                callback.done(true);
+                return true;
+            }
+            result.whenComplete((value, error) -> {
+                respond(in, value, error);
+                callback.done(false);
+            });
+            return false;
+        }
+
+        private void respond(Message in, CompletableFuture<T> result) {
+            try {
+                respond(in, result.join(), null);
+            } catch (CompletionException | CancellationException e) {
+                respond(in, null, e);
+            }
+        }
+
+        private void respond(Message in, T value, Throwable error) {
+            Throwable cause = Errors.unwrap(error);
+            if (cause == null) {
+                try {
+                    writer.write(in, value);
+                    return;
+                } catch (Exception e) {
+                    cause = e;
+                }
+            }
+            RouteErrors.error(in, description, cause);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.controller;
+
+import javassist.NotFoundException;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.http.HttpStatus;
+import org.apache.log4j.Logger;
+import org.kathra.pipelinemanager.utils.CircuitBreakerOpenException;
+import org.kathra.utils.ApiException;
+import org.kathra.utils.KathraException;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Maps the errors of the controller to HTTP statuses, for the routes and {@link PipelineManagerController}
+ *
+ * <ul>
+ *     <li>400: invalid argument, including malformed numbers</li>
+ *     <li>401: access denied, by the service or by Jenkins</li>
+ *     <li>404: unknown pipeline or build</li>
+ *     <li>409: pipeline already existing</li>
+ *     <li>503: feature disabled, too many operations in progress or Jenkins unavailable, with Retry-After
+ *     when the circuit breaker is open</li>
+ *     <li>500: any other error</li>
+ * </ul>
+ */
+final class RouteErrors {
+
+    private static Logger logger = Logger.getLogger(RouteErrors.class);
+
+    private RouteErrors() {
+    }
+
+    /**
+     * @param e error of an operation, unwrapped
+     * @return HTTP status of the error
+     */
+    static int getStatus(Throwable e) {
+        if (e instanceof IllegalArgumentException) {
+            return HttpStatus.SC_BAD_REQUEST;
+        } else if (e instanceof IllegalAccessException
+                || (e instanceof ApiException && ((ApiException) e).getCode() == HttpStatus.SC_FORBIDDEN)) {
+            return HttpStatus.SC_UNAUTHORIZED;
+        } else if (e instanceof NotFoundException) {
+            return HttpStatus.SC_NOT_FOUND;
+        } else if (e instanceof IllegalStateException && e.getMessage() != null && e.getMessage().matches(".*Pipeline.*already existing.*")) {
+            return HttpStatus.SC_CONFLICT;
+        } else if (e instanceof IllegalStateException || e instanceof RejectedExecutionException || e instanceof CircuitBreakerOpenException) {
+            return HttpStatus.SC_SERVICE_UNAVAILABLE;
+        }
+        return HttpStatus.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * @param e error of an operation, unwrapped
+     * @return Kathra error code of the error
+     */
+    static KathraException.ErrorCode getErrorCode(Throwable e) {
+        switch (getStatus(e)) {
+            case HttpStatus.SC_BAD_REQUEST:
+                return KathraException.ErrorCode.BAD_REQUEST;
+            case HttpStatus.SC_UNAUTHORIZED:
+                return KathraException.ErrorCode.UNAUTHORIZED;
+            case HttpStatus.SC_NOT_FOUND:
+                return KathraException.ErrorCode.NOT_FOUND;
+            case HttpStatus.SC_CONFLICT:
+                return KathraException.ErrorCode.CONFLICT;
+            case HttpStatus.SC_SERVICE_UNAVAILABLE:
+                return KathraException.ErrorCode.SERVICE_UNAVAILABLE;
+            default:
+                return KathraException.ErrorCode.INTERNAL_SERVER_ERROR;
+        }
+    }
+
+    /**
+     * Answer with the status of an error, unexpected errors are logged
+     * @param in response message
+     * @param action failed action, logged as "Unable to action"
+     * @param e error of the action, unwrapped
+     */
+    static void error(Message in, String action, Throwable e) {
+        int status = getStatus(e);
+        if (status == HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            logger.warn("Unable to " + action + " : " + e.getMessage());
+        }
+        error(in, status, e);
+    }
+
+    /**
+     * Answer with a status and the message of an error
+     * @param in response message
+     * @param status HTTP status
+     * @param e error
+     */
+    static void error(Message in, int status, Throwable e) {
+        in.setHeader(Exchange.HTTP_RESPONSE_CODE, status);
+        if (e instanceof CircuitBreakerOpenException) {
+            // Jenkins is unavailable, tell the client when to retry
+            in.setHeader(CircuitBreakerOpenException.RETRY_AFTER_HEADER, ((CircuitBreakerOpenException) e).getRetryAfterSeconds());
+        }
+        in.setBody(e.getMessage());
+    }
+}
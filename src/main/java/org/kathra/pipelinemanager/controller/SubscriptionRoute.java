@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.cdi.ContextName;
+import org.apache.camel.model.rest.RestBindingMode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpStatus;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Pushes the build status changes to subscribers, instead of them polling the builds
+ *
+ * POST /subscriptions registers a webhook, body {"path": pipeline path or folder prefix, "callbackUrl": url},
+ * the response holds the subscription id. Batches of events are posted as JSON to the url, its host must be one of
+ * JENKINS_SUBSCRIPTION_ALLOWED_HOSTS: without it, webhooks are refused with 503.
+ * DELETE /subscriptions/{id} removes a webhook.
+ * GET /subscriptions/events streams the events as server-sent events, query parameters: path, timeout (seconds),
+ * clients reconnect when the stream ends and read the builds again to catch up.
+ */
+@ContextName("PipelineManager")
+public class SubscriptionRoute extends RouteBuilder {
+
+    static final String JSON_CONTENT_TYPE = "application/json";
+    static final String EVENT_STREAM_CONTENT_TYPE = "text/event-stream";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private PipelineManagerController controller;
+
+    @Override
+    public void configure() {
+        rest("/subscriptions")
+                .post()
+                .consumes(JSON_CONTENT_TYPE)
+                .produces(JSON_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:subscribe")
+                .delete("/{id}")
+                .bindingMode(RestBindingMode.off)
+                .to("direct:unsubscribe")
+                .get("/events")
+                .produces(EVENT_STREAM_CONTENT_TYPE)
+                .bindingMode(RestBindingMode.off)
+                .to("direct:buildEvents");
+
+        from("direct:subscribe")
+                .routeId("subscribe")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    try {
+                        JsonNode body = readBody(in.getBody(String.class));
+                        String id = controller.subscribeBuildEvents(body.path("path").asText(""), body.path("callbackUrl").asText(null));
+                        in.setHeader(Exchange.HTTP_RESPONSE_CODE, HttpStatus.SC_CREATED);
+                        in.setHeader(Exchange.CONTENT_TYPE, JSON_CONTENT_TYPE);
+                        in.setBody(mapper.writeValueAsString(Collections.singletonMap("id", id)));
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "subscribe to build events", e);
+                    }
+                });
+
+        from("direct:unsubscribe")
+                .routeId("unsubscribe")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    String id = in.getHeader("id", String.class);
+                    try {
+                        controller.unsubscribeBuildEvents(id);
+                        in.setHeader(Exchange.HTTP_RESPONSE_CODE, HttpStatus.SC_NO_CONTENT);
+                        in.setBody(null);
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "remove subscription " + id, e);
+                    }
+                });
+
+        from("direct:buildEvents")
+                .routeId("buildEvents")
+                .process(exchange -> {
+                    Message in = exchange.getIn();
+                    String path = in.getHeader("path", String.class);
+                    try {
+                        String timeout = in.getHeader("timeout", String.class);
+                        in.setHeader(Exchange.CONTENT_TYPE, EVENT_STREAM_CONTENT_TYPE);
+                        in.setHeader("Cache-Control", "no-cache");
+                        // without length, the stream is sent chunked as it is read
+                        in.setBody(controller.streamBuildEvents(path, StringUtils.isEmpty(timeout) ? null : Integer.valueOf(timeout)));
+                    } catch (Exception e) {
+                        RouteErrors.error(in, "stream build events of " + path, e);
+                    }
+                });
+    }
+
+    private static JsonNode readBody(String body) {
+        try {
+            JsonNode node = body == null ? null : mapper.readTree(body);
+            if (node == null || !node.isObject())
+                throw new IllegalArgumentException("Subscription must be a JSON object.");
+            return node;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Subscription is malformed : " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the application metrics
+ *
+ * Metrics are identified by their name and labels, labels are given as key/value pairs:
+ * <pre>registry.counter("kathra_jenkins_calls_total", "Calls to Jenkins", "operation", "getJob")</pre>
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry defaultRegistry = new MetricsRegistry();
+
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry getDefault() {
+        return defaultRegistry;
+    }
+
+    /**
+     * Get or create a counter
+     * @param name metric name
+     * @param help metric description
+     * @param labels label names and values
+     * @return counter
+     */
+    public Counter counter(String name, String help, String... labels) {
+        Map<String, String> labelMap = toMap(labels);
+        return (Counter) metrics.computeIfAbsent(key(name, labelMap), k -> new Counter(name, help, labelMap));
+    }
+
+    /**
+     * Get or create a latency histogram, in seconds
+     * @param name metric name
+     * @param help metric description
+     * @param labels label names and values
+     * @return histogram
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        Map<String, String> labelMap = toMap(labels);
+        return (Histogram) metrics.computeIfAbsent(key(name, labelMap), k -> new Histogram(name, help, labelMap, Histogram.LATENCY_BUCKETS));
+    }
+
+    /**
+     * Register a gauge, replacing the previous gauge with the same name and labels
+     * @param name metric name
+     * @param help metric description
+     * @param supplier current value
+     * @param labels label names and values
+     * @return gauge
+     */
+    public Gauge gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        Map<String, String> labelMap = toMap(labels);
+        Gauge gauge = new Gauge(name, help, labelMap, supplier);
+        metrics.put(key(name, labelMap), gauge);
+        return gauge;
+    }
+
+    /**
+     * @return every registered metric
+     */
+    public Collection<Metric> getMetrics() {
+        List<Metric> all = new ArrayList<>(metrics.values());
+        all.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return all;
+    }
+
+    private static String key(String name, Map<String, String> labels) {
+        return name + labels;
+    }
+
+    private static Map<String, String> toMap(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as name/value pairs");
+        }
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < labels.length; i += 2) {
+            map.put(labels[i], labels[i + 1]);
+        }
+        return map;
+    }
+}
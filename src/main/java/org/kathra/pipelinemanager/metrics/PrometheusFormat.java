@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.metrics;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4)
+ */
+public final class PrometheusFormat {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private PrometheusFormat() {
+    }
+
+    /**
+     * @param metrics metrics sorted by name, as returned by {@link MetricsRegistry#getMetrics()}
+     * @return exposition text
+     */
+    public static String write(Collection<Metric> metrics) {
+        StringBuilder out = new StringBuilder();
+        String family = null;
+        for (Metric metric : metrics) {
+            if (!metric.getName().equals(family)) {
+                family = metric.getName();
+                out.append("# HELP ").append(family).append(' ').append(escapeHelp(metric.getHelp())).append('\n');
+                out.append("# TYPE ").append(family).append(' ').append(metric.getType().name().toLowerCase()).append('\n');
+            }
+            switch (metric.getType()) {
+                case COUNTER:
+                    sample(out, metric.getName(), metric.getLabels(), null, ((Counter) metric).get());
+                    break;
+                case GAUGE:
+                    sample(out, metric.getName(), metric.getLabels(), null, ((Gauge) metric).get());
+                    break;
+                case HISTOGRAM:
+                    Histogram histogram = (Histogram) metric;
+                    double[] bounds = histogram.getBounds();
+                    long[] counts = histogram.getCumulativeCounts();
+                    for (int i = 0; i < bounds.length; i++) {
+                        sample(out, metric.getName() + "_bucket", metric.getLabels(), format(bounds[i]), counts[i]);
+                    }
+                    sample(out, metric.getName() + "_bucket", metric.getLabels(), "+Inf", counts[bounds.length]);
+                    sample(out, metric.getName() + "_sum", metric.getLabels(), null, histogram.getSum());
+                    sample(out, metric.getName() + "_count", metric.getLabels(), null, counts[bounds.length]);
+                    break;
+            }
+        }
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, Map<String, String> labels, String le, double value) {
+        out.append(name);
+        if (!labels.isEmpty() || le != null) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<String, String> label : labels.entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                out.append(label.getKey()).append("=\"").append(escapeLabel(label.getValue())).append('"');
+                first = false;
+            }
+            if (le != null) {
+                out.append(first ? "" : ",").append("le=\"").append(le).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String escapeHelp(String help) {
+        return help == null ? "" : help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String escapeLabel(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.metrics;
+
+import org.kathra.pipelinemanager.utils.Errors;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Latency, errors and in-flight calls of the operations of a component, labelled by operation:
+ * <ul>
+ *     <li>{@code <prefix>_duration_seconds}: latency histogram, failed calls included</li>
+ *     <li>{@code <prefix>_errors_total}: failed calls, labelled by status (HTTP status code or error kind, see {@link Errors#getStatus(Throwable)})</li>
+ *     <li>{@code <prefix>_in_flight}: calls in progress</li>
+ * </ul>
+ */
+public class RequestMetrics {
+
+    private final String prefix;
+    private final String description;
+    private final MetricsRegistry registry;
+    private final ConcurrentMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param prefix metric name prefix, e.g. "kathra_jenkins_request"
+     * @param description what is measured, e.g. "Jenkins calls"
+     */
+    public RequestMetrics(String prefix, String description) {
+        this(prefix, description, MetricsRegistry.getDefault());
+    }
+
+    public RequestMetrics(String prefix, String description, MetricsRegistry registry) {
+        this.prefix = prefix;
+        this.description = description;
+        this.registry = registry;
+    }
+
+    /**
+     * Execute and measure a call
+     * @param operation operation name, a small set of values
+     * @param call call
+     * @param <T> result type
+     * @return call result
+     * @throws Exception error of the call
+     */
+    public <T> T record(String operation, Callable<T> call) throws Exception {
+        AtomicInteger calls = inFlight(operation);
+        calls.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } catch (Throwable e) {
+            error(operation, Errors.getStatus(e));
+            throw e;
+        } finally {
+            calls.decrementAndGet();
+            observe(operation, start);
+        }
+    }
+
+    /**
+     * Measure an asynchronous call, until its result completes
+     * @param operation operation name, a small set of values
+     * @param call call
+     * @param <T> result type
+     * @return call result
+     */
+    public <T> CompletableFuture<T> recordAsync(String operation, Supplier<CompletableFuture<T>> call) {
+        return recordAsync(operation, call, value -> 0);
+    }
+
+    /**
+     * Measure an asynchronous call, until its result completes
+     * @param operation operation name, a small set of values
+     * @param call call
+     * @param status HTTP status of a result, results with a status of 400 or more are counted as errors
+     * @param <T> result type
+     * @return call result
+     */
+    public <T> CompletableFuture<T> recordAsync(String operation, Supplier<CompletableFuture<T>> call, ToIntFunction<T> status) {
+        AtomicInteger calls = inFlight(operation);
+        calls.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        return result.whenComplete((value, error) -> {
+            calls.decrementAndGet();
+            observe(operation, start);
+            if (error != null) {
+                error(operation, Errors.getStatus(error));
+            } else if (status.applyAsInt(value) >= 400) {
+                error(operation, String.valueOf(status.applyAsInt(value)));
+            }
+        });
+    }
+
+    /**
+     * Count a failed call
+     * @param operation operation name
+     * @param status HTTP status code or error kind
+     */
+    public void error(String operation, String status) {
+        registry.counter(prefix + "_errors_total", description + " failed", "operation", operation, "status", status).inc();
+    }
+
+    private void observe(String operation, long start) {
+        registry.histogram(prefix + "_duration_seconds", description + " latency in seconds", "operation", operation)
+                .observe((System.nanoTime() - start) / 1e9);
+    }
+
+    private AtomicInteger inFlight(String operation) {
+        return inFlight.computeIfAbsent(operation, key -> {
+            AtomicInteger calls = new AtomicInteger();
+            registry.gauge(prefix + "_in_flight", description + " in progress", calls::get, "operation", key);
+            return calls;
+        });
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.kathra.core.model.Build;
+import org.kathra.core.model.BuildArgument;
+import org.kathra.pipelinemanager.metrics.Counter;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process cache of finished builds, keyed by pipeline path and build number.
+ *
+ * A build with a final result never changes, so it is served from the cache without calling Jenkins.
+ * Builds still running are never stored. The cache is bounded by its number of entries and by its size,
+ * logs included, the least recently used builds are evicted first.
+ *
+ * A cache with a max entries or max bytes lower than 1 is disabled.
+ */
+public class BuildCache {
+
+    /** Approximate heap size of a cached build without its logs */
+    static final long ENTRY_OVERHEAD_BYTES = 512;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public BuildCache(int maxEntries, long maxBytes) {
+        this(maxEntries, maxBytes, MetricsRegistry.getDefault());
+    }
+
+    public BuildCache(int maxEntries, long maxBytes, MetricsRegistry registry) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.hits = registry.counter("kathra_build_cache_hits_total", "Builds read from the build cache");
+        this.misses = registry.counter("kathra_build_cache_misses_total", "Builds not found in the build cache");
+        this.evictions = registry.counter("kathra_build_cache_evictions_total", "Builds evicted from the build cache");
+        registry.gauge("kathra_build_cache_entries", "Builds in the build cache", this::size);
+        registry.gauge("kathra_build_cache_bytes", "Approximate size of the build cache", this::getBytes);
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0 && maxBytes > 0;
+    }
+
+    /**
+     * Get a finished build
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param logs part of the console log expected
+     * @return copy of the cached build, null if the build or the expected logs are not cached
+     */
+    public Build get(String path, String buildNumber, LogSelection logs) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = key(path, buildNumber);
+        Build build = null;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (logs.getMode() == LogSelection.Mode.NONE) {
+                    build = copy(entry.build);
+                } else {
+                    String selected = entry.getLogs(logs);
+                    if (selected != null) {
+                        build = copy(entry.build).logs(selected);
+                    }
+                }
+            }
+        }
+        if (build == null) {
+            misses.inc();
+        } else {
+            hits.inc();
+        }
+        return build;
+    }
+
+    /**
+     * Store a build if it is finished
+     * @param path pipeline path
+     * @param build build, with the logs read for the selection
+     * @param logs part of the console log held by the build
+     */
+    public void put(String path, Build build, LogSelection logs) {
+        if (!isEnabled() || build == null || !isFinished(build)) {
+            return;
+        }
+        String key = key(path, build.getBuildNumber());
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(copy(build));
+                entries.put(key, entry);
+                bytes += entry.weight;
+            }
+            if (logs.getMode() != LogSelection.Mode.NONE && build.getLogs() != null
+                    && entry.weight + weight(build.getLogs()) <= maxBytes) {
+                String previous = entry.logs.put(logs.toString(), build.getLogs());
+                long delta = weight(build.getLogs()) - (previous == null ? 0 : weight(previous));
+                entry.weight += delta;
+                bytes += delta;
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Forget the builds of a pipeline, when it is deleted or created again
+     * @param path pipeline path
+     */
+    public synchronized void invalidate(String path) {
+        String prefix = StringUtils.strip(path, "/") + "#";
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                bytes -= entry.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            bytes -= entry.weight;
+            evictions.inc();
+        }
+    }
+
+    static boolean isFinished(Build build) {
+        return build.getStatus() == Build.StatusEnum.SUCCESS || build.getStatus() == Build.StatusEnum.FAILED;
+    }
+
+    private static String key(String path, String buildNumber) {
+        return StringUtils.strip(path, "/") + "#" + StringUtils.trim(buildNumber);
+    }
+
+    private static long weight(String logs) {
+        return 2L * logs.length();
+    }
+
+    /**
+     * @return copy of the build without its logs, its arguments are copied too
+     */
+    static Build copy(Build build) {
+        List<BuildArgument> arguments = null;
+        if (build.getBuildArguments() != null) {
+            arguments = new ArrayList<>(build.getBuildArguments().size());
+            for (BuildArgument argument : build.getBuildArguments()) {
+                arguments.add(argument == null ? null : new BuildArgument().key(argument.getKey()).value(argument.getValue()));
+            }
+        }
+        return new Build()
+                .path(build.getPath())
+                .buildNumber(build.getBuildNumber())
+                .status(build.getStatus())
+                .duration(build.getDuration())
+                .creationDate(build.getCreationDate())
+                .buildArguments(arguments);
+    }
+
+    /**
+     * Cached build, without logs, and its logs by selection
+     */
+    private static class Entry {
+        private final Build build;
+        private final Map<String, String> logs = new HashMap<>();
+        private long weight = ENTRY_OVERHEAD_BYTES;
+
+        private Entry(Build build) {
+            this.build = build;
+        }
+
+        /**
+         * Logs for a selection, tails are taken from the full log when it is cached
+         */
+        private String getLogs(LogSelection selection) {
+            String selected = logs.get(selection.toString());
+            if (selected != null) {
+                return selected;
+            }
+            String full = logs.get(LogSelection.FULL.toString());
+            if (full == null) {
+                return null;
+            }
+            switch (selection.getMode()) {
+                case TAIL_LINES:
+                    return LogSelection.lastLines(full, selection.getLimit(), false);
+                case TAIL_BYTES:
+                    byte[] content = full.getBytes(StandardCharsets.UTF_8);
+                    int start = (int) Math.max(0, content.length - selection.getLimit());
+                    // start on a character boundary, skipping the continuation bytes of a split character
+                    while (start < content.length && (content[start] & 0xC0) == 0x80) {
+                        start++;
+                    }
+                    return new String(content, start, content.length - start, StandardCharsets.UTF_8);
+                default:
+                    return full;
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import javassist.NotFoundException;
+import org.apache.log4j.Logger;
+import org.kathra.pipelinemanager.metrics.Counter;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+import org.kathra.pipelinemanager.utils.Errors;
+import org.kathra.pipelinemanager.utils.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for builds to finish.
+ *
+ * All the waiters of a job share one poller, each poll reads the last builds of the job in a single request,
+ * whatever the number of waiters and of builds waited. The interval grows while nothing finishes and is reset
+ * when a build finishes. The poller stops when its job has no more waiters.
+ *
+ * A waiter whose deadline is reached gets the last state read, the build may still be running.
+ */
+class BuildCompletionWaiter {
+
+    private static Logger logger = Logger.getLogger(BuildCompletionWaiter.class);
+
+    static final long INITIAL_POLL_MS = 1000;
+    static final double POLL_FACTOR = 1.5;
+    static final long MAX_POLL_MS = 10000;
+    /** builds read by a poll, widened when a waited build is older */
+    static final int INITIAL_WINDOW = 10;
+    static final int MAX_WINDOW = 100;
+
+    /**
+     * Reads the last builds of a job, most recent first
+     */
+    interface BuildsReader {
+        List<BuildSummary> read(String path, int builds) throws Exception;
+    }
+
+    private final ConcurrentMap<String, JobPoller> pollers = new ConcurrentHashMap<>();
+    private final BuildsReader reader;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final Counter polls;
+
+    BuildCompletionWaiter(BuildsReader reader) {
+        this(reader, Schedulers.scheduler(), Schedulers.jenkins(), MetricsRegistry.getDefault());
+    }
+
+    BuildCompletionWaiter(BuildsReader reader, ScheduledExecutorService scheduler, Executor executor, MetricsRegistry registry) {
+        this.reader = reader;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.polls = registry.counter("kathra_build_wait_polls_total", "Polls of the builds of a job by build waiters");
+        registry.gauge("kathra_build_waiters", "Requests waiting for a build to finish", this::getWaiters);
+        registry.gauge("kathra_build_wait_pollers", "Jobs polled for waiting builds", pollers::size);
+    }
+
+    /**
+     * Wait for a build to finish
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param timeoutMs deadline of the wait
+     * @return future completed with the finished build, or with the last state read at the deadline
+     * (null if the build has not been read yet), failed with a NotFoundException if the build does not exist
+     */
+    CompletableFuture<BuildSummary> await(String path, int buildNumber, long timeoutMs) {
+        Waiter waiter = new Waiter(buildNumber);
+        while (true) {
+            JobPoller poller = pollers.computeIfAbsent(path, JobPoller::new);
+            if (poller.add(waiter)) {
+                break;
+            }
+            // the poller stopped between the lookup and the registration
+            pollers.remove(path, poller);
+        }
+        ScheduledFuture<?> deadline = scheduler.schedule(() -> waiter.future.complete(waiter.last), timeoutMs, TimeUnit.MILLISECONDS);
+        waiter.future.whenComplete((build, error) -> deadline.cancel(false));
+        return waiter.future;
+    }
+
+    int getWaiters() {
+        int waiters = 0;
+        for (JobPoller poller : pollers.values()) {
+            waiters += poller.size();
+        }
+        return waiters;
+    }
+
+    int getPollers() {
+        return pollers.size();
+    }
+
+    static boolean isFinished(BuildSummary build) {
+        return !build.isBuilding() && build.getResult() != null;
+    }
+
+    private static long nextWait(long waitMs) {
+        return waitMs == 0 ? INITIAL_POLL_MS : Math.min(MAX_POLL_MS, (long) (waitMs * POLL_FACTOR));
+    }
+
+    private static class Waiter {
+        private final int buildNumber;
+        private final CompletableFuture<BuildSummary> future = new CompletableFuture<>();
+        private volatile BuildSummary last;
+
+        private Waiter(int buildNumber) {
+            this.buildNumber = buildNumber;
+        }
+    }
+
+    /**
+     * Poller of the builds of one job
+     */
+    private class JobPoller {
+        private final String path;
+        private final List<Waiter> waiters = new ArrayList<>();
+        private boolean started;
+        private boolean stopped;
+        private long waitMs;
+        private int window = INITIAL_WINDOW;
+
+        private JobPoller(String path) {
+            this.path = path;
+        }
+
+        /**
+         * @return false if the poller has stopped and does not accept waiters anymore
+         */
+        private synchronized boolean add(Waiter waiter) {
+            if (stopped) {
+                return false;
+            }
+            waiters.add(waiter);
+            if (!started) {
+                started = true;
+                schedule(0);
+            }
+            return true;
+        }
+
+        private synchronized int size() {
+            return waiters.size();
+        }
+
+        private void schedule(long delayMs) {
+            if (delayMs == 0) {
+                submitPoll();
+            } else {
+                try {
+                    scheduler.schedule(this::submitPoll, delayMs, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        private void submitPoll() {
+            try {
+                executor.execute(this::poll);
+            } catch (RejectedExecutionException e) {
+                fail(e);
+            }
+        }
+
+        private void poll() {
+            List<Waiter> current;
+            int size;
+            synchronized (this) {
+                waiters.removeIf(waiter -> waiter.future.isDone());
+                if (waiters.isEmpty()) {
+                    stopped = true;
+                    pollers.remove(path, this);
+                    return;
+                }
+                current = new ArrayList<>(waiters);
+                size = window;
+            }
+
+            boolean finished = false;
+            boolean widen = false;
+            try {
+                polls.inc();
+                List<BuildSummary> builds = reader.read(path, size);
+                Map<Integer, BuildSummary> byNumber = new HashMap<>();
+                int lowest = Integer.MAX_VALUE;
+                int highest = 0;
+                for (BuildSummary build : builds) {
+                    byNumber.put(build.getNumber(), build);
+                    lowest = Math.min(lowest, build.getNumber());
+                    highest = Math.max(highest, build.getNumber());
+                }
+                for (Waiter waiter : current) {
+                    BuildSummary build = byNumber.get(waiter.buildNumber);
+                    if (build != null) {
+                        waiter.last = build;
+                        if (isFinished(build)) {
+                            finished |= waiter.future.complete(build);
+                        }
+                    } else if (waiter.buildNumber < lowest && builds.size() >= size && size < MAX_WINDOW) {
+                        // older than the builds read
+                        widen = true;
+                    } else if (waiter.buildNumber <= highest) {
+                        waiter.future.completeExceptionally(new NotFoundException("Build " + waiter.buildNumber + " of pipeline " + path + " does not exist"));
+                    }
+                    // otherwise the build has not been created yet
+                }
+            } catch (Exception e) {
+                if (Errors.isClientError(e)) {
+                    fail(e);
+                } else {
+                    logger.warn("Unable to poll builds of " + path + " : " + e.getMessage());
+                }
+                synchronized (this) {
+                    waitMs = MAX_POLL_MS;
+                }
+                schedule(MAX_POLL_MS);
+                return;
+            }
+
+            long delay;
+            synchronized (this) {
+                if (widen) {
+                    window = Math.min(MAX_WINDOW, window * 4);
+                    waitMs = 0;
+                } else {
+                    waitMs = finished ? INITIAL_POLL_MS : nextWait(waitMs);
+                }
+                delay = waitMs;
+            }
+            schedule(delay);
+        }
+
+        private void fail(Exception e) {
+            List<Waiter> current;
+            synchronized (this) {
+                current = new ArrayList<>(waiters);
+            }
+            for (Waiter waiter : current) {
+                waiter.future.completeExceptionally(e);
+            }
+        }
+    }
+}
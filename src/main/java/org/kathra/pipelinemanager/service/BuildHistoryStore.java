@@ -0,0 +1,543 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.kathra.core.model.Build;
+import org.kathra.pipelinemanager.metrics.Counter;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+import org.kathra.pipelinemanager.utils.Schedulers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Build history kept beyond the retention of Jenkins: number, status, duration, creation date and branch of the builds read.
+ *
+ * Builds are indexed in memory by pipeline path, by branch and by creation date, queries never read the disk.
+ * Every new or changed build is appended to a single file, read again at startup. A record holds its length and a checksum,
+ * a record cut by a crash is dropped with the rest of the file. Removing a pipeline appends a removal record, so that its
+ * builds stay forgotten after a restart. The file is compacted in the background once it holds more than
+ * {@link #COMPACTION_RATIO} records per build kept, appends go on meanwhile.
+ *
+ * The store holds at most maxBuilds builds, the oldest ones by creation date are dropped first.
+ * Creation dates are the start times of the builds, they increase with the build numbers of a job.
+ * A store without directory or with max builds lower than 1 is disabled.
+ */
+public class BuildHistoryStore implements Closeable {
+
+    private static Logger logger = Logger.getLogger(BuildHistoryStore.class);
+
+    static final String FILE_NAME = "builds.history";
+    private static final String TEMP_SUFFIX = ".tmp";
+    static final int COMPACTION_RATIO = 2;
+    private static final int MIN_COMPACTION_RECORDS = 10000;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+    // build number of the record removing the builds of a pipeline
+    private static final int REMOVED = -1;
+
+    private static final Comparator<Entry> BY_TIME = Comparator.comparingLong((Entry entry) -> entry.creationDate)
+            .thenComparing(entry -> entry.path).thenComparingInt(entry -> entry.number);
+
+    private final Path file;
+    private final int maxBuilds;
+    private final Executor compactor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // guarded by lock
+    private final Map<String, Job> jobs = new HashMap<>();
+    private final TreeSet<Entry> byTime = new TreeSet<>(BY_TIME);
+    private FileChannel channel;
+    private long records;
+
+    private final Counter appended;
+    private final Counter compactions;
+
+    public BuildHistoryStore(Path directory, int maxBuilds) {
+        this(directory, maxBuilds, MetricsRegistry.getDefault());
+    }
+
+    public BuildHistoryStore(Path directory, int maxBuilds, MetricsRegistry registry) {
+        this(directory, maxBuilds, registry, Schedulers.workers());
+    }
+
+    /**
+     * @param compactor executor of the compactions
+     */
+    public BuildHistoryStore(Path directory, int maxBuilds, MetricsRegistry registry, Executor compactor) {
+        this.maxBuilds = maxBuilds;
+        this.compactor = compactor;
+        this.appended = registry.counter("kathra_build_history_records_total", "Builds written to the build history");
+        this.compactions = registry.counter("kathra_build_history_compactions_total", "Compactions of the build history file");
+        registry.gauge("kathra_build_history_builds", "Builds kept in the build history", this::size);
+        this.file = directory == null || maxBuilds < 1 ? null : open(directory);
+    }
+
+    public boolean isEnabled() {
+        return channel != null;
+    }
+
+    /**
+     * Record the state of a build, only new and changed builds are written
+     * @param path pipeline path
+     * @param build mapped build, with its number, status, duration and creation date
+     * @param branch branch built, may be null
+     */
+    public void record(String path, Build build, String branch) {
+        if (!isEnabled() || path == null || build == null || !StringUtils.isNumeric(build.getBuildNumber()) || build.getStatus() == null) {
+            return;
+        }
+        Entry entry = new Entry(key(path), Integer.parseInt(build.getBuildNumber()), build.getStatus(),
+                build.getDuration() == null ? 0 : build.getDuration(),
+                build.getCreationDate() == null ? 0 : build.getCreationDate(), StringUtils.defaultIfEmpty(branch, null));
+        lock.readLock().lock();
+        try {
+            Job job = jobs.get(entry.path);
+            if (job != null && entry.equals(job.builds.get(entry.number))) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        boolean compact;
+        lock.writeLock().lock();
+        try {
+            if (!isEnabled()) {
+                return;
+            }
+            channel.write(ByteBuffer.wrap(encode(entry)));
+            records++;
+            appended.inc();
+            add(entry);
+            compact = needsCompaction();
+        } catch (IOException e) {
+            logger.warn("Unable to record build " + entry.number + " of " + entry.path + " in the build history : " + e.getMessage());
+            return;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (compact) {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @return the recorded build, null if unknown
+     */
+    public Build get(String path, int buildNumber) {
+        lock.readLock().lock();
+        try {
+            Job job = jobs.get(key(path));
+            Entry entry = job == null ? null : job.builds.get(buildNumber);
+            return entry == null ? null : entry.toBuild();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param path pipeline path
+     * @param branch only builds of this branch, if defined
+     * @param from only builds created at or after this time, in ms since epoch, if defined
+     * @param to only builds created at or before this time, in ms since epoch, if defined
+     * @param limit max number of builds
+     * @return recorded builds, most recent first
+     */
+    public List<Build> query(String path, String branch, Long from, Long to, int limit) {
+        List<Build> builds = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Job job = jobs.get(key(path));
+            NavigableMap<Integer, Entry> candidates = job == null ? null
+                    : StringUtils.isEmpty(branch) ? job.builds : job.byBranch.get(branch);
+            if (candidates == null) {
+                return builds;
+            }
+            for (Entry entry : candidates.descendingMap().values()) {
+                if (builds.size() >= limit || (from != null && entry.creationDate < from)) {
+                    break;
+                }
+                if (to == null || entry.creationDate <= to) {
+                    builds.add(entry.toBuild());
+                }
+            }
+            return builds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forget the builds of a pipeline, when it is deleted
+     */
+    public void remove(String path) {
+        if (!isEnabled() || path == null) {
+            return;
+        }
+        boolean compact;
+        lock.writeLock().lock();
+        try {
+            if (!isEnabled() || !jobs.containsKey(key(path))) {
+                return;
+            }
+            channel.write(ByteBuffer.wrap(encode(Entry.removal(key(path)))));
+            records++;
+            removeJob(key(path));
+            compact = needsCompaction();
+        } catch (IOException e) {
+            logger.warn("Unable to remove the builds of " + path + " from the build history : " + e.getMessage());
+            return;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (compact) {
+            scheduleCompaction();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byTime.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to close build history : " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Path open(Path directory) {
+        Path history = directory.resolve(FILE_NAME);
+        try {
+            Files.createDirectories(directory);
+            Files.deleteIfExists(directory.resolve(FILE_NAME + TEMP_SUFFIX));
+            long valid = load(history);
+            channel = FileChannel.open(history, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (channel.size() > valid) {
+                logger.warn("Build history " + history + " is truncated to its last complete record at " + valid);
+                channel.truncate(valid);
+            }
+            channel.position(valid);
+            return history;
+        } catch (IOException e) {
+            logger.warn("Build history " + directory + " is disabled : " + e.getMessage());
+            close();
+            return null;
+        }
+    }
+
+    /**
+     * @return length of the valid records
+     */
+    private long load(Path history) throws IOException {
+        if (!Files.exists(history)) {
+            return 0;
+        }
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(history)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                long checksum;
+                byte[] record = new byte[length];
+                try {
+                    checksum = in.readLong();
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(record);
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+                Entry entry = decode(record);
+                if (entry.number == REMOVED) {
+                    removeJob(entry.path);
+                } else {
+                    add(entry);
+                }
+                records++;
+                valid += Integer.BYTES + Long.BYTES + length;
+            }
+        }
+        return valid;
+    }
+
+    // guarded by the write lock
+    private boolean needsCompaction() {
+        return records > MIN_COMPACTION_RECORDS && records > (long) COMPACTION_RATIO * byTime.size();
+    }
+
+    private void scheduleCompaction() {
+        if (compacting.compareAndSet(false, true)) {
+            try {
+                compactor.execute(this::compact);
+            } catch (RejectedExecutionException e) {
+                compacting.set(false);
+            }
+        }
+    }
+
+    /**
+     * Rewrite the file with the builds kept only, then replace it.
+     * The builds are written without lock, the records appended meanwhile are copied after them under the write lock.
+     */
+    private void compact() {
+        Path temp = file.resolveSibling(FILE_NAME + TEMP_SUFFIX);
+        try {
+            List<Entry> kept;
+            long position;
+            long keptRecords;
+            lock.readLock().lock();
+            try {
+                if (!isEnabled()) {
+                    return;
+                }
+                kept = new ArrayList<>(byTime);
+                position = channel.position();
+                keptRecords = records;
+            } finally {
+                lock.readLock().unlock();
+            }
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                for (Entry entry : kept) {
+                    out.write(encode(entry));
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                if (!isEnabled()) {
+                    return;
+                }
+                try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+                     FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    long end = channel.position();
+                    while (position < end) {
+                        position += source.transferTo(position, end - position, target);
+                    }
+                }
+                channel.close();
+                try {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    records = kept.size() + records - keptRecords;
+                    compactions.inc();
+                } finally {
+                    // appends go on to the file in place, compacted or not
+                    channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                    channel.position(channel.size());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to compact build history " + file + " : " + e.getMessage());
+        } finally {
+            compacting.set(false);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                logger.warn("Unable to delete " + temp + " : " + e.getMessage());
+            }
+        }
+    }
+
+    private void add(Entry entry) {
+        Job job = jobs.computeIfAbsent(entry.path, path -> new Job());
+        Entry previous = job.builds.put(entry.number, entry);
+        if (previous != null) {
+            byTime.remove(previous);
+            if (previous.branch != null) {
+                job.byBranch.get(previous.branch).remove(previous.number);
+            }
+        }
+        if (entry.branch != null) {
+            job.byBranch.computeIfAbsent(entry.branch, branch -> new TreeMap<>()).put(entry.number, entry);
+        }
+        byTime.add(entry);
+        while (byTime.size() > maxBuilds) {
+            evict(byTime.pollFirst());
+        }
+    }
+
+    private void removeJob(String path) {
+        Job job = jobs.remove(path);
+        if (job != null) {
+            byTime.removeAll(job.builds.values());
+        }
+    }
+
+    private void evict(Entry entry) {
+        Job job = jobs.get(entry.path);
+        job.builds.remove(entry.number);
+        if (entry.branch != null) {
+            NavigableMap<Integer, Entry> branch = job.byBranch.get(entry.branch);
+            branch.remove(entry.number);
+            if (branch.isEmpty()) {
+                job.byBranch.remove(entry.branch);
+            }
+        }
+        if (job.builds.isEmpty()) {
+            jobs.remove(entry.path);
+        }
+    }
+
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(entry.path);
+        out.writeInt(entry.number);
+        if (entry.number != REMOVED) {
+            out.writeUTF(entry.status.name());
+            out.writeInt(entry.duration);
+            out.writeLong(entry.creationDate);
+            out.writeUTF(entry.branch == null ? "" : entry.branch);
+        }
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + record.length);
+        buffer.putInt(record.length).putLong(crc.getValue()).put(record);
+        return buffer.array();
+    }
+
+    private static Entry decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        String path = in.readUTF();
+        int number = in.readInt();
+        if (number == REMOVED) {
+            return Entry.removal(path);
+        }
+        Build.StatusEnum status = Build.StatusEnum.valueOf(in.readUTF());
+        int duration = in.readInt();
+        long creationDate = in.readLong();
+        String branch = in.readUTF();
+        return new Entry(path, number, status, duration, creationDate, branch.isEmpty() ? null : branch);
+    }
+
+    private static String key(String path) {
+        return StringUtils.strip(path, "/");
+    }
+
+    /**
+     * Builds of a pipeline, by number and by branch
+     */
+    private static class Job {
+        private final TreeMap<Integer, Entry> builds = new TreeMap<>();
+        private final Map<String, TreeMap<Integer, Entry>> byBranch = new HashMap<>();
+    }
+
+    private static class Entry {
+        private final String path;
+        private final int number;
+        private final Build.StatusEnum status;
+        private final int duration;
+        private final long creationDate;
+        private final String branch;
+
+        private Entry(String path, int number, Build.StatusEnum status, int duration, long creationDate, String branch) {
+            this.path = path;
+            this.number = number;
+            this.status = status;
+            this.duration = duration;
+            this.creationDate = creationDate;
+            this.branch = branch;
+        }
+
+        private static Entry removal(String path) {
+            return new Entry(path, REMOVED, null, 0, 0, null);
+        }
+
+        private Build toBuild() {
+            return new Build()
+                    .buildNumber(String.valueOf(number))
+                    .status(status)
+                    .duration(duration)
+                    .creationDate(creationDate);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Entry entry = (Entry) o;
+            return number == entry.number && duration == entry.duration && creationDate == entry.creationDate
+                    && path.equals(entry.path) && status == entry.status && Objects.equals(branch, entry.branch);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, number);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.kathra.pipelinemanager.metrics.Counter;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk store of the console logs of finished builds, keyed by pipeline path and build number.
+ *
+ * A log is written as gzip members of {@link #SEGMENT_BYTES} bytes of log each, one after the other, with an index
+ * of the offset of each member. The file is a valid gzip file: it is sent as is to clients accepting gzip.
+ * A read from an offset only decompresses from the member holding the offset, through a file channel,
+ * the log is never loaded whole on the heap.
+ *
+ * The store is bounded by the size of its files, the least recently used logs are deleted first.
+ * Logs written by a previous run are kept, ordered by their last modification.
+ * The logs of a pipeline are removed when it is deleted or created again, its new builds reuse the numbers.
+ * A store without directory or with a max size lower than 1 is disabled.
+ */
+public class BuildLogStore {
+
+    private static Logger logger = Logger.getLogger(BuildLogStore.class);
+
+    /** Bytes of log in each gzip member */
+    static final int SEGMENT_BYTES = 256 * 1024;
+    private static final String LOG_SUFFIX = ".log.gz";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+    // stored logs by key, with the size of their files, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // keys of the stored logs by pipeline path, logs stored by older versions have no path
+    private final Map<String, Set<String>> keysByPath = new HashMap<>();
+    private final Map<String, String> paths = new HashMap<>();
+    private long bytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public BuildLogStore(Path directory, long maxBytes) {
+        this(directory, maxBytes, MetricsRegistry.getDefault());
+    }
+
+    public BuildLogStore(Path directory, long maxBytes, MetricsRegistry registry) {
+        this.maxBytes = maxBytes;
+        this.directory = directory == null || maxBytes < 1 ? null : open(directory);
+        this.hits = registry.counter("kathra_log_store_hits_total", "Logs read from the log store");
+        this.misses = registry.counter("kathra_log_store_misses_total", "Logs not found in the log store");
+        this.evictions = registry.counter("kathra_log_store_evictions_total", "Logs deleted from the log store");
+        registry.gauge("kathra_log_store_bytes", "Size of the files of the log store", this::getBytes);
+    }
+
+    /**
+     * Create the directory and register the logs it already holds
+     * @return directory, null if it cannot be used
+     */
+    private Path open(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            List<Path> logs = new ArrayList<>();
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        delete(file);
+                    } else if (name.endsWith(INDEX_SUFFIX)) {
+                        logs.add(file);
+                    }
+                });
+            }
+            logs.sort(Comparator.comparingLong(BuildLogStore::lastModified));
+            for (Path index : logs) {
+                String name = index.getFileName().toString();
+                String key = name.substring(0, name.length() - INDEX_SUFFIX.length());
+                Path log = directory.resolve(key + LOG_SUFFIX);
+                if (Files.exists(log)) {
+                    add(key, readPath(index), Files.size(log) + Files.size(index));
+                } else {
+                    delete(index);
+                }
+            }
+            return directory;
+        } catch (IOException e) {
+            logger.warn("Log store " + directory + " is disabled : " + e.getMessage());
+            return null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Get a stored log
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @return stored log, null if it is not stored
+     */
+    public StoredLog get(String path, String buildNumber) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = key(path, buildNumber);
+        synchronized (this) {
+            if (!entries.containsKey(key)) {
+                misses.inc();
+                return null;
+            }
+            entries.get(key);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(key + INDEX_SUFFIX))))) {
+            long size = in.readLong();
+            long[] offsets = new long[in.readInt()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readLong();
+            }
+            hits.inc();
+            return new StoredLog(directory.resolve(key + LOG_SUFFIX), size, offsets);
+        } catch (IOException e) {
+            // evicted meanwhile
+            misses.inc();
+            return null;
+        }
+    }
+
+    /**
+     * Store the log of a finished build, replacing the stored one
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param log whole console log
+     * @throws IOException
+     */
+    public void put(String path, String buildNumber, InputStream log) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        String key = key(path, buildNumber);
+        Path logFile = directory.resolve(key + LOG_SUFFIX);
+        Path indexFile = directory.resolve(key + INDEX_SUFFIX);
+        Path logTemp = Files.createTempFile(directory, key, LOG_SUFFIX + TEMP_SUFFIX);
+        Path indexTemp = Files.createTempFile(directory, key, INDEX_SUFFIX + TEMP_SUFFIX);
+        try {
+            List<Long> offsets = new ArrayList<>();
+            long size = 0;
+            byte[] segment = new byte[SEGMENT_BYTES];
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = Files.newOutputStream(logTemp)) {
+                long position = 0;
+                int read;
+                while ((read = log.readNBytes(segment, 0, segment.length)) > 0) {
+                    compressed.reset();
+                    try (GZIPOutputStream member = new GZIPOutputStream(compressed, 8192)) {
+                        member.write(segment, 0, read);
+                    }
+                    offsets.add(position);
+                    compressed.writeTo(out);
+                    position += compressed.size();
+                    size += read;
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(indexTemp))) {
+                out.writeLong(size);
+                out.writeInt(offsets.size());
+                for (long offset : offsets) {
+                    out.writeLong(offset);
+                }
+                out.writeUTF(pathKey(path));
+            }
+            // the index is moved last: a log is complete when its index exists
+            Files.move(logTemp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(indexTemp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            add(key, pathKey(path), Files.size(logFile) + Files.size(indexFile));
+        } finally {
+            delete(logTemp);
+            delete(indexTemp);
+        }
+    }
+
+    /**
+     * Store the log of a finished build, failures are logged and ignored
+     */
+    public void put(String path, String buildNumber, String log) {
+        if (!isEnabled() || log == null) {
+            return;
+        }
+        try {
+            put(path, buildNumber, new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            logger.warn("Unable to store log of build " + buildNumber + " of " + path + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remove the logs of a pipeline
+     * @param path pipeline path
+     */
+    public void remove(String path) {
+        if (!isEnabled()) {
+            return;
+        }
+        Set<String> removed;
+        synchronized (this) {
+            removed = keysByPath.remove(pathKey(path));
+            if (removed == null) {
+                return;
+            }
+            for (String key : removed) {
+                paths.remove(key);
+                Long size = entries.remove(key);
+                bytes -= size == null ? 0 : size;
+            }
+        }
+        for (String key : removed) {
+            delete(directory.resolve(key + INDEX_SUFFIX));
+            delete(directory.resolve(key + LOG_SUFFIX));
+        }
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void add(String key, String path, long size) {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = entries.put(key, size);
+            bytes += size - (previous == null ? 0 : previous);
+            if (path != null) {
+                paths.put(key, path);
+                keysByPath.computeIfAbsent(path, p -> new HashSet<>()).add(key);
+            }
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                if (eldest.getKey().equals(key)) {
+                    // the log just stored is kept, even if it is bigger than the store
+                    continue;
+                }
+                bytes -= eldest.getValue();
+                iterator.remove();
+                evicted.add(eldest.getKey());
+                String evictedPath = paths.remove(eldest.getKey());
+                Set<String> keys = evictedPath == null ? null : keysByPath.get(evictedPath);
+                if (keys != null && keys.remove(eldest.getKey()) && keys.isEmpty()) {
+                    keysByPath.remove(evictedPath);
+                }
+            }
+        }
+        for (String eldest : evicted) {
+            evictions.inc();
+            delete(directory.resolve(eldest + INDEX_SUFFIX));
+            delete(directory.resolve(eldest + LOG_SUFFIX));
+        }
+    }
+
+    static String key(String path, String buildNumber) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest((path + "#" + buildNumber).getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                key.append(String.format("%02x", digest[i]));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return pipeline path written after the offsets of an index, null for the indexes of older versions
+     */
+    private static String readPath(Path index) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            in.readLong();
+            in.skipNBytes((long) in.readInt() * Long.BYTES);
+            return in.readUTF();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String pathKey(String path) {
+        return StringUtils.strip(path, "/");
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Unable to delete " + file + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Log of a finished build in the store
+     */
+    public static class StoredLog {
+        private final Path file;
+        private final long size;
+        private final long[] offsets;
+
+        private StoredLog(Path file, long size, long[] offsets) {
+            this.file = file;
+            this.size = size;
+            this.offsets = offsets;
+        }
+
+        /**
+         * @return size of the log, in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Read the log from an offset, only the gzip member holding the offset and the following ones are read
+         * @param start offset to read from
+         * @return log from the offset
+         * @throws IOException
+         */
+        public InputStream open(long start) throws IOException {
+            if (start >= size || offsets.length == 0) {
+                return InputStream.nullInputStream();
+            }
+            int segment = (int) (Math.max(0, start) / SEGMENT_BYTES);
+            FileChannel channel = open();
+            try {
+                channel.position(offsets[segment]);
+                InputStream in = new GZIPInputStream(Channels.newInputStream(channel), 8192);
+                in.skipNBytes(Math.max(0, start) - (long) segment * SEGMENT_BYTES);
+                return in;
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the whole log, gzip compressed, as stored
+         * @throws IOException
+         */
+        public InputStream openGzip() throws IOException {
+            return Channels.newInputStream(open());
+        }
+
+        private FileChannel open() throws IOException {
+            try {
+                return FileChannel.open(file, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                throw new IOException("Log " + file.getFileName() + " has been evicted from the store", e);
+            }
+        }
+    }
+}
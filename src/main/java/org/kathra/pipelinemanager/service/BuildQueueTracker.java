@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.offbytwo.jenkins.model.QueueItem;
+import org.apache.log4j.Logger;
+import org.kathra.pipelinemanager.utils.Errors;
+import org.kathra.pipelinemanager.utils.Schedulers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the build started from a Jenkins queue item.
+ *
+ * The queue item is polled with an adaptive backoff until Jenkins assigns its executable,
+ * without holding any thread between two polls. Resolved items are kept for a while so that
+ * asynchronous callers can get the build number from the queue id.
+ */
+class BuildQueueTracker {
+
+    private static Logger logger = Logger.getLogger(BuildQueueTracker.class);
+
+    private static final long INITIAL_POLL_MS = 100;
+    private static final double POLL_FACTOR = 1.5;
+    private static final long MAX_POLL_MS = 2000;
+    private static final long MAX_QUEUE_DURATION_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long RETENTION_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final ConcurrentMap<Long, QueuedBuild> queuedBuilds = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+
+    BuildQueueTracker() {
+        this(Schedulers.scheduler(), Schedulers.jenkins());
+    }
+
+    BuildQueueTracker(ScheduledExecutorService scheduler, Executor executor) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+    }
+
+    /**
+     * Track a queue item until it starts a build
+     * @param queuedBuild queued build to complete
+     * @param pollQueueItem reads the current state of the queue item
+     * @return future completed with the build number
+     */
+    CompletableFuture<Long> track(QueuedBuild queuedBuild, Callable<QueueItem> pollQueueItem) {
+        queuedBuilds.put(queuedBuild.getQueueId(), queuedBuild);
+        queuedBuild.future().whenComplete((build, error) -> schedule(() -> queuedBuilds.remove(queuedBuild.getQueueId()), RETENTION_MS));
+
+        CompletableFuture<Long> buildNumber = new CompletableFuture<>();
+        poll(queuedBuild, pollQueueItem, buildNumber, 0, System.currentTimeMillis() + MAX_QUEUE_DURATION_MS);
+        return buildNumber;
+    }
+
+    /**
+     * @param queueId Jenkins queue id
+     * @return queued build, null if unknown or expired
+     */
+    QueuedBuild get(long queueId) {
+        return queuedBuilds.get(queueId);
+    }
+
+    private void poll(QueuedBuild queuedBuild, Callable<QueueItem> pollQueueItem, CompletableFuture<Long> buildNumber, long waitMs, long deadline) {
+        Runnable attempt = () -> {
+            try {
+                QueueItem queueItem = pollQueueItem.call();
+                if (queueItem != null && queueItem.getExecutable() != null && queueItem.getExecutable().getNumber() != null) {
+                    buildNumber.complete(queueItem.getExecutable().getNumber());
+                } else if (queueItem != null && queueItem.isCancelled()) {
+                    buildNumber.completeExceptionally(new IllegalStateException("Queue item " + queuedBuild.getQueueId() + " of pipeline " + queuedBuild.getPath() + " has been cancelled"));
+                } else if (System.currentTimeMillis() >= deadline) {
+                    buildNumber.completeExceptionally(new IllegalStateException("Queue item " + queuedBuild.getQueueId() + " of pipeline " + queuedBuild.getPath() + " did not start"));
+                } else {
+                    poll(queuedBuild, pollQueueItem, buildNumber, nextWait(waitMs), deadline);
+                }
+            } catch (Exception e) {
+                if (Errors.isRetryable(e) && System.currentTimeMillis() < deadline) {
+                    logger.warn("Unable to get queue item " + queuedBuild.getQueueId() + " : " + e.getMessage());
+                    poll(queuedBuild, pollQueueItem, buildNumber, MAX_POLL_MS, deadline);
+                } else {
+                    buildNumber.completeExceptionally(e);
+                }
+            }
+        };
+        Runnable submit = () -> {
+            try {
+                executor.execute(attempt);
+            } catch (RejectedExecutionException e) {
+                buildNumber.completeExceptionally(e);
+            }
+        };
+        if (waitMs == 0) {
+            submit.run();
+        } else {
+            try {
+                schedule(submit, waitMs);
+            } catch (RejectedExecutionException e) {
+                buildNumber.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void schedule(Runnable task, long delayMs) {
+        scheduler.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static long nextWait(long waitMs) {
+        return waitMs == 0 ? INITIAL_POLL_MS : Math.min(MAX_POLL_MS, (long) (waitMs * POLL_FACTOR));
+    }
+}
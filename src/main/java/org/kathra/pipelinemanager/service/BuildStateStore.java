@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.kathra.pipelinemanager.metrics.Counter;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+import org.kathra.pipelinemanager.utils.Errors;
+import org.kathra.pipelinemanager.utils.Schedulers;
+import javassist.NotFoundException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Local state of the last builds of the jobs, kept current by the Jenkins notification webhook.
+ *
+ * A job is followed from its first event: its last {@link #WINDOW} builds are read from Jenkins, then events update them.
+ * A sweep reads the followed jobs again every reconciliation interval, to fix the events missed.
+ * The store only answers once the webhook has delivered an event and for jobs read at least once,
+ * otherwise callers read Jenkins. Jobs are followed up to max jobs, the least recently used ones are dropped first.
+ * The listener is told of the builds changed by events and by the corrections of the sweep.
+ * A build state received from an event is unconfirmed until a read of Jenkins returns the same state:
+ * callers must not cache or record unconfirmed states, a forged or misordered event would never be corrected.
+ */
+class BuildStateStore implements AutoCloseable {
+
+    private static Logger logger = Logger.getLogger(BuildStateStore.class);
+
+    /** builds kept by job */
+    static final int WINDOW = 100;
+
+    private final BuildCompletionWaiter.BuildsReader reader;
+    private final int maxJobs;
+    private final long reconcileIntervalMs;
+    private final Executor executor;
+    private final LinkedHashMap<String, JobState> jobs = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> reconciling = ConcurrentHashMap.newKeySet();
+    private final ScheduledFuture<?> sweep;
+    private volatile boolean receiving;
+    private volatile BiConsumer<String, BuildSummary> listener = (path, build) -> { };
+
+    private final Counter events;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter reconciliations;
+    private final Counter corrections;
+
+    BuildStateStore(BuildCompletionWaiter.BuildsReader reader, int maxJobs, long reconcileIntervalMs) {
+        this(reader, maxJobs, reconcileIntervalMs, Schedulers.scheduler(), Schedulers.jenkins(), MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param reader reads the last builds of a job from Jenkins
+     * @param maxJobs max number of jobs followed
+     * @param reconcileIntervalMs interval of the sweep, the store is disabled if lower than 1
+     */
+    BuildStateStore(BuildCompletionWaiter.BuildsReader reader, int maxJobs, long reconcileIntervalMs,
+                    ScheduledExecutorService scheduler, Executor executor, MetricsRegistry registry) {
+        this.reader = reader;
+        this.maxJobs = maxJobs;
+        this.reconcileIntervalMs = reconcileIntervalMs;
+        this.executor = executor;
+        this.events = registry.counter("kathra_build_state_events_total", "Jenkins notifications received");
+        this.hits = registry.counter("kathra_build_state_hits_total", "Build reads answered by the build state store");
+        this.misses = registry.counter("kathra_build_state_misses_total", "Build reads not answered by the build state store");
+        this.reconciliations = registry.counter("kathra_build_state_reconciliations_total", "Jobs read again by the reconciliation sweep");
+        this.corrections = registry.counter("kathra_build_state_corrections_total", "Builds corrected by a reconciliation, events missed");
+        registry.gauge("kathra_build_state_jobs", "Jobs followed by the build state store", this::size);
+        this.sweep = isEnabled()
+                ? scheduler.scheduleWithFixedDelay(this::submitSweep, reconcileIntervalMs, reconcileIntervalMs, TimeUnit.MILLISECONDS)
+                : null;
+    }
+
+    /**
+     * @param listener called with the path and the new state of the builds changed, must not block
+     */
+    void setListener(BiConsumer<String, BuildSummary> listener) {
+        this.listener = listener;
+    }
+
+    boolean isEnabled() {
+        return reconcileIntervalMs > 0 && maxJobs > 0;
+    }
+
+    /**
+     * Apply a build event, the job is read from Jenkins if it is not followed yet
+     * @param path pipeline path
+     * @param build build state of the event
+     */
+    void apply(String path, BuildSummary build) {
+        if (!isEnabled()) {
+            return;
+        }
+        events.inc();
+        receiving = true;
+        String key = key(path);
+        boolean read;
+        boolean changed;
+        synchronized (this) {
+            JobState job = jobs.computeIfAbsent(key, k -> new JobState());
+            changed = job.merge(build, false);
+            read = job.readAt == 0;
+            evict();
+        }
+        if (changed) {
+            listener.accept(key, build);
+        }
+        if (read) {
+            reconcileAsync(key);
+        }
+    }
+
+    /**
+     * @return the build, null if the store cannot answer
+     */
+    BuildSummary getBuild(String path, int buildNumber) {
+        if (!receiving) {
+            return null;
+        }
+        synchronized (this) {
+            JobState job = jobs.get(key(path));
+            BuildSummary build = job == null || job.readAt == 0 ? null : job.builds.get(buildNumber);
+            (build == null ? misses : hits).inc();
+            return build;
+        }
+    }
+
+    /**
+     * @param path pipeline path
+     * @param branch only builds of this branch, if defined
+     * @param max max number of builds
+     * @return last builds, most recent first, null if the store cannot answer
+     */
+    List<BuildSummary> getBuilds(String path, String branch, int max) {
+        if (!receiving) {
+            return null;
+        }
+        synchronized (this) {
+            JobState job = jobs.get(key(path));
+            if (job == null || job.readAt == 0) {
+                misses.inc();
+                return null;
+            }
+            List<BuildSummary> builds = new ArrayList<>();
+            for (BuildSummary build : job.builds.descendingMap().values()) {
+                if (builds.size() >= max) {
+                    break;
+                }
+                if (StringUtils.isEmpty(branch) || branch.equals(build.getParameters().get("GIT_BRANCH"))) {
+                    builds.add(build);
+                }
+            }
+            // older builds may match, unless every build of the job is known
+            if (builds.size() < max && !job.complete) {
+                misses.inc();
+                return null;
+            }
+            hits.inc();
+            return builds;
+        }
+    }
+
+    /**
+     * @return true if the state of the build has been read from Jenkins, not only received from events
+     */
+    synchronized boolean isConfirmed(String path, int buildNumber) {
+        JobState job = jobs.get(key(path));
+        return job != null && job.builds.containsKey(buildNumber) && !job.unconfirmed.contains(buildNumber);
+    }
+
+    /**
+     * Stop following a job, when it is deleted
+     */
+    synchronized void remove(String path) {
+        jobs.remove(key(path));
+    }
+
+    synchronized int size() {
+        return jobs.size();
+    }
+
+    /**
+     * Read every followed job again
+     */
+    void sweep() {
+        List<String> followed;
+        synchronized (this) {
+            followed = new ArrayList<>(jobs.keySet());
+        }
+        for (String path : followed) {
+            reconcile(path);
+        }
+    }
+
+    private void submitSweep() {
+        try {
+            executor.execute(this::sweep);
+        } catch (RejectedExecutionException e) {
+            // an exception would cancel the periodic sweep, the next one catches up
+            logger.warn("Build state sweep skipped, too many Jenkins calls in progress");
+        }
+    }
+
+    private void reconcileAsync(String path) {
+        if (reconciling.add(path)) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        reconcile(path);
+                    } finally {
+                        reconciling.remove(path);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                reconciling.remove(path);
+            }
+        }
+    }
+
+    /**
+     * Read the last builds of a job from Jenkins and merge them with the events received meanwhile
+     */
+    void reconcile(String path) {
+        long readAt = System.currentTimeMillis();
+        List<BuildSummary> builds;
+        try {
+            reconciliations.inc();
+            builds = reader.read(path, WINDOW);
+        } catch (NotFoundException e) {
+            remove(path);
+            return;
+        } catch (Exception e) {
+            if (Errors.isClientError(e)) {
+                remove(path);
+            }
+            logger.warn("Unable to reconcile builds of " + path + " : " + e.getMessage());
+            return;
+        }
+        List<BuildSummary> corrected = new ArrayList<>();
+        synchronized (this) {
+            JobState job = jobs.get(path);
+            if (job == null) {
+                return;
+            }
+            if (!builds.isEmpty()) {
+                // builds within the range read but not returned have been deleted
+                Set<Integer> read = new HashSet<>();
+                builds.forEach(build -> read.add(build.getNumber()));
+                int lowest = Collections.min(read);
+                int highest = Collections.max(read);
+                job.builds.keySet().removeIf(number -> number >= lowest && number <= highest && !read.contains(number));
+                job.unconfirmed.removeIf(number -> !job.builds.containsKey(number));
+            }
+            for (BuildSummary build : builds) {
+                if (job.merge(build, true) && job.readAt != 0) {
+                    corrections.inc();
+                    corrected.add(build);
+                }
+            }
+            job.complete = builds.size() < WINDOW;
+            job.readAt = readAt;
+        }
+        corrected.forEach(build -> listener.accept(path, build));
+    }
+
+    @Override
+    public void close() {
+        if (sweep != null) {
+            sweep.cancel(false);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, JobState>> eldest = jobs.entrySet().iterator();
+        while (jobs.size() > maxJobs && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private static String key(String path) {
+        return StringUtils.strip(path, "/");
+    }
+
+    /**
+     * Last builds of a job
+     */
+    private static class JobState {
+        private final TreeMap<Integer, BuildSummary> builds = new TreeMap<>();
+        // builds whose state only comes from events
+        private final TreeSet<Integer> unconfirmed = new TreeSet<>();
+        // true if the job has no build older than the ones kept
+        private boolean complete;
+        private long readAt;
+
+        /**
+         * Keep the most advanced state of a build: a finished build is not set back to running, by a late event
+         * or a stale read, unless its state only comes from events and Jenkins is read
+         * @param confirmed true if the state is read from Jenkins, false if it comes from an event
+         * @return true if the state of the build has changed
+         */
+        private boolean merge(BuildSummary build, boolean confirmed) {
+            BuildSummary current = builds.get(build.getNumber());
+            if (current != null && isFinished(current) && !isFinished(build)
+                    && !(confirmed && unconfirmed.contains(build.getNumber()))) {
+                return false;
+            }
+            boolean changed = current == null || current.isBuilding() != build.isBuilding()
+                    || !StringUtils.equals(current.getResult(), build.getResult());
+            if (!changed && !confirmed) {
+                // the state read from Jenkins is kept, with its details
+                return false;
+            }
+            builds.put(build.getNumber(), build);
+            if (confirmed) {
+                unconfirmed.remove(build.getNumber());
+            } else {
+                unconfirmed.add(build.getNumber());
+            }
+            int oldest = builds.lastKey() - WINDOW;
+            NavigableMap<Integer, BuildSummary> older = builds.headMap(oldest, true);
+            if (!older.isEmpty()) {
+                older.clear();
+                unconfirmed.headSet(oldest, true).clear();
+                complete = false;
+            }
+            return changed;
+        }
+
+        private static boolean isFinished(BuildSummary build) {
+            return BuildCompletionWaiter.isFinished(build);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.kathra.core.model.Build;
+
+/**
+ * Status change of a build, delivered to the subscribers of {@link BuildSubscriptions}
+ */
+public class BuildStatusEvent {
+
+    public enum Type {
+        STARTED, FINISHED
+    }
+
+    private String path;
+    private int buildNumber;
+    private Type type;
+    private String status;
+    private String result;
+    private String branch;
+    private long timestamp;
+    private long duration;
+
+    public BuildStatusEvent() {
+    }
+
+    /**
+     * @param path pipeline path
+     * @param build build state
+     */
+    BuildStatusEvent(String path, BuildSummary build) {
+        boolean finished = BuildCompletionWaiter.isFinished(build);
+        this.path = path;
+        this.buildNumber = build.getNumber();
+        this.type = finished ? Type.FINISHED : Type.STARTED;
+        // same mapping as the builds returned by JenkinsService
+        this.status = (!finished ? Build.StatusEnum.PROCESSING
+                : "SUCCESS".equals(build.getResult()) ? Build.StatusEnum.SUCCESS : Build.StatusEnum.FAILED).toString();
+        this.result = build.getResult();
+        this.branch = build.getParameters().get("GIT_BRANCH");
+        this.timestamp = build.getTimestamp();
+        this.duration = build.getDuration();
+    }
+
+    /**
+     * @return key of the build, events of a same build are coalesced on it
+     */
+    String key() {
+        return path + "#" + buildNumber;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public void setBuildNumber(int buildNumber) {
+        this.buildNumber = buildNumber;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * @return status of the build, as {@link Build.StatusEnum}
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    /**
+     * @return Jenkins result, null while the build is running
+     */
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    public void setBranch(String branch) {
+        this.branch = branch;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.kathra.pipelinemanager.Config;
+
+import java.io.Closeable;
+import java.nio.file.Paths;
+
+/**
+ * Disk stores of the builds: stored logs, log search index and build history.
+ *
+ * Each store owns its directory, a single instance must be open per directory. They are shared by the successive
+ * {@link JenkinsService} of the application, see {@link JenkinsServiceProvider}, and closed with the application.
+ */
+public class BuildStores implements Closeable {
+
+    private final BuildLogStore logStore;
+    private final LogSearchIndex logIndex;
+    private final BuildHistoryStore history;
+
+    public BuildStores(Config config) {
+        this.logStore = new BuildLogStore(StringUtils.isEmpty(config.getJenkinsLogStoreDirectory()) ? null : Paths.get(config.getJenkinsLogStoreDirectory()),
+                config.getJenkinsLogStoreMaxMb() * 1024L * 1024L);
+        this.logIndex = new LogSearchIndex(StringUtils.isEmpty(config.getJenkinsLogIndexDirectory()) ? null : Paths.get(config.getJenkinsLogIndexDirectory()),
+                config.getJenkinsLogIndexMaxBuilds());
+        this.history = new BuildHistoryStore(StringUtils.isEmpty(config.getJenkinsBuildHistoryDirectory()) ? null : Paths.get(config.getJenkinsBuildHistoryDirectory()),
+                config.getJenkinsBuildHistoryMaxBuilds());
+    }
+
+    public BuildLogStore getLogStore() {
+        return logStore;
+    }
+
+    public LogSearchIndex getLogIndex() {
+        return logIndex;
+    }
+
+    public BuildHistoryStore getHistory() {
+        return history;
+    }
+
+    /**
+     * Flush the index and the history, once no service uses them
+     */
+    @Override
+    public void close() {
+        logIndex.close();
+        history.close();
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.kathra.pipelinemanager.metrics.Counter;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+import org.kathra.pipelinemanager.utils.Schedulers;
+
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes the build status changes to subscribers, instead of them polling the builds.
+ *
+ * A subscription covers a pipeline path or a folder prefix, the empty prefix covers every pipeline.
+ * Events are collected during a batch interval and coalesced by build: a build started and finished within an interval
+ * is delivered once, finished. Each event is serialized once, then dispatched to the subscriptions of every folder of its path:
+ * an event costs a lookup per path segment whatever the number of subscriptions.
+ *
+ * Webhook subscriptions receive the batches with a POST of JSON, one request in flight per subscription, events received
+ * meanwhile are coalesced in the next batch. Callback urls are restricted to the allowed hosts, without redirection,
+ * and to {@link #MAX_SUBSCRIPTIONS_PER_HOST} subscriptions per host. Failed deliveries are retried, a subscription failing {@link #MAX_FAILED_BATCHES}
+ * batches in a row is removed. Stream subscriptions are read as server-sent events.
+ * Up to {@link #MAX_PENDING} events wait per subscription, the oldest are dropped beyond and the next batch holds their count:
+ * the subscriber then reads the builds again.
+ */
+class BuildSubscriptions implements AutoCloseable {
+
+    private static Logger logger = Logger.getLogger(BuildSubscriptions.class);
+
+    static final int MAX_SUBSCRIPTIONS = 1000;
+    static final int MAX_SUBSCRIPTIONS_PER_HOST = 100;
+    /** events waiting per subscription */
+    static final int MAX_PENDING = 10000;
+    static final int MAX_DELIVERY_ATTEMPTS = 3;
+    static final int MAX_FAILED_BATCHES = 10;
+    static final long RETRY_DELAY_MS = 1000;
+    /** interval of the comments sent on idle streams, closed connections are noticed on write */
+    static final long KEEPALIVE_MS = 15000;
+    static final String SUBSCRIPTION_HEADER = "X-Kathra-Subscription";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final JenkinsHttpTransport transport;
+    private final long batchMs;
+    private final Set<String> allowedHosts;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<Subscription>> byPrefix = new ConcurrentHashMap<>();
+    // events of the current batch, by build
+    private final LinkedHashMap<String, BuildStatusEvent> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    private final Counter published;
+    private final Counter delivered;
+    private final Counter failures;
+    private final Counter dropped;
+
+    BuildSubscriptions(JenkinsHttpTransport transport, long batchMs, Set<String> allowedHosts) {
+        this(transport, batchMs, allowedHosts, Schedulers.scheduler(), Schedulers.workers(), MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param transport sends the webhook requests, it must not follow redirections
+     * @param batchMs interval during which events are collected before delivery
+     * @param allowedHosts hosts of the callback urls, webhooks are refused if empty
+     */
+    BuildSubscriptions(JenkinsHttpTransport transport, long batchMs, Set<String> allowedHosts, ScheduledExecutorService scheduler, Executor executor, MetricsRegistry registry) {
+        this.transport = transport;
+        this.batchMs = Math.max(0, batchMs);
+        this.allowedHosts = allowedHosts.stream().map(host -> host.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.published = registry.counter("kathra_build_subscription_events_total", "Build status changes published to subscriptions");
+        this.delivered = registry.counter("kathra_build_subscription_batches_total", "Batches of build events delivered");
+        this.failures = registry.counter("kathra_build_subscription_failures_total", "Failed webhook deliveries");
+        this.dropped = registry.counter("kathra_build_subscription_dropped_total", "Build events dropped, subscriber too slow or unreachable");
+        registry.gauge("kathra_build_subscriptions", "Build event subscriptions", subscriptions::size);
+    }
+
+    /**
+     * Publish the state of a build, delivered with the next batch
+     * @param path pipeline path
+     * @param build build state
+     */
+    void publish(String path, BuildSummary build) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        BuildStatusEvent event = new BuildStatusEvent(key(path), build);
+        published.inc();
+        synchronized (pending) {
+            pending.put(event.key(), event);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(() -> executor.execute(this::flush), batchMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Dispatch the events of the current batch to the subscriptions
+     */
+    void flush() {
+        List<BuildStatusEvent> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+            flushScheduled = false;
+        }
+        Map<Subscription, List<Map.Entry<String, String>>> deliveries = new HashMap<>();
+        for (BuildStatusEvent event : batch) {
+            String json;
+            try {
+                json = mapper.writeValueAsString(event);
+            } catch (JsonProcessingException e) {
+                logger.warn("Unable to serialize build event of " + event.key() + " : " + e.getMessage());
+                continue;
+            }
+            Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<>(event.key(), json);
+            for (String prefix : prefixes(event.getPath())) {
+                Set<Subscription> matching = byPrefix.get(prefix);
+                if (matching != null) {
+                    for (Subscription subscription : matching) {
+                        deliveries.computeIfAbsent(subscription, s -> new ArrayList<>()).add(entry);
+                    }
+                }
+            }
+        }
+        deliveries.forEach(Subscription::offer);
+    }
+
+    /**
+     * Register a webhook, registering the same url and prefix again returns the same subscription
+     * @param prefix pipeline path or folder prefix, empty for every pipeline
+     * @param callbackUrl http or https url of an allowed host, receiving the batches
+     * @return subscription id
+     * @throws IllegalArgumentException if the url is malformed or its host is not allowed
+     * @throws IllegalStateException if no host is allowed, or if there are too many subscriptions
+     */
+    synchronized String subscribe(String prefix, String callbackUrl) {
+        if (allowedHosts.isEmpty())
+            throw new IllegalStateException("Webhook subscriptions are disabled, no callback host is allowed.");
+        URI uri;
+        try {
+            uri = callbackUrl == null ? null : URI.create(callbackUrl);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Callback url is malformed : " + e.getMessage());
+        }
+        if (uri == null || uri.getHost() == null || !("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme())))
+            throw new IllegalArgumentException("Callback url must be an http or https url.");
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (!allowedHosts.contains(host))
+            throw new IllegalArgumentException("Callback host " + host + " is not allowed.");
+        String key = key(prefix);
+        int hostSubscriptions = 0;
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription instanceof WebhookSubscription && ((WebhookSubscription) subscription).host.equals(host)) {
+                if (subscription.prefix.equals(key) && ((WebhookSubscription) subscription).url.equals(callbackUrl)) {
+                    return subscription.id;
+                }
+                hostSubscriptions++;
+            }
+        }
+        if (hostSubscriptions >= MAX_SUBSCRIPTIONS_PER_HOST)
+            throw new IllegalStateException("Too many subscriptions for " + host + ", at most " + MAX_SUBSCRIPTIONS_PER_HOST + " are kept.");
+        return add(new WebhookSubscription(key, callbackUrl, host)).id;
+    }
+
+    /**
+     * Open a stream of server-sent events, the subscription ends when the stream is closed or times out
+     * @param prefix pipeline path or folder prefix, empty for every pipeline
+     * @param timeoutMs duration of the stream
+     * @return event stream
+     */
+    synchronized InputStream stream(String prefix, long timeoutMs) {
+        return new EventStream(add(new StreamSubscription(key(prefix))), timeoutMs);
+    }
+
+    /**
+     * @param id subscription id
+     * @return false if the subscription does not exist
+     */
+    synchronized boolean unsubscribe(String id) {
+        Subscription subscription = id == null ? null : subscriptions.remove(id);
+        if (subscription == null) {
+            return false;
+        }
+        byPrefix.computeIfPresent(subscription.prefix, (prefix, matching) -> {
+            matching.remove(subscription);
+            return matching.isEmpty() ? null : matching;
+        });
+        subscription.signal();
+        return true;
+    }
+
+    int size() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void close() {
+        new ArrayList<>(subscriptions.keySet()).forEach(this::unsubscribe);
+        transport.close();
+    }
+
+    private <S extends Subscription> S add(S subscription) {
+        if (subscriptions.size() >= MAX_SUBSCRIPTIONS)
+            throw new IllegalStateException("Too many subscriptions, at most " + MAX_SUBSCRIPTIONS + " are kept.");
+        subscriptions.put(subscription.id, subscription);
+        byPrefix.computeIfAbsent(subscription.prefix, prefix -> ConcurrentHashMap.newKeySet()).add(subscription);
+        return subscription;
+    }
+
+    /**
+     * @return "", "a", "a/b" and "a/b/c" for "a/b/c"
+     */
+    static List<String> prefixes(String path) {
+        List<String> prefixes = new ArrayList<>();
+        prefixes.add("");
+        for (int i = path.indexOf('/'); i > 0; i = path.indexOf('/', i + 1)) {
+            prefixes.add(path.substring(0, i));
+        }
+        if (!path.isEmpty()) {
+            prefixes.add(path);
+        }
+        return prefixes;
+    }
+
+    private static String key(String path) {
+        return path == null ? "" : StringUtils.strip(path, "/");
+    }
+
+    /**
+     * Events waiting for delivery to a subscriber, as JSON by build
+     */
+    private abstract class Subscription {
+        final String id = UUID.randomUUID().toString();
+        final String prefix;
+        private final LinkedHashMap<String, String> queued = new LinkedHashMap<>();
+        private int droppedEvents;
+
+        Subscription(String prefix) {
+            this.prefix = prefix;
+        }
+
+        void offer(List<Map.Entry<String, String>> events) {
+            synchronized (this) {
+                for (Map.Entry<String, String> event : events) {
+                    queued.put(event.getKey(), event.getValue());
+                }
+                Iterator<String> oldest = queued.keySet().iterator();
+                while (queued.size() > MAX_PENDING) {
+                    oldest.next();
+                    oldest.remove();
+                    drop(1);
+                }
+            }
+            signal();
+        }
+
+        synchronized void drop(int events) {
+            droppedEvents += events;
+            dropped.inc(events);
+        }
+
+        /**
+         * @return the waiting events as a batch, null if there is none
+         */
+        synchronized Batch take() {
+            if (queued.isEmpty() && droppedEvents == 0) {
+                return null;
+            }
+            StringBuilder json = new StringBuilder("{\"subscription\":\"").append(id)
+                    .append("\",\"dropped\":").append(droppedEvents).append(",\"events\":[");
+            String separator = "";
+            for (String event : queued.values()) {
+                json.append(separator).append(event);
+                separator = ",";
+            }
+            Batch batch = new Batch(json.append("]}").toString(), queued.size());
+            queued.clear();
+            droppedEvents = 0;
+            return batch;
+        }
+
+        /**
+         * Called when events are waiting or when the subscription is removed
+         */
+        abstract void signal();
+
+        boolean isActive() {
+            return subscriptions.get(id) == this;
+        }
+    }
+
+    private static class Batch {
+        private final String json;
+        private final int events;
+
+        private Batch(String json, int events) {
+            this.json = json;
+            this.events = events;
+        }
+    }
+
+    private class WebhookSubscription extends Subscription {
+        private final String url;
+        private final String host;
+        private final Map<String, String> headers;
+        // guarded by this
+        private boolean sending;
+        private int failedBatches;
+
+        WebhookSubscription(String prefix, String url, String host) {
+            super(prefix);
+            this.url = url;
+            this.host = host;
+            this.headers = Map.of("Content-Type", "application/json", SUBSCRIPTION_HEADER, id);
+        }
+
+        @Override
+        void signal() {
+            Batch batch;
+            synchronized (this) {
+                if (sending || !isActive() || (batch = take()) == null) {
+                    return;
+                }
+                sending = true;
+            }
+            send(batch, 1);
+        }
+
+        private void send(Batch batch, int attempt) {
+            transport.send("POST", url, headers, batch.json).whenComplete((response, error) -> {
+                // redirections are failures, the transport does not follow them
+                if (error == null && response.getStatus() < 300) {
+                    delivered.inc();
+                    done(true);
+                    return;
+                }
+                failures.inc();
+                if (attempt < MAX_DELIVERY_ATTEMPTS && isActive()) {
+                    scheduler.schedule(() -> send(batch, attempt + 1), RETRY_DELAY_MS << (attempt - 1), TimeUnit.MILLISECONDS);
+                } else {
+                    logger.warn("Unable to deliver build events to " + url + " : "
+                            + (error == null ? "HTTP " + response.getStatus() : error.getMessage()));
+                    drop(batch.events);
+                    done(false);
+                }
+            });
+        }
+
+        private void done(boolean success) {
+            boolean failing;
+            synchronized (this) {
+                sending = false;
+                failedBatches = success ? 0 : failedBatches + 1;
+                failing = failedBatches >= MAX_FAILED_BATCHES;
+            }
+            if (failing) {
+                logger.warn("Removing subscription " + id + " of " + url + " after " + MAX_FAILED_BATCHES + " failed deliveries");
+                unsubscribe(id);
+            } else {
+                // events received meanwhile
+                signal();
+            }
+        }
+    }
+
+    private class StreamSubscription extends Subscription {
+
+        StreamSubscription(String prefix) {
+            super(prefix);
+        }
+
+        @Override
+        synchronized void signal() {
+            notifyAll();
+        }
+
+        /**
+         * @return the waiting events, null if none is received within the timeout
+         */
+        synchronized Batch await(long timeoutMs) throws InterruptedIOException {
+            Batch batch = take();
+            if (batch == null && isActive()) {
+                try {
+                    wait(timeoutMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for build events");
+                }
+                batch = take();
+            }
+            return batch;
+        }
+    }
+
+    /**
+     * Server-sent events of a stream subscription: a "subscribed" event, then a "builds" event per batch
+     * and comments on idle periods, until the timeout
+     */
+    private class EventStream extends InputStream {
+        private final StreamSubscription subscription;
+        private final long deadline;
+        private byte[] buffer;
+        private int position;
+
+        EventStream(StreamSubscription subscription, long timeoutMs) {
+            this.subscription = subscription;
+            this.deadline = System.currentTimeMillis() + timeoutMs;
+            this.buffer = event("subscribed", "{\"subscription\":\"" + subscription.id + "\"}");
+        }
+
+        @Override
+        public int read() throws InterruptedIOException {
+            if (position >= buffer.length && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws InterruptedIOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= buffer.length && !fill()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.length - position;
+        }
+
+        @Override
+        public void close() {
+            unsubscribe(subscription.id);
+        }
+
+        private boolean fill() throws InterruptedIOException {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 || !subscription.isActive()) {
+                close();
+                return false;
+            }
+            Batch batch = subscription.await(Math.min(KEEPALIVE_MS, remaining));
+            buffer = batch == null ? ": keepalive\n\n".getBytes(StandardCharsets.UTF_8) : event("builds", batch.json);
+            position = 0;
+            return true;
+        }
+
+        private byte[] event(String name, String data) {
+            return ("event: " + name + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.offbytwo.jenkins.model.BaseModel;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Builds of a job read in a single request with a Jenkins tree query:
+ * <pre>job/.../api/json?tree=builds[number,url,result,building,duration,timestamp,actions[parameters[name,value]]]{from,to}</pre>
+ */
+public class BuildSummaries extends BaseModel {
+
+    static final String TREE = "builds[number,url,result,building,duration,timestamp,actions[parameters[name,value]]]";
+
+    private List<BuildSummary> builds = new LinkedList<>();
+
+    /**
+     * Relative API path of a page of builds, most recent first
+     * @param jobUrl job url
+     * @param from index of the first build
+     * @param to index after the last build
+     * @return path to query
+     */
+    static String path(String jobUrl, int from, int to) {
+        String url = jobUrl.endsWith("/") ? jobUrl : jobUrl + "/";
+        // Curly brackets are not valid URI characters and must be sent encoded
+        return url + "api/json?tree=" + TREE + "%7B" + from + "," + to + "%7D";
+    }
+
+    public List<BuildSummary> getBuilds() {
+        return builds;
+    }
+
+    public void setBuilds(List<BuildSummary> builds) {
+        this.builds = builds;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build fields read from a Jenkins tree query, see {@link BuildSummaries}
+ */
+public class BuildSummary {
+
+    private int number;
+    private String url;
+    private String result;
+    private boolean building;
+    private long duration;
+    private long timestamp;
+    private List<Action> actions;
+
+    public int getNumber() {
+        return number;
+    }
+
+    public void setNumber(int number) {
+        this.number = number;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public boolean isBuilding() {
+        return building;
+    }
+
+    public void setBuilding(boolean building) {
+        this.building = building;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public List<Action> getActions() {
+        return actions;
+    }
+
+    public void setActions(List<Action> actions) {
+        this.actions = actions;
+    }
+
+    /**
+     * @return build parameters by name
+     */
+    public Map<String, String> getParameters() {
+        Map<String, String> parameters = new HashMap<>();
+        if (actions != null) {
+            for (Action action : actions) {
+                if (action != null && action.getParameters() != null) {
+                    for (Parameter parameter : action.getParameters()) {
+                        parameters.put(parameter.getName(), parameter.getValue() == null ? null : parameter.getValue().toString());
+                    }
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Build action, only the parameters action has parameters
+     */
+    public static class Action {
+        private List<Parameter> parameters;
+
+        public List<Parameter> getParameters() {
+            return parameters;
+        }
+
+        public void setParameters(List<Parameter> parameters) {
+            this.parameters = parameters;
+        }
+    }
+
+    public static class Parameter {
+        private String name;
+        private Object value;
+
+        public Parameter() {
+        }
+
+        public Parameter(String name, Object value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public void setValue(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.google.common.util.concurrent.Striped;
+import com.offbytwo.jenkins.model.FolderJob;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Cache of the Jenkins folders, keyed by folder path ("GROUP/sub-group").
+ *
+ * Existing folders are kept for a while so that known folders cost no HTTP call. Missing folders are kept
+ * for a short time: a folder just found missing, or just created, has no sub-folder, so the lookups of its
+ * sub-folders are skipped.
+ *
+ * Folder creation is serialized per path with striped locks, creations under different paths run in parallel.
+ */
+class FolderCache {
+
+    static final long FOUND_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    static final long MISSING_TTL_MS = TimeUnit.SECONDS.toMillis(2);
+    private static final int LOCK_STRIPES = 64;
+
+    private final ConcurrentMap<String, Found> found = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> missing = new ConcurrentHashMap<>();
+    private final Striped<Lock> locks = Striped.lock(LOCK_STRIPES);
+    private final long foundTtlMs;
+    private final long missingTtlMs;
+
+    FolderCache() {
+        this(FOUND_TTL_MS, MISSING_TTL_MS);
+    }
+
+    FolderCache(long foundTtlMs, long missingTtlMs) {
+        this.foundTtlMs = foundTtlMs;
+        this.missingTtlMs = missingTtlMs;
+    }
+
+    /**
+     * @param path folder path
+     * @return lock serializing the creation of the folder
+     */
+    Lock lock(String path) {
+        return locks.get(path);
+    }
+
+    /**
+     * @param path folder path
+     * @return folder known as existing, null if unknown
+     */
+    FolderJob get(String path) {
+        Found entry = found.get(path);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            found.remove(path, entry);
+            return null;
+        }
+        return entry.folder;
+    }
+
+    /**
+     * @param path folder path
+     * @return true if the folder, or one of its parents, has been found missing recently
+     */
+    boolean isMissing(String path) {
+        long now = System.currentTimeMillis();
+        if (isMissing(path, now)) {
+            return true;
+        }
+        for (int i = path.indexOf('/'); i > 0; i = path.indexOf('/', i + 1)) {
+            if (isMissing(path.substring(0, i + 1), now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isMissing(String key, long now) {
+        Long expiry = missing.get(key);
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry < now) {
+            missing.remove(key, expiry);
+            return false;
+        }
+        return true;
+    }
+
+    void found(String path, FolderJob folder) {
+        if (foundTtlMs <= 0 || folder == null) {
+            return;
+        }
+        found.put(path, new Found(folder, System.currentTimeMillis() + foundTtlMs));
+        missing.remove(path);
+    }
+
+    void missing(String path) {
+        if (missingTtlMs > 0) {
+            missing.put(path, System.currentTimeMillis() + missingTtlMs);
+        }
+    }
+
+    /**
+     * Folder just created, it exists and has no sub-folder
+     * @param path folder path
+     */
+    void created(String path) {
+        missing.remove(path);
+        if (missingTtlMs > 0) {
+            missing.put(path + "/", System.currentTimeMillis() + missingTtlMs);
+        }
+    }
+
+    /**
+     * Forget that the folder and its parents are missing, after a creation conflict for instance
+     * @param path folder path
+     */
+    void forgetMissing(String path) {
+        missing.remove(path);
+        for (int i = path.indexOf('/'); i > 0; i = path.indexOf('/', i + 1)) {
+            missing.remove(path.substring(0, i + 1));
+        }
+    }
+
+    /**
+     * Forget a folder and its sub-folders
+     * @param path folder path
+     */
+    void invalidate(String path) {
+        String prefix = path + "/";
+        found.keySet().removeIf(key -> key.equals(path) || key.startsWith(prefix));
+        forgetMissing(path);
+        missing.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static class Found {
+        private final FolderJob folder;
+        private final long expiresAt;
+
+        private Found(FolderJob folder, long expiresAt) {
+            this.folder = folder;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
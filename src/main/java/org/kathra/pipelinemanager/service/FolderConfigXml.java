@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Streaming reader and patcher of the permissions held by a Jenkins folder config.xml, in
+ * <code>/*&#47;properties/com.cloudbees.hudson.plugins.folder.properties.AuthorizationMatrixProperty</code>.
+ *
+ * The config is read with StAX, without building a DOM. The patcher rewrites only the AuthorizationMatrixProperty
+ * element and copies every other event through unchanged. Factories are created once, they are thread-safe
+ * once configured. DTDs and external entities are disabled.
+ */
+final class FolderConfigXml {
+
+    static final String AUTHORIZATION_MATRIX_PROPERTY = "com.cloudbees.hudson.plugins.folder.properties.AuthorizationMatrixProperty";
+    static final String INHERIT_GLOBAL_STRATEGY = "org.jenkinsci.plugins.matrixauth.inheritance.InheritGlobalStrategy";
+    private static final String PROPERTIES = "properties";
+    private static final String PERMISSION = "permission";
+    private static final String INHERITANCE_STRATEGY = "inheritanceStrategy";
+
+    private static final XMLInputFactory inputFactory = newInputFactory();
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    private static final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+
+    private FolderConfigXml() {
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        return factory;
+    }
+
+    /**
+     * Read the permissions of a folder, the parsing stops at the end of the AuthorizationMatrixProperty element
+     * @param xml folder config.xml
+     * @return permissions as "permission:member", empty if the folder has no AuthorizationMatrixProperty
+     * @throws XMLStreamException if the config is malformed
+     */
+    static List<String> readPermissions(String xml) throws XMLStreamException {
+        List<String> permissions = new ArrayList<>();
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(xml));
+        try {
+            int depth = 0;
+            boolean inProperties = false;
+            boolean inAuthorizationMatrix = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (depth == 2 && PROPERTIES.equals(name)) {
+                        inProperties = true;
+                    } else if (depth == 3 && inProperties && AUTHORIZATION_MATRIX_PROPERTY.equals(name)) {
+                        inAuthorizationMatrix = true;
+                    } else if (depth == 4 && inAuthorizationMatrix && PERMISSION.equals(name)) {
+                        // moves to the end of the element
+                        permissions.add(reader.getElementText().trim());
+                        depth--;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 3 && inAuthorizationMatrix) {
+                        break;
+                    } else if (depth == 2) {
+                        inProperties = false;
+                    }
+                    depth--;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return permissions;
+    }
+
+    /**
+     * Rewrite the permissions of a folder.
+     *
+     * The AuthorizationMatrixProperty element is created if missing, its inheritance strategy is set to
+     * {@value #INHERIT_GLOBAL_STRATEGY}. Everything else is copied unchanged.
+     * @param xml folder config.xml
+     * @param patch computes the new permissions from the current ones
+     * @return patched config.xml
+     * @throws XMLStreamException if the config is malformed
+     */
+    static String patchPermissions(String xml, UnaryOperator<List<String>> patch) throws XMLStreamException {
+        StringWriter output = new StringWriter(xml.length() + 256);
+        XMLEventReader reader = inputFactory.createXMLEventReader(new StringReader(xml));
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(output);
+        try {
+            int depth = 0;
+            boolean inProperties = false;
+            boolean patched = false;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartDocument()) {
+                    StartDocument startDocument = (StartDocument) event;
+                    if (startDocument.encodingSet()) {
+                        // keeps the encoding in the XML declaration
+                        event = eventFactory.createStartDocument(startDocument.getCharacterEncodingScheme(), startDocument.getVersion());
+                    }
+                } else if (event.isStartElement()) {
+                    depth++;
+                    String name = event.asStartElement().getName().getLocalPart();
+                    if (depth == 2 && PROPERTIES.equals(name)) {
+                        inProperties = true;
+                    } else if (depth == 3 && inProperties && AUTHORIZATION_MATRIX_PROPERTY.equals(name) && !patched) {
+                        writer.add(event);
+                        patchAuthorizationMatrix(reader, writer, patch);
+                        patched = true;
+                        depth--;
+                        continue;
+                    }
+                } else if (event.isEndElement()) {
+                    if (depth == 2 && inProperties) {
+                        if (!patched) {
+                            writeAuthorizationMatrix(writer, Collections.emptyList(), patch.apply(new ArrayList<>()));
+                            patched = true;
+                        }
+                        inProperties = false;
+                    } else if (depth == 1 && !patched) {
+                        writer.add(eventFactory.createStartElement("", "", PROPERTIES));
+                        writeAuthorizationMatrix(writer, Collections.emptyList(), patch.apply(new ArrayList<>()));
+                        writer.add(eventFactory.createEndElement("", "", PROPERTIES));
+                        patched = true;
+                    }
+                    depth--;
+                }
+                writer.add(event);
+            }
+            writer.flush();
+        } finally {
+            reader.close();
+            writer.close();
+        }
+        return output.toString();
+    }
+
+    /**
+     * Read the content of the AuthorizationMatrixProperty element up to its end, then write the patched content
+     */
+    private static void patchAuthorizationMatrix(XMLEventReader reader, XMLEventWriter writer, UnaryOperator<List<String>> patch) throws XMLStreamException {
+        List<String> permissions = new ArrayList<>();
+        List<XMLEvent> others = new ArrayList<>();
+        int depth = 0;
+        XMLEvent end = null;
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (depth == 0) {
+                if (event.isEndElement()) {
+                    end = event;
+                    break;
+                } else if (event.isStartElement()) {
+                    String name = event.asStartElement().getName().getLocalPart();
+                    if (PERMISSION.equals(name)) {
+                        permissions.add(reader.getElementText().trim());
+                        continue;
+                    } else if (INHERITANCE_STRATEGY.equals(name)) {
+                        skipElement(reader);
+                        continue;
+                    }
+                } else if (event.isCharacters() && event.asCharacters().isWhiteSpace()) {
+                    continue;
+                }
+            }
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+            others.add(event);
+        }
+        writeContent(writer, others, patch.apply(permissions));
+        writer.add(end != null ? end : eventFactory.createEndElement("", "", AUTHORIZATION_MATRIX_PROPERTY));
+    }
+
+    private static void writeAuthorizationMatrix(XMLEventWriter writer, List<XMLEvent> others, List<String> permissions) throws XMLStreamException {
+        writer.add(eventFactory.createStartElement("", "", AUTHORIZATION_MATRIX_PROPERTY));
+        writeContent(writer, others, permissions);
+        writer.add(eventFactory.createEndElement("", "", AUTHORIZATION_MATRIX_PROPERTY));
+    }
+
+    private static void writeContent(XMLEventWriter writer, List<XMLEvent> others, List<String> permissions) throws XMLStreamException {
+        StartElement strategy = eventFactory.createStartElement("", "", INHERITANCE_STRATEGY,
+                Collections.singletonList(eventFactory.createAttribute(new QName("class"), INHERIT_GLOBAL_STRATEGY)).iterator(), null);
+        writer.add(strategy);
+        writer.add(eventFactory.createEndElement("", "", INHERITANCE_STRATEGY));
+        for (XMLEvent event : others) {
+            writer.add(event);
+        }
+        for (String permission : permissions) {
+            writer.add(eventFactory.createStartElement("", "", PERMISSION));
+            writer.add(eventFactory.createCharacters(permission));
+            writer.add(eventFactory.createEndElement("", "", PERMISSION));
+        }
+    }
+
+    private static void skipElement(XMLEventReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * {@link JenkinsHttpTransport} on the JDK HTTP client.
+ *
+ * Connections are kept alive and reused by the client. Requests in flight are limited per route (scheme, host and port):
+ * requests over the limit wait in a queue, without holding a thread, until a request of the route completes.
+ * The queue of a route is bounded, requests beyond it are rejected with {@link RejectedExecutionException}.
+ * Every route has the same limits. Closing the transport fails the requests in flight and the waiting ones.
+ */
+public class JdkHttpTransport implements JenkinsHttpTransport {
+
+    // requests waiting per route, for each request in flight allowed
+    private static final int WAITING_PER_REQUEST = 50;
+
+    private final HttpClient client;
+    private final Duration readTimeout;
+    private final int maxRequestsPerRoute;
+    private final int maxWaitingPerRoute;
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * @param connectTimeoutMs connection timeout, 0 for none
+     * @param readTimeoutMs timeout of a request until its response is received, 0 for none
+     * @param maxRequestsPerRoute requests in flight per route, 0 for no limit
+     */
+    public JdkHttpTransport(int connectTimeoutMs, int readTimeoutMs, int maxRequestsPerRoute) {
+        this(connectTimeoutMs, readTimeoutMs, maxRequestsPerRoute, true);
+    }
+
+    /**
+     * @param connectTimeoutMs connection timeout, 0 for none
+     * @param readTimeoutMs timeout of a request until its response is received, 0 for none
+     * @param maxRequestsPerRoute requests in flight per route, 0 for no limit
+     * @param followRedirects false to return redirections as responses, for urls given by clients
+     */
+    public JdkHttpTransport(int connectTimeoutMs, int readTimeoutMs, int maxRequestsPerRoute, boolean followRedirects) {
+        this(connectTimeoutMs, readTimeoutMs, maxRequestsPerRoute, maxRequestsPerRoute * WAITING_PER_REQUEST, followRedirects);
+    }
+
+    /**
+     * @param connectTimeoutMs connection timeout, 0 for none
+     * @param readTimeoutMs timeout of a request until its response is received, 0 for none
+     * @param maxRequestsPerRoute requests in flight per route, 0 for no limit
+     * @param maxWaitingPerRoute requests waiting per route when the requests in flight are limited
+     * @param followRedirects false to return redirections as responses, for urls given by clients
+     */
+    public JdkHttpTransport(int connectTimeoutMs, int readTimeoutMs, int maxRequestsPerRoute, int maxWaitingPerRoute, boolean followRedirects) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(followRedirects ? HttpClient.Redirect.NORMAL : HttpClient.Redirect.NEVER);
+        if (connectTimeoutMs > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeoutMs));
+        }
+        this.client = builder.build();
+        this.readTimeout = readTimeoutMs > 0 ? Duration.ofMillis(readTimeoutMs) : null;
+        this.maxRequestsPerRoute = maxRequestsPerRoute;
+        this.maxWaitingPerRoute = maxWaitingPerRoute;
+    }
+
+    @Override
+    public CompletableFuture<JenkinsHttpResponse> send(String method, String url, Map<String, String> headers, String body) {
+        if (closed) {
+            return CompletableFuture.failedFuture(closedError());
+        }
+        URI uri = URI.create(url);
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+        if (readTimeout != null) {
+            request.timeout(readTimeout);
+        }
+        if (headers != null) {
+            headers.forEach(request::header);
+        }
+        Route route = routes.computeIfAbsent(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort(),
+                key -> new Route(maxRequestsPerRoute, maxWaitingPerRoute));
+        CompletableFuture<JenkinsHttpResponse> response = route.submit(() -> client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(JdkHttpTransport::map));
+        if (closed) {
+            // closed meanwhile, the route may have been created after the others were closed
+            route.close();
+        }
+        return response;
+    }
+
+    private static JenkinsHttpResponse map(HttpResponse<String> response) {
+        String statusText = EnglishReasonPhraseCatalog.INSTANCE.getReason(response.statusCode(), Locale.ENGLISH);
+        return new JenkinsHttpResponse(response.statusCode(), statusText == null ? "" : statusText, response.headers().map(), response.body());
+    }
+
+    private static IOException closedError() {
+        return new IOException("HTTP transport closed");
+    }
+
+    /**
+     * Requests in flight for a route
+     */
+    int getActiveRequests(String route) {
+        Route r = routes.get(route);
+        return r == null ? 0 : r.getActive();
+    }
+
+    /**
+     * Fail the requests in flight and the waiting ones, later requests fail at once
+     */
+    @Override
+    public void close() {
+        closed = true;
+        // the JDK client has no close before Java 21, idle connections are released by their keep-alive timeout
+        for (Route route : routes.values()) {
+            route.close();
+        }
+        routes.clear();
+    }
+
+    /**
+     * Request of a route, with its response once started
+     */
+    private static class Call<T> {
+        private final Supplier<CompletableFuture<T>> send;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile CompletableFuture<T> response;
+
+        private Call(Supplier<CompletableFuture<T>> send) {
+            this.send = send;
+        }
+    }
+
+    /**
+     * Requests of a route, started while under the limit, queued otherwise
+     */
+    private static class Route {
+        private final int maxRequests;
+        private final int maxWaiting;
+        private final Queue<Call<?>> waiting = new ArrayDeque<>();
+        private final Set<Call<?>> active = new HashSet<>();
+        private boolean closed;
+
+        private Route(int maxRequests, int maxWaiting) {
+            this.maxRequests = maxRequests;
+            this.maxWaiting = maxWaiting;
+        }
+
+        private <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> send) {
+            Call<T> call = new Call<>(send);
+            boolean startNow = false;
+            synchronized (this) {
+                if (closed) {
+                    call.result.completeExceptionally(closedError());
+                } else if (maxRequests <= 0 || active.size() < maxRequests) {
+                    active.add(call);
+                    startNow = true;
+                } else if (waiting.size() < maxWaiting) {
+                    waiting.add(call);
+                } else {
+                    call.result.completeExceptionally(new RejectedExecutionException(
+                            "Too many requests waiting for Jenkins (" + maxWaiting + ")"));
+                }
+            }
+            if (startNow) {
+                start(call);
+            }
+            return call.result;
+        }
+
+        private <T> void start(Call<T> call) {
+            CompletableFuture<T> response;
+            try {
+                response = call.send.get();
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            call.response = response;
+            response.whenComplete((value, error) -> {
+                release(call);
+                if (error != null) {
+                    call.result.completeExceptionally(error);
+                } else {
+                    call.result.complete(value);
+                }
+            });
+        }
+
+        private synchronized int getActive() {
+            return active.size();
+        }
+
+        private void release(Call<?> call) {
+            Call<?> next;
+            synchronized (this) {
+                if (!active.remove(call)) {
+                    // already failed by close
+                    return;
+                }
+                next = waiting.poll();
+                if (next != null) {
+                    active.add(next);
+                }
+            }
+            if (next != null) {
+                start(next);
+            }
+        }
+
+        private void close() {
+            List<Call<?>> pending;
+            synchronized (this) {
+                closed = true;
+                pending = new ArrayList<>(active);
+                pending.addAll(waiting);
+                active.clear();
+                waiting.clear();
+            }
+            for (Call<?> call : pending) {
+                call.result.completeExceptionally(closedError());
+                CompletableFuture<?> response = call.response;
+                if (response != null) {
+                    response.cancel(true);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+import org.kathra.pipelinemanager.utils.Errors;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the Jenkins CSRF crumb, shared by every write to Jenkins.
+ *
+ * The crumb is fetched from the crumb issuer on first use, or ahead of it with {@link #refresh()}, and reused until
+ * Jenkins rejects a request carrying it. A crumb older than refreshAfterMs is refreshed in the background while it is
+ * still used, so that writes do not wait for the crumb issuer. Concurrent callers share a single fetch.
+ * The session cookie returned with the crumb is kept with it, as recent Jenkins versions bind the crumb to the session.
+ * When Jenkins has no crumb issuer, {@link #NONE} is cached and writes are sent without crumb.
+ * When the crumb issuer fails (missing permission, Jenkins restarting), an empty crumb is cached for
+ * failureRetryMs: writes are sent without crumb meanwhile instead of failing, Jenkins rejects them if it needs one.
+ */
+class JenkinsCrumbCache {
+
+    private static Logger logger = Logger.getLogger(JenkinsCrumbCache.class);
+
+    static final Crumb NONE = new Crumb(null, null, null, 0);
+    // below the default session timeout of Jenkins (30 min), the session of the crumb is renewed before it expires
+    static final long REFRESH_AFTER_MS = 10 * 60 * 1000;
+    static final long FAILURE_RETRY_MS = 10 * 1000;
+
+    private final Supplier<CompletableFuture<JenkinsHttpResponse>> issuer;
+    private final long refreshAfterMs;
+    private final long failureRetryMs;
+    private volatile Crumb current;
+    // guarded by this
+    private CompletableFuture<Crumb> fetching;
+
+    /**
+     * @param issuer call to the crumb issuer (crumbIssuer/api/json)
+     */
+    JenkinsCrumbCache(Supplier<CompletableFuture<JenkinsHttpResponse>> issuer) {
+        this(issuer, REFRESH_AFTER_MS, FAILURE_RETRY_MS);
+    }
+
+    /**
+     * @param issuer call to the crumb issuer (crumbIssuer/api/json)
+     * @param refreshAfterMs age of a crumb refreshed in the background
+     * @param failureRetryMs age of a failed fetch after which the crumb is fetched again
+     */
+    JenkinsCrumbCache(Supplier<CompletableFuture<JenkinsHttpResponse>> issuer, long refreshAfterMs, long failureRetryMs) {
+        this.issuer = issuer;
+        this.refreshAfterMs = refreshAfterMs;
+        this.failureRetryMs = failureRetryMs;
+    }
+
+    /**
+     * Get the cached crumb, waiting for it only if none is cached
+     * @return crumb, without field if Jenkins issues no crumb or the crumb issuer failed
+     */
+    Crumb get() {
+        return getAsync().join();
+    }
+
+    /**
+     * Get the cached crumb, without waiting
+     * @return crumb, completed at once if a crumb is cached, never completed exceptionally
+     */
+    CompletableFuture<Crumb> getAsync() {
+        Crumb crumb = current;
+        if (crumb == null) {
+            return refresh();
+        }
+        if (isStale(crumb)) {
+            refresh();
+        }
+        return CompletableFuture.completedFuture(crumb);
+    }
+
+    private boolean isStale(Crumb crumb) {
+        long age = System.currentTimeMillis() - crumb.fetchedAt;
+        if (crumb == NONE) {
+            return false;
+        }
+        return crumb.failed ? age >= failureRetryMs : age >= refreshAfterMs;
+    }
+
+    /**
+     * Fetch a new crumb in the background, the cached crumb is used until it is replaced.
+     * A fetch already in progress is shared.
+     * @return new crumb, an empty crumb if the fetch failed
+     */
+    synchronized CompletableFuture<Crumb> refresh() {
+        if (fetching != null) {
+            return fetching;
+        }
+        CompletableFuture<Crumb> fetch;
+        try {
+            fetch = issuer.get().thenApply(JenkinsCrumbCache::parse);
+        } catch (RuntimeException e) {
+            fetch = new CompletableFuture<>();
+            fetch.completeExceptionally(e);
+        }
+        CompletableFuture<Crumb> result = fetch.exceptionally(error -> {
+            logger.warn("Unable to get crumb, writes are sent without crumb for " + failureRetryMs + " ms : "
+                    + Errors.unwrap(error).getMessage());
+            return Crumb.failed(System.currentTimeMillis());
+        }).whenComplete((crumb, error) -> {
+            synchronized (this) {
+                fetching = null;
+                current = crumb;
+            }
+        });
+        // a fetch completed at once is already cached
+        if (!result.isDone()) {
+            fetching = result;
+        }
+        return result;
+    }
+
+    /**
+     * Forget a crumb rejected by Jenkins and fetch a new one.
+     * A crumb already replaced by a concurrent caller is left as is, so a rejection causes a single refresh.
+     * @param rejected crumb sent with the rejected request
+     */
+    synchronized void invalidate(Crumb rejected) {
+        if (current == rejected) {
+            current = null;
+            refresh();
+        }
+    }
+
+    private static Crumb parse(JenkinsHttpResponse response) {
+        if (response.getStatus() == 404) {
+            logger.info("No crumb issuer on Jenkins, writes are sent without crumb");
+            return NONE;
+        }
+        if (response.getStatus() >= 400) {
+            throw new CompletionException(new Exception("Unable to get crumb - " + response.getStatus() + " " + response.getStatusText()));
+        }
+        JSONObject json = new JSONObject(response.getBody());
+        String cookie = response.getHeader("Set-Cookie");
+        return new Crumb(json.getString("crumbRequestField"), json.getString("crumb"),
+                cookie == null ? null : StringUtils.substringBefore(cookie, ";"), System.currentTimeMillis());
+    }
+
+    /**
+     * Crumb, with the session it has been issued for
+     */
+    static class Crumb {
+        private final String field;
+        private final String value;
+        private final String cookie;
+        private final long fetchedAt;
+        private final boolean failed;
+
+        Crumb(String field, String value, String cookie, long fetchedAt) {
+            this(field, value, cookie, fetchedAt, false);
+        }
+
+        private Crumb(String field, String value, String cookie, long fetchedAt, boolean failed) {
+            this.field = field;
+            this.value = value;
+            this.cookie = cookie;
+            this.fetchedAt = fetchedAt;
+            this.failed = failed;
+        }
+
+        /**
+         * @return empty crumb standing for a failed fetch
+         */
+        static Crumb failed(long fetchedAt) {
+            return new Crumb(null, null, null, fetchedAt, true);
+        }
+
+        boolean isFailed() {
+            return failed;
+        }
+
+        String getField() {
+            return field;
+        }
+
+        String getValue() {
+            return value;
+        }
+
+        String getCookie() {
+            return cookie;
+        }
+
+        /**
+         * Add the crumb headers to request headers
+         * @param headers request headers
+         */
+        void applyTo(Map<String, String> headers) {
+            if (field != null) {
+                headers.put(field, value);
+            }
+            if (cookie != null) {
+                headers.put("Cookie", cookie);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the direct calls to the Jenkins REST API, see {@link JenkinsRestService}
+ */
+public interface JenkinsHttpTransport extends AutoCloseable {
+
+    /**
+     * Send a request without holding the calling thread
+     * @param method HTTP method
+     * @param url absolute url
+     * @param headers request headers, may be null
+     * @param body request body, null for none
+     * @return response, completed exceptionally on I/O error or timeout
+     */
+    CompletableFuture<JenkinsHttpResponse> send(String method, String url, Map<String, String> headers, String body);
+
+    /**
+     * Release the connections
+     */
+    @Override
+    void close();
+}
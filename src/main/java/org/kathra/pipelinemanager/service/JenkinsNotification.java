@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Job event sent by the Jenkins Notification plugin
+ *
+ * Only the fields used to follow the state of builds are read.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class JenkinsNotification {
+
+    public static final String PHASE_QUEUED = "QUEUED";
+    public static final String PHASE_STARTED = "STARTED";
+    public static final String PHASE_COMPLETED = "COMPLETED";
+    public static final String PHASE_FINALIZED = "FINALIZED";
+
+    private String name;
+    private String url;
+    private BuildEvent build;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return job url relative to Jenkins, as job/folder/job/name/
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public BuildEvent getBuild() {
+        return build;
+    }
+
+    public void setBuild(BuildEvent build) {
+        this.build = build;
+    }
+
+    /**
+     * @return pipeline path, as folder/name, null if the url is not a job url
+     */
+    public String getPath() {
+        if (StringUtils.isEmpty(url)) {
+            return null;
+        }
+        String[] parts = StringUtils.strip(url, "/").split("/");
+        List<String> path = new ArrayList<>();
+        for (int i = 0; i + 1 < parts.length; i += 2) {
+            if (!"job".equals(parts[i])) {
+                return null;
+            }
+            path.add(parts[i + 1]);
+        }
+        return path.isEmpty() || parts.length % 2 != 0 ? null : String.join("/", path);
+    }
+
+    /**
+     * Build state of the event, as read from a tree query
+     * @return build, null if the event does not hold a started build
+     */
+    BuildSummary toBuildSummary() {
+        if (build == null || build.number <= 0 || PHASE_QUEUED.equals(build.phase)) {
+            return null;
+        }
+        BuildSummary summary = new BuildSummary();
+        summary.setNumber(build.number);
+        summary.setUrl(build.fullUrl);
+        boolean finished = (PHASE_COMPLETED.equals(build.phase) || PHASE_FINALIZED.equals(build.phase)) && build.status != null;
+        summary.setBuilding(!finished);
+        summary.setResult(finished ? build.status : null);
+        summary.setDuration(build.duration);
+        summary.setTimestamp(build.timestamp);
+        if (build.parameters != null) {
+            List<BuildSummary.Parameter> parameters = new ArrayList<>();
+            build.parameters.forEach((parameter, value) -> parameters.add(new BuildSummary.Parameter(parameter, value)));
+            BuildSummary.Action action = new BuildSummary.Action();
+            action.setParameters(parameters);
+            summary.setActions(Collections.singletonList(action));
+        }
+        return summary;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class BuildEvent {
+        @JsonProperty("full_url")
+        private String fullUrl;
+        private int number;
+        private String phase;
+        private String status;
+        private long timestamp;
+        private long duration;
+        private Map<String, Object> parameters;
+
+        public String getFullUrl() {
+            return fullUrl;
+        }
+
+        public void setFullUrl(String fullUrl) {
+            this.fullUrl = fullUrl;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public void setNumber(int number) {
+            this.number = number;
+        }
+
+        /**
+         * @return QUEUED, STARTED, COMPLETED or FINALIZED
+         */
+        public String getPhase() {
+            return phase;
+        }
+
+        public void setPhase(String phase) {
+            this.phase = phase;
+        }
+
+        /**
+         * @return build result once completed, as SUCCESS or FAILURE
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        public void setStatus(String status) {
+            this.status = status;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public void setTimestamp(long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public void setDuration(long duration) {
+            this.duration = duration;
+        }
+
+        public Map<String, Object> getParameters() {
+            return parameters;
+        }
+
+        public void setParameters(Map<String, Object> parameters) {
+            this.parameters = parameters;
+        }
+    }
+}
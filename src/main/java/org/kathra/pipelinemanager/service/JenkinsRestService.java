@@ -19,25 +19,141 @@
  */
 package org.kathra.pipelinemanager.service;
 
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.request.HttpRequestWithBody;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
 import org.json.JSONObject;
+import org.kathra.pipelinemanager.metrics.RequestMetrics;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Allows direct calls to the Jenkins REST API
+ *
+ * Calls go through a {@link JenkinsHttpTransport}, each call has a synchronous form and an asynchronous form
+ * returning a {@link CompletableFuture}, to fan out several calls without holding a thread for each.
+ *
+ * The Basic authorization header of the default account is computed once. When a Jenkins url is given, writes
+ * carry the CSRF crumb from a shared {@link JenkinsCrumbCache}: a write rejected with 403 because of its crumb
+ * ("No valid crumb") refreshes the crumb and is sent once more, other 403 are missing permissions and are returned as is.
  */
-public class JenkinsRestService {
+public class JenkinsRestService implements AutoCloseable {
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+    private static final int DEFAULT_READ_TIMEOUT_MS = 60000;
+    private static final int DEFAULT_MAX_REQUESTS_PER_ROUTE = 20;
+
+    private static final String CRUMB_ATTRIBUTE = JenkinsRestService.class.getName() + ".crumb";
+    static final String CRUMB_ERROR = "No valid crumb";
+    static final long CRUMB_WAIT_MS = 10000;
+
+    private static Logger logger = Logger.getLogger(JenkinsRestService.class);
 
     private String defaultLogin;
     private String defaultPassword;
+    private final String defaultAuthorization;
+    private final JenkinsHttpTransport transport;
+    private final JenkinsCrumbCache crumbs;
+    private final RequestMetrics httpMetrics = new RequestMetrics("kathra_jenkins_http", "Direct HTTP calls to Jenkins");
 
     public JenkinsRestService(String defaultLogin, String defaultPassword) {
+        this(defaultLogin, defaultPassword, new JdkHttpTransport(DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS, DEFAULT_MAX_REQUESTS_PER_ROUTE));
+    }
+
+    public JenkinsRestService(String defaultLogin, String defaultPassword, JenkinsHttpTransport transport) {
+        this(defaultLogin, defaultPassword, transport, null);
+    }
+
+    /**
+     * @param defaultLogin Jenkins user login
+     * @param defaultPassword Jenkins user password or API token
+     * @param transport HTTP transport
+     * @param jenkinsUrl Jenkins url, to get the CSRF crumb from; null to send writes without crumb
+     */
+    public JenkinsRestService(String defaultLogin, String defaultPassword, JenkinsHttpTransport transport, String jenkinsUrl) {
         this.defaultLogin = defaultLogin;
         this.defaultPassword = defaultPassword;
+        this.defaultAuthorization = getAuthorization(defaultLogin, defaultPassword);
+        this.transport = transport;
+        this.crumbs = jenkinsUrl == null ? null
+                : new JenkinsCrumbCache(() -> getBasicAuthAsync(StringUtils.removeEnd(jenkinsUrl, "/") + "/crumbIssuer/api/json", null));
+    }
+
+    /**
+     * Configure a client builder of the Jenkins client to authenticate and send crumbs the same way:
+     * the precomputed authorization header is sent with every request, and the cached crumb with every POST.
+     * A POST rejected because of its crumb refreshes the crumb and is sent once more. The crumb is fetched in the background
+     * from now on, the interceptor only waits for it when no crumb is cached yet, up to {@link #CRUMB_WAIT_MS} ms,
+     * the POST is sent without crumb beyond.
+     * @param builder client builder
+     * @return the builder
+     */
+    public HttpClientBuilder configure(HttpClientBuilder builder) {
+        builder.setDefaultHeaders(Collections.singletonList(new BasicHeader("Authorization", defaultAuthorization)));
+        if (crumbs == null) {
+            return builder;
+        }
+        builder.addInterceptorLast((HttpRequestInterceptor) (request, context) -> {
+            if (!"POST".equalsIgnoreCase(request.getRequestLine().getMethod())) {
+                return;
+            }
+            JenkinsCrumbCache.Crumb crumb;
+            try {
+                crumb = crumbs.getAsync().get(CRUMB_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                logger.warn("No crumb from Jenkins after " + CRUMB_WAIT_MS + " ms, request sent without crumb");
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the crumb");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            }
+            Map<String, String> headers = new HashMap<>();
+            crumb.applyTo(headers);
+            headers.forEach(request::setHeader);
+            context.setAttribute(CRUMB_ATTRIBUTE, crumb);
+        });
+        builder.setServiceUnavailableRetryStrategy(new ServiceUnavailableRetryStrategy() {
+            @Override
+            public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+                Object crumb = context.getAttribute(CRUMB_ATTRIBUTE);
+                if (executionCount > 1 || crumb == null || !isCrumbError(response)) {
+                    return false;
+                }
+                crumbs.invalidate((JenkinsCrumbCache.Crumb) crumb);
+                return true;
+            }
+
+            @Override
+            public long getRetryInterval() {
+                return 0;
+            }
+        });
+        // ahead of the first write, outside of the request interceptor
+        crumbs.refresh();
+        return builder;
     }
 
 
@@ -49,7 +165,7 @@ public class JenkinsRestService {
      * @return
      * @throws Exception
      */
-    public HttpResponse<String> postBasicAuth(String url, JSONObject jsonBody,  Map<String, String> headers) throws Exception {
+    public JenkinsHttpResponse postBasicAuth(String url, JSONObject jsonBody,  Map<String, String> headers) throws Exception {
         return postBasicAuth(url,jsonBody,headers,defaultLogin,defaultPassword);
     }
 
@@ -63,25 +179,161 @@ public class JenkinsRestService {
      * @return
      * @throws Exception
      */
-    public HttpResponse<String> postBasicAuth(String url, JSONObject jsonBody, Map<String, String> headers, String login, String password) throws Exception {
-
-        HttpRequestWithBody request = Unirest.post(url);
+    public JenkinsHttpResponse postBasicAuth(String url, JSONObject jsonBody, Map<String, String> headers, String login, String password) throws Exception {
+        return await(postBasicAuthAsync(url, jsonBody, headers, login, password));
+    }
 
+    /**
+     * Post request with all parameters specified, without waiting for the response.
+     * The body is sent as the form field 'json'
+     * @param url Jenkins service url
+     * @param jsonBody post request body
+     * @param headers optionnals headers
+     * @param login Jenkins user login
+     * @param password Jenkins user password
+     * @return response
+     */
+    public CompletableFuture<JenkinsHttpResponse> postBasicAuthAsync(String url, JSONObject jsonBody, Map<String, String> headers, String login, String password) {
         String requestLogin = StringUtils.isEmpty(login) ? defaultLogin : login;
         String requestPassword = StringUtils.isEmpty(password) ? defaultPassword : password;
 
-        if (headers != null) {
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                request.header(header.getKey(), header.getValue());
-            }
+        Map<String, String> requestHeaders = authenticate(headers, requestLogin, requestPassword);
+        if (requestHeaders.keySet().stream().noneMatch("Content-Type"::equalsIgnoreCase)) {
+            requestHeaders.put("Content-Type", "application/x-www-form-urlencoded");
+        }
+        String body = "json=" + URLEncoder.encode(String.valueOf(jsonBody), StandardCharsets.UTF_8);
+        if (crumbs == null) {
+            return send("POST", url, requestHeaders, body);
         }
+        return postWithCrumb(url, requestHeaders, body, true);
+    }
 
-        request.field("json",jsonBody);
+    /**
+     * Post with the cached crumb, refreshing it once if Jenkins rejects the request
+     */
+    private CompletableFuture<JenkinsHttpResponse> postWithCrumb(String url, Map<String, String> headers, String body, boolean retry) {
+        return crumbs.getAsync().thenCompose(crumb -> {
+            Map<String, String> requestHeaders = new HashMap<>(headers);
+            crumb.applyTo(requestHeaders);
+            return send("POST", url, requestHeaders, body).thenCompose(response -> {
+                if (retry && isCrumbError(response)) {
+                    crumbs.invalidate(crumb);
+                    return postWithCrumb(url, headers, body, false);
+                }
+                return CompletableFuture.completedFuture(response);
+            });
+        });
+    }
 
-        request.basicAuth(requestLogin, requestPassword);
+    /**
+     * @return true if Jenkins rejected the request because of its crumb, other 403 are missing permissions
+     */
+    static boolean isCrumbError(JenkinsHttpResponse response) {
+        return response.getStatus() == HttpStatus.SC_FORBIDDEN
+                && (StringUtils.contains(response.getStatusText(), CRUMB_ERROR) || StringUtils.contains(response.getBody(), CRUMB_ERROR));
+    }
 
-        return request.asString();
+    /**
+     * @return true if Jenkins rejected the request because of its crumb, the body is buffered to be read again by the caller
+     */
+    private static boolean isCrumbError(HttpResponse response) {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_FORBIDDEN) {
+            return false;
+        }
+        if (StringUtils.contains(response.getStatusLine().getReasonPhrase(), CRUMB_ERROR)) {
+            return true;
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return false;
+        }
+        try {
+            BufferedHttpEntity buffered = new BufferedHttpEntity(entity);
+            response.setEntity(buffered);
+            return StringUtils.contains(EntityUtils.toString(buffered, StandardCharsets.UTF_8), CRUMB_ERROR);
+        } catch (IOException e) {
+            return false;
+        }
+    }
 
+    /**
+     * Get request using default credentials
+     * @param url Jenkins service url
+     * @param headers optionnals headers
+     * @return
+     * @throws Exception
+     */
+    public JenkinsHttpResponse getBasicAuth(String url, Map<String, String> headers) throws Exception {
+        return await(getBasicAuthAsync(url, headers));
+    }
+
+    /**
+     * Get request using default credentials, without waiting for the response
+     * @param url Jenkins service url
+     * @param headers optionnals headers
+     * @return response
+     */
+    public CompletableFuture<JenkinsHttpResponse> getBasicAuthAsync(String url, Map<String, String> headers) {
+        return send("GET", url, authenticate(headers, defaultLogin, defaultPassword), null);
+    }
+
+    /**
+     * Head request using default credentials, only response headers are transferred
+     * @param url Jenkins service url
+     * @param headers optionnals headers
+     * @return
+     * @throws Exception
+     */
+    public JenkinsHttpResponse headBasicAuth(String url, Map<String, String> headers) throws Exception {
+        return await(headBasicAuthAsync(url, headers));
     }
-}
 
+    /**
+     * Head request using default credentials, without waiting for the response
+     * @param url Jenkins service url
+     * @param headers optionnals headers
+     * @return response
+     */
+    public CompletableFuture<JenkinsHttpResponse> headBasicAuthAsync(String url, Map<String, String> headers) {
+        return send("HEAD", url, authenticate(headers, defaultLogin, defaultPassword), null);
+    }
+
+    /**
+     * Send a request, recording its latency and its status by HTTP method
+     */
+    private CompletableFuture<JenkinsHttpResponse> send(String method, String url, Map<String, String> headers, String body) {
+        return httpMetrics.recordAsync(method, () -> transport.send(method, url, headers, body), JenkinsHttpResponse::getStatus);
+    }
+
+    private Map<String, String> authenticate(Map<String, String> headers, String login, String password) {
+        Map<String, String> requestHeaders = headers == null ? new HashMap<>() : new HashMap<>(headers);
+        boolean defaultAccount = StringUtils.equals(login, defaultLogin) && StringUtils.equals(password, defaultPassword);
+        requestHeaders.put("Authorization", defaultAccount ? defaultAuthorization : getAuthorization(login, password));
+        return requestHeaders;
+    }
+
+    private static String getAuthorization(String login, String password) {
+        String credentials = login + ":" + password;
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Wait for a response, rethrowing the error of the request
+     */
+    private static JenkinsHttpResponse await(CompletableFuture<JenkinsHttpResponse> response) throws Exception {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        transport.close();
+    }
+}
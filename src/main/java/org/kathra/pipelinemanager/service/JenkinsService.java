@@ -19,14 +19,23 @@
  */
 package org.kathra.pipelinemanager.service;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.mashape.unirest.http.HttpResponse;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.offbytwo.jenkins.JenkinsServer;
+import com.offbytwo.jenkins.client.JenkinsHttpClient;
 import com.offbytwo.jenkins.model.*;
 import org.kathra.core.model.Build;
 import org.kathra.core.model.*;
 import org.kathra.pipelinemanager.Config;
+import org.kathra.pipelinemanager.metrics.RequestMetrics;
 import org.kathra.pipelinemanager.model.Credential;
+import org.kathra.pipelinemanager.utils.BoundedExecutor;
+import org.kathra.pipelinemanager.utils.CircuitBreaker;
+import org.kathra.pipelinemanager.utils.CircuitBreakerOpenException;
+import org.kathra.pipelinemanager.utils.Errors;
+import org.kathra.pipelinemanager.utils.Schedulers;
+import org.kathra.pipelinemanager.utils.SingleFlight;
 import org.kathra.utils.ApiException;
 import org.kathra.utils.KathraException;
 import org.kathra.utils.sanitizing.SanitizeUtils;
@@ -34,40 +43,73 @@ import javassist.NotFoundException;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.log4j.Logger;
 import org.json.JSONObject;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.net.URI;
+import java.security.MessageDigest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Jenkins service
  *
+ * Instances are thread-safe and meant to be shared, see {@link JenkinsServiceProvider}
+ *
  * @author Julien Boubechtoula <Julien.Boubechtoula@kathra.org>
  */
-public class JenkinsService {
+public class JenkinsService implements Closeable {
 
     private static Logger logger = Logger.getLogger(JenkinsService.class);
 
     private static final String PROVIDER_NAME = "jenkins";
     private static final Integer DEFAULT_BUILD_MAX = 5;
+    private static final long BUILD_START_TIMEOUT_MS = 30000;
+    private static final int FOLDER_CREATION_RETRIES = 3;
+    private static final long FOLDER_CREATION_RETRY_MS = 300;
+    private static final long MAX_BUILD_WAIT_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final int MAX_BUILDS_PAGE = 100;
+    private static final int LOG_TAIL_BYTES_PER_LINE = 160;
+    private static final String LOG_TEXT_SIZE_HEADER = "X-Text-Size";
+    private static final String LOG_MORE_DATA_HEADER = "X-More-Data";
+    private static final long MAX_LOG_FOLLOW_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final int BUILD_STATE_MAX_JOBS = 1000;
+    private static final long MAX_EVENT_STREAM_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final int WEBHOOK_CONNECT_TIMEOUT_MS = 5000;
+    private static final int WEBHOOK_READ_TIMEOUT_MS = 10000;
+    private static final int WEBHOOK_MAX_REQUESTS_PER_ROUTE = 4;
+    private static final int MAX_HISTORY_RESULT = 1000;
+    /** stored logs read per search to check its phrases */
+    private static final int MAX_SEARCH_LOGS_READ = 200;
+    /** finished builds waiting for their log to be indexed, others are indexed when their log is read */
+    private static final int MAX_PENDING_LOG_INDEX_READS = 64;
+    private static final ObjectMapper notificationMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final int MEMBERSHIP_UPDATE_CONCURRENCY = 4;
+    private static final int PIPELINE_CREATION_CONCURRENCY = 4;
     private static final Set<String> jenkinsGuestPermission = new HashSet(Arrays.asList("hudson.model.Item.Read","hudson.model.View.Read"));
     private static final Set jenkinsContributorPermission = new HashSet(Arrays.asList("hudson.model.Item.Read","hudson.model.Item.Build","hudson.model.Item.Cancel","hudson.model.View.Read"));
     private static final Set jenkinsMaintainerPermission = new HashSet(Arrays.asList("hudson.model.Item.Build","hudson.model.Item.Cancel","hudson.model.Item.Configure"
@@ -77,31 +119,131 @@ public class JenkinsService {
                                                                                     ,"hudson.model.View.Configure", "hudson.model.View.Create","hudson.model.View.Delete"
                                                                                     ,"hudson.model.View.Read"));
 
-    private static final String authMatrixProperty = "com.cloudbees.hudson.plugins.folder.properties.AuthorizationMatrixProperty";
+    private static final ObjectMapper summariesMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final ThreadLocal<Transformer> transformers = ThreadLocal.withInitial(() -> {
+        try {
+            return TransformerFactory.newInstance().newTransformer();
+        } catch (TransformerConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final HashMap<JenkinsTemplate, String> templates = new HashMap();
+    private final EnumMap<JenkinsTemplate, PipelineTemplate> compiledTemplates = new EnumMap<>(JenkinsTemplate.class);
+
+    private final JenkinsServer client;
+    private final JenkinsRestService jenkinsRestService;
+    private final CircuitBreaker circuitBreaker;
+    private final BuildQueueTracker buildQueueTracker = new BuildQueueTracker();
+    private final BuildCompletionWaiter buildCompletionWaiter = new BuildCompletionWaiter(this::readBuildSummaries);
+    private final BuildCache buildCache;
+    private final BuildLogStore logStore;
+    private final LogSearchIndex logIndex;
+    private final BuildHistoryStore history;
+    // stores opened by this service, null if shared
+    private final BuildStores ownedStores;
+    private final BuildStateStore buildStates;
+    private final BuildSubscriptions subscriptions;
+    private final FolderCache folderCache = new FolderCache();
+    private final RequestMetrics requestMetrics = new RequestMetrics("kathra_jenkins_request", "Jenkins calls");
+    private final BoundedExecutor membershipExecutor = new BoundedExecutor(MEMBERSHIP_UPDATE_CONCURRENCY);
+    private final BoundedExecutor pipelineExecutor = new BoundedExecutor(PIPELINE_CREATION_CONCURRENCY);
+    // reads the logs of the builds as they finish, for the search
+    private final ThreadPoolExecutor logIndexReader = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_LOG_INDEX_READS),
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kathra-log-index-reader-%d").build(),
+            new ThreadPoolExecutor.DiscardPolicy());
+    // identical concurrent reads share one Jenkins call
+    private final SingleFlight<List<Object>, Build> buildFlights = new SingleFlight<>("getBuild");
+    private final SingleFlight<List<Object>, List<Build>> buildsFlights = new SingleFlight<>("getBuilds");
+    private final SingleFlight<String, List<Membership>> membershipsFlights = new SingleFlight<>("getMemberships");
+
+    private final Config config;
 
-    private HashMap<JenkinsTemplate, String> templates = new HashMap();
 
-    private JenkinsServer client;
-    private JenkinsRestService jenkinsRestService;
+    /**
+     * Service opening and owning its disk stores, for tests: the application shares its stores through
+     * {@link JenkinsServiceProvider}, a single instance may use a store directory
+     */
+    JenkinsService(Config config) throws Exception {
+        this(config, (BuildStores) null);
+    }
 
-    private Config config;
+    /**
+     * @param config Jenkins settings
+     * @param stores disk stores shared with the other services of the application, they are left open on {@link #close()};
+     *               null to open and own them
+     */
+    public JenkinsService(Config config, BuildStores stores) throws Exception {
+        this(config, new JenkinsRestService(config.getJenkinsAccountName(), config.getJenkinsAccountApiToken(),
+                new JdkHttpTransport(config.getJenkinsHttpConnectTimeoutMs(), config.getJenkinsHttpReadTimeoutMs(), config.getJenkinsHttpMaxRequestsPerRoute()),
+                config.getJenkinsUrl()), stores);
+    }
 
+    /**
+     * Jenkins client and REST service share the authorization header and the CSRF crumb
+     */
+    private JenkinsService(Config config, JenkinsRestService jenkinsRestService, BuildStores stores) throws Exception {
+        this(new JenkinsServer(new JenkinsHttpClient(new URI(config.getJenkinsUrl()), jenkinsRestService.configure(HttpClientBuilder.create()))),
+                jenkinsRestService,
+                config,
+                stores);
+    }
 
-    public JenkinsService(Config config) throws Exception {
-        client = new JenkinsServer(new URI(config.getJenkinsUrl()), config.getJenkinsAccountName(), config.getJenkinsAccountApiToken());
-        jenkinsRestService = new JenkinsRestService(config.getJenkinsAccountName(), config.getJenkinsAccountApiToken());
-        this.config = config;
-        for (JenkinsTemplate name : JenkinsTemplate.values()) {
-            templates.put(name, IOUtils.toString(getClass().getClassLoader().getResourceAsStream("templates/" + name + ".template"), "UTF-8"));
-        }
+    /**
+     * Service opening and owning its disk stores, for tests
+     */
+    JenkinsService(JenkinsServer client, JenkinsRestService jenkinsRestService, Config config) throws Exception {
+        this(client, jenkinsRestService, config, null);
     }
 
-    public JenkinsService(JenkinsServer client, JenkinsRestService jenkinsRestService, Config config) throws Exception {
+    public JenkinsService(JenkinsServer client, JenkinsRestService jenkinsRestService, Config config, BuildStores stores) throws Exception {
         this.client = client;
         this.config = config;
         this.jenkinsRestService = jenkinsRestService;
+        this.circuitBreaker = new CircuitBreaker(PROVIDER_NAME, config.getJenkinsCircuitBreakerFailureThreshold(),
+                config.getJenkinsCircuitBreakerOpenDurationMs(), config.getJenkinsCircuitBreakerProbeCalls());
+        this.buildCache = new BuildCache(config.getJenkinsBuildCacheMaxEntries(), config.getJenkinsBuildCacheMaxBytes());
+        this.ownedStores = stores == null ? new BuildStores(config) : null;
+        BuildStores used = stores == null ? ownedStores : stores;
+        this.logStore = used.getLogStore();
+        this.logIndex = used.getLogIndex();
+        this.history = used.getHistory();
+        // without token, anyone could forge the build states: the store stays disabled
+        this.buildStates = new BuildStateStore(this::readBuildSummaries, BUILD_STATE_MAX_JOBS,
+                StringUtils.isEmpty(config.getJenkinsWebhookToken()) ? 0 : TimeUnit.SECONDS.toMillis(config.getJenkinsBuildStateReconcileSeconds()));
+        // callback urls come from clients: only allowed hosts are called, redirections are not followed
+        this.subscriptions = new BuildSubscriptions(new JdkHttpTransport(WEBHOOK_CONNECT_TIMEOUT_MS, WEBHOOK_READ_TIMEOUT_MS, WEBHOOK_MAX_REQUESTS_PER_ROUTE, false),
+                config.getJenkinsSubscriptionBatchMs(), getAllowedHosts(config.getJenkinsSubscriptionAllowedHosts()));
+        buildStates.setListener((path, build) -> {
+            subscriptions.publish(path, build);
+            if (!build.isBuilding() && build.getResult() != null) {
+                indexLog(path, build.getNumber());
+            }
+        });
+        logIndexReader.allowCoreThreadTimeOut(true);
         for (JenkinsTemplate name : JenkinsTemplate.values()) {
             templates.put(name, IOUtils.toString(getClass().getClassLoader().getResourceAsStream("templates/" + name + ".template"), "UTF-8"));
+            compiledTemplates.put(name, PipelineTemplate.compile(name.name, templates.get(name)));
+        }
+    }
+
+    /**
+     * Release the Jenkins client and its HTTP connections, and the disk stores it owns
+     */
+    @Override
+    public void close() {
+        try {
+            client.close();
+        } catch (Exception e) {
+            logger.warn("Unable to close Jenkins client : " + e.getMessage());
+        }
+        jenkinsRestService.close();
+        logIndexReader.shutdownNow();
+        buildStates.close();
+        subscriptions.close();
+        if (ownedStores != null) {
+            ownedStores.close();
         }
     }
 
@@ -110,6 +252,35 @@ public class JenkinsService {
         return client;
     }
 
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public BuildCache getBuildCache() {
+        return buildCache;
+    }
+
+    public BuildLogStore getLogStore() {
+        return logStore;
+    }
+
+    /**
+     * Execute a call to Jenkins through the circuit breaker, fails at once while Jenkins is known as unavailable.
+     * Latency, errors and calls in flight are recorded for the operation, calls rejected by the breaker included.
+     * @param operation operation name, used as metric label
+     * @param call call to Jenkins
+     * @param <T> result type
+     * @return call result
+     * @throws Exception
+     */
+    private <T> T jenkins(String operation, Callable<T> call) throws Exception {
+        T result = requestMetrics.record(operation, () -> circuitBreaker.call(call));
+        if (result instanceof JenkinsHttpResponse && ((JenkinsHttpResponse) result).getStatus() >= 400) {
+            requestMetrics.error(operation, String.valueOf(((JenkinsHttpResponse) result).getStatus()));
+        }
+        return result;
+    }
+
     public HashMap<JenkinsTemplate, String> getTemplate() {
         return templates;
     }
@@ -142,7 +313,11 @@ public class JenkinsService {
 
         String jenkinsRelativeUrl = getJenkinsRelativeURL(credential.getPath());
 
-        HttpResponse<String> response = jenkinsRestService.postBasicAuth(config.getJenkinsUrl() + "/job/" + jenkinsRelativeUrl + "/credentials/store/folder/domain/_/createCredentials", json,Map.of("Content-Type","application/x-www-form-urlencoded"));
+        JenkinsHttpResponse response = jenkins("createCredentials", () -> {
+            JenkinsHttpResponse r = jenkinsRestService.postBasicAuth(config.getJenkinsUrl() + "/job/" + jenkinsRelativeUrl + "/credentials/store/folder/domain/_/createCredentials", json,Map.of("Content-Type","application/x-www-form-urlencoded"));
+            if (r.getStatus()>=500) throw new HttpResponseException(r.getStatus(), "Error when calling Jenkins - "+ String.valueOf(r.getStatus())+" "+r.getStatusText());
+            return r;
+        });
 
         if (response.getStatus()>=400) throw new Exception("Error when calling Jenkins - "+ String.valueOf(response.getStatus())+" "+response.getStatusText());
 
@@ -151,85 +326,94 @@ public class JenkinsService {
 
 
     public Membership addMembership(Membership membership) throws Exception {
-        if (membership == null || StringUtils.isEmpty(membership.getPath()) || membership.getMemberType() == null
-                || membership.getMemberName() == null || membership.getRole() == null)
-            throw new IllegalArgumentException("Membership with all fields must be specified.");
-        String path = SanitizeUtils.sanitizePathParameter(membership.getPath());
-
-        while (path != null) {
-            addMembership(path, membership);
-            if (path.contains("/"))
-                path = StringUtils.substringBeforeLast(path,"/");
-            else path = null;
-        }
-
+        addMemberships(Collections.singletonList(membership));
         return membership;
     }
 
-    private void addMembership(String path, Membership membership) throws Exception{
-        JobWithDetails jenkinsPipeline = client.getJob(path);
-        if (jenkinsPipeline != null) {
-            String relativeURL = getPipelineRelativeURL(jenkinsPipeline);
-            final Document document = getDocumentNode(relativeURL);
-
-            Element root = document.getDocumentElement();
-            Node properties = getFirstChildNode(root, "properties");
-
-            Node authz = getFirstChildNode(properties, authMatrixProperty);
-
-            if (authz==null) {
-                authz = document.createElement(authMatrixProperty);
-                properties.appendChild(authz);
-            }
-            authz = removePermissions(authz,membership.getMemberName());
-
-            for (String permission : memberShipToPermission(membership)) {
-                Element permissionNode = document.createElement("permission");
-                permissionNode.setTextContent(permission);
-                authz.appendChild(permissionNode);
+    /**
+     * Add memberships to their folders and to the parents of their folders.
+     *
+     * Memberships are grouped by folder: each folder is read and written once, only if its permissions change.
+     * Folders are updated in parallel. When a member is given several roles on a folder, the last one wins.
+     * @param memberships memberships to add
+     * @return memberships added
+     * @throws Exception first error met, once every folder has been processed
+     */
+    public List<Membership> addMemberships(List<Membership> memberships) throws Exception {
+        if (memberships == null)
+            throw new IllegalArgumentException("Memberships must be specified.");
+
+        // folder path => member => permissions
+        Map<String, Map<String, List<String>>> permissionsByFolder = new LinkedHashMap<>();
+        for (Membership membership : memberships) {
+            if (membership == null || StringUtils.isEmpty(membership.getPath()) || membership.getMemberType() == null
+                    || membership.getMemberName() == null || membership.getRole() == null)
+                throw new IllegalArgumentException("Membership with all fields must be specified.");
+            List<String> memberPermissions = memberShipToPermission(membership);
+            String path = SanitizeUtils.sanitizePathParameter(membership.getPath());
+
+            while (path != null) {
+                permissionsByFolder.computeIfAbsent(path, folder -> new LinkedHashMap<>()).put(membership.getMemberName(), memberPermissions);
+                if (path.contains("/"))
+                    path = StringUtils.substringBeforeLast(path,"/");
+                else path = null;
             }
-
-            authz = removeChildNode(authz, "inheritanceStrategy");
-            Element strategyNode = document.createElement("inheritanceStrategy");
-            strategyNode.setAttribute("class", "org.jenkinsci.plugins.matrixauth.inheritance.InheritGlobalStrategy");
-            authz.insertBefore(strategyNode, authz.getFirstChild());
-
-            String newXml = getStringFromDocument(document);
-            client.updateJob(relativeURL, newXml);
         }
-    }
 
-    private Node removeChildNode(Node node, String tagName) {
-        NodeList children = node.getChildNodes();
-        for (int k = 0; k < children.getLength(); k++) {
-            Node child = children.item(k);
-            if (child.getNodeType() == Node.ELEMENT_NODE
-                    && child.getNodeName() == tagName) {
-                node.removeChild(child);
-            }
-        }
-        return node;
+        List<Map.Entry<String, Map<String, List<String>>>> folders = new ArrayList<>(permissionsByFolder.entrySet());
+        List<Boolean> updated = BoundedExecutor.awaitAll(membershipExecutor.submitAll(folders,
+                folder -> updatePermissions(folder.getKey(), folder.getValue())));
+        logger.info("add " + memberships.size() + " memberships : " + folders.size() + " folders, "
+                + updated.stream().filter(Boolean.TRUE::equals).count() + " updated");
+        return memberships;
     }
 
-    private Node removePermissions(Node authz, String group) {
-        NodeList permissions = authz.getChildNodes();
-        Set<Node> nodesToDelete = new HashSet<>();
+    /**
+     * Set the permissions of members on a folder, with a minimal change: permissions already granted are kept in place,
+     * the other permissions of the members are removed and the missing ones are appended.
+     * @param path folder path
+     * @param permissionsByMember permissions to set by member
+     * @return true if the folder has been written, false if it does not exist or already has these permissions
+     * @throws Exception
+     */
+    private boolean updatePermissions(String path, Map<String, List<String>> permissionsByMember) throws Exception {
+        JobWithDetails jenkinsPipeline = jenkins("getJob", () -> client.getJob(path));
+        if (jenkinsPipeline == null) {
+            return false;
+        }
+        String relativeURL = getPipelineRelativeURL(jenkinsPipeline);
+        String xml = jenkins("getJobXml", () -> client.getJobXml(relativeURL));
+        List<String> current = FolderConfigXml.readPermissions(xml);
 
-        for (int k = 0; k < permissions.getLength(); k++) {
-            Node permission = permissions.item(k);
-            if (permission.getNodeType() == Node.ELEMENT_NODE
-                    && permission.getNodeName() == "permission") {
-                
-                String[] permissionText = StringUtils.split(permission.getTextContent(), ":");
-                String permissionGroup = permissionText[1];
-                if(group.equals(permissionGroup))
-                    nodesToDelete.add(permission);
-            }
+        Set<String> granted = new LinkedHashSet<>();
+        for (List<String> memberPermissions : permissionsByMember.values()) {
+            granted.addAll(memberPermissions);
+        }
+        List<String> patched = new ArrayList<>(current.size() + granted.size());
+        for (String permission : current) {
+            if (!permissionsByMember.containsKey(getPermissionMember(permission)) || granted.contains(permission))
+                patched.add(permission);
+        }
+        Set<String> currentSet = new HashSet<>(current);
+        for (String permission : granted) {
+            if (!currentSet.contains(permission))
+                patched.add(permission);
         }
-        for (Node nodeToDelete : nodesToDelete) {
-            authz.removeChild(nodeToDelete);
+        if (patched.equals(current)) {
+            return false;
         }
-        return authz;
+
+        String newXml = FolderConfigXml.patchPermissions(xml, permissions -> patched);
+        jenkins("updateJob", () -> {
+            client.updateJob(relativeURL, newXml);
+            return null;
+        });
+        return true;
+    }
+
+    private String getPermissionMember(String permission) {
+        String[] permissionText = StringUtils.split(permission, ":");
+        return permissionText.length > 1 ? permissionText[1] : null;
     }
 
     private String getPipelineRelativeURL(JobWithDetails jenkinsPipeline) {
@@ -241,59 +425,91 @@ public class JenkinsService {
         return relativeUrl.replace("/", "/job/");
     }
 
-    private Document getDocumentNode(String relativeURL) throws IOException, ParserConfigurationException, SAXException {
-        String xml = client.getJobXml(relativeURL);
-
-        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        final DocumentBuilder builder = factory.newDocumentBuilder();
-
-        InputSource is = new InputSource(new StringReader(xml));
-
-        return builder.parse(is);
+    /**
+     * Trigger a build and wait for Jenkins to start it, blocking the calling thread up to {@link #BUILD_START_TIMEOUT_MS} ms,
+     * see {@link #createBuildAsync(Build)} for a call returning once the build is queued
+     */
+    public Build createBuild(Build build) throws Exception {
+        QueuedBuild queuedBuild = createBuildAsync(build);
+        try {
+            return queuedBuild.future().get(BUILD_START_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch(Exception e) {
+            logger.error("Unable to get build started from queue item " + queuedBuild.getQueueId() + " : " + e.getMessage());
+            throw new Exception("Unable to exec build for pipeline "+build.getPath());
+        }
     }
 
-    public Build createBuild(Build build) throws Exception {
+    /**
+     * Trigger a build and return as soon as Jenkins has queued it, the build number is resolved in background
+     * from the queue item
+     * @param build build to trigger
+     * @return queued build, with its queue id
+     * @throws Exception
+     */
+    public QueuedBuild createBuildAsync(Build build) throws Exception {
         if (build==null || StringUtils.isEmpty(build.getPath()))
             throw new IllegalArgumentException("Build path must be specified.");
-        Job jenkinsPipeline = client.getJob(build.getPath());
+        Job jenkinsPipeline = jenkins("getJob", () -> client.getJob(build.getPath()));
         if (jenkinsPipeline == null) {
             throw new NotFoundException("Pipeline does not exist.");
         }
+        QueueReference queueReference;
+        QueueItem queueItem;
+        List<BuildArgument> buildArguments = build.getBuildArguments();
         try {
-
             Map<String,String> params = null;
-            List<BuildArgument> buildArguments = build.getBuildArguments();
             if (buildArguments!=null) {
                 params = new HashMap<>();
                 for (BuildArgument buildArgument : buildArguments) {
                     params.put(buildArgument.getKey(), buildArgument.getValue());
                 }
             }
-            com.offbytwo.jenkins.model.Build lastKnownBuild = getLastBuild(jenkinsPipeline, null);
-            QueueReference jenkinsBuild = params == null  ? jenkinsPipeline.build() : jenkinsPipeline.build(params);
-            return map(build, getLastBuild(jenkinsPipeline, lastKnownBuild));
+            Map<String,String> buildParams = params;
+            queueReference = jenkins("triggerBuild", () -> buildParams == null  ? jenkinsPipeline.build() : jenkinsPipeline.build(buildParams));
+            queueItem = jenkins("getQueueItem", () -> client.getQueueItem(queueReference));
+        } catch(CircuitBreakerOpenException e) {
+            throw e;
         } catch(Exception e) {
             e.printStackTrace();
             throw new Exception("Unable to exec build for pipeline "+build.getPath());
         }
+        if (queueItem == null || queueItem.getId() == null) {
+            throw new Exception("Unable to exec build for pipeline "+build.getPath());
+        }
+
+        QueuedBuild queuedBuild = new QueuedBuild(queueItem.getId(), build.getPath());
+        // the caller owns its build once this method returns, the started build is a new one
+        String path = build.getPath();
+        List<BuildArgument> arguments = buildArguments == null ? null : new ArrayList<>(buildArguments);
+        buildQueueTracker.track(queuedBuild, () -> jenkins("getQueueItem", () -> client.getQueueItem(queueReference)))
+                .thenAccept(buildNumber -> {
+                    try {
+                        com.offbytwo.jenkins.model.Build jenkinsBuild = jenkins("getBuildDetails", () -> jenkinsPipeline.details().getBuildByNumber(buildNumber.intValue()));
+                        Build started = new Build().path(path).buildArguments(arguments);
+                        if (jenkinsBuild == null) {
+                            started.buildNumber(String.valueOf(buildNumber)).status(Build.StatusEnum.PROCESSING);
+                        } else {
+                            map(path, started, jenkinsBuild, LogSelection.NONE);
+                        }
+                        queuedBuild.future().complete(started);
+                    } catch (Exception e) {
+                        queuedBuild.future().completeExceptionally(e);
+                    }
+                })
+                .exceptionally(e -> {
+                    queuedBuild.future().completeExceptionally(e);
+                    return null;
+                });
+        return queuedBuild;
     }
 
-    private com.offbytwo.jenkins.model.Build getLastBuild(Job jenkinsPipeline, com.offbytwo.jenkins.model.Build lastKnownBuild) throws Exception {
-        int attempt = 0;
-        int maxAttempts = 40;
-        int waitMs = 500;
-        com.offbytwo.jenkins.model.Build lastBuild = null;
-        do {
-            if (attempt >= maxAttempts) {
-                throw new Exception("Unable to get current build for job '" + jenkinsPipeline.getName()+"'");
-            } else if (attempt > 0) {
-                logger.warn("Unable to get last build '" + jenkinsPipeline.getName() + "', retry in " + waitMs + "ms (attempt:" + attempt + " / maxAttempts:" + maxAttempts + ")");
-                Thread.sleep(waitMs);
-            }
-            lastBuild = jenkinsPipeline.details().getLastBuild();
-            attempt++;
-        } while (lastKnownBuild != null && lastBuild.getNumber() == lastKnownBuild.getNumber());
-        return lastBuild;
+    /**
+     * Get a build triggered by {@link #createBuildAsync(Build)}
+     * @param queueId Jenkins queue id
+     * @return queued build, null if unknown or expired
+     */
+    public QueuedBuild getQueuedBuild(long queueId) {
+        return buildQueueTracker.get(queueId);
     }
 
     public Boolean createFolder(String path) throws Exception {
@@ -303,6 +519,76 @@ public class JenkinsService {
     }
 
     public Pipeline createPipeline(Pipeline pipeline) throws Exception {
+        PipelineRequest request = prepare(pipeline);
+        FolderJob groupFolder = createFolderHierarchyIfNotExists(request.folders);
+        createJob(request, groupFolder, getTemplateXML(request.template, request.templateValues));
+        return pipeline;
+    }
+
+    /**
+     * Create pipelines in bulk.
+     *
+     * Each distinct folder hierarchy is checked once, each template is rendered once per distinct values,
+     * then jobs are created in parallel. A failure only fails its own pipeline.
+     * @param pipelines pipelines to create
+     * @return result for each pipeline, in the same order
+     * @throws Exception
+     */
+    public List<PipelineCreation> createPipelines(List<Pipeline> pipelines) throws Exception {
+        if (pipelines == null)
+            throw new IllegalArgumentException("Pipelines argument is null");
+
+        PipelineCreation[] results = new PipelineCreation[pipelines.size()];
+        List<PipelineRequest> requests = new ArrayList<>();
+        Map<String, LinkedList<String>> folders = new LinkedHashMap<>();
+        for (int i = 0; i < pipelines.size(); i++) {
+            try {
+                PipelineRequest request = prepare(pipelines.get(i));
+                request.index = i;
+                requests.add(request);
+                folders.putIfAbsent(request.folderPath, request.folders);
+            } catch (Exception e) {
+                results[i] = PipelineCreation.failed(pipelines.get(i), e);
+            }
+        }
+
+        // Groups, each distinct hierarchy once
+        List<String> folderPaths = new ArrayList<>(folders.keySet());
+        List<CompletableFuture<FolderJob>> groupFolders = pipelineExecutor.submitAll(folderPaths,
+                folderPath -> createFolderHierarchyIfNotExists(folders.get(folderPath)));
+        CompletableFuture.allOf(groupFolders.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        Map<String, CompletableFuture<FolderJob>> groupFolderByPath = new HashMap<>();
+        for (int i = 0; i < folderPaths.size(); i++) {
+            groupFolderByPath.put(folderPaths.get(i), groupFolders.get(i));
+        }
+
+        // Jobs, each template rendered once per distinct values
+        Map<List<Object>, String> jobXmls = new ConcurrentHashMap<>();
+        List<CompletableFuture<Boolean>> jobs = pipelineExecutor.submitAll(requests, request -> {
+            FolderJob groupFolder = groupFolderByPath.get(request.folderPath).join();
+            String jobXml = jobXmls.computeIfAbsent(Arrays.asList(request.template, request.templateValues),
+                    key -> getTemplateXML(request.template, request.templateValues));
+            return createJob(request, groupFolder, jobXml);
+        });
+        for (int i = 0; i < requests.size(); i++) {
+            PipelineRequest request = requests.get(i);
+            try {
+                boolean created = jobs.get(i).join();
+                results[request.index] = created ? PipelineCreation.created(request.pipeline) : PipelineCreation.existing(request.pipeline);
+            } catch (CompletionException e) {
+                results[request.index] = PipelineCreation.failed(request.pipeline, Errors.unwrap(e));
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Check a pipeline to create and compute its folders and template values
+     * @param pipeline pipeline to create
+     * @return creation request
+     * @throws Exception
+     */
+    private PipelineRequest prepare(Pipeline pipeline) throws Exception {
 
         if (pipeline == null)
             throw new IllegalArgumentException("Pipeline argument is null");
@@ -341,27 +627,55 @@ public class JenkinsService {
             throw new IllegalArgumentException("1 or more arguments is null or empty");
         }
 
-        String folderPath = pipelinePath.substring(0, pipeline.getPath().lastIndexOf("/"));
-        String pipelineName = pipelinePath.substring(pipeline.getPath().lastIndexOf("/")+1);
+        PipelineRequest request = new PipelineRequest();
+        request.pipeline = pipeline;
+        request.folderPath = pipelinePath.substring(0, pipeline.getPath().lastIndexOf("/"));
+        request.pipelineName = pipelinePath.substring(pipeline.getPath().lastIndexOf("/")+1);
+        request.folders = getFolders(request.folderPath);
+        request.template = map(pipelineTemplate);
+        request.templateValues = templateValues;
+        return request;
+    }
 
-        // Groups
-        LinkedList<String> folders = getFolders(folderPath);
-        FolderJob groupFolder = createFolderHierarchyIfNotExists(folders);
+    /**
+     * Create the job of a pipeline in its folder, if not already existing
+     * @param request creation request
+     * @param groupFolder folder of the job
+     * @param jobXml job configuration
+     * @return true if the job has been created, false if it was already existing
+     * @throws Exception
+     */
+    private boolean createJob(PipelineRequest request, FolderJob groupFolder, String jobXml) throws Exception {
+        Pipeline pipeline = request.pipeline;
+        String pipelineName = request.pipelineName;
+        LinkedList<String> folders = request.folders;
 
         // Job
-        JobWithDetails existingJob = client.getJob(groupFolder, pipelineName);
+        JobWithDetails existingJob = jenkins("getJob", () -> client.getJob(groupFolder, pipelineName));
         if (existingJob != null) {
-            logger.info("Pipeline with name '" + pipelineName + "' is already existing in folder : '" + folderPath + "'");
+            logger.info("Pipeline with name '" + pipelineName + "' is already existing in folder : '" + request.folderPath + "'");
             pipeline.providerId(String.join("/", folders)+"/" + pipelineName)
                     .status(Resource.StatusEnum.READY)
                     .provider(PROVIDER_NAME);
-            return pipeline;
+            return false;
+        }
+
+        try {
+            jenkins("createJob", () -> {
+                client.createJob(groupFolder, pipelineName, jobXml);
+                return null;
+            });
+        } catch (HttpResponseException e) {
+            // the folder may have been deleted since it has been cached
+            folderCache.invalidate(String.join("/", folders));
+            throw e;
         }
 
-        client.createJob(groupFolder, pipelineName, getTemplateXML(map(pipelineTemplate), templateValues));
+        // a job created again at the same path numbers its builds from 1
+        forgetBuilds(pipeline.getPath(), true);
 
         // Test job creation is OK
-        JobWithDetails jobCreated = client.getJob(groupFolder, pipelineName);
+        JobWithDetails jobCreated = jenkins("getJob", () -> client.getJob(groupFolder, pipelineName));
         if (jobCreated == null) {
             throw new Exception("Pipeline with name " + pipelineName + " should be created, but not exists.");
         }
@@ -370,12 +684,44 @@ public class JenkinsService {
                 .status(Resource.StatusEnum.READY)
                 .provider(PROVIDER_NAME);
 
-        logger.info("create pipelineName:" + pipelineName +", path:"+ pipelinePath+", repository:"+ repositoryUrl+", pipelineTemplate:" + pipelineTemplate+" => pipeline created");
+        logger.info("create pipelineName:" + pipelineName +", path:"+ pipeline.getPath()+", pipelineTemplate:" + pipeline.getTemplate()+" => pipeline created");
 
-        return pipeline;
+        return true;
+    }
+
+    /**
+     * Pipeline to create, with its folders and template values
+     */
+    private static class PipelineRequest {
+        private int index;
+        private Pipeline pipeline;
+        private String folderPath;
+        private String pipelineName;
+        private LinkedList<String> folders;
+        private JenkinsTemplate template;
+        private Map<String, Object> templateValues;
     }
 
 
+    /**
+     * Forget what is known of the builds of a job, when it is deleted or created.
+     * The build history outlives a deleted job, it is only cleared when a job is created again at the same path.
+     * @param path pipeline path
+     * @param created true if a job has been created at this path
+     */
+    private void forgetBuilds(String path, boolean created) {
+        if (path == null) {
+            return;
+        }
+        buildCache.invalidate(path);
+        buildStates.remove(path);
+        if (created) {
+            history.remove(path);
+        }
+        logStore.remove(path);
+        logIndex.remove(path);
+    }
+
     public void deletePipeline(Pipeline pipeline) throws Exception {
         if (pipeline == null)
             throw new IllegalArgumentException("Pipeline argument is null");
@@ -383,16 +729,20 @@ public class JenkinsService {
         try {
             String folderPath = pipelinePath.substring(0, pipeline.getPath().lastIndexOf("/"));
             String pipelineName = pipelinePath.substring(pipeline.getPath().lastIndexOf("/")+1);
-            Job job = client.getJob(folderPath);
-            FolderJob folderJob = client.getFolderJob(job).get();
-            client.deleteJob(folderJob, pipelineName, true);
+            Job job = jenkins("getJob", () -> client.getJob(folderPath));
+            FolderJob folderJob = jenkins("getFolderJob", () -> client.getFolderJob(job).get());
+            jenkins("deleteJob", () -> {
+                client.deleteJob(folderJob, pipelineName, true);
+                return null;
+            });
         } catch (IOException e) {
             throw new Exception("Unable to delete pipeline with name " + pipelinePath + " : " + e.getMessage());
         }
+        forgetBuilds(pipelinePath, false);
 
         // Test job deletion is OK
         try {
-            JobWithDetails jobDeleted = client.getJob(pipelinePath);
+            JobWithDetails jobDeleted = jenkins("getJob", () -> client.getJob(pipelinePath));
             if (jobDeleted != null) {
                 throw new IllegalStateException("Pipeline with path " + pipelinePath + " should be deleted, but already exists.");
             }
@@ -405,20 +755,56 @@ public class JenkinsService {
         DOMSource domSource = new DOMSource(doc);
         StringWriter writer = new StringWriter();
         StreamResult result = new StreamResult(writer);
-        TransformerFactory tf = TransformerFactory.newInstance();
-        Transformer transformer = tf.newTransformer();
+        Transformer transformer = transformers.get();
+        transformer.reset();
         transformer.transform(domSource, result);
         return writer.toString();
     }
 
     public Build getBuild(String path, String buildNumber) throws Exception {
+        return getBuild(path, buildNumber, LogSelection.FULL);
+    }
+
+    /**
+     * Get a build
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param logs part of the console log to return
+     * @return build
+     * @throws Exception
+     */
+    public Build getBuild(String path, String buildNumber, LogSelection logs) throws Exception {
+        Build cached = buildCache.get(path, buildNumber, logs);
+        if (cached != null) {
+            return cached;
+        }
+        BuildSummary known = StringUtils.isNumeric(buildNumber) ? buildStates.getBuild(path, Integer.parseInt(buildNumber)) : null;
+        if (known != null) {
+            return getBuild(path, known, logs, buildStates.isConfirmed(path, known.getNumber()));
+        }
+        try {
+            // the loaded build is shared by the concurrent callers, each gets its own copy
+            return copy(buildFlights.execute(Arrays.asList(path, buildNumber, logs.toString()), () -> loadBuild(path, buildNumber, logs)));
+        } catch (NotFoundException e) {
+            // discarded by Jenkins, metadata only
+            Build recorded = StringUtils.isNumeric(buildNumber) ? history.get(path, Integer.parseInt(buildNumber)) : null;
+            if (recorded == null) {
+                throw e;
+            }
+            return recorded;
+        }
+    }
+
+    private Build loadBuild(String path, String buildNumber, LogSelection logs) throws Exception {
         try {
             Job pipeline = getPipelineExisting(path);
-            com.offbytwo.jenkins.model.Build build = pipeline.details().getBuildByNumber(Integer.valueOf(buildNumber));
+            com.offbytwo.jenkins.model.Build build = jenkins("getBuildDetails", () -> pipeline.details().getBuildByNumber(Integer.valueOf(buildNumber)));
             if (build == null) {
                 throw new NotFoundException("Not build existing");
             }
-            return map(null, build);
+            Build result = map(path, null, build, logs);
+            buildCache.put(path, result, logs);
+            return result;
         } catch(IOException e) {
             e.printStackTrace();
             throw new Exception("Unable to get last build for pipeline "+path,e);
@@ -427,28 +813,61 @@ public class JenkinsService {
     }
 
     public List<Build> getBuilds(String path, String branch, Integer maxResult) throws Exception {
+        return getBuilds(path, branch, maxResult, LogSelection.NONE);
+    }
+
+    /**
+     * Get the last builds of a pipeline, most recent first
+     * @param path pipeline path
+     * @param branch only builds of this branch, if defined
+     * @param maxResult max number of builds
+     * @param logs part of the console log to return with each build
+     * @return builds
+     * @throws Exception
+     */
+    public List<Build> getBuilds(String path, String branch, Integer maxResult, LogSelection logs) throws Exception {
 
         if (maxResult==null)
             maxResult = DEFAULT_BUILD_MAX;
 
+        int max = maxResult;
+        List<BuildSummary> known = buildStates.getBuilds(path, branch, max);
+        if (known != null) {
+            List<Build> builds = new LinkedList<>();
+            for (BuildSummary summary : known) {
+                builds.add(getBuild(path, summary, logs, buildStates.isConfirmed(path, summary.getNumber())));
+            }
+            return builds;
+        }
+        List<Build> builds = new LinkedList<>();
+        // the loaded builds are shared by the concurrent callers, each gets its own copies
+        for (Build build : buildsFlights.execute(Arrays.asList(path, branch, max, logs.toString()), () -> loadBuilds(path, branch, max, logs))) {
+            builds.add(copy(build));
+        }
+        return builds;
+    }
+
+    private static Build copy(Build build) {
+        return build == null ? null : BuildCache.copy(build).logs(build.getLogs());
+    }
+
+    private List<Build> loadBuilds(String path, String branch, int maxResult, LogSelection logs) throws Exception {
         List<Build> builds = new LinkedList<>();
 
         try {
             Job pipeline = getPipelineExisting(path);
-            List<com.offbytwo.jenkins.model.Build> jenkinsBuilds = pipeline.details().getBuilds();
-
-            // Jenkins build sort by build number
-           // jenkinsBuilds.sort(Comparator.comparingInt(com.offbytwo.jenkins.model.Build::getNumber));
+            // Without branch filter, the page only needs maxResult builds, otherwise the whole build list is filtered
+            int pageSize = StringUtils.isEmpty(branch) ? maxResult : MAX_BUILDS_PAGE;
+            List<BuildSummary> jenkinsBuilds = getBuildSummaries(pipeline, 0, pageSize);
 
             int i = 0;
 
             while(i<jenkinsBuilds.size() && builds.size()<maxResult) {
-                com.offbytwo.jenkins.model.Build jenkinsBuild = jenkinsBuilds.get(i);
+                BuildSummary jenkinsBuild = jenkinsBuilds.get(i);
                 i++;
-                Map<String, String> params = jenkinsBuild.details().getParameters();
                 if (StringUtils.isEmpty(branch)
-                        || (params!=null && branch.equals(params.get("GIT_BRANCH"))))
-                    builds.add(map(null, jenkinsBuild));
+                        || branch.equals(jenkinsBuild.getParameters().get("GIT_BRANCH")))
+                    builds.add(getBuild(path, jenkinsBuild, logs, true));
             }
             return builds;
         } catch(IOException e) {
@@ -457,54 +876,271 @@ public class JenkinsService {
         }
     }
 
+    /**
+     * Map a listed build, reading finished builds from the cache to skip their logs download
+     * @param confirmed false if the state only comes from the notification webhook, it is then neither cached nor recorded
+     */
+    private Build getBuild(String path, BuildSummary summary, LogSelection logs, boolean confirmed) throws Exception {
+        if (!confirmed) {
+            return map(path, summary, logs, false);
+        }
+        if (logs.getMode() != LogSelection.Mode.NONE && !summary.isBuilding()) {
+            Build cached = buildCache.get(path, String.valueOf(summary.getNumber()), logs);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Build build = map(path, summary, logs, true);
+        buildCache.put(path, build, logs);
+        return build;
+    }
 
-    public List<Membership> getMemberships(String path) throws Exception {
-        List<Membership> memberships = new LinkedList<>();
-        if (path == null || StringUtils.isEmpty(path))
-            throw new IllegalArgumentException("Folder path must be specified.");
-        JobWithDetails jenkinsPipeline = client.getJob(path);
-        if (jenkinsPipeline!=null) {
-            String relativeURL = getPipelineRelativeURL(jenkinsPipeline);
-            final Document document = getDocumentNode(relativeURL);
+    /**
+     * Read a page of builds with their parameters in a single request
+     * @param pipeline Jenkins job
+     * @param from index of the first build, most recent first
+     * @param to index after the last build
+     * @return builds of the page
+     * @throws Exception
+     */
+    private List<BuildSummary> getBuildSummaries(Job pipeline, int from, int to) throws Exception {
+        BuildSummaries summaries = jenkins("getBuildSummaries", () -> pipeline.getClient().get(BuildSummaries.path(pipeline.getUrl(), from, to), BuildSummaries.class));
+        return summaries == null || summaries.getBuilds() == null ? Collections.emptyList() : summaries.getBuilds();
+    }
 
-            Element root = document.getDocumentElement();
-            Node properties = getFirstChildNode(root, "properties");
-            Node authz = getFirstChildNode(properties, "com.cloudbees.hudson.plugins.folder.properties.AuthorizationMatrixProperty");
-            List<String> jenkinsPermissions = new LinkedList<>();
-            NodeList permissions = authz.getChildNodes();
+    /**
+     * Read the last builds of a pipeline in a single request, without looking the job up first
+     * @param path pipeline path
+     * @param builds number of builds to read
+     * @return builds, most recent first
+     * @throws Exception NotFoundException if the pipeline does not exist
+     */
+    private List<BuildSummary> readBuildSummaries(String path, int builds) throws Exception {
+        String jobUrl = StringUtils.removeEnd(config.getJenkinsUrl(), "/") + "/job/" + getJenkinsRelativeURL(StringUtils.strip(path, "/"));
+        JenkinsHttpResponse response = jenkins("getBuildSummaries", () -> {
+            JenkinsHttpResponse r = jenkinsRestService.getBasicAuth(BuildSummaries.path(jobUrl, 0, builds), null);
+            if (r.getStatus()>=500) throw new HttpResponseException(r.getStatus(), "Error when calling Jenkins - "+ String.valueOf(r.getStatus())+" "+r.getStatusText());
+            return r;
+        });
+        if (response.getStatus() == 404) {
+            throw new NotFoundException("Pipeline does not exist.");
+        }
+        if (response.getStatus() >= 400) {
+            throw new HttpResponseException(response.getStatus(), "Error when calling Jenkins - " + response.getStatus() + " " + response.getStatusText());
+        }
+        BuildSummaries summaries = summariesMapper.readValue(response.getBody(), BuildSummaries.class);
+        return summaries.getBuilds() == null ? Collections.emptyList() : summaries.getBuilds();
+    }
 
-            for (int k = 0; k < permissions.getLength(); k++) {
-                if (permissions.item(k).getNodeType() == Node.ELEMENT_NODE && permissions.item(k).getNodeName() == "permission") {
-                    jenkinsPermissions.add(permissions.item(k).getTextContent());
+    /**
+     * Wait for a build to finish, see {@link #waitForBuildAsync(String, String, long, LogSelection)}
+     */
+    public Build waitForBuild(String path, String buildNumber, long timeoutMs, LogSelection logs) throws Exception {
+        try {
+            return waitForBuildAsync(path, buildNumber, timeoutMs, logs).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for a build to finish, or for a deadline.
+     *
+     * Waiters of the same pipeline share one poller which reads the last builds of the job in a single request,
+     * the logs are read once the build has finished.
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param timeoutMs deadline of the wait, at most {@value #MAX_BUILD_WAIT_MS} ms
+     * @param logs part of the console log to return
+     * @return future completed with the finished build, or with its current state when the deadline is reached
+     */
+    public CompletableFuture<Build> waitForBuildAsync(String path, String buildNumber, long timeoutMs, LogSelection logs) {
+        if (StringUtils.isEmpty(path) || !StringUtils.isNumeric(buildNumber))
+            throw new IllegalArgumentException("Build path and number must be specified.");
+        Build cached = buildCache.get(path, buildNumber, logs);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long timeout = Math.max(0, Math.min(timeoutMs, MAX_BUILD_WAIT_MS));
+        // the logs are read on the Jenkins pool, the wait may end on the scheduler thread
+        return buildCompletionWaiter.await(path, Integer.parseInt(buildNumber), timeout).thenApplyAsync(summary -> {
+            if (summary == null) {
+                return new Build().buildNumber(buildNumber).status(Build.StatusEnum.PROCESSING);
+            }
+            try {
+                Build build = getBuild(path, summary, logs, true);
+                if (!summary.isBuilding()) {
+                    indexLog(path, summary.getNumber());
                 }
+                return build;
+            } catch (Exception e) {
+                throw new CompletionException(e);
             }
-            memberships = permisionToMembership(jenkinsPermissions,path);
+        }, Schedulers.jenkins());
+    }
+
+    /**
+     * Read the console log of a build from a byte offset, only the bytes following the offset are transferred.
+     *
+     * Callers following a running build read again from {@link LogChunk#getEnd()} while {@link LogChunk#isMoreData()}.
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param start offset to read from
+     * @return log from the offset
+     * @throws Exception
+     */
+    public LogChunk getLogChunk(String path, String buildNumber, long start) throws Exception {
+        if (StringUtils.isEmpty(path) || !StringUtils.isNumeric(buildNumber))
+            throw new IllegalArgumentException("Build path and number must be specified.");
+        if (start < 0)
+            throw new IllegalArgumentException("Log offset must be positive.");
+        BuildLogStore.StoredLog stored = logStore.get(path, buildNumber);
+        if (stored != null) {
+            return new LogChunk(start, stored);
         }
-        return memberships;
+        String url = StringUtils.removeEnd(config.getJenkinsUrl(), "/") + "/job/" + getJenkinsRelativeURL(StringUtils.strip(path, "/"))
+                + "/" + buildNumber + "/logText/progressiveText?start=" + start;
+        JenkinsHttpResponse response = jenkins("getLogChunk", () -> {
+            JenkinsHttpResponse r = jenkinsRestService.getBasicAuth(url, null);
+            if (r.getStatus()>=500) throw new HttpResponseException(r.getStatus(), "Error when calling Jenkins - "+ String.valueOf(r.getStatus())+" "+r.getStatusText());
+            return r;
+        });
+        if (response.getStatus() == 404) {
+            throw new NotFoundException("Build " + buildNumber + " of pipeline " + path + " does not exist.");
+        }
+        if (response.getStatus() >= 400) {
+            throw new HttpResponseException(response.getStatus(), "Error when calling Jenkins - " + response.getStatus() + " " + response.getStatusText());
+        }
+        String text = response.getBody() == null ? StringUtils.EMPTY : response.getBody();
+        String textSize = response.getHeader(LOG_TEXT_SIZE_HEADER);
+        long end = StringUtils.isNumeric(textSize) ? Long.parseLong(textSize) : start + text.getBytes(StandardCharsets.UTF_8).length;
+        boolean moreData = Boolean.parseBoolean(response.getHeader(LOG_MORE_DATA_HEADER));
+        if (start == 0 && !moreData) {
+            logStore.put(path, buildNumber, text);
+        }
+        return new LogChunk(start, end, moreData, text);
     }
 
     /**
+     * Follow the console log of a build from a byte offset, see {@link LogFollowStream}.
      *
-     * @param parentNode
-     * @param name
-     * @return
-     * @throws IllegalArgumentException
+     * The stream blocks while the build is running and nothing is appended to its log.
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param start offset to read from
+     * @param timeoutMs the stream ends after this delay, at most {@value #MAX_LOG_FOLLOW_MS} ms
+     * @return log from the offset, ending when the build has finished
+     * @throws Exception if the first part of the log cannot be read
      */
-    private Node getFirstChildNode(Node parentNode, String name) throws IllegalArgumentException {
-        if (parentNode == null || name == null)
-            throw new IllegalArgumentException("name and parent node cannot be null");
-        NodeList childNodes = parentNode.getChildNodes();
-        if (childNodes == null) return null;
+    public InputStream followLog(String path, String buildNumber, long start, long timeoutMs) throws Exception {
+        long timeout = Math.max(0, Math.min(timeoutMs, MAX_LOG_FOLLOW_MS));
+        LogChunk first = getLogChunk(path, buildNumber, start);
+        if (!first.isMoreData()) {
+            return first.openText();
+        }
+        return new LogFollowStream(offset -> getLogChunk(path, buildNumber, offset), first, timeout);
+    }
 
-        for (int i = 0; i < childNodes.getLength(); i++) {
-            if(childNodes.item(i).getNodeType() == Node.ELEMENT_NODE && childNodes.item(i).getNodeName()==name) {
-                return childNodes.item(i);
+
+    /**
+     * Apply a job event of the Jenkins Notification plugin to the local build states.
+     *
+     * Once events are received, {@link #getBuild(String, String, LogSelection)} and
+     * {@link #getBuilds(String, String, Integer, LogSelection)} answer from the local states of the followed jobs,
+     * a periodic reconciliation with Jenkins fixes the events missed.
+     * @param body event, as JSON
+     * @param token token of the request, compared to the configured webhook token
+     * @throws IllegalAccessException if no webhook token is configured or if the token does not match
+     * @throws IllegalArgumentException if the event is malformed
+     */
+    public void onNotification(String body, String token) throws Exception {
+        String expected = config.getJenkinsWebhookToken();
+        if (StringUtils.isEmpty(expected))
+            throw new IllegalAccessException("Jenkins notifications are disabled, JENKINS_WEBHOOK_TOKEN is not set.");
+        if (token == null || !MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8)))
+            throw new IllegalAccessException("Webhook token is invalid.");
+        JenkinsNotification notification;
+        try {
+            notification = notificationMapper.readValue(body, JenkinsNotification.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Notification is malformed : " + e.getMessage());
+        }
+        String path = notification == null ? null : notification.getPath();
+        if (path == null)
+            throw new IllegalArgumentException("Notification does not hold a job url.");
+        BuildSummary build = notification.toBuildSummary();
+        if (build != null) {
+            buildStates.apply(path, build);
+        }
+    }
+
+    /**
+     * Register a webhook receiving the status changes of the builds of a pipeline or of the pipelines of a folder.
+     *
+     * Batches are posted as JSON: {"subscription": id, "dropped": events lost, "events": [{@link BuildStatusEvent}...]}.
+     * Events come from the Jenkins notification webhook, see {@link #onNotification(String, String)}.
+     * Subscriptions are kept in memory, subscribers register again when the service restarts.
+     * Callback urls must be on a host of JENKINS_SUBSCRIPTION_ALLOWED_HOSTS, webhooks are refused without it.
+     * @param path pipeline path or folder prefix, empty for every pipeline
+     * @param callbackUrl http or https url of an allowed host, receiving the batches
+     * @return subscription id, the same for the same path and url
+     * @throws IllegalArgumentException if the url is not an http or https url, or if its host is not allowed
+     * @throws IllegalStateException if webhooks are disabled, or if there are too many subscriptions
+     */
+    public String subscribe(String path, String callbackUrl) {
+        return subscriptions.subscribe(path, callbackUrl);
+    }
+
+    private static Set<String> getAllowedHosts(String hosts) {
+        Set<String> allowed = new HashSet<>();
+        for (String host : StringUtils.split(StringUtils.defaultString(hosts), ',')) {
+            if (StringUtils.isNotBlank(host)) {
+                allowed.add(host.trim());
             }
         }
-        return null;
+        return allowed;
+    }
+
+    /**
+     * @param id subscription id
+     * @throws NotFoundException if the subscription does not exist
+     */
+    public void unsubscribe(String id) throws NotFoundException {
+        if (!subscriptions.unsubscribe(id))
+            throw new NotFoundException("Subscription " + id + " not found.");
+    }
+
+    /**
+     * Stream the status changes of the builds of a pipeline or of the pipelines of a folder as server-sent events,
+     * each "builds" event holds a batch as {@link #subscribe(String, String)} posts it
+     * @param path pipeline path or folder prefix, empty for every pipeline
+     * @param timeoutMs the stream ends after this delay, at most {@value #MAX_EVENT_STREAM_MS} ms
+     * @return event stream, closing it ends the subscription
+     */
+    public InputStream streamBuildEvents(String path, long timeoutMs) {
+        return subscriptions.stream(path, Math.min(Math.max(timeoutMs, 0), MAX_EVENT_STREAM_MS));
     }
 
+    public List<Membership> getMemberships(String path) throws Exception {
+        if (path == null || StringUtils.isEmpty(path))
+            throw new IllegalArgumentException("Folder path must be specified.");
+        return new LinkedList<>(membershipsFlights.execute(path, () -> loadMemberships(path)));
+    }
 
+    private List<Membership> loadMemberships(String path) throws Exception {
+        List<Membership> memberships = new LinkedList<>();
+        JobWithDetails jenkinsPipeline = jenkins("getJob", () -> client.getJob(path));
+        if (jenkinsPipeline!=null) {
+            String relativeURL = getPipelineRelativeURL(jenkinsPipeline);
+            String xml = jenkins("getJobXml", () -> client.getJobXml(relativeURL));
+            List<String> jenkinsPermissions = FolderConfigXml.readPermissions(xml);
+            memberships = permisionToMembership(jenkinsPermissions,path);
+        }
+        return memberships;
+    }
 
     /**
      * Get custom jenkins templateXml from repository and group name
@@ -521,11 +1157,7 @@ public class JenkinsService {
     }
 
     public String getTemplateXML(JenkinsTemplate template, Map<String,Object> values) {
-        String templateAsStr = templates.get(template);
-        for (Map.Entry<String,Object> entry : values.entrySet()) {
-            templateAsStr = templateAsStr.replace("${"+entry.getKey()+"}", entry.getValue().toString());
-        }
-        return templateAsStr;
+        return compiledTemplates.get(template).render(values);
     }
 
 
@@ -536,11 +1168,11 @@ public class JenkinsService {
      * @throws IOException
      * @throws NotFoundException
      */
-    private Job getPipelineExisting(String pipelineId) throws IOException, NotFoundException {
+    private Job getPipelineExisting(String pipelineId) throws Exception {
         if (StringUtils.isEmpty(pipelineId)) {
             throw new IllegalArgumentException("Pipeline id should be defined.");
         }
-        Job pipeline = client.getJob(pipelineId);
+        Job pipeline = jenkins("getJob", () -> client.getJob(pipelineId));
         if (pipeline == null) {
             throw new NotFoundException("Pipeline does not exist.");
         }
@@ -618,50 +1250,307 @@ public class JenkinsService {
     }
     /**
      * Map {@link Build} to {@link Build}
+     * @param path pipeline path
      * @param lastBuild
+     * @param logs part of the console log to read
      * @return
-     * @throws IOException
+     * @throws Exception
      */
-    private Build map(Build build, com.offbytwo.jenkins.model.Build lastBuild) throws IOException {
+    private Build map(String path, Build build, com.offbytwo.jenkins.model.Build lastBuild, LogSelection logs) throws Exception {
         if (build==null) build = new Build();
-        BuildWithDetails details = lastBuild.details();
+        BuildWithDetails details = jenkins("getBuildDetails", () -> lastBuild.details());
         Build.StatusEnum status = Build.StatusEnum.PROCESSING;
         if (details!=null) {
 
-            if(details.getClient() != null) {
-                build.setLogs(details.getConsoleOutputText());
-            } else {
+            if (logs.getMode() == LogSelection.Mode.NONE) {
+                // metadata only
+            } else if(details.getClient() == null) {
                 build.setLogs(StringUtils.EMPTY);
+            } else if (logs.getMode() == LogSelection.Mode.FULL) {
+                Map<String, String> parameters = details.getParameters();
+                build.setLogs(getFullLog(path, String.valueOf(lastBuild.getNumber()), !details.isBuilding() && details.getResult() != null,
+                        parameters == null ? null : parameters.get("GIT_BRANCH"), details.getTimestamp(),
+                        () -> jenkins("getConsoleOutput", () -> details.getConsoleOutputText())));
+            } else {
+                build.setLogs(getLogTail(path, String.valueOf(lastBuild.getNumber()), !details.isBuilding() && details.getResult() != null,
+                        details.getUrl(), logs));
             }
 
             if (details.getResult() != null) {
-                switch (details.getResult()) {
-                    case SUCCESS:
-                        status = Build.StatusEnum.SUCCESS;
-                        break;
-                    case FAILURE:
-                    case UNSTABLE:
-                    case ABORTED:
-                    case CANCELLED:
-                    case NOT_BUILT:
-                        status = Build.StatusEnum.FAILED;
-                        break;
-                    case BUILDING:
-                        status = Build.StatusEnum.PROCESSING;
-                        break;
-
-                    default:
-                        throw new IllegalStateException("Status : " + details.getResult() + " is not implemented");
-                }
+                status = map(details.getResult());
             }
             build.setDuration((int) details.getDuration());
             build.setCreationDate(details.getTimestamp());
         }
         build.setStatus(status);
         build.setBuildNumber(lastBuild.getNumber()+"");
+        if (details != null) {
+            Map<String, String> parameters = details.getParameters();
+            history.record(path, build, parameters == null ? null : parameters.get("GIT_BRANCH"));
+        }
+        return build;
+    }
+
+    /**
+     * Map {@link BuildSummary} to {@link Build}
+     * @param path pipeline path
+     * @param summary
+     * @param logs part of the console log to read
+     * @param confirmed false if the state only comes from the notification webhook: its log is not stored and the build is not recorded
+     * @return
+     * @throws Exception
+     */
+    private Build map(String path, BuildSummary summary, LogSelection logs, boolean confirmed) throws Exception {
+        Build build = new Build();
+        Build.StatusEnum status = Build.StatusEnum.PROCESSING;
+        if (!summary.isBuilding() && summary.getResult() != null) {
+            status = map(BuildResult.valueOf(summary.getResult()));
+        }
+        build.setStatus(status);
+        build.setDuration((int) summary.getDuration());
+        build.setCreationDate(summary.getTimestamp());
+        build.setBuildNumber(summary.getNumber()+"");
+        if (logs.getMode() == LogSelection.Mode.FULL) {
+            build.setLogs(getFullLog(path, build.getBuildNumber(), confirmed && status != Build.StatusEnum.PROCESSING,
+                    summary.getParameters().get("GIT_BRANCH"), summary.getTimestamp(),
+                    () -> getLogResponse(getJenkinsBuildURL(summary.getUrl()) + "consoleText", false).getBody()));
+        } else if (logs.getMode() != LogSelection.Mode.NONE) {
+            build.setLogs(getLogTail(path, build.getBuildNumber(), confirmed && status != Build.StatusEnum.PROCESSING, summary.getUrl(), logs));
+        }
+        if (confirmed) {
+            history.record(path, build, summary.getParameters().get("GIT_BRANCH"));
+        }
         return build;
     }
 
+    /**
+     * Read the whole console log of a build, from the log store if the build has finished.
+     * The log of a finished build is stored and indexed for {@link #searchLogs(LogSearchQuery)}.
+     * {@link Build#getLogs()} is a string: a stored log is read whole on the heap here, only GET /logs streams it from disk.
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param finished true if the build has finished
+     * @param branch branch built, may be null
+     * @param timestamp start time of the build
+     * @param read reads the log from Jenkins
+     * @return console log
+     * @throws Exception
+     */
+    private String getFullLog(String path, String buildNumber, boolean finished, String branch, long timestamp, Callable<String> read) throws Exception {
+        if (!finished || path == null) {
+            return read.call();
+        }
+        String log;
+        BuildLogStore.StoredLog stored = logStore.get(path, buildNumber);
+        if (stored != null) {
+            log = new LogChunk(0, stored).getText();
+        } else {
+            log = read.call();
+            logStore.put(path, buildNumber, log);
+        }
+        logIndex.addAsync(path, buildNumber, branch, timestamp, log);
+        return log;
+    }
+
+    /**
+     * Index the log of a finished build in the background, builds are read from Jenkins first:
+     * events of the notification webhook alone are not trusted.
+     * @param path pipeline path
+     * @param number build number
+     */
+    private void indexLog(String path, int number) {
+        String buildNumber = String.valueOf(number);
+        if (path == null || !logIndex.isEnabled() || logIndex.contains(path, buildNumber)) {
+            return;
+        }
+        logIndexReader.execute(() -> {
+            try {
+                if (logIndex.contains(path, buildNumber)) {
+                    return;
+                }
+                Job pipeline = getPipelineExisting(path);
+                com.offbytwo.jenkins.model.Build build = jenkins("getBuildDetails", () -> pipeline.details().getBuildByNumber(number));
+                if (build != null) {
+                    // stores and indexes the log once finished, without caching the build
+                    map(path, null, build, LogSelection.FULL);
+                }
+            } catch (Exception e) {
+                logger.warn("Unable to index log of build " + number + " of " + path + " : " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Read the recorded builds of a pipeline, including the builds discarded by Jenkins, without calling Jenkins.
+     *
+     * Every build read through this service is recorded, see {@link BuildHistoryStore}. Builds are returned without logs.
+     * @param path pipeline path
+     * @param branch only builds of this branch, if defined
+     * @param from only builds created at or after this time, in ms since epoch, if defined
+     * @param to only builds created at or before this time, in ms since epoch, if defined
+     * @param maxResult max number of builds, at most {@value #MAX_HISTORY_RESULT}
+     * @return builds, most recent first
+     * @throws IllegalStateException if the history is disabled
+     */
+    public List<Build> getBuildHistory(String path, String branch, Long from, Long to, Integer maxResult) {
+        if (StringUtils.isEmpty(path))
+            throw new IllegalArgumentException("Pipeline path must be specified.");
+        if (!history.isEnabled())
+            throw new IllegalStateException("Build history is disabled.");
+        int max = maxResult == null ? DEFAULT_BUILD_MAX : Math.max(0, Math.min(maxResult, MAX_HISTORY_RESULT));
+        return history.query(path, branch, from, to, max);
+    }
+
+    /**
+     * Find the finished builds whose console log matches a query.
+     *
+     * Builds are indexed when they finish, as told by the notification webhook or by a wait, and when their whole log is read.
+     * The index gives the builds holding every term, their stored log is then read line by line to check the phrases
+     * and to return the first matching line, for at most {@value #MAX_SEARCH_LOGS_READ} builds per search.
+     * A build whose log is no longer stored is returned without line, if the query has no phrase.
+     * @param query search
+     * @return matching builds, most recent first
+     * @throws Exception
+     */
+    public List<LogSearchHit> searchLogs(LogSearchQuery query) throws Exception {
+        if (!logIndex.isEnabled())
+            throw new IllegalStateException("Log search is disabled.");
+        List<LogSearchHit> hits = new ArrayList<>();
+        int read = 0;
+        for (LogSearchHit candidate : logIndex.search(query)) {
+            if (hits.size() >= query.getLimit() || read >= MAX_SEARCH_LOGS_READ) {
+                break;
+            }
+            BuildLogStore.StoredLog stored = logStore.get(candidate.getPath(), candidate.getBuildNumber());
+            if (stored == null) {
+                if (query.getPhrases().isEmpty()) {
+                    hits.add(candidate);
+                }
+                continue;
+            }
+            read++;
+            Set<String> phrases = new HashSet<>(query.getPhrases());
+            String firstLine = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stored.open(0), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null && (firstLine == null || !phrases.isEmpty())) {
+                    String lowerCase = line.toLowerCase();
+                    phrases.removeIf(lowerCase::contains);
+                    if (firstLine == null && query.matches(lowerCase)) {
+                        firstLine = line;
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Unable to read stored log of build " + candidate.getBuildNumber() + " of " + candidate.getPath() + " : " + e.getMessage());
+                continue;
+            }
+            if (phrases.isEmpty()) {
+                hits.add(candidate.line(firstLine));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Read the end of a console log, only the requested part is transferred.
+     *
+     * The log of a finished build is read from the log store when it is stored, only its last chunks are decompressed.
+     * Otherwise the log size is read from the headers of a HEAD request on progressiveText, then the log is read from an offset.
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param finished true if the build has finished
+     * @param buildUrl build url
+     * @param logs tail selection
+     * @return end of the log
+     * @throws Exception
+     */
+    private String getLogTail(String path, String buildNumber, boolean finished, String buildUrl, LogSelection logs) throws Exception {
+        BuildLogStore.StoredLog stored = finished && path != null ? logStore.get(path, buildNumber) : null;
+        if (stored != null) {
+            return getLogTail(stored.getSize(), logs, start -> {
+                try (InputStream in = stored.open(start)) {
+                    return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+            });
+        }
+        String progressiveTextUrl = getJenkinsBuildURL(buildUrl) + "logText/progressiveText";
+        String textSize = getLogResponse(progressiveTextUrl, true).getHeader(LOG_TEXT_SIZE_HEADER);
+        long size = StringUtils.isNumeric(textSize) ? Long.parseLong(textSize) : 0;
+        return getLogTail(size, logs, start -> getLogResponse(progressiveTextUrl + "?start=" + start, false).getBody());
+    }
+
+    /**
+     * Read the end of a log from an offset. For lines, the window read is widened until it holds enough complete lines.
+     * @param size log size, in bytes
+     * @param logs tail selection
+     * @param read reads the log from an offset, null if the log is missing
+     * @return end of the log
+     * @throws Exception
+     */
+    private static String getLogTail(long size, LogSelection logs, LogReader read) throws Exception {
+        long window = logs.getMode() == LogSelection.Mode.TAIL_BYTES ? logs.getLimit() : logs.getLimit() * LOG_TAIL_BYTES_PER_LINE;
+        while (true) {
+            long start = Math.max(0, size - window);
+            String text = read.read(start);
+            if (text == null) {
+                return StringUtils.EMPTY;
+            }
+            if (logs.getMode() == LogSelection.Mode.TAIL_BYTES) {
+                // the window may start within a character
+                return start > 0 ? StringUtils.stripStart(text, "\uFFFD") : text;
+            }
+            String lines = LogSelection.lastLines(text, logs.getLimit(), start > 0);
+            if (lines != null) {
+                return lines;
+            }
+            window *= 4;
+        }
+    }
+
+    private interface LogReader {
+        String read(long start) throws Exception;
+    }
+
+    private JenkinsHttpResponse getLogResponse(String url, boolean headOnly) throws Exception {
+        JenkinsHttpResponse response = jenkins(headOnly ? "getLogSize" : "getLog", () -> {
+            JenkinsHttpResponse r = headOnly ? jenkinsRestService.headBasicAuth(url, null) : jenkinsRestService.getBasicAuth(url, null);
+            if (r.getStatus()>=500) throw new HttpResponseException(r.getStatus(), "Error when calling Jenkins - "+ String.valueOf(r.getStatus())+" "+r.getStatusText());
+            return r;
+        });
+        if (response.getStatus()>=400) {
+            throw new Exception("Unable to read logs " + url + " - " + response.getStatus() + " " + response.getStatusText());
+        }
+        return response;
+    }
+
+    /**
+     * Build url as seen from the configured Jenkins url, Jenkins may advertise another root url
+     * @param buildUrl build url from Jenkins
+     * @return build url ending with '/'
+     */
+    private String getJenkinsBuildURL(String buildUrl) {
+        int jobIndex = buildUrl.indexOf("job/");
+        String url = jobIndex < 0 ? buildUrl : StringUtils.removeEnd(config.getJenkinsUrl(), "/") + "/" + buildUrl.substring(jobIndex);
+        return url.endsWith("/") ? url : url + "/";
+    }
+
+    private Build.StatusEnum map(BuildResult result) {
+        switch (result) {
+            case SUCCESS:
+                return Build.StatusEnum.SUCCESS;
+            case FAILURE:
+            case UNSTABLE:
+            case ABORTED:
+            case CANCELLED:
+            case NOT_BUILT:
+                return Build.StatusEnum.FAILED;
+            case BUILDING:
+                return Build.StatusEnum.PROCESSING;
+            default:
+                throw new IllegalStateException("Status : " + result + " is not implemented");
+        }
+    }
+
     private JenkinsTemplate map(Pipeline.TemplateEnum pipelineTemplate) {
         JenkinsTemplate ret = null;
         switch (pipelineTemplate) {
@@ -700,40 +1589,89 @@ public class JenkinsService {
     }
 
 
-    private FolderJob createFolderHierarchyIfNotExists(LinkedList<String> folders) throws IOException, InterruptedException {
+    private FolderJob createFolderHierarchyIfNotExists(LinkedList<String> folders) throws Exception {
         FolderJob currentFolder = null;
-        Iterator<String> iterator = folders.iterator();
-        while (iterator.hasNext()) {
+        String path = null;
+        for (String folder : folders) {
+            path = path == null ? folder : path + "/" + folder;
             // Create every folder recursively under the previous one
-            currentFolder = createFolderIfNotExists(iterator.next(), currentFolder);
+            currentFolder = createFolderIfNotExists(path, folder, currentFolder);
         }
         return currentFolder;
     }
 
-    private FolderJob getFolderJob(FolderJob parentFolder, String group, JenkinsServer client) throws IOException {
-        Job job = (parentFolder==null) ? client.getJob(group):client.getJob(parentFolder, group);
-        return (job != null) ? client.getFolderJob(job).get() : null;
+    private FolderJob getFolderJob(FolderJob parentFolder, String group, JenkinsServer client) throws Exception {
+        Job job = jenkins("getJob", () -> (parentFolder==null) ? client.getJob(group):client.getJob(parentFolder, group));
+        return (job != null) ? jenkins("getFolderJob", () -> client.getFolderJob(job).get()) : null;
     }
 
-    private synchronized FolderJob createFolderIfNotExists(String group, FolderJob parentFolder) throws IOException, InterruptedException {
-        int nbRetry = 0;
-        FolderJob groupFolder = null;
+    /**
+     * Get or create a folder, known folders are read from the cache.
+     * Creations of the same path are serialized, creations of different paths run in parallel.
+     * A creation conflicting with another creation is retried, the wait between attempts is done without the lock.
+     * @param path folder path
+     * @param group folder name
+     * @param parentFolder parent folder, null for a root folder
+     * @return folder, null if it can't be read after its creation
+     * @throws Exception
+     */
+    private FolderJob createFolderIfNotExists(String path, String group, FolderJob parentFolder) throws Exception {
+        FolderJob groupFolder = folderCache.get(path);
+        for (int attempt = 0; groupFolder == null && attempt <= FOLDER_CREATION_RETRIES; attempt++) {
+            if (attempt > 0) {
+                Thread.sleep(FOLDER_CREATION_RETRY_MS);
+            }
+            try {
+                groupFolder = getOrCreateFolder(path, group, parentFolder, attempt > 0);
+            } catch (HttpResponseException e) {
+                logger.warn("Unable to create folder " + path + " : " + e.getMessage());
+            }
+        }
+        return groupFolder;
+    }
 
-        while (groupFolder == null && nbRetry<=3) {
-            groupFolder = getFolderJob(parentFolder, group, client);
-            if (groupFolder == null) {
-                try {
+    /**
+     * Single attempt to get or create a folder, under the lock of its path
+     * @param lookup true to look the folder up even if it has been found missing recently
+     */
+    private FolderJob getOrCreateFolder(String path, String group, FolderJob parentFolder, boolean lookup) throws Exception {
+        Lock lock = folderCache.lock(path);
+        lock.lock();
+        try {
+            FolderJob groupFolder = folderCache.get(path);
+            if (groupFolder != null) {
+                return groupFolder;
+            }
+            // a folder found missing recently, or under a folder just created, is not looked up first
+            if (lookup || !folderCache.isMissing(path)) {
+                groupFolder = getFolderJob(parentFolder, group, client);
+                if (groupFolder != null) {
+                    folderCache.found(path, groupFolder);
+                    return groupFolder;
+                }
+                folderCache.missing(path);
+            }
+            try {
+                jenkins("createFolder", () -> {
                     if (parentFolder == null)
                         client.createFolder(group);
                     else
                         client.createFolder(parentFolder,group);
-                } catch (HttpResponseException e) {
-                    Thread.sleep(300);
-                    nbRetry++;
-                }
+                    return null;
+                });
+            } catch (HttpResponseException e) {
+                // created meanwhile by another instance, looked up again by the next attempt
+                folderCache.forgetMissing(path);
+                throw e;
             }
+            folderCache.created(path);
+            // the folder just created is read directly, never skipped as missing
+            groupFolder = getFolderJob(parentFolder, group, client);
+            folderCache.found(path, groupFolder);
+            return groupFolder;
+        } finally {
+            lock.unlock();
         }
-        return groupFolder;
     }
 
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.apache.log4j.Logger;
+import org.kathra.pipelinemanager.Config;
+import org.kathra.pipelinemanager.utils.Schedulers;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the {@link JenkinsService} shared by every request of the application.
+ *
+ * The service (Jenkins client, REST service and templates) is built on first use and reused
+ * by all concurrent callers. It is rebuilt only when a setting of the {@link Config} changes,
+ * and closed when the container shuts down.
+ * A replaced service is closed after {@link #RETIRE_DELAY_MS} ms, the calls in progress on it finish meanwhile.
+ * The disk stores are shared by the successive services, see {@link BuildStores}. They are only reopened when
+ * their own settings change: a single instance may use a directory, so the previous service and its stores
+ * are closed at once then, its calls in progress fail.
+ */
+@ApplicationScoped
+public class JenkinsServiceProvider {
+
+    private static Logger logger = Logger.getLogger(JenkinsServiceProvider.class);
+
+    /** longer than a Jenkins call with its retries, waits and log streams end earlier and are resumed by clients */
+    static final long RETIRE_DELAY_MS = TimeUnit.MINUTES.toMillis(2);
+
+    private volatile Instance current;
+    // guarded by this
+    private BuildStores stores;
+    private List<Object> storeSettings;
+    // replaced services not yet closed
+    private final Set<JenkinsService> retiring = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Get the shared service for the config, building it if needed
+     * @param config Jenkins settings
+     * @return shared JenkinsService
+     * @throws Exception
+     */
+    public JenkinsService get(Config config) throws Exception {
+        Instance instance = current;
+        if (instance != null && instance.isBuiltFrom(config)) {
+            return instance.service;
+        }
+        synchronized (this) {
+            instance = current;
+            if (instance != null && instance.isBuiltFrom(config)) {
+                return instance.service;
+            }
+            Instance previous = instance;
+            List<Object> newStoreSettings = storeSettings(config);
+            if (stores != null && !newStoreSettings.equals(storeSettings)) {
+                logger.warn("Build stores configuration changed, JenkinsService and build stores closed at once");
+                if (previous != null) {
+                    previous.service.close();
+                    previous = null;
+                    current = null;
+                }
+                stores.close();
+                stores = null;
+            }
+            if (stores == null) {
+                stores = new BuildStores(config);
+                storeSettings = newStoreSettings;
+            }
+            current = new Instance(config, new JenkinsService(config, stores));
+            if (previous != null) {
+                logger.info("Jenkins configuration changed, JenkinsService rebuilt for " + config.getJenkinsUrl());
+                retire(previous.service);
+            }
+            return current.service;
+        }
+    }
+
+    /**
+     * Close a replaced service once the calls in progress on it are done
+     */
+    private void retire(JenkinsService service) {
+        retiring.add(service);
+        // closing blocks, the scheduler only hands it to a worker
+        Schedulers.scheduler().schedule(() -> Schedulers.workers().execute(() -> {
+            if (retiring.remove(service)) {
+                service.close();
+            }
+        }), RETIRE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        for (JenkinsService service : retiring) {
+            if (retiring.remove(service)) {
+                service.close();
+            }
+        }
+        if (current != null) {
+            current.service.close();
+            current = null;
+        }
+        if (stores != null) {
+            stores.close();
+            stores = null;
+        }
+    }
+
+    /**
+     * @return every setting read by {@link JenkinsService}, config is mutable: its values are copied
+     */
+    static List<Object> settings(Config config) {
+        return Arrays.asList(config.getJenkinsUrl(), config.getJenkinsAccountName(), config.getJenkinsAccountApiToken(),
+                config.getJenkinsCircuitBreakerFailureThreshold(), config.getJenkinsCircuitBreakerOpenDurationMs(),
+                config.getJenkinsCircuitBreakerProbeCalls(),
+                config.getJenkinsBuildCacheMaxEntries(), config.getJenkinsBuildCacheMaxBytes(),
+                config.getJenkinsHttpConnectTimeoutMs(), config.getJenkinsHttpReadTimeoutMs(), config.getJenkinsHttpMaxRequestsPerRoute(),
+                config.getJenkinsBuildStateReconcileSeconds(), config.getJenkinsWebhookToken(),
+                config.getJenkinsSubscriptionBatchMs(), config.getJenkinsSubscriptionAllowedHosts(),
+                storeSettings(config));
+    }
+
+    /**
+     * @return every setting read by {@link BuildStores}
+     */
+    static List<Object> storeSettings(Config config) {
+        return Arrays.asList(config.getJenkinsLogStoreDirectory(), config.getJenkinsLogStoreMaxMb(),
+                config.getJenkinsLogIndexDirectory(), config.getJenkinsLogIndexMaxBuilds(),
+                config.getJenkinsBuildHistoryDirectory(), config.getJenkinsBuildHistoryMaxBuilds());
+    }
+
+    /**
+     * Service with the settings it has been built from
+     */
+    private static class Instance {
+        private final List<Object> settings;
+        private final JenkinsService service;
+
+        private Instance(Config config, JenkinsService service) {
+            this.settings = settings(config);
+            this.service = service;
+        }
+
+        private boolean isBuiltFrom(Config config) {
+            return settings.equals(settings(config));
+        }
+    }
+}
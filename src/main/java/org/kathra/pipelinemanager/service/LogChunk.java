@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Part of a console log read from a byte offset
+ *
+ * Offsets are byte offsets in the log as stored by Jenkins, {@link #getEnd()} is the offset to read the next part from.
+ * A part read from the {@link BuildLogStore} is not loaded on the heap, it is read by {@link #openText()}.
+ */
+public class LogChunk {
+
+    private final long start;
+    private final long end;
+    private final boolean moreData;
+    private final String text;
+    private final BuildLogStore.StoredLog stored;
+
+    public LogChunk(long start, long end, boolean moreData, String text) {
+        this.start = start;
+        this.end = end;
+        this.moreData = moreData;
+        this.text = text;
+        this.stored = null;
+    }
+
+    /**
+     * Part of a stored log, from an offset to its end
+     */
+    LogChunk(long start, BuildLogStore.StoredLog stored) {
+        this.start = start;
+        this.end = Math.max(start, stored.getSize());
+        this.moreData = false;
+        this.text = null;
+        this.stored = stored;
+    }
+
+    /**
+     * @return offset of the first byte of the text
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return offset following the last byte of the text, size of the log when it has been read
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return true while the build is running and the log may grow
+     */
+    public boolean isMoreData() {
+        return moreData;
+    }
+
+    /**
+     * @return text of the part, read whole if it comes from the log store
+     */
+    public String getText() {
+        if (stored == null) {
+            return text;
+        }
+        try (InputStream in = openText()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return text of the part, streamed from the log store if it comes from it
+     * @throws IOException
+     */
+    public InputStream openText() throws IOException {
+        if (stored != null) {
+            return stored.open(start);
+        }
+        return new ByteArrayInputStream(text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the whole log gzip compressed, as stored, null if the part is not a whole stored log
+     * @throws IOException
+     */
+    public InputStream openGzip() throws IOException {
+        return stored != null && start == 0 ? stored.openGzip() : null;
+    }
+}
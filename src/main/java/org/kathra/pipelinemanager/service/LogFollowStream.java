@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Console log of a build, read while it is written
+ *
+ * Each read of Jenkins starts at the offset where the previous one ended, so every byte of the log is transferred once.
+ * While nothing is appended, Jenkins is read again after a delay growing up to {@link #MAX_POLL_MS}.
+ * The stream ends when the build has finished and its log has been read, or when the deadline is reached:
+ * {@link #getOffset()} then gives the offset to resume from.
+ */
+class LogFollowStream extends InputStream {
+
+    static final long INITIAL_POLL_MS = 500;
+    static final long MAX_POLL_MS = 5000;
+
+    /**
+     * Reads the log from an offset
+     */
+    interface ChunkReader {
+        LogChunk read(long start) throws Exception;
+    }
+
+    private final ChunkReader reader;
+    private final long deadline;
+    private byte[] buffer = new byte[0];
+    private int position;
+    private long offset;
+    private long waitMs;
+    private boolean finished;
+    private volatile boolean closed;
+
+    /**
+     * @param reader reader of the log
+     * @param first first part of the log, read by the caller to report errors before streaming
+     * @param timeoutMs the stream ends after this delay, even if the build is still running
+     */
+    LogFollowStream(ChunkReader reader, LogChunk first, long timeoutMs) {
+        this.reader = reader;
+        this.offset = first.getStart();
+        this.deadline = System.currentTimeMillis() + timeoutMs;
+        accept(first);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.length - position);
+        System.arraycopy(buffer, position, bytes, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.length - position;
+    }
+
+    /**
+     * @return offset of the log following the last byte read from Jenkins
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Read Jenkins until bytes are available, the log is complete or the deadline is reached
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        while (position >= buffer.length) {
+            if (finished || closed || System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            LogChunk chunk;
+            try {
+                chunk = reader.read(offset);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Unable to read logs : " + e.getMessage(), e);
+            }
+            accept(chunk);
+            if (buffer.length > 0 || finished) {
+                waitMs = 0;
+                continue;
+            }
+            waitMs = waitMs == 0 ? INITIAL_POLL_MS : Math.min(MAX_POLL_MS, waitMs * 2);
+            try {
+                Thread.sleep(Math.max(0, Math.min(waitMs, deadline - System.currentTimeMillis())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while following logs");
+            }
+        }
+        return true;
+    }
+
+    private void accept(LogChunk chunk) {
+        finished = !chunk.isMoreData();
+        buffer = chunk.getText() == null ? new byte[0] : chunk.getText().getBytes(StandardCharsets.UTF_8);
+        position = 0;
+        offset = Math.max(offset, chunk.getEnd());
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+/**
+ * Build whose console log matches a {@link LogSearchQuery}
+ */
+public class LogSearchHit {
+
+    private final String path;
+    private final String buildNumber;
+    private final String branch;
+    private final long timestamp;
+    private String line;
+
+    public LogSearchHit(String path, String buildNumber, String branch, long timestamp) {
+        this.path = path;
+        this.buildNumber = buildNumber;
+        this.branch = branch;
+        this.timestamp = timestamp;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getBuildNumber() {
+        return buildNumber;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * @return start time of the build, in ms since epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return first line of the log matching the query, null if the log is no longer stored
+     */
+    public String getLine() {
+        return line;
+    }
+
+    public LogSearchHit line(String line) {
+        this.line = line;
+        return this;
+    }
+}
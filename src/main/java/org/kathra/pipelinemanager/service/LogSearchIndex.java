@@ -0,0 +1,919 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.kathra.pipelinemanager.metrics.Counter;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Inverted index of the terms of the console logs of finished builds
+ *
+ * New builds are indexed in memory, then flushed to an immutable segment file once {@link #FLUSH_POSTINGS} postings
+ * are buffered. A segment holds its terms sorted with the builds holding each term, only one term out of
+ * {@link #SPARSE_INTERVAL} is kept in memory to find the others on disk. Segments are merged into one when there are
+ * more than {@link #MAX_SEGMENTS}: the merged segment is written without lock, searches go on with the merged segments
+ * until it replaces them. The heap used only depends on the buffer, the builds indexed and the sparse terms.
+ *
+ * The builds of a deleted pipeline are dropped at once with a removal record appended to the builds file, their postings
+ * stay in the segments until the next merge, searches ignore them.
+ *
+ * The index holds at most maxBuilds builds, the oldest ones are dropped first. Builds are indexed on a single
+ * background thread, a build is skipped when too many are waiting, it is indexed on its next read.
+ * Terms are the words of letters, digits and '_', in lower case, of {@value #MIN_TERM_LENGTH} to
+ * {@value #MAX_TERM_LENGTH} characters. The index finds the builds holding every term of a query,
+ * phrases are checked by the caller on the logs.
+ */
+public class LogSearchIndex implements Closeable {
+
+    private static Logger logger = Logger.getLogger(LogSearchIndex.class);
+
+    static final int MIN_TERM_LENGTH = 2;
+    static final int MAX_TERM_LENGTH = 64;
+    static final int FLUSH_POSTINGS = 200_000;
+    static final int MAX_SEGMENTS = 8;
+    static final int SPARSE_INTERVAL = 64;
+    private static final int MAX_PENDING_BUILDS = 16;
+    private static final int SEGMENT_MAGIC = 0x4b4c5349;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+    private static final String BUILDS_FILE = "builds.dat";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // id of the record removing the builds of a pipeline from the builds file
+    private static final int REMOVED = -1;
+
+    private final Path directory;
+    private final int maxBuilds;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // one merge at a time, taken before the lock
+    private final Object mergeLock = new Object();
+    // indexed builds by id, oldest first
+    private final LinkedHashMap<Integer, Document> documents = new LinkedHashMap<>();
+    private final Map<String, Integer> documentIds = new HashMap<>();
+    private final List<Document> unflushed = new ArrayList<>();
+    private final TreeMap<String, List<Integer>> buffer = new TreeMap<>();
+    private int buffered;
+    private final List<Segment> segments = new ArrayList<>();
+    // pipelines removed since the last merge, their removal records are copied to the merged builds file
+    private final List<String> removedPaths = new ArrayList<>();
+    private int nextDocument;
+    private long nextSegment;
+    private final ThreadPoolExecutor indexer;
+
+    private final Counter indexed;
+    private final Counter skipped;
+
+    public LogSearchIndex(Path directory, int maxBuilds) {
+        this(directory, maxBuilds, MetricsRegistry.getDefault());
+    }
+
+    public LogSearchIndex(Path directory, int maxBuilds, MetricsRegistry registry) {
+        this.maxBuilds = maxBuilds;
+        this.directory = directory == null || maxBuilds < 1 ? null : open(directory);
+        this.indexed = registry.counter("kathra_log_index_builds_total", "Builds added to the log index");
+        this.skipped = registry.counter("kathra_log_index_skipped_total", "Builds not indexed, too many builds waiting");
+        this.indexer = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_PENDING_BUILDS),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kathra-log-indexer-%d").build(),
+                (task, executor) -> skipped.inc());
+        this.indexer.allowCoreThreadTimeOut(true);
+        registry.gauge("kathra_log_index_builds", "Builds in the log index", this::size);
+        registry.gauge("kathra_log_index_segments", "Segment files of the log index", this::getSegments);
+    }
+
+    /**
+     * Load the builds and the segments of a previous run
+     * @return directory, null if it cannot be used
+     */
+    private Path open(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            List<Path> segmentFiles = new ArrayList<>();
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        delete(file);
+                    } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                        segmentFiles.add(file);
+                    }
+                });
+            }
+            segmentFiles.sort(Comparator.comparingLong(LogSearchIndex::segmentNumber));
+            for (Path file : segmentFiles) {
+                segments.add(Segment.open(file));
+                nextSegment = segmentNumber(file) + 1;
+            }
+            Path builds = directory.resolve(BUILDS_FILE);
+            if (Files.exists(builds)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(builds)))) {
+                    while (true) {
+                        Document document;
+                        try {
+                            document = Document.read(in);
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        if (document.id == REMOVED) {
+                            unregister(document.path);
+                        } else {
+                            register(document);
+                            nextDocument = Math.max(nextDocument, document.id + 1);
+                        }
+                    }
+                }
+            }
+            return directory;
+        } catch (IOException e) {
+            logger.warn("Log index " + directory + " is disabled : " + e.getMessage());
+            segments.clear();
+            documents.clear();
+            documentIds.clear();
+            return null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Index the log of a finished build on the indexer thread, unless it is already indexed
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param branch branch built, may be null
+     * @param timestamp start time of the build
+     * @param log whole console log
+     */
+    public void addAsync(String path, String buildNumber, String branch, long timestamp, String log) {
+        if (!isEnabled() || log == null || contains(path, buildNumber)) {
+            return;
+        }
+        indexer.execute(() -> {
+            try {
+                add(path, buildNumber, branch, timestamp, log);
+            } catch (Exception e) {
+                logger.warn("Unable to index log of build " + buildNumber + " of " + path + " : " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Index the log of a finished build, unless it is already indexed
+     * @param path pipeline path
+     * @param buildNumber build number
+     * @param branch branch built, may be null
+     * @param timestamp start time of the build
+     * @param log whole console log
+     * @throws IOException if the buffer cannot be flushed
+     */
+    public void add(String path, String buildNumber, String branch, long timestamp, String log) throws IOException {
+        if (!isEnabled() || log == null || contains(path, buildNumber)) {
+            return;
+        }
+        // tokenized out of the lock
+        Set<String> terms = terms(log);
+        boolean merge = false;
+        lock.writeLock().lock();
+        try {
+            if (documentIds.containsKey(key(path, buildNumber))) {
+                return;
+            }
+            Document document = new Document(nextDocument++, path, buildNumber, branch == null ? "" : branch, timestamp);
+            register(document);
+            unflushed.add(document);
+            for (String term : terms) {
+                buffer.computeIfAbsent(term, t -> new ArrayList<>()).add(document.id);
+            }
+            buffered += terms.size();
+            indexed.inc();
+            if (buffered >= FLUSH_POSTINGS) {
+                merge = flushLocked();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (merge) {
+            merge();
+        }
+    }
+
+    /**
+     * Drop the builds of a pipeline, when it is deleted or created again.
+     * Their postings are purged from the segments by the next merge.
+     * @param path pipeline path
+     */
+    public void remove(String path) {
+        if (!isEnabled() || path == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int upTo = flushedUpTo();
+            unflushed.removeIf(document -> samePath(document.path, path));
+            if (unregister(path) < upTo) {
+                // builds already written to the builds file
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(BUILDS_FILE),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+                    Document.removal(path).write(out);
+                }
+                removedPaths.add(path);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to remove the builds of " + path + " from the log index : " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(String path, String buildNumber) {
+        lock.readLock().lock();
+        try {
+            return documentIds.containsKey(key(path, buildNumber));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the builds holding every term of a query and passing its filters
+     * @param query search
+     * @return matching builds, most recent first; phrases are not checked
+     * @throws IOException if a segment cannot be read
+     */
+    public List<LogSearchHit> search(LogSearchQuery query) throws IOException {
+        List<LogSearchHit> hits = new ArrayList<>();
+        if (!isEnabled()) {
+            return hits;
+        }
+        lock.readLock().lock();
+        try {
+            BitSet matching = null;
+            for (String term : query.getTerms()) {
+                BitSet holding = new BitSet();
+                List<Integer> inBuffer = buffer.get(term);
+                if (inBuffer != null) {
+                    inBuffer.forEach(holding::set);
+                }
+                for (Segment segment : segments) {
+                    for (int id : segment.postings(term)) {
+                        holding.set(id);
+                    }
+                }
+                if (matching == null) {
+                    matching = holding;
+                } else {
+                    matching.and(holding);
+                }
+                if (matching.isEmpty()) {
+                    return hits;
+                }
+            }
+            for (int id = matching.nextSetBit(0); id >= 0; id = matching.nextSetBit(id + 1)) {
+                Document document = documents.get(id);
+                if (document != null && query.accepts(document.path, document.branch, document.timestamp)) {
+                    hits.add(new LogSearchHit(document.path, document.buildNumber, document.branch.isEmpty() ? null : document.branch, document.timestamp));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        hits.sort(Comparator.comparingLong(LogSearchHit::getTimestamp).reversed());
+        return hits;
+    }
+
+    /**
+     * Write the buffered builds to a new segment
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        boolean merge;
+        lock.writeLock().lock();
+        try {
+            merge = flushLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (merge) {
+            merge();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getSegments() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flush the buffered builds, waiting for the builds being indexed
+     */
+    @Override
+    public void close() {
+        indexer.shutdown();
+        try {
+            indexer.awaitTermination(10, TimeUnit.SECONDS);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.warn("Unable to flush log index : " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if the segments should be merged
+     */
+    private boolean flushLocked() throws IOException {
+        if (unflushed.isEmpty()) {
+            return false;
+        }
+        List<Entry> entries = new ArrayList<>(buffer.size());
+        buffer.forEach((term, ids) -> entries.add(new Entry(term, ids.stream().mapToInt(Integer::intValue).toArray())));
+        segments.add(Segment.write(segmentFile(nextSegment++), entries.iterator()));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(BUILDS_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+            for (Document document : unflushed) {
+                document.write(out);
+            }
+        }
+        buffer.clear();
+        unflushed.clear();
+        buffered = 0;
+        return segments.size() > MAX_SEGMENTS;
+    }
+
+    /**
+     * Merge every segment into one, dropping the builds no longer indexed, and rewrite the builds file.
+     *
+     * The segments and the builds are read from a snapshot, the merged segment and the builds file are written
+     * without lock. The write lock is only held to swap the segments and to append the builds flushed meanwhile.
+     */
+    private void merge() throws IOException {
+        synchronized (mergeLock) {
+            List<Segment> merged;
+            Set<Integer> live;
+            List<Document> flushed = new ArrayList<>();
+            int flushedUpTo;
+            int removedUpTo;
+            long number;
+            lock.readLock().lock();
+            try {
+                if (segments.size() <= MAX_SEGMENTS) {
+                    return;
+                }
+                merged = new ArrayList<>(segments);
+                live = new HashSet<>(documents.keySet());
+                flushedUpTo = flushedUpTo();
+                removedUpTo = removedPaths.size();
+                for (Document document : documents.values()) {
+                    if (document.id < flushedUpTo) {
+                        flushed.add(document);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            // segments are only added by flushes, they never take the number of the merged segment
+            lock.writeLock().lock();
+            try {
+                number = nextSegment++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Segment segment = write(segmentFile(number), merged, live);
+            Path builds = directory.resolve(BUILDS_FILE);
+            Path temp = directory.resolve(BUILDS_FILE + TEMP_SUFFIX);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                for (Document document : flushed) {
+                    document.write(out);
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                // pipelines removed and builds flushed during the merge, already appended to the replaced file:
+                // the removals apply to the builds of the snapshot, the builds flushed meanwhile are still registered
+                int upTo = flushedUpTo();
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp, StandardOpenOption.APPEND)))) {
+                    for (String path : removedPaths.subList(removedUpTo, removedPaths.size())) {
+                        Document.removal(path).write(out);
+                    }
+                    for (Document document : documents.values()) {
+                        if (document.id >= flushedUpTo && document.id < upTo) {
+                            document.write(out);
+                        }
+                    }
+                }
+                Files.move(temp, builds, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                removedPaths.clear();
+                segments.removeAll(merged);
+                segments.add(0, segment);
+            } catch (IOException e) {
+                delete(segment.file);
+                throw e;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            // searches started before the swap have released the read lock
+            for (Segment old : merged) {
+                delete(old.file);
+            }
+        }
+    }
+
+    /**
+     * @return id of the first build not yet written to the builds file
+     */
+    private int flushedUpTo() {
+        return unflushed.isEmpty() ? nextDocument : unflushed.get(0).id;
+    }
+
+    /**
+     * Write the union of segments, keeping only the live builds
+     */
+    private static Segment write(Path file, List<Segment> merged, Set<Integer> live) throws IOException {
+        List<Segment.Reader> readers = new ArrayList<>();
+        try {
+            PriorityQueue<Segment.Reader> queue = new PriorityQueue<>(Comparator.comparing((Segment.Reader reader) -> reader.current.term));
+            for (Segment segment : merged) {
+                Segment.Reader reader = segment.reader();
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            Iterator<Entry> entries = new Iterator<Entry>() {
+                private Entry next = advance();
+
+                private Entry advance() {
+                    try {
+                        while (!queue.isEmpty()) {
+                            String term = queue.peek().current.term;
+                            BitSet ids = new BitSet();
+                            while (!queue.isEmpty() && queue.peek().current.term.equals(term)) {
+                                Segment.Reader reader = queue.poll();
+                                for (int id : reader.current.ids) {
+                                    if (live.contains(id)) {
+                                        ids.set(id);
+                                    }
+                                }
+                                if (reader.next()) {
+                                    queue.add(reader);
+                                }
+                            }
+                            if (!ids.isEmpty()) {
+                                return new Entry(term, ids.stream().toArray());
+                            }
+                        }
+                        return null;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Entry next() {
+                    Entry current = next;
+                    next = advance();
+                    return current;
+                }
+            };
+            try {
+                return Segment.write(file, entries);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } finally {
+            for (Segment.Reader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Register a build, dropping the oldest ones above the max builds
+     */
+    private void register(Document document) {
+        documents.put(document.id, document);
+        documentIds.put(key(document.path, document.buildNumber), document.id);
+        Iterator<Document> oldest = documents.values().iterator();
+        while (documents.size() > maxBuilds && oldest.hasNext()) {
+            Document dropped = oldest.next();
+            oldest.remove();
+            documentIds.remove(key(dropped.path, dropped.buildNumber));
+        }
+    }
+
+    /**
+     * Unregister the builds of a pipeline
+     * @return lowest id of the builds unregistered, {@link Integer#MAX_VALUE} if none
+     */
+    private int unregister(String path) {
+        int lowest = Integer.MAX_VALUE;
+        Iterator<Document> registered = documents.values().iterator();
+        while (registered.hasNext()) {
+            Document document = registered.next();
+            if (samePath(document.path, path)) {
+                registered.remove();
+                documentIds.remove(key(document.path, document.buildNumber));
+                lowest = Math.min(lowest, document.id);
+            }
+        }
+        return lowest;
+    }
+
+    private static boolean samePath(String path, String other) {
+        return StringUtils.strip(path, "/").equals(StringUtils.strip(other, "/"));
+    }
+
+    private Path segmentFile(long number) {
+        return directory.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String key(String path, String buildNumber) {
+        return path + "#" + buildNumber;
+    }
+
+    /**
+     * Terms of a text: words of letters, digits and '_', in lower case
+     * @param text text
+     * @return distinct terms
+     */
+    static Set<String> terms(CharSequence text) {
+        Set<String> terms = new HashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && isWordChar(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                int length = i - start;
+                if (length >= MIN_TERM_LENGTH && length <= MAX_TERM_LENGTH) {
+                    terms.add(text.subSequence(start, i).toString().toLowerCase());
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Unable to delete " + file + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Indexed build
+     */
+    private static class Document {
+        private final int id;
+        private final String path;
+        private final String buildNumber;
+        private final String branch;
+        private final long timestamp;
+
+        private Document(int id, String path, String buildNumber, String branch, long timestamp) {
+            this.id = id;
+            this.path = path;
+            this.buildNumber = buildNumber;
+            this.branch = branch;
+            this.timestamp = timestamp;
+        }
+
+        private static Document removal(String path) {
+            return new Document(REMOVED, path, null, null, 0);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(id);
+            out.writeUTF(path);
+            if (id != REMOVED) {
+                out.writeUTF(buildNumber);
+                out.writeUTF(branch);
+                out.writeLong(timestamp);
+            }
+        }
+
+        private static Document read(DataInputStream in) throws IOException {
+            int id = in.readInt();
+            if (id == REMOVED) {
+                return removal(in.readUTF());
+            }
+            return new Document(id, in.readUTF(), in.readUTF(), in.readUTF(), in.readLong());
+        }
+    }
+
+    /**
+     * Term with the ids of the builds holding it, in increasing order
+     */
+    private static class Entry {
+        private final String term;
+        private final int[] ids;
+
+        private Entry(String term, int[] ids) {
+            this.term = term;
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * Immutable segment file: entries sorted by term, then the sparse terms, then their offset and a magic number.
+     * Ids are written as variable length deltas.
+     */
+    private static class Segment {
+        private final Path file;
+        private final String[] sparseTerms;
+        private final long[] sparseOffsets;
+        private final long entriesEnd;
+
+        private Segment(Path file, String[] sparseTerms, long[] sparseOffsets, long entriesEnd) {
+            this.file = file;
+            this.sparseTerms = sparseTerms;
+            this.sparseOffsets = sparseOffsets;
+            this.entriesEnd = entriesEnd;
+        }
+
+        private static Segment write(Path file, Iterator<Entry> entries) throws IOException {
+            Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+            List<String> sparseTerms = new ArrayList<>();
+            List<Long> sparseOffsets = new ArrayList<>();
+            long entriesEnd;
+            try (CountingOutputStream counting = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)));
+                 DataOutputStream out = new DataOutputStream(counting)) {
+                int count = 0;
+                while (entries.hasNext()) {
+                    Entry entry = entries.next();
+                    if (count++ % SPARSE_INTERVAL == 0) {
+                        sparseTerms.add(entry.term);
+                        sparseOffsets.add(counting.count);
+                    }
+                    out.writeUTF(entry.term);
+                    writeVarInt(out, entry.ids.length);
+                    int previous = 0;
+                    for (int id : entry.ids) {
+                        writeVarInt(out, id - previous);
+                        previous = id;
+                    }
+                }
+                entriesEnd = counting.count;
+                out.writeInt(sparseTerms.size());
+                for (int i = 0; i < sparseTerms.size(); i++) {
+                    out.writeUTF(sparseTerms.get(i));
+                    out.writeLong(sparseOffsets.get(i));
+                }
+                out.writeLong(entriesEnd);
+                out.writeInt(SEGMENT_MAGIC);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new Segment(file, sparseTerms.toArray(new String[0]), sparseOffsets.stream().mapToLong(Long::longValue).toArray(), entriesEnd);
+        }
+
+        private static Segment open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES);
+                channel.read(trailer, channel.size() - trailer.capacity());
+                trailer.flip();
+                long entriesEnd = trailer.getLong();
+                if (trailer.getInt() != SEGMENT_MAGIC) {
+                    throw new IOException("Log index segment " + file.getFileName() + " is corrupted");
+                }
+                channel.position(entriesEnd);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+                String[] sparseTerms = new String[in.readInt()];
+                long[] sparseOffsets = new long[sparseTerms.length];
+                for (int i = 0; i < sparseTerms.length; i++) {
+                    sparseTerms[i] = in.readUTF();
+                    sparseOffsets[i] = in.readLong();
+                }
+                return new Segment(file, sparseTerms, sparseOffsets, entriesEnd);
+            }
+        }
+
+        /**
+         * @return ids of the builds holding the term, in increasing order
+         */
+        private int[] postings(String term) throws IOException {
+            int block = Arrays.binarySearch(sparseTerms, term);
+            if (block == -1) {
+                return new int[0];
+            }
+            block = block >= 0 ? block : -block - 2;
+            try (Reader reader = new Reader(sparseOffsets[block])) {
+                for (int i = 0; i < SPARSE_INTERVAL && reader.next(); i++) {
+                    int comparison = reader.current.term.compareTo(term);
+                    if (comparison == 0) {
+                        return reader.current.ids;
+                    } else if (comparison > 0) {
+                        break;
+                    }
+                }
+            }
+            return new int[0];
+        }
+
+        private Reader reader() throws IOException {
+            return new Reader(0);
+        }
+
+        /**
+         * Sequential reader of the entries of the segment
+         */
+        private class Reader implements Closeable {
+            private final FileChannel channel;
+            private final DataInputStream in;
+            private long position;
+            private Entry current;
+
+            private Reader(long offset) throws IOException {
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+                channel.position(offset);
+                position = offset;
+                in = new DataInputStream(new CountingInputStream(new BufferedInputStream(Channels.newInputStream(channel))));
+            }
+
+            private boolean next() throws IOException {
+                if (position >= entriesEnd) {
+                    current = null;
+                    return false;
+                }
+                String term = in.readUTF();
+                int[] ids = new int[readVarInt(in)];
+                int previous = 0;
+                for (int i = 0; i < ids.length; i++) {
+                    previous += readVarInt(in);
+                    ids[i] = previous;
+                }
+                current = new Entry(term, ids);
+                return true;
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+
+            /**
+             * Counts the bytes consumed, above the buffer, to stop at the end of the entries
+             */
+            private class CountingInputStream extends InputStream {
+                private final InputStream delegate;
+
+                private CountingInputStream(InputStream delegate) {
+                    this.delegate = delegate;
+                }
+
+                @Override
+                public int read() throws IOException {
+                    int read = delegate.read();
+                    if (read >= 0) {
+                        position++;
+                    }
+                    return read;
+                }
+
+                @Override
+                public int read(byte[] bytes, int off, int len) throws IOException {
+                    int read = delegate.read(bytes, off, len);
+                    if (read > 0) {
+                        position += read;
+                    }
+                    return read;
+                }
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            out.write(bytes, off, len);
+            count += len;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed log index segment");
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Search of the console logs of finished builds
+ *
+ * The text holds terms and quoted phrases, a build matches when its log holds every term and every phrase,
+ * ignoring case. Builds can be filtered by folder, branch and start time.
+ */
+public final class LogSearchQuery {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]*)\"");
+
+    private final Set<String> terms;
+    private final List<String> phrases;
+    private String folder;
+    private String branch;
+    private long from;
+    private long to = Long.MAX_VALUE;
+    private int limit = DEFAULT_LIMIT;
+
+    private LogSearchQuery(Set<String> terms, List<String> phrases) {
+        this.terms = terms;
+        this.phrases = phrases;
+    }
+
+    /**
+     * Parse a search text
+     * @param text terms and quoted phrases, as: upload "Could not transfer artifact"
+     * @return query
+     * @throws IllegalArgumentException if the text holds no term
+     */
+    public static LogSearchQuery parse(String text) {
+        if (StringUtils.isBlank(text))
+            throw new IllegalArgumentException("Search text must be specified.");
+        List<String> phrases = new ArrayList<>();
+        Matcher matcher = PHRASE.matcher(text);
+        while (matcher.find()) {
+            String phrase = matcher.group(1).trim().toLowerCase();
+            if (!phrase.isEmpty()) {
+                phrases.add(phrase);
+            }
+        }
+        // the words of phrases are terms too, to find the candidate builds in the index
+        Set<String> terms = new LinkedHashSet<>(LogSearchIndex.terms(text.replace('"', ' ')));
+        if (terms.isEmpty())
+            throw new IllegalArgumentException("Search text '" + text + "' holds no searchable term.");
+        return new LogSearchQuery(Collections.unmodifiableSet(terms), Collections.unmodifiableList(phrases));
+    }
+
+    /**
+     * @param folder only builds of pipelines in this folder, if defined
+     */
+    public LogSearchQuery folder(String folder) {
+        this.folder = StringUtils.isBlank(folder) ? null : StringUtils.strip(folder.trim(), "/");
+        return this;
+    }
+
+    /**
+     * @param branch only builds of this branch, if defined
+     */
+    public LogSearchQuery branch(String branch) {
+        this.branch = StringUtils.isBlank(branch) ? null : branch;
+        return this;
+    }
+
+    /**
+     * @param from only builds started at or after this time, in ms since epoch, if defined
+     */
+    public LogSearchQuery from(Long from) {
+        this.from = from == null ? 0 : from;
+        return this;
+    }
+
+    /**
+     * @param to only builds started at or before this time, in ms since epoch, if defined
+     */
+    public LogSearchQuery to(Long to) {
+        this.to = to == null ? Long.MAX_VALUE : to;
+        return this;
+    }
+
+    /**
+     * @param limit max number of builds, {@value #DEFAULT_LIMIT} by default, at most {@value #MAX_LIMIT}
+     */
+    public LogSearchQuery limit(Integer limit) {
+        if (limit != null && limit < 1)
+            throw new IllegalArgumentException("Search limit must be positive.");
+        this.limit = limit == null ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        return this;
+    }
+
+    public Set<String> getTerms() {
+        return terms;
+    }
+
+    public List<String> getPhrases() {
+        return phrases;
+    }
+
+    public String getFolder() {
+        return folder;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return true if the build passes the folder, branch and time filters
+     */
+    boolean accepts(String path, String buildBranch, long timestamp) {
+        String pipeline = StringUtils.strip(path, "/");
+        if (folder != null && !(pipeline.equals(folder) || pipeline.startsWith(folder + "/"))) {
+            return false;
+        }
+        if (branch != null && !branch.equals(buildBranch)) {
+            return false;
+        }
+        return timestamp >= from && timestamp <= to;
+    }
+
+    /**
+     * @param line line of a log, lower case
+     * @return true if the line holds a phrase, or a term when the query has no phrase
+     */
+    boolean matches(String line) {
+        if (!phrases.isEmpty()) {
+            return phrases.stream().anyMatch(line::contains);
+        }
+        return LogSearchIndex.terms(line).stream().anyMatch(terms::contains);
+    }
+}
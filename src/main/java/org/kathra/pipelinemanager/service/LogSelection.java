@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Part of the console log returned with a {@link org.kathra.core.model.Build}
+ *
+ * Values are parsed from "none", "full", "tail:&lt;lines&gt;" or "bytes:&lt;bytes&gt;".
+ */
+public final class LogSelection {
+
+    public enum Mode {
+        /** Metadata only, no log transferred */
+        NONE,
+        /** Last lines of the log */
+        TAIL_LINES,
+        /** Last bytes of the log */
+        TAIL_BYTES,
+        /** Whole log */
+        FULL
+    }
+
+    public static final LogSelection NONE = new LogSelection(Mode.NONE, 0);
+    public static final LogSelection FULL = new LogSelection(Mode.FULL, 0);
+
+    private final Mode mode;
+    private final long limit;
+
+    private LogSelection(Mode mode, long limit) {
+        this.mode = mode;
+        this.limit = limit;
+    }
+
+    public static LogSelection tailLines(int lines) {
+        if (lines < 1)
+            throw new IllegalArgumentException("Log lines must be positive");
+        return new LogSelection(Mode.TAIL_LINES, lines);
+    }
+
+    public static LogSelection tailBytes(long bytes) {
+        if (bytes < 1)
+            throw new IllegalArgumentException("Log bytes must be positive");
+        return new LogSelection(Mode.TAIL_BYTES, bytes);
+    }
+
+    /**
+     * Parse a log selection
+     * @param value "none", "full", "tail:&lt;lines&gt;" or "bytes:&lt;bytes&gt;"
+     * @param defaultSelection selection used when value is empty
+     * @return log selection
+     * @throws IllegalArgumentException if value is malformed
+     */
+    public static LogSelection parse(String value, LogSelection defaultSelection) {
+        if (StringUtils.isBlank(value))
+            return defaultSelection;
+        String trimmed = value.trim().toLowerCase();
+        try {
+            if (trimmed.equals("none")) {
+                return NONE;
+            } else if (trimmed.equals("full")) {
+                return FULL;
+            } else if (trimmed.startsWith("tail:")) {
+                return tailLines(Integer.parseInt(trimmed.substring("tail:".length())));
+            } else if (trimmed.startsWith("bytes:")) {
+                return tailBytes(Long.parseLong(trimmed.substring("bytes:".length())));
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new IllegalArgumentException("Logs selection '" + value + "' is invalid, expected none, full, tail:<lines> or bytes:<bytes>");
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return number of lines or bytes to return for tail selections
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Keep the last lines of a log part
+     * @param text log part
+     * @param lines number of lines to keep
+     * @param partial true if text does not start at the beginning of the log, its first line is then incomplete
+     * @return last lines, null if text holds less than lines complete lines and is partial
+     */
+    static String lastLines(String text, long lines, boolean partial) {
+        int start = text.endsWith("\n") ? text.length() - 1 : text.length();
+        for (long found = 0; found < lines; found++) {
+            start = text.lastIndexOf('\n', start - 1);
+            if (start < 0) {
+                return partial ? null : text;
+            }
+        }
+        return text.substring(start + 1);
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case TAIL_LINES:
+                return "tail:" + limit;
+            case TAIL_BYTES:
+                return "bytes:" + limit;
+            default:
+                return mode.name().toLowerCase();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.kathra.core.model.Pipeline;
+
+/**
+ * Result of the creation of a pipeline within a batch
+ */
+public class PipelineCreation {
+
+    public enum Status {
+        /** Job created */
+        CREATED,
+        /** Job already existing, left unchanged */
+        EXISTING,
+        /** Job not created, see the error */
+        FAILED
+    }
+
+    private final Pipeline pipeline;
+    private final Status status;
+    private final String error;
+
+    private PipelineCreation(Pipeline pipeline, Status status, String error) {
+        this.pipeline = pipeline;
+        this.status = status;
+        this.error = error;
+    }
+
+    static PipelineCreation created(Pipeline pipeline) {
+        return new PipelineCreation(pipeline, Status.CREATED, null);
+    }
+
+    static PipelineCreation existing(Pipeline pipeline) {
+        return new PipelineCreation(pipeline, Status.EXISTING, null);
+    }
+
+    static PipelineCreation failed(Pipeline pipeline, Throwable error) {
+        return new PipelineCreation(pipeline, Status.FAILED, error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage());
+    }
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if the pipeline exists once the batch is done
+     */
+    public boolean isSuccess() {
+        return status != Status.FAILED;
+    }
+
+    /**
+     * @return error preventing the creation, null otherwise
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Job template compiled once into literal and placeholder segments.
+ *
+ * Placeholders are written <code>${name}</code>, names are made of letters, digits, '_', '-' and '.'.
+ * A malformed placeholder fails when the template is compiled. Values are escaped for XML and the
+ * template is rendered in a single pass into a buffer of the final size. A placeholder without value
+ * is kept as is and reported.
+ */
+public class PipelineTemplate {
+
+    private static Logger logger = Logger.getLogger(PipelineTemplate.class);
+
+    private static final Pattern PLACEHOLDER_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_.-]*");
+
+    private final String name;
+    /** literal segments, literals[i] precedes placeholders[i], the last literal ends the template */
+    private final String[] literals;
+    private final String[] placeholders;
+    private final int literalsLength;
+    private final Set<String> placeholderNames;
+
+    private PipelineTemplate(String name, List<String> literals, List<String> placeholders) {
+        this.name = name;
+        this.literals = literals.toArray(new String[0]);
+        this.placeholders = placeholders.toArray(new String[0]);
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalsLength = length;
+        this.placeholderNames = Collections.unmodifiableSet(new LinkedHashSet<>(placeholders));
+    }
+
+    /**
+     * Compile a template
+     * @param name template name, used in errors
+     * @param source template content
+     * @return compiled template
+     * @throws IllegalArgumentException if a placeholder is malformed
+     */
+    public static PipelineTemplate compile(String name, String source) {
+        if (source == null)
+            throw new IllegalArgumentException("Template " + name + " not found");
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int position = 0;
+        int start;
+        while ((start = source.indexOf("${", position)) >= 0) {
+            int end = source.indexOf('}', start + 2);
+            if (end < 0) {
+                throw new IllegalArgumentException("Template " + name + " : placeholder at offset " + start + " is not closed");
+            }
+            String placeholder = source.substring(start + 2, end);
+            if (!PLACEHOLDER_NAME.matcher(placeholder).matches()) {
+                throw new IllegalArgumentException("Template " + name + " : placeholder '" + placeholder + "' at offset " + start + " is invalid");
+            }
+            literals.add(source.substring(position, start));
+            placeholders.add(placeholder);
+            position = end + 1;
+        }
+        literals.add(source.substring(position));
+        return new PipelineTemplate(name, literals, placeholders);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return names of the placeholders, in order of appearance
+     */
+    public Set<String> getPlaceholders() {
+        return placeholderNames;
+    }
+
+    /**
+     * Render the template
+     * @param values placeholder values, escaped for XML
+     * @return rendered template
+     */
+    public String render(Map<String, ?> values) {
+        String[] rendered = new String[placeholders.length];
+        int length = literalsLength;
+        List<String> missing = null;
+        for (int i = 0; i < placeholders.length; i++) {
+            Object value = values == null ? null : values.get(placeholders[i]);
+            if (value == null) {
+                rendered[i] = "${" + placeholders[i] + "}";
+                if (missing == null) {
+                    missing = new ArrayList<>();
+                }
+                missing.add(placeholders[i]);
+            } else {
+                rendered[i] = escapeXml(value.toString());
+            }
+            length += rendered[i].length();
+        }
+        if (missing != null) {
+            logger.warn("Template " + name + " : no value for placeholders " + missing);
+        }
+
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < placeholders.length; i++) {
+            builder.append(literals[i]).append(rendered[i]);
+        }
+        return builder.append(literals[placeholders.length]).toString();
+    }
+
+    /**
+     * Escape a value for XML text and attributes
+     * @param value value
+     * @return escaped value, the value itself when nothing has to be escaped
+     */
+    static String escapeXml(String value) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement;
+            switch (c) {
+                case '&': replacement = "&amp;"; break;
+                case '<': replacement = "&lt;"; break;
+                case '>': replacement = "&gt;"; break;
+                case '"': replacement = "&quot;"; break;
+                case '\'': replacement = "&apos;"; break;
+                default: replacement = null;
+            }
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(c);
+                }
+            }
+        }
+        return escaped == null ? value : escaped.toString();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.kathra.core.model.Build;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Build submitted to the Jenkins queue.
+ *
+ * The queue id is known as soon as the build is triggered, the build number once Jenkins has started it.
+ */
+public class QueuedBuild {
+
+    private final long queueId;
+    private final String path;
+    private final CompletableFuture<Build> build = new CompletableFuture<>();
+
+    public QueuedBuild(long queueId, String path) {
+        this.queueId = queueId;
+        this.path = path;
+    }
+
+    public long getQueueId() {
+        return queueId;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return build number, null while the build is waiting in the queue
+     */
+    public String getBuildNumber() {
+        Build started = getBuild();
+        return started == null ? null : started.getBuildNumber();
+    }
+
+    /**
+     * @return started build, null while the build is waiting in the queue or if it could not start
+     */
+    public Build getBuild() {
+        return build.isDone() && !build.isCompletedExceptionally() ? build.join() : null;
+    }
+
+    /**
+     * @return error preventing the build to start, null otherwise
+     */
+    public String getError() {
+        if (!build.isCompletedExceptionally()) {
+            return null;
+        }
+        try {
+            build.join();
+            return null;
+        } catch (Exception e) {
+            return e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+        }
+    }
+
+    /**
+     * @return future completed once the build has started
+     */
+    public CompletableFuture<Build> future() {
+        return build;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a task for each item of a batch with at most {@code maxConcurrency} tasks in flight.
+ *
+ * A new task starts when a previous one completes, no thread waits for a free slot.
+ */
+public class BoundedExecutor {
+
+    /**
+     * Task applied to an item
+     * @param <T> item type
+     * @param <R> result type
+     */
+    @FunctionalInterface
+    public interface Task<T, R> {
+        R apply(T item) throws Exception;
+    }
+
+    private final int maxConcurrency;
+    private final Executor executor;
+
+    /**
+     * Bounded executor running tasks on the shared Jenkins pool
+     * @param maxConcurrency max tasks in flight
+     */
+    public BoundedExecutor(int maxConcurrency) {
+        this(maxConcurrency, Schedulers.jenkins());
+    }
+
+    public BoundedExecutor(int maxConcurrency, Executor executor) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.executor = executor;
+    }
+
+    /**
+     * Start a task for each item
+     * @param items items
+     * @param task task applied to each item
+     * @param <T> item type
+     * @param <R> result type
+     * @return results, in the order of the items
+     */
+    public <T, R> List<CompletableFuture<R>> submitAll(List<T> items, Task<T, R> task) {
+        List<CompletableFuture<R>> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            results.add(new CompletableFuture<>());
+        }
+        AtomicInteger next = new AtomicInteger();
+        for (int i = 0; i < Math.min(maxConcurrency, items.size()); i++) {
+            startNext(items, task, results, next);
+        }
+        return results;
+    }
+
+    private <T, R> void startNext(List<T> items, Task<T, R> task, List<CompletableFuture<R>> results, AtomicInteger next) {
+        int index;
+        while ((index = next.getAndIncrement()) < items.size()) {
+            int current = index;
+            try {
+                executor.execute(() -> {
+                    try {
+                        results.get(current).complete(task.apply(items.get(current)));
+                    } catch (Throwable e) {
+                        results.get(current).completeExceptionally(e);
+                    } finally {
+                        startNext(items, task, results, next);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                results.get(current).completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Wait for every result
+     * @param results results
+     * @param <R> result type
+     * @return values, in the order of the results
+     * @throws Exception error of the first failed result, once all results are completed
+     */
+    public static <R> List<R> awaitAll(List<CompletableFuture<R>> results) throws Exception {
+        List<R> values = new ArrayList<>(results.size());
+        Throwable error = null;
+        for (CompletableFuture<R> result : results) {
+            try {
+                values.add(result.get());
+            } catch (ExecutionException e) {
+                values.add(null);
+                if (error == null) {
+                    error = Errors.unwrap(e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+        }
+        if (error instanceof Exception) {
+            throw (Exception) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.utils;
+
+import org.apache.log4j.Logger;
+import org.kathra.pipelinemanager.metrics.Counter;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+
+/**
+ * Circuit breaker protecting calls to a remote service.
+ *
+ * <ul>
+ *     <li>CLOSED: calls go through, the breaker opens after {@code failureThreshold} consecutive failures</li>
+ *     <li>OPEN: calls are rejected at once with {@link CircuitBreakerOpenException} during {@code openDurationMs}</li>
+ *     <li>HALF_OPEN: up to {@code probeCalls} calls probe the service, the breaker closes when they all succeed
+ *     and opens again on the first failure</li>
+ * </ul>
+ *
+ * Probes only count in the half-open period they were allowed in: a probe still in flight when the breaker
+ * opens again is ignored by the next half-open period.
+ *
+ * A breaker with a failure threshold lower than 1 is disabled and never opens.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static Logger logger = Logger.getLogger(CircuitBreaker.class);
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDurationMs;
+    private final int probeCalls;
+    private final Predicate<Throwable> isFailure;
+    private final MetricsRegistry registry;
+    private final Counter rejected;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+    private long halfOpenPeriod;
+
+    /**
+     * Circuit breaker counting as failures the errors for which {@link Errors#isRetryable(Throwable)} is true
+     * @param name breaker name, used as metric label
+     * @param failureThreshold consecutive failures opening the breaker, lower than 1 to disable
+     * @param openDurationMs duration of the open state before probing
+     * @param probeCalls calls allowed in the half-open state
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openDurationMs, int probeCalls) {
+        this(name, failureThreshold, openDurationMs, probeCalls, Errors::isRetryable, MetricsRegistry.getDefault());
+    }
+
+    public CircuitBreaker(String name, int failureThreshold, long openDurationMs, int probeCalls,
+                          Predicate<Throwable> isFailure, MetricsRegistry registry) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+        this.probeCalls = Math.max(1, probeCalls);
+        this.isFailure = isFailure;
+        this.registry = registry;
+        this.rejected = registry.counter("kathra_circuit_breaker_rejected_total", "Calls rejected by an open circuit breaker", "name", name);
+        registry.gauge("kathra_circuit_breaker_state", "Circuit breaker state (0: closed, 1: open, 2: half-open)",
+                () -> getState().ordinal(), "name", name);
+    }
+
+    /**
+     * Execute the call through the breaker
+     * @param call remote call
+     * @param <T> result type
+     * @return call result
+     * @throws CircuitBreakerOpenException if the breaker rejects the call
+     * @throws Exception error of the call
+     */
+    public <T> T call(Callable<T> call) throws Exception {
+        if (failureThreshold < 1) {
+            return call.call();
+        }
+        long probe = acquire();
+        try {
+            T result = call.call();
+            onSuccess(probe);
+            return result;
+        } catch (Throwable e) {
+            if (isFailure.test(e)) {
+                onFailure(probe);
+            } else {
+                onSuccess(probe);
+            }
+            throw e;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Allow or reject a call
+     * @return half-open period of the call if it is a probe, 0 otherwise
+     * @throws CircuitBreakerOpenException if the call is rejected
+     */
+    private synchronized long acquire() throws CircuitBreakerOpenException {
+        if (state == State.OPEN) {
+            long remaining = openedAt + openDurationMs - System.currentTimeMillis();
+            if (remaining > 0) {
+                rejected.inc();
+                throw new CircuitBreakerOpenException("Jenkins is unavailable, calls are suspended for " + remaining
+                        + " ms (circuit breaker '" + name + "' is open)", remaining);
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight + probeSuccesses >= probeCalls) {
+                rejected.inc();
+                throw new CircuitBreakerOpenException("Jenkins is recovering, calls are limited to " + probeCalls
+                        + " probes (circuit breaker '" + name + "' is half-open)", openDurationMs);
+            }
+            probesInFlight++;
+            return halfOpenPeriod;
+        }
+        return 0;
+    }
+
+    private synchronized void onSuccess(long probe) {
+        if (probe != 0) {
+            if (isCurrentProbe(probe)) {
+                probesInFlight--;
+                if (++probeSuccesses >= probeCalls) {
+                    transition(State.CLOSED);
+                }
+            }
+        } else if (state == State.CLOSED) {
+            consecutiveFailures = 0;
+        }
+    }
+
+    private synchronized void onFailure(long probe) {
+        if (probe != 0) {
+            if (isCurrentProbe(probe)) {
+                transition(State.OPEN);
+            }
+        } else if (state == State.CLOSED && ++consecutiveFailures >= failureThreshold) {
+            transition(State.OPEN);
+        }
+    }
+
+    private boolean isCurrentProbe(long probe) {
+        return state == State.HALF_OPEN && probe == halfOpenPeriod;
+    }
+
+    private void transition(State newState) {
+        logger.warn("Circuit breaker '" + name + "' : " + state + " -> " + newState);
+        registry.counter("kathra_circuit_breaker_transitions_total", "Circuit breaker state transitions",
+                "name", name, "from", state.name(), "to", newState.name()).inc();
+        state = newState;
+        consecutiveFailures = 0;
+        probeSuccesses = 0;
+        probesInFlight = 0;
+        if (newState == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        } else if (newState == State.HALF_OPEN) {
+            halfOpenPeriod++;
+        }
+    }
+}
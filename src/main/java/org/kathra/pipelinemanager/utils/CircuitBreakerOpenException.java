@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.utils;
+
+import org.kathra.utils.KathraException;
+
+/**
+ * Call rejected without being executed because the circuit breaker is open.
+ * Reported as service unavailable, with a hint of when the call can be retried.
+ */
+public class CircuitBreakerOpenException extends KathraException {
+
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    private final long retryAfterMs;
+
+    /**
+     * @param message error message
+     * @param retryAfterMs delay before the breaker lets calls through again
+     */
+    public CircuitBreakerOpenException(String message, long retryAfterMs) {
+        super(message);
+        this.retryAfterMs = Math.max(0, retryAfterMs);
+        errorCode(ErrorCode.SERVICE_UNAVAILABLE);
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    /**
+     * @return delay before retrying, in whole seconds as expected by the Retry-After header
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfterMs + 999) / 1000);
+    }
+}
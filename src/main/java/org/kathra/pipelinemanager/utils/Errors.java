@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.utils;
+
+import javassist.NotFoundException;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.kathra.utils.ApiException;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Classification of the errors raised while calling Jenkins
+ */
+public final class Errors {
+
+    private Errors() {
+    }
+
+    /**
+     * Remove the wrappers added by futures
+     * @param throwable error
+     * @return root error of the asynchronous execution
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        Throwable current = throwable;
+        while ((current instanceof CompletionException || current instanceof ExecutionException) && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+
+    /**
+     * Client errors (bad arguments, missing rights, conflicts, 4xx...) fail the same way whatever the number of attempts
+     * @param throwable error
+     * @return true if the request itself is wrong
+     */
+    public static boolean isClientError(Throwable throwable) {
+        Throwable e = unwrap(throwable);
+        if (e instanceof IllegalArgumentException || e instanceof IllegalAccessException || e instanceof NotFoundException) {
+            return true;
+        } else if (e instanceof IllegalStateException) {
+            return e.getMessage() != null && e.getMessage().matches(".*Pipeline.*already existing.*");
+        } else if (e instanceof HttpResponseException) {
+            return isClientErrorStatus(((HttpResponseException) e).getStatusCode());
+        } else if (e instanceof ApiException) {
+            return isClientErrorStatus(((ApiException) e).getCode());
+        }
+        return false;
+    }
+
+    /**
+     * Errors worth another attempt: everything except client errors and calls rejected by an open circuit breaker
+     * @param throwable error
+     * @return true if the same request may succeed later
+     */
+    public static boolean isRetryable(Throwable throwable) {
+        return !isClientError(throwable) && !(unwrap(throwable) instanceof CircuitBreakerOpenException);
+    }
+
+    /**
+     * Status of a failed call, used as metric label
+     * @param throwable error
+     * @return HTTP status code when known, otherwise the kind of error ("timeout", "io", "circuit_open" or "error")
+     */
+    public static String getStatus(Throwable throwable) {
+        Throwable e = unwrap(throwable);
+        if (e instanceof HttpResponseException) {
+            return String.valueOf(((HttpResponseException) e).getStatusCode());
+        } else if (e instanceof ApiException) {
+            return String.valueOf(((ApiException) e).getCode());
+        } else if (e instanceof IllegalArgumentException) {
+            return String.valueOf(HttpStatus.SC_BAD_REQUEST);
+        } else if (e instanceof NotFoundException) {
+            return String.valueOf(HttpStatus.SC_NOT_FOUND);
+        } else if (e instanceof CircuitBreakerOpenException) {
+            return "circuit_open";
+        } else if (e instanceof SocketTimeoutException || e instanceof HttpTimeoutException) {
+            return "timeout";
+        } else if (e instanceof IOException) {
+            return "io";
+        }
+        return "error";
+    }
+
+    private static boolean isClientErrorStatus(int status) {
+        return status >= 400 && status < 500
+                && status != HttpStatus.SC_REQUEST_TIMEOUT
+                && status != 429;
+    }
+}
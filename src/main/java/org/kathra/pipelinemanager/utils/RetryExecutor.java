@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.utils;
+
+import org.apache.log4j.Logger;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Retries a task with exponential backoff and jitter without blocking any thread between attempts.
+ *
+ * Attempts run on the worker executor, waits are timers of the scheduler.
+ * No retry is done for non retryable errors, after the last attempt or when the next attempt
+ * would start after the maximum retry duration.
+ * Tasks in progress may be limited: beyond the limit, tasks are rejected at once instead of waiting in the worker queue.
+ */
+public class RetryExecutor {
+
+    private static Logger logger = Logger.getLogger(RetryExecutor.class);
+
+    private final int maxAttempts;
+    private final long initialDelayMs;
+    private final long maxDelayMs;
+    private final long maxDurationMs;
+    private final Predicate<Throwable> retryable;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final MetricsRegistry registry;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Retry executor using shared executors and {@link Errors#isRetryable(Throwable)}
+     * @param maxAttempts maximum attempts, at least one attempt is done
+     * @param initialDelayMs wait before the second attempt, doubled for each attempt
+     * @param maxDelayMs maximum wait between two attempts
+     * @param maxDurationMs maximum duration from the first attempt to the start of the last one
+     */
+    public RetryExecutor(int maxAttempts, long initialDelayMs, long maxDelayMs, long maxDurationMs) {
+        this(maxAttempts, initialDelayMs, maxDelayMs, maxDurationMs, 0);
+    }
+
+    /**
+     * Retry executor using shared executors and {@link Errors#isRetryable(Throwable)}, limiting the tasks in progress
+     * @param maxAttempts maximum attempts, at least one attempt is done
+     * @param initialDelayMs wait before the second attempt, doubled for each attempt
+     * @param maxDelayMs maximum wait between two attempts
+     * @param maxDurationMs maximum duration from the first attempt to the start of the last one
+     * @param maxPending tasks in progress, including their waits between attempts, 0 for no limit
+     */
+    public RetryExecutor(int maxAttempts, long initialDelayMs, long maxDelayMs, long maxDurationMs, int maxPending) {
+        this(maxAttempts, initialDelayMs, maxDelayMs, maxDurationMs, Errors::isRetryable, Schedulers.scheduler(), Schedulers.jenkins(),
+                MetricsRegistry.getDefault(), maxPending);
+    }
+
+    public RetryExecutor(int maxAttempts, long initialDelayMs, long maxDelayMs, long maxDurationMs,
+                         Predicate<Throwable> retryable, ScheduledExecutorService scheduler, Executor executor) {
+        this(maxAttempts, initialDelayMs, maxDelayMs, maxDurationMs, retryable, scheduler, executor, MetricsRegistry.getDefault());
+    }
+
+    public RetryExecutor(int maxAttempts, long initialDelayMs, long maxDelayMs, long maxDurationMs,
+                         Predicate<Throwable> retryable, ScheduledExecutorService scheduler, Executor executor, MetricsRegistry registry) {
+        this(maxAttempts, initialDelayMs, maxDelayMs, maxDurationMs, retryable, scheduler, executor, registry, 0);
+    }
+
+    public RetryExecutor(int maxAttempts, long initialDelayMs, long maxDelayMs, long maxDurationMs,
+                         Predicate<Throwable> retryable, ScheduledExecutorService scheduler, Executor executor, MetricsRegistry registry, int maxPending) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialDelayMs = Math.max(0, initialDelayMs);
+        this.maxDelayMs = Math.max(this.initialDelayMs, maxDelayMs);
+        this.maxDurationMs = maxDurationMs;
+        this.retryable = retryable;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.registry = registry;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Execute the task until it succeeds or fails definitively
+     * @param operation operation description used for logs and as metric label
+     * @param task task to execute
+     * @param <T> task result type
+     * @return result of the first successful attempt, or the error of the last one
+     */
+    public <T> CompletableFuture<T> execute(String operation, Callable<T> task) {
+        return execute(operation, operation, task);
+    }
+
+    /**
+     * Execute the task until it succeeds or fails definitively
+     * @param operation operation name, label of the retry counter
+     * @param description operation description used for logs
+     * @param task task to execute
+     * @param <T> task result type
+     * @return result of the first successful attempt, or the error of the last one,
+     * {@link RejectedExecutionException} if too many tasks are in progress
+     */
+    public <T> CompletableFuture<T> execute(String operation, String description, Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (maxPending > 0) {
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                result.completeExceptionally(new RejectedExecutionException("Unable to " + description + ", " + maxPending + " operations are already in progress."));
+                return result;
+            }
+            result.whenComplete((value, error) -> pending.decrementAndGet());
+        }
+        long deadline = System.currentTimeMillis() + maxDurationMs;
+        submit(operation, description, task, result, 0, deadline);
+        return result;
+    }
+
+    private <T> void submit(String operation, String description, Callable<T> task, CompletableFuture<T> result, int attempt, long deadline) {
+        try {
+            executor.execute(() -> attempt(operation, description, task, result, attempt, deadline));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private <T> void attempt(String operation, String description, Callable<T> task, CompletableFuture<T> result, int attempt, long deadline) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            result.complete(task.call());
+        } catch (Throwable e) {
+            long wait = delay(attempt);
+            int nextAttempt = attempt + 1;
+            if (!retryable.test(e) || nextAttempt >= maxAttempts || System.currentTimeMillis() + wait > deadline) {
+                result.completeExceptionally(e);
+                return;
+            }
+            logger.warn("Unable to " + description + ", wait " + wait + " ms and retry (" + nextAttempt + "/" + maxAttempts + ") : " + e.getMessage());
+            registry.counter("kathra_retries_total", "Attempts retried after a transient error", "operation", operation).inc();
+            try {
+                scheduler.schedule(() -> submit(operation, description, task, result, nextAttempt, deadline), wait, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException rejected) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Exponential backoff with equal jitter: half of the wait is fixed, the other half is random
+     * @param attempt attempt that just failed, starting from 0
+     * @return wait in milliseconds before the next attempt
+     */
+    long delay(int attempt) {
+        long exponential = initialDelayMs << Math.min(attempt, 30);
+        long capped = Math.min(maxDelayMs, exponential < 0 ? maxDelayMs : exponential);
+        long half = capped / 2;
+        return half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executors shared by the whole application.
+ *
+ * The scheduler only fires timers and must never run blocking code.
+ * Blocking Jenkins calls run on their own pool, whose queue is bounded: beyond it, tasks are rejected
+ * with {@link java.util.concurrent.RejectedExecutionException} instead of piling up behind a slow Jenkins.
+ * The worker pool runs the other background tasks (disk compaction, notifications, service retirement).
+ */
+public final class Schedulers {
+
+    private static final int SCHEDULER_THREADS = 2;
+    private static final int WORKER_THREADS = 16;
+    private static final int JENKINS_THREADS = 32;
+    private static final int JENKINS_QUEUE = 1000;
+
+    private static final ScheduledExecutorService scheduler = createScheduler();
+    private static final ExecutorService workers = createWorkers();
+    private static final ExecutorService jenkins = createJenkins();
+
+    private Schedulers() {
+    }
+
+    /**
+     * Timer executor, tasks submitted here must be short and non-blocking
+     * @return shared scheduler
+     */
+    public static ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Pool running background tasks which do not call Jenkins
+     * @return shared worker pool
+     */
+    public static ExecutorService workers() {
+        return workers;
+    }
+
+    /**
+     * Bounded pool running blocking calls to Jenkins, rejecting tasks when its queue is full
+     * @return shared Jenkins pool
+     */
+    public static ExecutorService jenkins() {
+        return jenkins;
+    }
+
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(SCHEDULER_THREADS,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kathra-jenkins-scheduler-%d").build());
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static ExecutorService createWorkers() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kathra-jenkins-worker-%d").build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ExecutorService createJenkins() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(JENKINS_THREADS, JENKINS_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(JENKINS_QUEUE),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kathra-jenkins-io-%d").build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
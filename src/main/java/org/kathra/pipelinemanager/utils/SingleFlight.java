@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.utils;
+
+import org.kathra.pipelinemanager.metrics.Counter;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces identical concurrent calls.
+ *
+ * The first call for a key executes, the calls for the same key arriving while it is in flight wait for it
+ * and receive its result, or its error. Once the call completes, the next call for the key executes again:
+ * nothing is cached.
+ *
+ * @param <K> key identifying identical calls
+ * @param <V> result type
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter coalesced;
+
+    /**
+     * @param name name of the coalesced operation, used as metric label
+     */
+    public SingleFlight(String name) {
+        this(name, MetricsRegistry.getDefault());
+    }
+
+    public SingleFlight(String name, MetricsRegistry registry) {
+        this.executed = registry.counter("kathra_single_flight_executed_total", "Calls executed, not coalesced", "operation", name);
+        this.coalesced = registry.counter("kathra_single_flight_coalesced_total", "Calls sharing the result of an identical call in flight", "operation", name);
+    }
+
+    /**
+     * Execute the call, or wait for the identical call in flight
+     * @param key call key
+     * @param call call to execute
+     * @return call result, shared by the coalesced callers
+     * @throws Exception error of the call
+     */
+    public V execute(K key, Callable<V> call) throws Exception {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.inc();
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                Throwable error = Errors.unwrap(e);
+                if (error instanceof Exception) {
+                    throw (Exception) error;
+                } else if (error instanceof Error) {
+                    throw (Error) error;
+                }
+                throw e;
+            }
+        }
+        executed.inc();
+        try {
+            V result = call.call();
+            flight.complete(result);
+            return result;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * @return number of keys with a call in flight
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.controller;
+
+import org.apache.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.kathra.core.model.Build;
+import org.kathra.pipelinemanager.Config;
+import org.kathra.pipelinemanager.service.BuildStores;
+import org.kathra.pipelinemanager.service.FakeJenkins;
+import org.kathra.pipelinemanager.service.JenkinsService;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of {@linkplain PipelineManagerController} against {@linkplain FakeJenkins}.
+ *
+ * Requests are sent at a fixed rate whatever the response times (open loop), the latency of a request is measured
+ * from the time it was scheduled, so that queueing in the service is part of it. Only run when requested:
+ * <pre>
+ * mvn test -Dtest=PipelineManagerLoadTest -Dkathra.loadtest=true [-Dkathra.loadtest.rps=50] [-Dkathra.loadtest.durationSeconds=20]
+ *     [-Dkathra.loadtest.jenkinsLatencyMs=20] [-Dkathra.loadtest.jenkinsErrorRate=0] [-Dkathra.loadtest.pipelines=20]
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "kathra.loadtest", matches = "true")
+class PipelineManagerLoadTest {
+
+    private static Logger logger = Logger.getLogger(PipelineManagerLoadTest.class);
+
+    private static final String ROOT = "loadtest";
+    private static final int BUILDS_PER_PIPELINE = 20;
+    private static final int LOG_LINES = 2000;
+
+    private final int rps = Integer.getInteger("kathra.loadtest.rps", 50);
+    private final int durationSeconds = Integer.getInteger("kathra.loadtest.durationSeconds", 20);
+    private final int jenkinsLatencyMs = Integer.getInteger("kathra.loadtest.jenkinsLatencyMs", 20);
+    private final double jenkinsErrorRate = Double.parseDouble(System.getProperty("kathra.loadtest.jenkinsErrorRate", "0"));
+    private final int pipelines = Integer.getInteger("kathra.loadtest.pipelines", 20);
+
+    private FakeJenkins jenkins;
+    private BuildStores stores;
+    private JenkinsService jenkinsService;
+    private PipelineManagerController underTest;
+
+    @BeforeEach
+    void setUpEach() throws Exception {
+        jenkins = new FakeJenkins();
+        StringBuilder log = new StringBuilder();
+        for (int line = 0; line < LOG_LINES; line++) {
+            log.append("[INFO] Building line ").append(line).append('\n');
+        }
+        jenkins.buildLog(log.toString());
+        List<String> permissions = new ArrayList<>();
+        for (int member = 0; member < 20; member++) {
+            permissions.add("hudson.model.Item.Read:group-" + member);
+            permissions.add("hudson.model.View.Read:group-" + member);
+        }
+        for (int pipeline = 0; pipeline < pipelines; pipeline++) {
+            jenkins.folder(teamPath(pipeline), FakeJenkins.folderXml(permissions));
+            jenkins.job(pipelinePath(pipeline), "<flow-definition/>");
+            for (int build = 0; build < BUILDS_PER_PIPELINE; build++) {
+                jenkins.build(pipelinePath(pipeline), build % 5 == 0 ? "FAILURE" : "SUCCESS", log.toString());
+            }
+        }
+
+        Config config = Mockito.mock(Config.class);
+        Mockito.when(config.getJenkinsUrl()).thenReturn(jenkins.getUrl());
+        Mockito.when(config.getJenkinsAccountName()).thenReturn("kathra");
+        Mockito.when(config.getJenkinsAccountApiToken()).thenReturn("token");
+        Mockito.when(config.getJenkinsHttpConnectTimeoutMs()).thenReturn(10000);
+        Mockito.when(config.getJenkinsHttpReadTimeoutMs()).thenReturn(60000);
+        Mockito.when(config.getJenkinsHttpMaxRequestsPerRoute()).thenReturn(20);
+        stores = new BuildStores(config);
+        jenkinsService = new JenkinsService(config, stores);
+        underTest = new PipelineManagerController(jenkinsService);
+
+        jenkins.latency(jenkinsLatencyMs, jenkinsLatencyMs / 2).errorRate(jenkinsErrorRate, 503);
+        jenkins.resetStatistics();
+    }
+
+    @AfterEach
+    void tearDownEach() {
+        jenkinsService.close();
+        stores.close();
+        jenkins.close();
+    }
+
+    private String teamPath(int pipeline) {
+        return ROOT + "/team-" + (pipeline % 5);
+    }
+
+    private String pipelinePath(int pipeline) {
+        return teamPath(pipeline) + "/app-" + pipeline;
+    }
+
+    @Test
+    public void given_target_rps_when_mixed_operations_then_reports_throughput_and_latency() throws Exception {
+        // operation => weight
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        mix.put("getMemberships", 30);
+        mix.put("getBuilds", 30);
+        mix.put("getBuild", 30);
+        mix.put("createBuild", 10);
+        List<String> operations = new ArrayList<>();
+        mix.forEach((operation, weight) -> operations.addAll(Collections.nCopies(weight, operation)));
+
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        mix.keySet().forEach(operation -> stats.put(operation, new Stats()));
+        Random random = new Random(42);
+        ExecutorService workers = Executors.newCachedThreadPool();
+        long interval = TimeUnit.SECONDS.toNanos(1) / rps;
+        int total = rps * durationSeconds;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long scheduled = start + i * interval;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            String operation = operations.get(random.nextInt(operations.size()));
+            int pipeline = random.nextInt(pipelines);
+            int build = 1 + random.nextInt(BUILDS_PER_PIPELINE);
+            workers.execute(() -> {
+                Stats operationStats = stats.get(operation);
+                try {
+                    execute(operation, pipeline, build);
+                    operationStats.latencies.add(System.nanoTime() - scheduled);
+                } catch (Exception e) {
+                    operationStats.errors.incrementAndGet();
+                }
+            });
+        }
+        workers.shutdown();
+        boolean completed = workers.awaitTermination(2, TimeUnit.MINUTES);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        report(stats, total, elapsedSeconds);
+        Assertions.assertTrue(completed, "requests still running after 2 minutes");
+        int done = stats.values().stream().mapToInt(s -> s.latencies.size() + s.errors.get()).sum();
+        Assertions.assertEquals(total, done);
+        if (jenkinsErrorRate == 0) {
+            Assertions.assertEquals(0, stats.values().stream().mapToInt(s -> s.errors.get()).sum());
+        }
+    }
+
+    private void execute(String operation, int pipeline, int build) throws Exception {
+        switch (operation) {
+            case "getMemberships":
+                underTest.getMemberships(teamPath(pipeline));
+                break;
+            case "getBuilds":
+                underTest.getBuilds(pipelinePath(pipeline), null, 5, "none");
+                break;
+            case "getBuild":
+                underTest.getBuild(pipelinePath(pipeline), String.valueOf(build), "tail:100");
+                break;
+            case "createBuild":
+                underTest.createBuild(new Build().path(pipelinePath(pipeline)));
+                break;
+            default:
+                throw new IllegalArgumentException(operation);
+        }
+    }
+
+    private void report(Map<String, Stats> stats, int total, double elapsedSeconds) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%nLoad test: target %d rps for %d s, Jenkins latency %d ms, Jenkins error rate %.3f%n",
+                rps, durationSeconds, jenkinsLatencyMs, jenkinsErrorRate));
+        report.append(String.format("%-16s %8s %8s %10s %10s %10s %10s%n", "operation", "ok", "errors", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        int ok = 0;
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            long[] latencies = entry.getValue().sorted();
+            ok += latencies.length;
+            report.append(String.format("%-16s %8d %8d %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(), latencies.length, entry.getValue().errors.get(),
+                    percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99), percentile(latencies, 1.0)));
+        }
+        report.append(String.format("throughput %.1f rps (%d of %d requests succeeded in %.1f s)%n", ok / elapsedSeconds, ok, total, elapsedSeconds));
+        report.append(String.format("Jenkins: %d requests, %.2f per operation, %d in flight at most, %d injected failures%n",
+                jenkins.getTotalRequests(), (double) jenkins.getTotalRequests() / total, jenkins.getMaxInFlight(), jenkins.getInjectedFailures()));
+        report.append("Jenkins requests by endpoint: ").append(jenkins.getRequestsByEndpoint()).append('\n');
+        logger.info(report);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static class Stats {
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger errors = new AtomicInteger();
+
+        private long[] sorted() {
+            long[] values = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(values);
+            return values;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.controller;
+
+import javassist.NotFoundException;
+import org.apache.http.HttpStatus;
+import org.kathra.pipelinemanager.utils.CircuitBreakerOpenException;
+import org.kathra.utils.KathraException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Test class {@linkplain RouteErrors}
+ */
+class RouteErrorsTest {
+
+    @Test
+    public void given_errors_when_getStatus_then_mapped_to_http_statuses() {
+        Assertions.assertEquals(HttpStatus.SC_BAD_REQUEST, RouteErrors.getStatus(new NumberFormatException("abc")));
+        Assertions.assertEquals(HttpStatus.SC_UNAUTHORIZED, RouteErrors.getStatus(new IllegalAccessException("denied")));
+        Assertions.assertEquals(HttpStatus.SC_NOT_FOUND, RouteErrors.getStatus(new NotFoundException("unknown")));
+        Assertions.assertEquals(HttpStatus.SC_CONFLICT, RouteErrors.getStatus(new IllegalStateException("Pipeline with name app is already existing")));
+        Assertions.assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, RouteErrors.getStatus(new IllegalStateException("Build history is disabled")));
+        Assertions.assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, RouteErrors.getStatus(new RejectedExecutionException("too many operations")));
+        Assertions.assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, RouteErrors.getStatus(new CircuitBreakerOpenException("open", 1000)));
+        Assertions.assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, RouteErrors.getStatus(new IOException("broken")));
+    }
+
+    @Test
+    public void given_errors_when_getErrorCode_then_matches_http_statuses() {
+        Assertions.assertEquals(KathraException.ErrorCode.BAD_REQUEST, RouteErrors.getErrorCode(new IllegalArgumentException("invalid")));
+        Assertions.assertEquals(KathraException.ErrorCode.CONFLICT, RouteErrors.getErrorCode(new IllegalStateException("Pipeline with name app is already existing")));
+        Assertions.assertEquals(KathraException.ErrorCode.SERVICE_UNAVAILABLE, RouteErrors.getErrorCode(new IllegalStateException("Log index is disabled")));
+        Assertions.assertEquals(KathraException.ErrorCode.INTERNAL_SERVER_ERROR, RouteErrors.getErrorCode(new IOException("broken")));
+    }
+}
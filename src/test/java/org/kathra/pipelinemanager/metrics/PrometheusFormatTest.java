@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class {@linkplain PrometheusFormat}
+ */
+class PrometheusFormatTest {
+
+    @Test
+    public void given_metrics_when_write_then_exposition_format() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("kathra_test_total", "Test calls", "operation", "get\"Job").inc(3);
+        registry.counter("kathra_test_total", "Test calls", "operation", "createJob").inc();
+        registry.gauge("kathra_test_in_flight", "Calls in progress", () -> 2);
+        Histogram histogram = registry.histogram("kathra_test_duration_seconds", "Test latency", "operation", "getJob");
+        histogram.observe(0.004);
+        histogram.observe(0.2);
+        histogram.observe(500);
+
+        String text = PrometheusFormat.write(registry.getMetrics());
+
+        Assertions.assertEquals(1, count(text, "# TYPE kathra_test_total counter"));
+        Assertions.assertTrue(text.contains("kathra_test_total{operation=\"get\\\"Job\"} 3\n"));
+        Assertions.assertTrue(text.contains("kathra_test_total{operation=\"createJob\"} 1\n"));
+        Assertions.assertTrue(text.contains("# TYPE kathra_test_in_flight gauge\nkathra_test_in_flight 2\n"));
+        Assertions.assertTrue(text.contains("# TYPE kathra_test_duration_seconds histogram\n"));
+        Assertions.assertTrue(text.contains("kathra_test_duration_seconds_bucket{operation=\"getJob\",le=\"0.0025\"} 0\n"));
+        Assertions.assertTrue(text.contains("kathra_test_duration_seconds_bucket{operation=\"getJob\",le=\"0.005\"} 1\n"));
+        Assertions.assertTrue(text.contains("kathra_test_duration_seconds_bucket{operation=\"getJob\",le=\"0.2\"} 2\n"));
+        Assertions.assertTrue(text.contains("kathra_test_duration_seconds_bucket{operation=\"getJob\",le=\"120\"} 2\n"));
+        Assertions.assertTrue(text.contains("kathra_test_duration_seconds_bucket{operation=\"getJob\",le=\"+Inf\"} 3\n"));
+        Assertions.assertTrue(text.contains("kathra_test_duration_seconds_count{operation=\"getJob\"} 3\n"));
+        Assertions.assertTrue(text.contains("kathra_test_duration_seconds_sum{operation=\"getJob\"} 500.204\n"));
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        int index = text.indexOf(part);
+        while (index >= 0) {
+            count++;
+            index = text.indexOf(part, index + 1);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.metrics;
+
+import org.apache.http.client.HttpResponseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test class {@linkplain RequestMetrics}
+ */
+class RequestMetricsTest {
+
+    private MetricsRegistry registry;
+    private RequestMetrics underTest;
+
+    @BeforeEach
+    void setUpEach() {
+        registry = new MetricsRegistry();
+        underTest = new RequestMetrics("kathra_test", "Test calls", registry);
+    }
+
+    @Test
+    public void given_calls_when_record_then_latency_and_errors_by_status() throws Exception {
+        Assertions.assertEquals("job", underTest.record("getJob", () -> "job"));
+        Assertions.assertThrows(HttpResponseException.class, () -> underTest.record("getJob", () -> {
+            throw new HttpResponseException(404, "Not Found");
+        }));
+
+        Assertions.assertEquals(2, registry.histogram("kathra_test_duration_seconds", "", "operation", "getJob").getCount());
+        Assertions.assertEquals(1, registry.counter("kathra_test_errors_total", "", "operation", "getJob", "status", "404").get());
+        Assertions.assertEquals(0, inFlight("getJob"));
+    }
+
+    @Test
+    public void given_call_in_progress_when_collect_then_in_flight() throws Exception {
+        underTest.record("createJob", () -> {
+            Assertions.assertEquals(1, inFlight("createJob"));
+            return null;
+        });
+        Assertions.assertEquals(0, inFlight("createJob"));
+    }
+
+    @Test
+    public void given_async_error_status_when_recordAsync_then_counted_as_error() {
+        CompletableFuture<Integer> response = new CompletableFuture<>();
+
+        CompletableFuture<Integer> result = underTest.recordAsync("GET", () -> response, status -> status);
+        Assertions.assertEquals(1, inFlight("GET"));
+        response.complete(503);
+
+        Assertions.assertEquals(503, result.join().intValue());
+        Assertions.assertEquals(0, inFlight("GET"));
+        Assertions.assertEquals(1, registry.counter("kathra_test_errors_total", "", "operation", "GET", "status", "503").get());
+    }
+
+    private double inFlight(String operation) {
+        return registry.getMetrics().stream()
+                .filter(metric -> metric.getName().equals("kathra_test_in_flight") && operation.equals(metric.getLabels().get("operation")))
+                .mapToDouble(metric -> ((Gauge) metric).get())
+                .findFirst().orElse(-1);
+    }
+}
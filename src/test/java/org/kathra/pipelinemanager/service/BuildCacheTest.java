@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.kathra.core.model.Build;
+import org.kathra.core.model.BuildArgument;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class {@linkplain BuildCache}
+ */
+class BuildCacheTest {
+
+    private static final String PATH = "my-group1/my-group2/my-artifact";
+
+    private MetricsRegistry registry;
+
+    @BeforeEach
+    void setUpEach() {
+        registry = new MetricsRegistry();
+    }
+
+    private long counter(String name) {
+        return registry.counter(name, "").get();
+    }
+
+    private Build build(int number, Build.StatusEnum status, String logs) {
+        return new Build().buildNumber(String.valueOf(number)).status(status).duration(1000).creationDate(1500000000000L).logs(logs);
+    }
+
+    @Test
+    public void given_finished_build_when_get_then_returns_copy_from_cache() {
+        BuildCache underTest = new BuildCache(10, 1024 * 1024, registry);
+        underTest.put(PATH, build(3, Build.StatusEnum.SUCCESS, "line 1\nline 2\n"), LogSelection.FULL);
+
+        Build cached = underTest.get("/" + PATH + "/", "3", LogSelection.FULL);
+        Assertions.assertEquals("3", cached.getBuildNumber());
+        Assertions.assertEquals(Build.StatusEnum.SUCCESS, cached.getStatus());
+        Assertions.assertEquals("line 1\nline 2\n", cached.getLogs());
+
+        Assertions.assertNull(underTest.get(PATH, "3", LogSelection.NONE).getLogs());
+        Assertions.assertEquals("line 2\n", underTest.get(PATH, "3", LogSelection.tailLines(1)).getLogs());
+        Assertions.assertEquals("2\n", underTest.get(PATH, "3", LogSelection.tailBytes(2)).getLogs());
+        Assertions.assertEquals(4, counter("kathra_build_cache_hits_total"));
+
+        cached.setLogs("modified");
+        Assertions.assertEquals("line 1\nline 2\n", underTest.get(PATH, "3", LogSelection.FULL).getLogs());
+    }
+
+    @Test
+    public void given_build_arguments_when_get_then_returns_copies() {
+        BuildCache underTest = new BuildCache(10, 1024 * 1024, registry);
+        BuildArgument argument = new BuildArgument().key("GIT_BRANCH").value("dev");
+        underTest.put(PATH, build(5, Build.StatusEnum.SUCCESS, null).addBuildArgumentsItem(argument), LogSelection.NONE);
+
+        Build cached = underTest.get(PATH, "5", LogSelection.NONE);
+        Assertions.assertEquals(1, cached.getBuildArguments().size());
+        Assertions.assertNotSame(argument, cached.getBuildArguments().get(0));
+
+        cached.getBuildArguments().clear();
+        Assertions.assertEquals(1, underTest.get(PATH, "5", LogSelection.NONE).getBuildArguments().size());
+    }
+
+    @Test
+    public void given_running_build_when_put_then_not_cached() {
+        BuildCache underTest = new BuildCache(10, 1024 * 1024, registry);
+        underTest.put(PATH, build(4, Build.StatusEnum.PROCESSING, null), LogSelection.NONE);
+
+        Assertions.assertNull(underTest.get(PATH, "4", LogSelection.NONE));
+        Assertions.assertEquals(0, underTest.size());
+        Assertions.assertEquals(1, counter("kathra_build_cache_misses_total"));
+    }
+
+    @Test
+    public void given_build_cached_without_logs_when_get_with_logs_then_miss() {
+        BuildCache underTest = new BuildCache(10, 1024 * 1024, registry);
+        underTest.put(PATH, build(3, Build.StatusEnum.FAILED, null), LogSelection.NONE);
+
+        Assertions.assertNull(underTest.get(PATH, "3", LogSelection.FULL));
+        Assertions.assertNotNull(underTest.get(PATH, "3", LogSelection.NONE));
+    }
+
+    @Test
+    public void given_max_entries_reached_when_put_then_evicts_least_recently_used() {
+        BuildCache underTest = new BuildCache(2, 1024 * 1024, registry);
+        underTest.put(PATH, build(1, Build.StatusEnum.SUCCESS, null), LogSelection.NONE);
+        underTest.put(PATH, build(2, Build.StatusEnum.SUCCESS, null), LogSelection.NONE);
+        underTest.get(PATH, "1", LogSelection.NONE);
+        underTest.put(PATH, build(3, Build.StatusEnum.SUCCESS, null), LogSelection.NONE);
+
+        Assertions.assertEquals(2, underTest.size());
+        Assertions.assertNotNull(underTest.get(PATH, "1", LogSelection.NONE));
+        Assertions.assertNull(underTest.get(PATH, "2", LogSelection.NONE));
+        Assertions.assertEquals(1, counter("kathra_build_cache_evictions_total"));
+    }
+
+    @Test
+    public void given_max_bytes_reached_when_put_then_evicts_until_under_limit() {
+        long maxBytes = 2 * BuildCache.ENTRY_OVERHEAD_BYTES + 200;
+        BuildCache underTest = new BuildCache(100, maxBytes, registry);
+        String logs = new String(new char[60]).replace('\0', 'x');
+        underTest.put(PATH, build(1, Build.StatusEnum.SUCCESS, logs), LogSelection.FULL);
+        underTest.put(PATH, build(2, Build.StatusEnum.SUCCESS, logs), LogSelection.FULL);
+
+        Assertions.assertEquals(1, underTest.size());
+        Assertions.assertTrue(underTest.getBytes() <= maxBytes);
+        Assertions.assertNotNull(underTest.get(PATH, "2", LogSelection.FULL));
+    }
+
+    @Test
+    public void given_disabled_cache_when_put_then_nothing_cached() {
+        BuildCache underTest = new BuildCache(0, 0, registry);
+        underTest.put(PATH, build(1, Build.StatusEnum.SUCCESS, null), LogSelection.NONE);
+
+        Assertions.assertFalse(underTest.isEnabled());
+        Assertions.assertNull(underTest.get(PATH, "1", LogSelection.NONE));
+    }
+
+    @Test
+    public void given_pipeline_invalidated_when_get_then_its_builds_are_gone() {
+        BuildCache underTest = new BuildCache(10, 1024 * 1024, registry);
+        underTest.put(PATH, build(1, Build.StatusEnum.SUCCESS, "log\n"), LogSelection.FULL);
+        underTest.put(PATH + "-other", build(1, Build.StatusEnum.SUCCESS, null), LogSelection.NONE);
+
+        underTest.invalidate("/" + PATH);
+
+        Assertions.assertNull(underTest.get(PATH, "1", LogSelection.NONE));
+        Assertions.assertNotNull(underTest.get(PATH + "-other", "1", LogSelection.NONE));
+        Assertions.assertEquals(BuildCache.ENTRY_OVERHEAD_BYTES, underTest.getBytes());
+    }
+
+    @Test
+    public void given_tail_bytes_within_character_when_get_then_starts_on_character_boundary() {
+        BuildCache underTest = new BuildCache(10, 1024 * 1024, registry);
+        underTest.put(PATH, build(1, Build.StatusEnum.SUCCESS, "d\u00e9j\u00e0 fait"), LogSelection.FULL);
+
+        Assertions.assertEquals(" fait", underTest.get(PATH, "1", LogSelection.tailBytes(6)).getLogs());
+        Assertions.assertEquals("\u00e0 fait", underTest.get(PATH, "1", LogSelection.tailBytes(7)).getLogs());
+    }
+}
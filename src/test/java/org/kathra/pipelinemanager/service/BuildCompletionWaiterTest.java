@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import javassist.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class {@linkplain BuildCompletionWaiter}
+ */
+class BuildCompletionWaiterTest {
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUpEach() {
+        scheduler = Executors.newScheduledThreadPool(1);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDownEach() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private BuildCompletionWaiter newWaiter(BuildCompletionWaiter.BuildsReader reader) {
+        return new BuildCompletionWaiter(reader, scheduler, executor, new MetricsRegistry());
+    }
+
+    private static BuildSummary build(int number, boolean building) {
+        BuildSummary build = new BuildSummary();
+        build.setNumber(number);
+        build.setBuilding(building);
+        build.setResult(building ? null : "SUCCESS");
+        return build;
+    }
+
+    /**
+     * Builds from the newest down to the oldest, limited to the number of builds read
+     */
+    private static List<BuildSummary> builds(int newest, int oldest, int size, boolean building) {
+        List<BuildSummary> builds = new ArrayList<>();
+        for (int number = newest; number >= oldest && builds.size() < size; number--) {
+            builds.add(build(number, building));
+        }
+        return builds;
+    }
+
+    @Test
+    public void given_many_waiters_on_one_job_when_builds_finish_then_read_job_once_per_poll() throws Exception {
+        AtomicInteger reads = new AtomicInteger();
+        BuildCompletionWaiter underTest = newWaiter((path, size) -> builds(5, 1, size, reads.incrementAndGet() == 1));
+
+        List<CompletableFuture<BuildSummary>> waiters = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            waiters.add(underTest.await("group/pipeline", 1 + i % 5, 10000));
+        }
+
+        for (int i = 0; i < waiters.size(); i++) {
+            BuildSummary build = waiters.get(i).get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(1 + i % 5, build.getNumber());
+            Assertions.assertEquals("SUCCESS", build.getResult());
+        }
+        Assertions.assertEquals(2, reads.get());
+    }
+
+    @Test
+    public void given_running_build_when_deadline_reached_then_returns_last_state() throws Exception {
+        BuildCompletionWaiter underTest = newWaiter((path, size) -> builds(3, 1, size, true));
+
+        BuildSummary build = underTest.await("group/pipeline", 3, 300).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(3, build.getNumber());
+        Assertions.assertTrue(build.isBuilding());
+    }
+
+    @Test
+    public void given_build_not_started_when_deadline_reached_then_returns_null() throws Exception {
+        BuildCompletionWaiter underTest = newWaiter((path, size) -> builds(3, 1, size, true));
+
+        Assertions.assertNull(underTest.await("group/pipeline", 4, 300).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void given_missing_build_when_await_then_not_found() throws Exception {
+        BuildCompletionWaiter underTest = newWaiter((path, size) -> Arrays.asList(build(5, false), build(4, false)));
+
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                () -> underTest.await("group/pipeline", 1, 10000).get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof NotFoundException);
+    }
+
+    @Test
+    public void given_old_build_when_await_then_widens_builds_read() throws Exception {
+        List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        BuildCompletionWaiter underTest = newWaiter((path, size) -> {
+            sizes.add(size);
+            return builds(200, 1, size, false);
+        });
+
+        BuildSummary build = underTest.await("group/pipeline", 150, 10000).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(150, build.getNumber());
+        Assertions.assertEquals(Arrays.asList(10, 40, 100), sizes);
+    }
+
+    @Test
+    public void given_waiters_done_when_next_poll_then_poller_stops() throws Exception {
+        BuildCompletionWaiter underTest = newWaiter((path, size) -> builds(1, 1, size, false));
+
+        underTest.await("group/pipeline", 1, 10000).get(5, TimeUnit.SECONDS);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (underTest.getPollers() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        Assertions.assertEquals(0, underTest.getPollers());
+        Assertions.assertEquals(0, underTest.getWaiters());
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kathra.core.model.Build;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Test class {@linkplain BuildHistoryStore}
+ */
+class BuildHistoryStoreTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUpEach() throws IOException {
+        directory = Files.createTempDirectory("build-history");
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private BuildHistoryStore newStore(int maxBuilds) {
+        // compactions run at once, on the recording thread
+        return new BuildHistoryStore(directory, maxBuilds, new MetricsRegistry(), Runnable::run);
+    }
+
+    private static Build build(int number, Build.StatusEnum status, long creationDate) {
+        return new Build().buildNumber(String.valueOf(number)).status(status).duration(1000).creationDate(creationDate);
+    }
+
+    private static List<String> numbers(List<Build> builds) {
+        return builds.stream().map(Build::getBuildNumber).collect(Collectors.toList());
+    }
+
+    private long fileSize() throws IOException {
+        return Files.size(directory.resolve(BuildHistoryStore.FILE_NAME));
+    }
+
+    @Test
+    public void given_recorded_builds_when_query_then_filtered_by_branch_and_time_most_recent_first() {
+        try (BuildHistoryStore store = newStore(100)) {
+            for (int number = 1; number <= 6; number++) {
+                store.record("/team/app/", build(number, Build.StatusEnum.SUCCESS, number * 1000L), number % 2 == 0 ? "dev" : "master");
+            }
+            store.record("team/other", build(1, Build.StatusEnum.FAILED, 500), "master");
+
+            Assertions.assertEquals(List.of("6", "5", "4", "3", "2", "1"), numbers(store.query("team/app", null, null, null, 10)));
+            Assertions.assertEquals(List.of("5", "3", "1"), numbers(store.query("team/app", "master", null, null, 10)));
+            Assertions.assertEquals(List.of("4", "3"), numbers(store.query("team/app", null, 3000L, 4000L, 10)));
+            Assertions.assertEquals(List.of("6", "4"), numbers(store.query("team/app", "dev", null, null, 2)));
+            Assertions.assertTrue(store.query("team/app", "release", null, null, 10).isEmpty());
+            Assertions.assertEquals(Build.StatusEnum.FAILED, store.get("team/other", 1).getStatus());
+        }
+    }
+
+    @Test
+    public void given_unchanged_build_when_record_then_not_written_again() throws IOException {
+        try (BuildHistoryStore store = newStore(100)) {
+            store.record("team/app", build(1, Build.StatusEnum.PROCESSING, 1000), "master");
+            long size = fileSize();
+
+            store.record("team/app", build(1, Build.StatusEnum.PROCESSING, 1000), "master");
+            Assertions.assertEquals(size, fileSize());
+
+            store.record("team/app", build(1, Build.StatusEnum.SUCCESS, 1000), "master");
+            Assertions.assertTrue(fileSize() > size);
+            Assertions.assertEquals(Build.StatusEnum.SUCCESS, store.get("team/app", 1).getStatus());
+            Assertions.assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    public void given_history_file_when_reopened_then_builds_reloaded() {
+        try (BuildHistoryStore store = newStore(100)) {
+            store.record("team/app", build(1, Build.StatusEnum.PROCESSING, 1000), "master");
+            store.record("team/app", build(1, Build.StatusEnum.FAILED, 1000), "master");
+            store.record("team/app", build(2, Build.StatusEnum.SUCCESS, 2000), "dev");
+        }
+
+        try (BuildHistoryStore store = newStore(100)) {
+            Assertions.assertEquals(2, store.size());
+            Assertions.assertEquals(Build.StatusEnum.FAILED, store.get("team/app", 1).getStatus());
+            Assertions.assertEquals(List.of("2"), numbers(store.query("team/app", "dev", null, null, 10)));
+        }
+    }
+
+    @Test
+    public void given_record_cut_by_crash_when_reopened_then_dropped_and_appends_resume() throws IOException {
+        try (BuildHistoryStore store = newStore(100)) {
+            store.record("team/app", build(1, Build.StatusEnum.SUCCESS, 1000), "master");
+            store.record("team/app", build(2, Build.StatusEnum.SUCCESS, 2000), "master");
+        }
+        try (FileChannel channel = FileChannel.open(directory.resolve(BuildHistoryStore.FILE_NAME), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (BuildHistoryStore store = newStore(100)) {
+            Assertions.assertEquals(List.of("1"), numbers(store.query("team/app", null, null, null, 10)));
+            store.record("team/app", build(3, Build.StatusEnum.SUCCESS, 3000), "master");
+        }
+        try (BuildHistoryStore store = newStore(100)) {
+            Assertions.assertEquals(List.of("3", "1"), numbers(store.query("team/app", null, null, null, 10)));
+        }
+    }
+
+    @Test
+    public void given_max_builds_when_record_then_oldest_builds_dropped() {
+        try (BuildHistoryStore store = newStore(3)) {
+            store.record("team/app", build(1, Build.StatusEnum.SUCCESS, 1000), "master");
+            store.record("team/other", build(1, Build.StatusEnum.SUCCESS, 1500), "master");
+            store.record("team/app", build(2, Build.StatusEnum.SUCCESS, 2000), "master");
+            store.record("team/app", build(3, Build.StatusEnum.SUCCESS, 3000), "master");
+
+            Assertions.assertEquals(3, store.size());
+            Assertions.assertNull(store.get("team/app", 1));
+            Assertions.assertEquals(List.of("3", "2"), numbers(store.query("team/app", "master", null, null, 10)));
+        }
+    }
+
+    @Test
+    public void given_many_updates_when_record_then_file_compacted() throws IOException {
+        try (BuildHistoryStore store = newStore(100)) {
+            store.record("team/app", build(1, Build.StatusEnum.SUCCESS, 1000), "master");
+            long size = fileSize();
+            for (int i = 0; i < 20001; i++) {
+                store.record("team/app", build(2, i % 2 == 0 ? Build.StatusEnum.PROCESSING : Build.StatusEnum.FAILED, 2000), "master");
+            }
+
+            Assertions.assertTrue(fileSize() < 10000 * size, "file size " + fileSize());
+            Assertions.assertEquals(Build.StatusEnum.PROCESSING, store.get("team/app", 2).getStatus());
+        }
+        try (BuildHistoryStore store = newStore(100)) {
+            Assertions.assertEquals(List.of("2", "1"), numbers(store.query("team/app", null, null, null, 10)));
+            Assertions.assertEquals(Build.StatusEnum.PROCESSING, store.get("team/app", 2).getStatus());
+        }
+    }
+
+    @Test
+    public void given_compaction_in_background_when_record_meanwhile_then_appends_kept() throws IOException {
+        List<Runnable> compactions = new ArrayList<>();
+        try (BuildHistoryStore store = new BuildHistoryStore(directory, 100, new MetricsRegistry(), compactions::add)) {
+            store.record("team/app", build(1, Build.StatusEnum.SUCCESS, 1000), "master");
+            long size = fileSize();
+            for (int i = 0; i < 20001; i++) {
+                store.record("team/app", build(2, i % 2 == 0 ? Build.StatusEnum.PROCESSING : Build.StatusEnum.FAILED, 2000), "master");
+            }
+            Assertions.assertEquals(1, compactions.size());
+            Assertions.assertTrue(fileSize() > 10000 * size, "file size " + fileSize());
+
+            store.record("team/app", build(3, Build.StatusEnum.SUCCESS, 3000), "master");
+            compactions.get(0).run();
+            store.record("team/app", build(4, Build.StatusEnum.SUCCESS, 4000), "master");
+
+            Assertions.assertTrue(fileSize() < 10 * size, "file size " + fileSize());
+        }
+        try (BuildHistoryStore store = newStore(100)) {
+            Assertions.assertEquals(List.of("4", "3", "2", "1"), numbers(store.query("team/app", null, null, null, 10)));
+            Assertions.assertEquals(Build.StatusEnum.PROCESSING, store.get("team/app", 2).getStatus());
+        }
+    }
+
+    @Test
+    public void given_removed_pipeline_when_reopened_then_builds_stay_forgotten() {
+        try (BuildHistoryStore store = newStore(100)) {
+            store.record("team/app", build(1, Build.StatusEnum.SUCCESS, 1000), "master");
+            store.record("team/other", build(1, Build.StatusEnum.SUCCESS, 1000), "master");
+            store.remove("/team/app/");
+
+            Assertions.assertNull(store.get("team/app", 1));
+        }
+        try (BuildHistoryStore store = newStore(100)) {
+            Assertions.assertNull(store.get("team/app", 1));
+            Assertions.assertEquals(1, store.size());
+
+            store.record("team/app", build(2, Build.StatusEnum.SUCCESS, 2000), "master");
+        }
+        try (BuildHistoryStore store = newStore(100)) {
+            Assertions.assertEquals(List.of("2"), numbers(store.query("team/app", null, null, null, 10)));
+        }
+    }
+
+    @Test
+    public void given_no_directory_when_record_then_disabled() {
+        try (BuildHistoryStore store = new BuildHistoryStore(null, 100, new MetricsRegistry())) {
+            store.record("team/app", build(1, Build.StatusEnum.SUCCESS, 1000), "master");
+
+            Assertions.assertFalse(store.isEnabled());
+            Assertions.assertNull(store.get("team/app", 1));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Test class {@linkplain BuildLogStore}
+ */
+class BuildLogStoreTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUpEach() throws IOException {
+        directory = Files.createTempDirectory("build-logs");
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static byte[] log(int size) {
+        StringBuilder log = new StringBuilder();
+        Random random = new Random(42);
+        for (int line = 0; log.length() < size; line++) {
+            log.append("[").append(line).append("] step ").append(random.nextInt(1000)).append(" done\n");
+        }
+        return log.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            return stream.readAllBytes();
+        }
+    }
+
+    private BuildLogStore newStore(long maxBytes) {
+        return new BuildLogStore(directory, maxBytes, new MetricsRegistry());
+    }
+
+    @Test
+    public void given_stored_log_when_open_from_offset_then_reads_from_offset() throws Exception {
+        byte[] log = log(3 * BuildLogStore.SEGMENT_BYTES + 100);
+        BuildLogStore underTest = newStore(Long.MAX_VALUE);
+        underTest.put("team/app", "1", new ByteArrayInputStream(log));
+
+        BuildLogStore.StoredLog stored = underTest.get("team/app", "1");
+        long start = 2L * BuildLogStore.SEGMENT_BYTES + 17;
+
+        Assertions.assertEquals(log.length, stored.getSize());
+        Assertions.assertArrayEquals(log, readAll(stored.open(0)));
+        byte[] expected = new byte[(int) (log.length - start)];
+        System.arraycopy(log, (int) start, expected, 0, expected.length);
+        Assertions.assertArrayEquals(expected, readAll(stored.open(start)));
+        Assertions.assertEquals(0, readAll(stored.open(log.length)).length);
+    }
+
+    @Test
+    public void given_stored_log_when_openGzip_then_is_whole_gzip_log() throws Exception {
+        byte[] log = log(2 * BuildLogStore.SEGMENT_BYTES + 5);
+        BuildLogStore underTest = newStore(Long.MAX_VALUE);
+        underTest.put("team/app", "1", new ByteArrayInputStream(log));
+
+        byte[] compressed = readAll(underTest.get("team/app", "1").openGzip());
+
+        Assertions.assertTrue(compressed.length < log.length);
+        Assertions.assertArrayEquals(log, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void given_store_full_when_put_then_evicts_least_recently_used() throws Exception {
+        BuildLogStore underTest = newStore(Long.MAX_VALUE);
+        underTest.put("team/app", "1", new ByteArrayInputStream(log(10000)));
+        long entryBytes = underTest.getBytes();
+        underTest = newStore(2 * entryBytes + entryBytes / 2);
+        underTest.put("team/app", "2", new ByteArrayInputStream(log(10000)));
+        underTest.get("team/app", "1");
+        underTest.put("team/app", "3", new ByteArrayInputStream(log(10000)));
+
+        Assertions.assertNotNull(underTest.get("team/app", "1"));
+        Assertions.assertNull(underTest.get("team/app", "2"));
+        Assertions.assertNotNull(underTest.get("team/app", "3"));
+        Assertions.assertEquals(2, underTest.size());
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(4, files.count());
+        }
+    }
+
+    @Test
+    public void given_logs_of_previous_run_when_created_then_serves_them() throws Exception {
+        byte[] log = log(1000);
+        newStore(Long.MAX_VALUE).put("team/app", "1", new ByteArrayInputStream(log));
+
+        BuildLogStore underTest = newStore(Long.MAX_VALUE);
+
+        Assertions.assertEquals(1, underTest.size());
+        Assertions.assertArrayEquals(log, readAll(underTest.get("team/app", "1").open(0)));
+    }
+
+    @Test
+    public void given_logs_of_deleted_pipeline_when_remove_then_forgotten_after_restart() throws Exception {
+        BuildLogStore previousRun = newStore(Long.MAX_VALUE);
+        previousRun.put("team/app", "1", new ByteArrayInputStream(log(1000)));
+        previousRun.put("team/other", "1", new ByteArrayInputStream(log(1000)));
+
+        BuildLogStore underTest = newStore(Long.MAX_VALUE);
+        underTest.remove("/team/app/");
+
+        Assertions.assertNull(underTest.get("team/app", "1"));
+        Assertions.assertNotNull(underTest.get("team/other", "1"));
+        Assertions.assertEquals(1, newStore(Long.MAX_VALUE).size());
+        Assertions.assertNull(newStore(Long.MAX_VALUE).get("team/app", "1"));
+    }
+
+    @Test
+    public void given_no_max_size_when_put_then_store_disabled() throws Exception {
+        BuildLogStore underTest = newStore(0);
+        underTest.put("team/app", "1", new ByteArrayInputStream(log(1000)));
+
+        Assertions.assertFalse(underTest.isEnabled());
+        Assertions.assertNull(underTest.get("team/app", "1"));
+    }
+}
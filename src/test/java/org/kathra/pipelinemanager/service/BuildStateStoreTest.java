@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import javassist.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Test class {@linkplain BuildStateStore}
+ */
+class BuildStateStoreTest {
+
+    private ScheduledExecutorService scheduler;
+    private final List<BuildSummary> jenkinsBuilds = new ArrayList<>();
+    private final AtomicInteger reads = new AtomicInteger();
+    private BuildStateStore underTest;
+
+    @BeforeEach
+    void setUpEach() {
+        scheduler = Executors.newScheduledThreadPool(1);
+        // reconciliations run on the calling thread
+        underTest = new BuildStateStore((path, builds) -> {
+            reads.incrementAndGet();
+            return new ArrayList<>(jenkinsBuilds);
+        }, 10, 60000, scheduler, Runnable::run, new MetricsRegistry());
+    }
+
+    @AfterEach
+    void tearDownEach() {
+        underTest.close();
+        scheduler.shutdownNow();
+    }
+
+    private static BuildSummary build(int number, String result, String branch) {
+        BuildSummary build = new BuildSummary();
+        build.setNumber(number);
+        build.setBuilding(result == null);
+        build.setResult(result);
+        BuildSummary.Action action = new BuildSummary.Action();
+        action.setParameters(Collections.singletonList(new BuildSummary.Parameter("GIT_BRANCH", branch)));
+        build.setActions(Collections.singletonList(action));
+        return build;
+    }
+
+    private static List<Integer> numbers(List<BuildSummary> builds) {
+        return builds.stream().map(BuildSummary::getNumber).collect(Collectors.toList());
+    }
+
+    @Test
+    public void given_no_event_when_getBuilds_then_does_not_answer() {
+        Assertions.assertNull(underTest.getBuilds("team/app", null, 10));
+        Assertions.assertNull(underTest.getBuild("team/app", 1));
+        Assertions.assertEquals(0, reads.get());
+    }
+
+    @Test
+    public void given_first_event_of_job_when_getBuilds_then_answers_from_jenkins_read_and_events() {
+        jenkinsBuilds.add(build(2, "FAILURE", "master"));
+        jenkinsBuilds.add(build(1, "SUCCESS", "master"));
+
+        underTest.apply("team/app", build(3, null, "master"));
+        underTest.apply("/team/app/", build(3, "SUCCESS", "master"));
+
+        Assertions.assertEquals(List.of(3, 2, 1), numbers(underTest.getBuilds("team/app", null, 10)));
+        Assertions.assertEquals("SUCCESS", underTest.getBuild("team/app", 3).getResult());
+        Assertions.assertEquals(1, reads.get());
+    }
+
+    @Test
+    public void given_finished_build_when_late_started_event_then_stays_finished() {
+        underTest.apply("team/app", build(1, "SUCCESS", "master"));
+        underTest.apply("team/app", build(1, null, "master"));
+
+        Assertions.assertEquals("SUCCESS", underTest.getBuild("team/app", 1).getResult());
+    }
+
+    @Test
+    public void given_finished_event_when_jenkins_read_running_then_running() {
+        underTest.apply("team/app", build(1, "SUCCESS", "master"));
+        jenkinsBuilds.add(build(1, null, "master"));
+
+        underTest.sweep();
+
+        Assertions.assertTrue(underTest.getBuild("team/app", 1).isBuilding());
+        Assertions.assertTrue(underTest.isConfirmed("team/app", 1));
+        // a late read does not set a confirmed finished build back to running
+        jenkinsBuilds.set(0, build(1, "FAILURE", "master"));
+        underTest.sweep();
+        jenkinsBuilds.set(0, build(1, null, "master"));
+        underTest.sweep();
+        Assertions.assertEquals("FAILURE", underTest.getBuild("team/app", 1).getResult());
+    }
+
+    @Test
+    public void given_missed_events_when_sweep_then_fixes_builds() {
+        underTest.apply("team/app", build(1, null, "master"));
+        jenkinsBuilds.add(build(2, "SUCCESS", "master"));
+        jenkinsBuilds.add(build(1, "FAILURE", "master"));
+
+        underTest.sweep();
+
+        Assertions.assertEquals(List.of(2, 1), numbers(underTest.getBuilds("team/app", null, 10)));
+        Assertions.assertEquals("FAILURE", underTest.getBuild("team/app", 1).getResult());
+    }
+
+    @Test
+    public void given_job_with_older_builds_when_getBuilds_of_branch_then_answers_only_if_enough_builds() {
+        for (int number = BuildStateStore.WINDOW; number >= 1; number--) {
+            jenkinsBuilds.add(build(number, "SUCCESS", number == 1 ? "feature" : "master"));
+        }
+        underTest.apply("team/app", build(BuildStateStore.WINDOW, "SUCCESS", "master"));
+
+        Assertions.assertEquals(5, underTest.getBuilds("team/app", "master", 5).size());
+        // the job may have older builds of the branch
+        Assertions.assertNull(underTest.getBuilds("team/app", "feature", 5));
+    }
+
+    @Test
+    public void given_missing_job_when_reconcile_then_stops_following_it() {
+        underTest = new BuildStateStore((path, builds) -> {
+            throw new NotFoundException("Pipeline does not exist.");
+        }, 10, 60000, scheduler, Runnable::run, new MetricsRegistry());
+
+        underTest.apply("team/app", build(1, null, "master"));
+
+        Assertions.assertEquals(0, underTest.size());
+    }
+
+    @Test
+    public void given_notification_plugin_event_when_parsed_then_maps_job_path_and_build() throws Exception {
+        String event = "{\"name\":\"app\",\"url\":\"job/team/job/app/\",\"build\":{\"full_url\":\"http://jenkins/job/team/job/app/4/\","
+                + "\"number\":4,\"phase\":\"COMPLETED\",\"status\":\"FAILURE\",\"timestamp\":1000,\"duration\":20,"
+                + "\"parameters\":{\"GIT_BRANCH\":\"master\"},\"scm\":{\"commit\":\"abc\"}}}";
+
+        JenkinsNotification notification = new ObjectMapper().readValue(event, JenkinsNotification.class);
+        BuildSummary build = notification.toBuildSummary();
+
+        Assertions.assertEquals("team/app", notification.getPath());
+        Assertions.assertEquals(4, build.getNumber());
+        Assertions.assertFalse(build.isBuilding());
+        Assertions.assertEquals("FAILURE", build.getResult());
+        Assertions.assertEquals(Map.of("GIT_BRANCH", "master"), build.getParameters());
+    }
+
+    @Test
+    public void given_listener_when_events_then_told_of_changes_only() {
+        List<String> changes = new ArrayList<>();
+        underTest.setListener((path, build) -> changes.add(path + "#" + build.getNumber() + ":" + build.getResult()));
+
+        underTest.apply("/team/app/", build(1, null, "master"));
+        underTest.apply("team/app", build(1, "SUCCESS", "master"));
+        underTest.apply("team/app", build(1, "SUCCESS", "master"));
+        underTest.apply("team/app", build(1, null, "master"));
+
+        Assertions.assertEquals(List.of("team/app#1:null", "team/app#1:SUCCESS"), changes);
+    }
+
+    @Test
+    public void given_event_state_when_jenkins_read_then_confirmed_only_once_read() {
+        jenkinsBuilds.add(build(1, null, "master"));
+        underTest.apply("team/app", build(2, null, "master"));
+        Assertions.assertTrue(underTest.isConfirmed("team/app", 1));
+        Assertions.assertFalse(underTest.isConfirmed("team/app", 2));
+
+        underTest.apply("team/app", build(1, "SUCCESS", "master"));
+        Assertions.assertFalse(underTest.isConfirmed("team/app", 1));
+
+        jenkinsBuilds.set(0, build(1, "SUCCESS", "master"));
+        underTest.sweep();
+        Assertions.assertTrue(underTest.isConfirmed("team/app", 1));
+        Assertions.assertFalse(underTest.isConfirmed("team/app", 2));
+    }
+}
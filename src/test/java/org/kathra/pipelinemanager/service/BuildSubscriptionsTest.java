@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Test class {@linkplain BuildSubscriptions}
+ */
+class BuildSubscriptionsTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private ScheduledExecutorService scheduler;
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private BuildSubscriptions underTest;
+
+    private static class Request {
+        private final String url;
+        private final String body;
+        private final CompletableFuture<JenkinsHttpResponse> response = new CompletableFuture<>();
+
+        private Request(String url, String body) {
+            this.url = url;
+            this.body = body;
+        }
+
+        private void respond(int status) {
+            response.complete(new JenkinsHttpResponse(status, "", Collections.emptyMap(), ""));
+        }
+    }
+
+    @BeforeEach
+    void setUpEach() {
+        scheduler = Executors.newScheduledThreadPool(1);
+        JenkinsHttpTransport transport = new JenkinsHttpTransport() {
+            @Override
+            public CompletableFuture<JenkinsHttpResponse> send(String method, String url, Map<String, String> headers, String body) {
+                Request request = new Request(url, body);
+                requests.add(request);
+                return request.response;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        // batches are flushed by the tests
+        underTest = new BuildSubscriptions(transport, 60000, Set.of("folder", "pipeline", "other", "all"), scheduler, Runnable::run, new MetricsRegistry());
+    }
+
+    @AfterEach
+    void tearDownEach() {
+        underTest.close();
+        scheduler.shutdownNow();
+    }
+
+    private static BuildSummary build(int number, String result) {
+        BuildSummary build = new BuildSummary();
+        build.setNumber(number);
+        build.setBuilding(result == null);
+        build.setResult(result);
+        return build;
+    }
+
+    private static JsonNode events(Request request) throws Exception {
+        return mapper.readTree(request.body).get("events");
+    }
+
+    @Test
+    public void given_folder_and_pipeline_subscriptions_when_flush_then_matching_subscriptions_receive_event() throws Exception {
+        underTest.subscribe("team", "http://folder/hook");
+        underTest.subscribe("/team/app/", "http://pipeline/hook");
+        underTest.subscribe("team/application", "http://other/hook");
+        underTest.subscribe("", "http://all/hook");
+
+        underTest.publish("team/app", build(1, null));
+        underTest.flush();
+
+        Assertions.assertEquals(3, requests.size());
+        Assertions.assertTrue(requests.stream().noneMatch(request -> request.url.startsWith("http://other")));
+        JsonNode event = events(requests.get(0)).get(0);
+        Assertions.assertEquals("team/app", event.get("path").asText());
+        Assertions.assertEquals(1, event.get("buildNumber").asInt());
+        Assertions.assertEquals("STARTED", event.get("type").asText());
+    }
+
+    @Test
+    public void given_build_started_and_finished_within_batch_when_flush_then_delivered_once_finished() throws Exception {
+        underTest.subscribe("team", "http://folder/hook");
+
+        underTest.publish("team/app", build(1, null));
+        underTest.publish("team/app", build(1, "FAILURE"));
+        underTest.flush();
+
+        Assertions.assertEquals(1, requests.size());
+        JsonNode events = events(requests.get(0));
+        Assertions.assertEquals(1, events.size());
+        Assertions.assertEquals("FINISHED", events.get(0).get("type").asText());
+        Assertions.assertEquals("FAILURE", events.get(0).get("result").asText());
+    }
+
+    @Test
+    public void given_delivery_in_flight_when_new_batches_then_sent_coalesced_after_response() throws Exception {
+        underTest.subscribe("team", "http://folder/hook");
+        underTest.publish("team/app", build(1, null));
+        underTest.flush();
+
+        underTest.publish("team/app", build(2, null));
+        underTest.flush();
+        underTest.publish("team/app", build(2, "SUCCESS"));
+        underTest.flush();
+        Assertions.assertEquals(1, requests.size());
+
+        requests.get(0).respond(200);
+        Assertions.assertEquals(2, requests.size());
+        JsonNode events = events(requests.get(1));
+        Assertions.assertEquals(1, events.size());
+        Assertions.assertEquals(2, events.get(0).get("buildNumber").asInt());
+        Assertions.assertEquals("FINISHED", events.get(0).get("type").asText());
+    }
+
+    @Test
+    public void given_same_url_and_path_when_subscribe_then_same_subscription() {
+        String id = underTest.subscribe("team", "http://folder/hook");
+
+        Assertions.assertEquals(id, underTest.subscribe("/team", "http://folder/hook"));
+        Assertions.assertNotEquals(id, underTest.subscribe("team/app", "http://folder/hook"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> underTest.subscribe("team", "file:///etc/passwd"));
+        Assertions.assertTrue(underTest.unsubscribe(id));
+        Assertions.assertFalse(underTest.unsubscribe(id));
+    }
+
+    @Test
+    public void given_callback_host_not_allowed_when_subscribe_then_refused() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> underTest.subscribe("team", "http://169.254.169.254/latest/meta-data"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> underTest.subscribe("team", "http://folder.evil/hook"));
+        Assertions.assertNotNull(underTest.subscribe("team", "http://FOLDER:8080/hook"));
+        Assertions.assertEquals(1, underTest.size());
+    }
+
+    @Test
+    public void given_no_allowed_host_when_subscribe_then_webhooks_disabled() {
+        BuildSubscriptions disabled = new BuildSubscriptions(null, 60000, Collections.emptySet(), scheduler, Runnable::run, new MetricsRegistry());
+
+        Assertions.assertThrows(IllegalStateException.class, () -> disabled.subscribe("team", "http://folder/hook"));
+    }
+
+    @Test
+    public void given_host_with_max_subscriptions_when_subscribe_then_refused_for_this_host_only() {
+        for (int i = 0; i < BuildSubscriptions.MAX_SUBSCRIPTIONS_PER_HOST; i++) {
+            underTest.subscribe("team/app" + i, "http://folder/hook");
+        }
+
+        Assertions.assertThrows(IllegalStateException.class, () -> underTest.subscribe("team/other", "http://folder/hook"));
+        Assertions.assertNotNull(underTest.subscribe("team/other", "http://pipeline/hook"));
+    }
+
+    @Test
+    public void given_no_subscription_when_publish_then_nothing_sent() {
+        underTest.publish("team/app", build(1, null));
+        underTest.flush();
+
+        Assertions.assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    public void given_event_stream_when_events_then_reads_server_sent_events() throws Exception {
+        InputStream stream = underTest.stream("team", 5000);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        Assertions.assertEquals("event: subscribed", reader.readLine());
+        reader.readLine();
+        reader.readLine();
+
+        underTest.publish("team/app", build(3, "SUCCESS"));
+        underTest.flush();
+
+        Assertions.assertEquals("event: builds", reader.readLine());
+        String data = reader.readLine();
+        Assertions.assertTrue(data.startsWith("data: "));
+        JsonNode batch = mapper.readTree(data.substring("data: ".length()));
+        Assertions.assertEquals(0, batch.get("dropped").asInt());
+        Assertions.assertEquals("SUCCESS", batch.get("events").get(0).get("status").asText());
+
+        stream.close();
+        Assertions.assertEquals(0, underTest.size());
+    }
+
+    @Test
+    public void given_path_when_prefixes_then_every_folder() {
+        Assertions.assertEquals(List.of("", "a", "a/b", "a/b/c"), BuildSubscriptions.prefixes("a/b/c"));
+        Assertions.assertEquals(List.of(""), BuildSubscriptions.prefixes(""));
+    }
+}
@@ -0,0 +1,824 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process Jenkins answering the endpoints used by {@link JenkinsService} over real HTTP.
+ *
+ * Folders, jobs, builds, the build queue and folder credentials are held in memory. Every request can be delayed
+ * ({@link #latency(long, long)}) or answered with an error ({@link #errorRate(double, int)}, {@link #failNext(String, int, int)}),
+ * and requests are counted by endpoint so that tests can assert on round trips and concurrency.
+ *
+ * The class is packaged in the test jar of the service, the benchmarks module runs against it too.
+ *
+ * URLs are parsed leniently: "job" segments are separators, "api/json" suffixes and empty segments are ignored.
+ */
+public class FakeJenkins implements AutoCloseable {
+
+    public static final String CRUMB = "crumbIssuer";
+    public static final String GET_ITEM = "getItem";
+    public static final String GET_CONFIG = "getConfig";
+    public static final String UPDATE_CONFIG = "updateConfig";
+    public static final String CREATE_ITEM = "createItem";
+    public static final String DELETE_ITEM = "deleteItem";
+    public static final String TRIGGER_BUILD = "triggerBuild";
+    public static final String GET_QUEUE_ITEM = "getQueueItem";
+    public static final String GET_BUILD = "getBuild";
+    public static final String CONSOLE_TEXT = "consoleText";
+    public static final String PROGRESSIVE_TEXT = "progressiveText";
+    public static final String CREATE_CREDENTIALS = "createCredentials";
+
+    private static final String FOLDER_CLASS = "com.cloudbees.hudson.plugins.folder.Folder";
+    private static final String JOB_CLASS = "org.jenkinsci.plugins.workflow.job.WorkflowJob";
+    private static final String CRUMB_FIELD = "Jenkins-Crumb";
+    private static final Set<String> ACTIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "config.xml", "createItem", "doDelete", "build", "buildWithParameters", "consoleText", "logText", "credentials")));
+    private static final Pattern TREE_RANGE = Pattern.compile("\\{(\\d+),(\\d+)}");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final String url;
+
+    private final Map<String, Item> items = new ConcurrentHashMap<>();
+    private final Map<Long, QueueEntry> queue = new ConcurrentHashMap<>();
+    private final AtomicLong queueIds = new AtomicLong();
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Random random = new Random(42);
+
+    private volatile long latencyMs;
+    private volatile long latencyJitterMs;
+    private volatile double errorRate;
+    private volatile int errorStatus = 500;
+    private volatile boolean crumbRequired = true;
+    private volatile boolean configUpdatesIgnored;
+    private volatile long queueDelayMs;
+    private volatile String crumb = "crumb-1";
+    private volatile String buildLog = "Started by user kathra\nFinished: SUCCESS\n";
+    private final Map<String, FailNext> failNext = new ConcurrentHashMap<>();
+
+    public FakeJenkins() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 512);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return root url, without trailing '/'
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Delay every request
+     * @param latencyMs fixed delay
+     * @param jitterMs random delay added, up to this value
+     * @return this
+     */
+    public FakeJenkins latency(long latencyMs, long jitterMs) {
+        this.latencyMs = latencyMs;
+        this.latencyJitterMs = jitterMs;
+        return this;
+    }
+
+    /**
+     * Answer a share of the requests with an error, the crumb issuer is never failed
+     * @param rate share of requests failed, between 0 and 1
+     * @param status HTTP status returned
+     * @return this
+     */
+    public FakeJenkins errorRate(double rate, int status) {
+        this.errorRate = rate;
+        this.errorStatus = status;
+        return this;
+    }
+
+    /**
+     * Fail the next requests of an endpoint
+     * @param endpoint endpoint name, one of the constants of this class
+     * @param count number of requests failed
+     * @param status HTTP status returned
+     * @return this
+     */
+    public FakeJenkins failNext(String endpoint, int count, int status) {
+        failNext.put(endpoint, new FailNext(count, status));
+        return this;
+    }
+
+    /**
+     * Reject POST requests without the current crumb with 403, as Jenkins does with CSRF protection
+     * @param crumbRequired true to check the crumb
+     * @return this
+     */
+    public FakeJenkins crumbRequired(boolean crumbRequired) {
+        this.crumbRequired = crumbRequired;
+        return this;
+    }
+
+    /**
+     * Accept config.xml updates without storing them, so that repeated operations see the same config
+     * @param configUpdatesIgnored true to ignore the updates, they are still counted
+     * @return this
+     */
+    public FakeJenkins configUpdatesIgnored(boolean configUpdatesIgnored) {
+        this.configUpdatesIgnored = configUpdatesIgnored;
+        return this;
+    }
+
+    /**
+     * Issue a new crumb, the previous one is rejected from now on
+     * @param crumb new crumb
+     * @return this
+     */
+    public FakeJenkins rotateCrumb(String crumb) {
+        this.crumb = crumb;
+        return this;
+    }
+
+    /**
+     * Time spent by triggered builds in the queue before they start
+     * @param queueDelayMs delay
+     * @return this
+     */
+    public FakeJenkins queueDelay(long queueDelayMs) {
+        this.queueDelayMs = queueDelayMs;
+        return this;
+    }
+
+    /**
+     * Console log of triggered builds
+     * @param buildLog log
+     * @return this
+     */
+    public FakeJenkins buildLog(String buildLog) {
+        this.buildLog = buildLog;
+        return this;
+    }
+
+    /**
+     * Create a folder and its missing parents
+     * @param path folder path, as "a/b"
+     * @return this
+     */
+    public FakeJenkins folder(String path) {
+        return folder(path, folderXml(Collections.emptyList()));
+    }
+
+    /**
+     * Create a folder and its missing parents
+     * @param path folder path, as "a/b"
+     * @param configXml folder config.xml
+     * @return this
+     */
+    public FakeJenkins folder(String path, String configXml) {
+        if (path.contains("/")) {
+            String parent = path.substring(0, path.lastIndexOf('/'));
+            if (!items.containsKey(parent)) {
+                folder(parent);
+            }
+        }
+        items.put(path, new Item(path, true, configXml));
+        return this;
+    }
+
+    /**
+     * Create a job, its folders are created if missing
+     * @param path job path, as "folder/job"
+     * @param configXml job config.xml
+     * @return this
+     */
+    public FakeJenkins job(String path, String configXml) {
+        if (path.contains("/")) {
+            String parent = path.substring(0, path.lastIndexOf('/'));
+            if (!items.containsKey(parent)) {
+                folder(parent);
+            }
+        }
+        items.put(path, new Item(path, false, configXml));
+        return this;
+    }
+
+    /**
+     * Add a finished build to a job
+     * @param path job path
+     * @param result build result, as "SUCCESS" or "FAILURE"
+     * @param log console log
+     * @return build number
+     */
+    public int build(String path, String result, String log) {
+        Item job = items.get(path);
+        synchronized (job) {
+            FakeBuild build = new FakeBuild(job.nextBuildNumber++, result, log, Collections.emptyMap());
+            job.builds.put(build.number, build);
+            return build.number;
+        }
+    }
+
+    /**
+     * Add a running build to a job, its log grows with {@link #appendLog(String, int, String)}
+     * until {@link #finish(String, int, String)}
+     * @param path job path
+     * @return build number
+     */
+    public int startBuild(String path) {
+        return build(path, null, "");
+    }
+
+    public void appendLog(String path, int number, String text) {
+        FakeBuild build = items.get(path).builds.get(number);
+        synchronized (build) {
+            build.log = build.log + text;
+        }
+    }
+
+    public void finish(String path, int number, String result) {
+        items.get(path).builds.get(number).result = result;
+    }
+
+    public boolean exists(String path) {
+        return items.containsKey(path);
+    }
+
+    public boolean isFolder(String path) {
+        Item item = items.get(path);
+        return item != null && item.folder;
+    }
+
+    public String getConfigXml(String path) {
+        Item item = items.get(path);
+        return item == null ? null : item.configXml;
+    }
+
+    public List<String> getCredentials(String path) {
+        Item item = items.get(path);
+        return item == null ? Collections.emptyList() : new ArrayList<>(item.credentials);
+    }
+
+    public int getBuildCount(String path) {
+        Item item = items.get(path);
+        return item == null ? 0 : item.builds.size();
+    }
+
+    /**
+     * Folder config.xml holding an authorization matrix
+     * @param permissions permissions as "permission:member"
+     * @return config.xml
+     */
+    public static String folderXml(List<String> permissions) {
+        StringBuilder xml = new StringBuilder("<?xml version='1.1' encoding='UTF-8'?>\n")
+                .append("<").append(FOLDER_CLASS).append(" plugin=\"cloudbees-folder@6.9\">\n")
+                .append("  <actions/>\n  <description></description>\n  <properties>\n")
+                .append("    <com.cloudbees.hudson.plugins.folder.properties.AuthorizationMatrixProperty>\n")
+                .append("      <inheritanceStrategy class=\"org.jenkinsci.plugins.matrixauth.inheritance.InheritGlobalStrategy\"/>\n");
+        for (String permission : permissions) {
+            xml.append("      <permission>").append(permission).append("</permission>\n");
+        }
+        return xml.append("    </com.cloudbees.hudson.plugins.folder.properties.AuthorizationMatrixProperty>\n")
+                .append("  </properties>\n")
+                .append("  <icon class=\"com.cloudbees.hudson.plugins.folder.icons.StockFolderIcon\"/>\n")
+                .append("</").append(FOLDER_CLASS).append(">\n")
+                .toString();
+    }
+
+    /**
+     * @param endpoint endpoint name, one of the constants of this class
+     * @return number of requests received by the endpoint
+     */
+    public int getRequests(String endpoint) {
+        AtomicInteger count = requests.get(endpoint);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return number of requests received, crumb requests excluded
+     */
+    public int getTotalRequests() {
+        return requests.entrySet().stream().filter(e -> !CRUMB.equals(e.getKey())).mapToInt(e -> e.getValue().get()).sum();
+    }
+
+    /**
+     * @return requests by endpoint
+     */
+    public Map<String, Integer> getRequestsByEndpoint() {
+        Map<String, Integer> counts = new TreeMap<>();
+        requests.forEach((endpoint, count) -> counts.put(endpoint, count.get()));
+        return counts;
+    }
+
+    /**
+     * @return number of requests answered with an injected error
+     */
+    public int getInjectedFailures() {
+        return failures.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    /**
+     * @return highest number of requests handled at the same time
+     */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public void resetStatistics() {
+        requests.clear();
+        failures.clear();
+        maxInFlight.set(inFlight.get());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            Request request = parse(exchange);
+            requests.computeIfAbsent(request.endpoint, e -> new AtomicInteger()).incrementAndGet();
+            delay();
+            if (exchange.getRequestHeaders().getFirst("Authorization") == null) {
+                send(exchange, 401, "text/plain", "Unauthorized");
+                return;
+            }
+            Integer failure = CRUMB.equals(request.endpoint) ? null : injectedFailure(request.endpoint);
+            if (failure != null) {
+                failures.computeIfAbsent(request.endpoint, e -> new AtomicInteger()).incrementAndGet();
+                send(exchange, failure, "text/plain", "Injected failure");
+            } else if (crumbRequired && "POST".equals(exchange.getRequestMethod())
+                    && !crumb.equals(exchange.getRequestHeaders().getFirst(CRUMB_FIELD))) {
+                send(exchange, 403, "text/plain", "No valid crumb was included in the request");
+            } else {
+                dispatch(exchange, request);
+            }
+        } catch (Exception e) {
+            send(exchange, 500, "text/plain", String.valueOf(e));
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long delay = latencyMs;
+        if (latencyJitterMs > 0) {
+            synchronized (random) {
+                delay += (long) (random.nextDouble() * latencyJitterMs);
+            }
+        }
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * @return status of the error to answer, null if the request is not failed
+     */
+    private Integer injectedFailure(String endpoint) {
+        FailNext next = failNext.get(endpoint);
+        if (next != null && next.remaining.getAndDecrement() > 0) {
+            return next.status;
+        }
+        if (errorRate <= 0) {
+            return null;
+        }
+        synchronized (random) {
+            return random.nextDouble() < errorRate ? errorStatus : null;
+        }
+    }
+
+    private void dispatch(HttpExchange exchange, Request request) throws IOException {
+        String method = exchange.getRequestMethod();
+        switch (request.endpoint) {
+            case CRUMB:
+                sendJson(exchange, map("_class", "hudson.security.csrf.DefaultCrumbIssuer", "crumbRequestField", CRUMB_FIELD, "crumb", crumb));
+                return;
+            case GET_QUEUE_ITEM:
+                getQueueItem(exchange, request);
+                return;
+            case CREATE_ITEM:
+                createItem(exchange, request);
+                return;
+            default:
+        }
+        Item item = items.get(request.path);
+        if (item == null) {
+            send(exchange, 404, "text/html", "Not Found");
+            return;
+        }
+        switch (request.endpoint) {
+            case GET_ITEM:
+                sendJson(exchange, item.toJson(request.query.get("tree")));
+                break;
+            case GET_CONFIG:
+                send(exchange, 200, "application/xml", item.configXml);
+                break;
+            case UPDATE_CONFIG:
+                if (configUpdatesIgnored) {
+                    readBody(exchange);
+                } else {
+                    item.configXml = readBody(exchange);
+                }
+                send(exchange, 200, "text/plain", "");
+                break;
+            case DELETE_ITEM:
+                items.keySet().removeIf(path -> path.equals(item.path) || path.startsWith(item.path + "/"));
+                send(exchange, 200, "text/plain", "");
+                break;
+            case TRIGGER_BUILD:
+                triggerBuild(exchange, request, item);
+                break;
+            case GET_BUILD:
+            case CONSOLE_TEXT:
+            case PROGRESSIVE_TEXT:
+                FakeBuild build = item.builds.get(request.buildNumber);
+                if (build == null) {
+                    send(exchange, 404, "text/html", "Not Found");
+                } else if (GET_BUILD.equals(request.endpoint)) {
+                    sendJson(exchange, build.toJson(item));
+                } else if (CONSOLE_TEXT.equals(request.endpoint)) {
+                    send(exchange, 200, "text/plain;charset=UTF-8", "HEAD".equals(method) ? null : build.log);
+                } else {
+                    progressiveText(exchange, request, build);
+                }
+                break;
+            case CREATE_CREDENTIALS:
+                Map<String, String> form = parseQuery(readBody(exchange));
+                Map<?, ?> json = mapper.readValue(form.getOrDefault("json", "{}"), Map.class);
+                Object credentials = json.get("credentials");
+                item.credentials.add(credentials instanceof Map ? String.valueOf(((Map<?, ?>) credentials).get("id")) : null);
+                send(exchange, 200, "text/plain", "");
+                break;
+            default:
+                send(exchange, 404, "text/html", "Not Found");
+        }
+    }
+
+    private void createItem(HttpExchange exchange, Request request) throws IOException {
+        if (!request.path.isEmpty() && !isFolder(request.path)) {
+            send(exchange, 404, "text/html", "Not Found");
+            return;
+        }
+        String body = readBody(exchange);
+        Map<String, String> form = new HashMap<>(request.query);
+        String name = form.get("name");
+        if (name == null && body != null && !body.startsWith("<")) {
+            form.putAll(parseQuery(body));
+            name = form.get("name");
+        }
+        if (name == null) {
+            send(exchange, 400, "text/plain", "No name is specified");
+            return;
+        }
+        String path = request.path.isEmpty() ? name : request.path + "/" + name;
+        Item item = FOLDER_CLASS.equals(form.get("mode"))
+                ? new Item(path, true, folderXml(Collections.emptyList()))
+                : new Item(path, false, body);
+        if (items.putIfAbsent(path, item) != null) {
+            send(exchange, 400, "text/plain", "A job already exists with the name " + name);
+            return;
+        }
+        send(exchange, 200, "text/plain", "");
+    }
+
+    private void triggerBuild(HttpExchange exchange, Request request, Item item) throws IOException {
+        long id = queueIds.incrementAndGet();
+        queue.put(id, new QueueEntry(id, item, request.query, System.currentTimeMillis() + queueDelayMs));
+        exchange.getResponseHeaders().add("Location", url + "/queue/item/" + id + "/");
+        send(exchange, 201, "text/plain", "");
+    }
+
+    private void getQueueItem(HttpExchange exchange, Request request) throws IOException {
+        QueueEntry entry = queue.get(request.buildNumber == null ? -1L : request.buildNumber.longValue());
+        if (entry == null) {
+            send(exchange, 404, "text/html", "Not Found");
+            return;
+        }
+        Map<String, Object> json = map("id", entry.id, "cancelled", false, "blocked", false, "buildable", false,
+                "task", map("name", entry.job.getName(), "url", entry.job.getUrl()));
+        FakeBuild build = entry.start(buildLog);
+        if (build == null) {
+            json.put("_class", "hudson.model.Queue$WaitingItem");
+            json.put("why", "In the quiet period");
+            json.put("executable", null);
+        } else {
+            json.put("_class", "hudson.model.Queue$LeftItem");
+            json.put("why", null);
+            json.put("executable", map("_class", "org.jenkinsci.plugins.workflow.job.WorkflowRun",
+                    "number", build.number, "url", entry.job.getUrl() + build.number + "/"));
+        }
+        sendJson(exchange, json);
+    }
+
+    private void progressiveText(HttpExchange exchange, Request request, FakeBuild build) throws IOException {
+        // the result is read first: a finished build has its whole log
+        String result = build.result;
+        byte[] log = build.log.getBytes(StandardCharsets.UTF_8);
+        String startValue = request.query.get("start");
+        int start = startValue == null ? 0 : (int) Math.min(log.length, Math.max(0, Long.parseLong(startValue)));
+        exchange.getResponseHeaders().add("X-Text-Size", String.valueOf(log.length));
+        exchange.getResponseHeaders().add("X-More-Data", String.valueOf(result == null));
+        String text = "HEAD".equals(exchange.getRequestMethod()) ? null : new String(log, start, log.length - start, StandardCharsets.UTF_8);
+        send(exchange, 200, "text/plain;charset=UTF-8", text);
+    }
+
+    private void sendJson(HttpExchange exchange, Object json) throws IOException {
+        send(exchange, 200, "application/json;charset=utf-8", mapper.writeValueAsString(json));
+    }
+
+    private void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        if ("HEAD".equals(exchange.getRequestMethod()) || bytes.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Find the endpoint, the item and the build targeted by a request
+     */
+    private Request parse(HttpExchange exchange) throws IOException {
+        Request request = new Request();
+        request.query = parseQuery(exchange.getRequestURI().getRawQuery());
+        List<String> segments = new ArrayList<>();
+        for (String segment : exchange.getRequestURI().getPath().split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        if (segments.size() >= 2 && segments.get(segments.size() - 2).equals("api") && segments.get(segments.size() - 1).equals("json")) {
+            segments = segments.subList(0, segments.size() - 2);
+        }
+        if (!segments.isEmpty() && segments.get(0).equals(CRUMB)) {
+            request.endpoint = CRUMB;
+            return request;
+        }
+        if (segments.size() >= 3 && segments.get(0).equals("queue") && segments.get(1).equals("item")) {
+            request.endpoint = GET_QUEUE_ITEM;
+            request.buildNumber = Integer.valueOf(segments.get(2));
+            return request;
+        }
+
+        List<String> names = new ArrayList<>();
+        String action = null;
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            if (ACTIONS.contains(segment)) {
+                action = String.join("/", segments.subList(i, segments.size()));
+                break;
+            }
+            if (segment.equals("job")) {
+                continue;
+            }
+            Item item = items.get(String.join("/", names));
+            if (request.buildNumber == null && item != null && !item.folder && segment.chars().allMatch(Character::isDigit)) {
+                request.buildNumber = Integer.valueOf(segment);
+            } else if (request.buildNumber == null) {
+                names.add(segment);
+            }
+        }
+        request.path = String.join("/", names);
+
+        boolean post = "POST".equals(exchange.getRequestMethod());
+        if (action == null) {
+            request.endpoint = request.buildNumber == null ? GET_ITEM : GET_BUILD;
+        } else if (action.equals("config.xml")) {
+            request.endpoint = post ? UPDATE_CONFIG : GET_CONFIG;
+        } else if (action.equals("createItem")) {
+            request.endpoint = CREATE_ITEM;
+        } else if (action.equals("doDelete")) {
+            request.endpoint = DELETE_ITEM;
+        } else if (action.equals("build") || action.equals("buildWithParameters")) {
+            request.endpoint = TRIGGER_BUILD;
+        } else if (action.equals("consoleText")) {
+            request.endpoint = CONSOLE_TEXT;
+        } else if (action.startsWith("logText")) {
+            request.endpoint = PROGRESSIVE_TEXT;
+        } else if (action.endsWith("createCredentials")) {
+            request.endpoint = CREATE_CREDENTIALS;
+        } else {
+            request.endpoint = action;
+        }
+        return request;
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (query == null || query.isEmpty()) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+            values.put(name, value);
+        }
+        return values;
+    }
+
+    private static Map<String, Object> map(Object... keyValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+
+    private static class Request {
+        private String endpoint;
+        private String path = "";
+        private Integer buildNumber;
+        private Map<String, String> query;
+    }
+
+    private static class FailNext {
+        private final AtomicInteger remaining;
+        private final int status;
+
+        private FailNext(int count, int status) {
+            this.remaining = new AtomicInteger(count);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Folder or job
+     */
+    private class Item {
+        private final String path;
+        private final boolean folder;
+        private volatile String configXml;
+        private final Map<Integer, FakeBuild> builds = new ConcurrentHashMap<>();
+        private final List<String> credentials = Collections.synchronizedList(new ArrayList<>());
+        private int nextBuildNumber = 1;
+
+        private Item(String path, boolean folder, String configXml) {
+            this.path = path;
+            this.folder = folder;
+            this.configXml = configXml;
+        }
+
+        private String getName() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        private String getUrl() {
+            return url + "/job/" + path.replace("/", "/job/") + "/";
+        }
+
+        private Map<String, Object> toJson(String tree) {
+            Map<String, Object> json = map("_class", folder ? FOLDER_CLASS : JOB_CLASS,
+                    "name", getName(), "fullName", path, "displayName", getName(), "url", getUrl());
+            if (folder) {
+                List<Object> jobs = new ArrayList<>();
+                for (Item child : items.values()) {
+                    if (child.path.startsWith(path + "/") && child.path.indexOf('/', path.length() + 1) < 0) {
+                        jobs.add(map("_class", child.folder ? FOLDER_CLASS : JOB_CLASS, "name", child.getName(), "url", child.getUrl()));
+                    }
+                }
+                json.put("jobs", jobs);
+                return json;
+            }
+            List<FakeBuild> sorted = new ArrayList<>(builds.values());
+            sorted.sort((a, b) -> Integer.compare(b.number, a.number));
+            int from = 0;
+            int to = sorted.size();
+            Matcher range = tree == null ? null : TREE_RANGE.matcher(tree);
+            if (range != null && range.find()) {
+                from = Math.min(sorted.size(), Integer.parseInt(range.group(1)));
+                to = Math.min(sorted.size(), Integer.parseInt(range.group(2)));
+            }
+            List<Object> buildsJson = new ArrayList<>();
+            for (FakeBuild build : sorted.subList(from, Math.max(from, to))) {
+                buildsJson.add(tree == null ? map("number", build.number, "url", getUrl() + build.number + "/") : build.toJson(this));
+            }
+            json.put("builds", buildsJson);
+            json.put("buildable", true);
+            json.put("inQueue", false);
+            FakeBuild last = sorted.isEmpty() ? null : sorted.get(0);
+            json.put("lastBuild", last == null ? null : map("number", last.number, "url", getUrl() + last.number + "/"));
+            synchronized (this) {
+                json.put("nextBuildNumber", nextBuildNumber);
+            }
+            return json;
+        }
+    }
+
+    private static class FakeBuild {
+        private final int number;
+        private volatile String result;
+        private volatile String log;
+        private final Map<String, String> parameters;
+        private final long timestamp = System.currentTimeMillis();
+
+        private FakeBuild(int number, String result, String log, Map<String, String> parameters) {
+            this.number = number;
+            this.result = result;
+            this.log = log;
+            this.parameters = parameters;
+        }
+
+        private Map<String, Object> toJson(Item job) {
+            List<Object> parametersJson = new ArrayList<>();
+            parameters.forEach((name, value) -> parametersJson.add(map("name", name, "value", value)));
+            return map("_class", "org.jenkinsci.plugins.workflow.job.WorkflowRun",
+                    "number", number, "id", String.valueOf(number), "url", job.getUrl() + number + "/",
+                    "result", result, "building", result == null, "duration", 1000L, "estimatedDuration", 1000L,
+                    "timestamp", timestamp, "fullDisplayName", job.path + " #" + number,
+                    "actions", Collections.singletonList(map("_class", "hudson.model.ParametersAction", "parameters", parametersJson)));
+        }
+    }
+
+    /**
+     * Triggered build, it starts on the first poll after its queue delay
+     */
+    private static class QueueEntry {
+        private final long id;
+        private final Item job;
+        private final Map<String, String> parameters;
+        private final long startAt;
+        private FakeBuild build;
+
+        private QueueEntry(long id, Item job, Map<String, String> parameters, long startAt) {
+            this.id = id;
+            this.job = job;
+            this.parameters = parameters;
+            this.startAt = startAt;
+        }
+
+        private synchronized FakeBuild start(String log) {
+            if (build == null && System.currentTimeMillis() >= startAt) {
+                synchronized (job) {
+                    build = new FakeBuild(job.nextBuildNumber++, "SUCCESS", log, parameters);
+                    job.builds.put(build.number, build);
+                }
+            }
+            return build;
+        }
+    }
+}
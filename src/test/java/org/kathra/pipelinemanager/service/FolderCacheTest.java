@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.offbytwo.jenkins.model.FolderJob;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test class {@linkplain FolderCache}
+ */
+class FolderCacheTest {
+
+    @Test
+    public void given_folder_found_when_get_then_returns_folder_until_invalidated() {
+        FolderCache underTest = new FolderCache();
+        FolderJob folder = Mockito.mock(FolderJob.class);
+        underTest.found("A/B", folder);
+
+        Assertions.assertSame(folder, underTest.get("A/B"));
+        Assertions.assertNull(underTest.get("A"));
+
+        underTest.invalidate("A");
+        Assertions.assertNull(underTest.get("A/B"));
+    }
+
+    @Test
+    public void given_folder_created_when_isMissing_then_sub_folders_are_missing() {
+        FolderCache underTest = new FolderCache();
+        underTest.missing("A");
+        Assertions.assertTrue(underTest.isMissing("A"));
+
+        underTest.created("A");
+        Assertions.assertFalse(underTest.isMissing("A"));
+        Assertions.assertTrue(underTest.isMissing("A/B"));
+        Assertions.assertTrue(underTest.isMissing("A/B/C"));
+        Assertions.assertFalse(underTest.isMissing("AB"));
+
+        underTest.forgetMissing("A/B");
+        Assertions.assertFalse(underTest.isMissing("A/B"));
+    }
+
+    @Test
+    public void given_expired_entries_when_get_then_unknown() throws Exception {
+        FolderCache underTest = new FolderCache(1, 1);
+        underTest.found("A", Mockito.mock(FolderJob.class));
+        underTest.missing("B");
+        Thread.sleep(10);
+
+        Assertions.assertNull(underTest.get("A"));
+        Assertions.assertFalse(underTest.isMissing("B"));
+    }
+}
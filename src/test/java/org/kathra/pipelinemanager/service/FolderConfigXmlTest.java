@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test class {@linkplain FolderConfigXml}
+ */
+class FolderConfigXmlTest {
+
+    private static final String CONFIG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<com.cloudbees.hudson.plugins.folder.Folder plugin=\"cloudbees-folder@6.6\">\n" +
+            "   <displayName>KATHRA</displayName>\n" +
+            "   <properties>\n" +
+            "      <com.cloudbees.hudson.plugins.folder.properties.AuthorizationMatrixProperty>\n" +
+            "         <inheritanceStrategy class=\"org.jenkinsci.plugins.matrixauth.inheritance.NonInheritingStrategy\" />\n" +
+            "         <permission>hudson.model.Item.Build:contributorMember</permission>\n" +
+            "         <permission>hudson.model.Item.Read:guestMember</permission>\n" +
+            "      </com.cloudbees.hudson.plugins.folder.properties.AuthorizationMatrixProperty>\n" +
+            "      <org.jenkinsci.plugins.Other><permission>not.a.Permission:member</permission></org.jenkinsci.plugins.Other>\n" +
+            "   </properties>\n" +
+            "   <views><permission>not.a.Permission:member</permission></views>\n" +
+            "</com.cloudbees.hudson.plugins.folder.Folder>";
+
+    @Test
+    public void given_config_when_readPermissions_then_returns_authorization_matrix_permissions() throws Exception {
+        Assertions.assertEquals(Arrays.asList("hudson.model.Item.Build:contributorMember", "hudson.model.Item.Read:guestMember"),
+                FolderConfigXml.readPermissions(CONFIG));
+    }
+
+    @Test
+    public void given_config_without_authorization_matrix_when_readPermissions_then_empty() throws Exception {
+        Assertions.assertTrue(FolderConfigXml.readPermissions("<folder><properties/></folder>").isEmpty());
+    }
+
+    @Test
+    public void given_config_when_patchPermissions_then_rewrites_only_authorization_matrix() throws Exception {
+        String result = FolderConfigXml.patchPermissions(CONFIG, permissions -> {
+            List<String> patched = new ArrayList<>(permissions);
+            patched.remove("hudson.model.Item.Read:guestMember");
+            patched.add("hudson.model.Item.Read:newguest");
+            return patched;
+        });
+
+        Assertions.assertEquals(Arrays.asList("hudson.model.Item.Build:contributorMember", "hudson.model.Item.Read:newguest"),
+                FolderConfigXml.readPermissions(result));
+        Assertions.assertTrue(result.contains("<permission>hudson.model.Item.Read:newguest</permission>"));
+        Assertions.assertFalse(result.contains("guestMember"));
+        Assertions.assertTrue(result.contains("<inheritanceStrategy class=\"" + FolderConfigXml.INHERIT_GLOBAL_STRATEGY + "\">"));
+        Assertions.assertFalse(result.contains("NonInheritingStrategy"));
+        // everything else is copied unchanged
+        Assertions.assertTrue(result.contains("<displayName>KATHRA</displayName>"));
+        Assertions.assertTrue(result.contains("<org.jenkinsci.plugins.Other><permission>not.a.Permission:member</permission></org.jenkinsci.plugins.Other>"));
+        Assertions.assertTrue(result.contains("<views><permission>not.a.Permission:member</permission></views>"));
+    }
+
+    @Test
+    public void given_config_without_authorization_matrix_when_patchPermissions_then_creates_it() throws Exception {
+        String result = FolderConfigXml.patchPermissions("<folder><displayName>A</displayName><properties></properties></folder>",
+                permissions -> Arrays.asList("hudson.model.Item.Read:guest"));
+
+        Assertions.assertEquals(Arrays.asList("hudson.model.Item.Read:guest"), FolderConfigXml.readPermissions(result));
+
+        result = FolderConfigXml.patchPermissions("<folder><displayName>A</displayName></folder>",
+                permissions -> Arrays.asList("hudson.model.Item.Read:guest"));
+
+        Assertions.assertEquals(Arrays.asList("hudson.model.Item.Read:guest"), FolderConfigXml.readPermissions(result));
+    }
+}
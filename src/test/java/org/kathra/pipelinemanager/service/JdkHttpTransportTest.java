@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class {@linkplain JdkHttpTransport}
+ */
+class JdkHttpTransportTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String url;
+    private JdkHttpTransport underTest;
+
+    @BeforeEach
+    void setUpEach() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDownEach() {
+        if (underTest != null) {
+            underTest.close();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void given_post_when_send_then_returns_response() throws Exception {
+        server.createContext("/echo", exchange -> {
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = (exchange.getRequestHeaders().getFirst("X-Test") + ":" + new String(in.readAllBytes(), StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+            }
+            exchange.getResponseHeaders().add("X-Text-Size", "42");
+            exchange.sendResponseHeaders(201, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        underTest = new JdkHttpTransport(1000, 1000, 2);
+
+        JenkinsHttpResponse response = underTest.send("POST", url + "/echo", Map.of("X-Test", "value"), "body").get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(201, response.getStatus());
+        Assertions.assertEquals("Created", response.getStatusText());
+        Assertions.assertEquals("42", response.getHeader("x-text-size"));
+        Assertions.assertEquals("value:body", response.getBody());
+    }
+
+    @Test
+    public void given_limit_per_route_when_send_then_extra_requests_wait() throws Exception {
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/slow", exchange -> {
+            received.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        underTest = new JdkHttpTransport(1000, 10000, 2);
+
+        List<CompletableFuture<JenkinsHttpResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            responses.add(underTest.send("GET", url + "/slow", null, null));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+
+        Assertions.assertEquals(2, received.get());
+        Assertions.assertEquals(2, underTest.getActiveRequests("http://127.0.0.1:" + server.getAddress().getPort()));
+
+        release.countDown();
+        for (CompletableFuture<JenkinsHttpResponse> response : responses) {
+            Assertions.assertEquals(200, response.get(5, TimeUnit.SECONDS).getStatus());
+        }
+        Assertions.assertEquals(5, received.get());
+        Assertions.assertEquals(0, underTest.getActiveRequests("http://127.0.0.1:" + server.getAddress().getPort()));
+    }
+
+    @Test
+    public void given_slow_response_when_send_then_times_out() {
+        CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/slow", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        underTest = new JdkHttpTransport(1000, 100, 2);
+
+        CompletionException error = Assertions.assertThrows(CompletionException.class, () -> underTest.send("GET", url + "/slow", null, null).join());
+        Assertions.assertTrue(error.getCause() instanceof HttpTimeoutException);
+        release.countDown();
+    }
+
+    @Test
+    public void given_route_queue_full_when_send_then_rejected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/slow", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        underTest = new JdkHttpTransport(1000, 10000, 1, 1, true);
+
+        CompletableFuture<JenkinsHttpResponse> active = underTest.send("GET", url + "/slow", null, null);
+        CompletableFuture<JenkinsHttpResponse> waiting = underTest.send("GET", url + "/slow", null, null);
+        CompletableFuture<JenkinsHttpResponse> rejected = underTest.send("GET", url + "/slow", null, null);
+
+        CompletionException error = Assertions.assertThrows(CompletionException.class, rejected::join);
+        Assertions.assertTrue(error.getCause() instanceof RejectedExecutionException);
+        release.countDown();
+        Assertions.assertEquals(200, active.get(5, TimeUnit.SECONDS).getStatus());
+        Assertions.assertEquals(200, waiting.get(5, TimeUnit.SECONDS).getStatus());
+    }
+
+    @Test
+    public void given_requests_pending_when_close_then_failed() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/slow", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        underTest = new JdkHttpTransport(1000, 10000, 1);
+
+        CompletableFuture<JenkinsHttpResponse> active = underTest.send("GET", url + "/slow", null, null);
+        CompletableFuture<JenkinsHttpResponse> waiting = underTest.send("GET", url + "/slow", null, null);
+        underTest.close();
+
+        Assertions.assertTrue(Assertions.assertThrows(CompletionException.class, active::join).getCause() instanceof IOException);
+        Assertions.assertTrue(Assertions.assertThrows(CompletionException.class, waiting::join).getCause() instanceof IOException);
+        Assertions.assertTrue(Assertions.assertThrows(CompletionException.class,
+                () -> underTest.send("GET", url + "/slow", null, null).join()).getCause() instanceof IOException);
+        release.countDown();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Test class {@linkplain JenkinsCrumbCache}
+ */
+class JenkinsCrumbCacheTest {
+
+    private AtomicInteger calls;
+    private JenkinsHttpResponse issued;
+    private CompletableFuture<JenkinsHttpResponse> pending;
+    private Supplier<CompletableFuture<JenkinsHttpResponse>> issuer;
+    private JenkinsCrumbCache underTest;
+
+    @BeforeEach
+    void setUpEach() {
+        calls = new AtomicInteger();
+        issued = new JenkinsHttpResponse(200, "OK",
+                ImmutableMap.of("Set-Cookie", ImmutableList.of("JSESSIONID.abc=node01; Path=/; HttpOnly")),
+                "{\"crumbRequestField\":\"Jenkins-Crumb\",\"crumb\":\"c1\"}");
+        issuer = () -> {
+            calls.incrementAndGet();
+            return pending != null ? pending : CompletableFuture.completedFuture(issued);
+        };
+        underTest = new JenkinsCrumbCache(issuer);
+    }
+
+    @Test
+    public void given_crumb_issued_when_get_twice_then_fetched_once() throws Exception {
+        JenkinsCrumbCache.Crumb first = underTest.get();
+        JenkinsCrumbCache.Crumb second = underTest.get();
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, calls.get());
+        Map<String, String> headers = new HashMap<>();
+        first.applyTo(headers);
+        Assertions.assertEquals("c1", headers.get("Jenkins-Crumb"));
+        Assertions.assertEquals("JSESSIONID.abc=node01", headers.get("Cookie"));
+    }
+
+    @Test
+    public void given_crumb_rejected_when_get_then_fetched_again() throws Exception {
+        JenkinsCrumbCache.Crumb rejected = underTest.get();
+        underTest.invalidate(rejected);
+        JenkinsCrumbCache.Crumb refreshed = underTest.get();
+        // a second rejection of the same crumb does not discard the refreshed one
+        underTest.invalidate(rejected);
+
+        Assertions.assertNotSame(rejected, refreshed);
+        Assertions.assertSame(refreshed, underTest.get());
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void given_fetch_in_progress_when_get_concurrently_then_fetched_once() throws Exception {
+        pending = new CompletableFuture<>();
+        CompletableFuture<JenkinsCrumbCache.Crumb> first = underTest.refresh();
+        CompletableFuture<JenkinsCrumbCache.Crumb> second = underTest.getAsync();
+
+        Assertions.assertFalse(second.isDone());
+        pending.complete(issued);
+
+        Assertions.assertSame(first.get(), second.get());
+        Assertions.assertSame(first.get(), underTest.get());
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void given_old_crumb_when_get_then_used_and_refreshed_in_background() throws Exception {
+        underTest = new JenkinsCrumbCache(issuer, 0, JenkinsCrumbCache.FAILURE_RETRY_MS);
+        JenkinsCrumbCache.Crumb old = underTest.get();
+        pending = new CompletableFuture<>();
+
+        // the old crumb is still used while the new one is fetched
+        Assertions.assertSame(old, underTest.get());
+        Assertions.assertSame(old, underTest.get());
+        Assertions.assertEquals(2, calls.get());
+        pending.complete(new JenkinsHttpResponse(200, "OK", null, "{\"crumbRequestField\":\"Jenkins-Crumb\",\"crumb\":\"c2\"}"));
+
+        Map<String, String> headers = new HashMap<>();
+        underTest.getAsync().get().applyTo(headers);
+        Assertions.assertEquals("c2", headers.get("Jenkins-Crumb"));
+    }
+
+    @Test
+    public void given_no_crumb_issuer_when_get_then_none() throws Exception {
+        issued = new JenkinsHttpResponse(404, "Not Found", null, null);
+
+        Assertions.assertSame(JenkinsCrumbCache.NONE, underTest.get());
+        Assertions.assertSame(JenkinsCrumbCache.NONE, underTest.get());
+        Assertions.assertEquals(1, calls.get());
+        Map<String, String> headers = new HashMap<>();
+        JenkinsCrumbCache.NONE.applyTo(headers);
+        Assertions.assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void given_issuer_error_when_get_then_empty_crumb_until_retried() throws Exception {
+        issued = new JenkinsHttpResponse(403, "Forbidden", null, null);
+        underTest = new JenkinsCrumbCache(issuer, JenkinsCrumbCache.REFRESH_AFTER_MS, 60000);
+
+        JenkinsCrumbCache.Crumb failed = underTest.get();
+        Assertions.assertTrue(failed.isFailed());
+        Assertions.assertSame(failed, underTest.get());
+        Assertions.assertEquals(1, calls.get());
+        Map<String, String> headers = new HashMap<>();
+        failed.applyTo(headers);
+        Assertions.assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void given_issuer_error_expired_when_get_then_fetched_again() throws Exception {
+        issued = new JenkinsHttpResponse(503, "Service Unavailable", null, null);
+        underTest = new JenkinsCrumbCache(issuer, JenkinsCrumbCache.REFRESH_AFTER_MS, 0);
+        underTest.get();
+        issued = new JenkinsHttpResponse(200, "OK", null, "{\"crumbRequestField\":\"Jenkins-Crumb\",\"crumb\":\"c1\"}");
+
+        // the empty crumb is still used while the new one is fetched
+        underTest.get();
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertFalse(underTest.get().isFailed());
+    }
+}
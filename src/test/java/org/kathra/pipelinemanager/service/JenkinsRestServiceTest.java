@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test class {@linkplain JenkinsRestService}
+ */
+class JenkinsRestServiceTest {
+
+    private JenkinsHttpTransport transport;
+    private JenkinsRestService underTest;
+
+    @BeforeEach
+    void setUpEach() {
+        transport = Mockito.mock(JenkinsHttpTransport.class);
+        underTest = new JenkinsRestService("kathra", "token", transport);
+    }
+
+    @Test
+    public void given_json_when_post_then_sends_form_with_basic_auth() throws Exception {
+        Mockito.when(transport.send(Mockito.anyString(), Mockito.anyString(), Mockito.anyMap(), Mockito.anyString()))
+                .thenReturn(CompletableFuture.completedFuture(new JenkinsHttpResponse(200, "OK", null, "done")));
+        JSONObject json = new JSONObject();
+        json.put("id", "a b&c");
+
+        JenkinsHttpResponse response = underTest.postBasicAuth("http://jenkins/createCredentials", json, null);
+
+        ArgumentCaptor<Map<String, String>> headers = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(transport).send(Mockito.eq("POST"), Mockito.eq("http://jenkins/createCredentials"), headers.capture(), body.capture());
+        Assertions.assertEquals("done", response.getBody());
+        Assertions.assertEquals("Basic " + Base64.getEncoder().encodeToString("kathra:token".getBytes(StandardCharsets.UTF_8)), headers.getValue().get("Authorization"));
+        Assertions.assertEquals("application/x-www-form-urlencoded", headers.getValue().get("Content-Type"));
+        Assertions.assertTrue(body.getValue().startsWith("json="));
+        Assertions.assertEquals(json.toString(), URLDecoder.decode(body.getValue().substring(5), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void given_crumb_rejected_when_post_then_refreshes_crumb_once() throws Exception {
+        underTest = new JenkinsRestService("kathra", "token", transport, "http://jenkins/");
+        Mockito.when(transport.send(Mockito.eq("GET"), Mockito.eq("http://jenkins/crumbIssuer/api/json"), Mockito.anyMap(), Mockito.isNull()))
+                .thenReturn(CompletableFuture.completedFuture(new JenkinsHttpResponse(200, "OK", null, "{\"crumbRequestField\":\"Jenkins-Crumb\",\"crumb\":\"old\"}")))
+                .thenReturn(CompletableFuture.completedFuture(new JenkinsHttpResponse(200, "OK", null, "{\"crumbRequestField\":\"Jenkins-Crumb\",\"crumb\":\"new\"}")));
+        Mockito.when(transport.send(Mockito.eq("POST"), Mockito.anyString(), Mockito.anyMap(), Mockito.anyString()))
+                .thenReturn(CompletableFuture.completedFuture(new JenkinsHttpResponse(403, "Forbidden", null, "No valid crumb was included in the request")))
+                .thenReturn(CompletableFuture.completedFuture(new JenkinsHttpResponse(200, "OK", null, null)));
+
+        JenkinsHttpResponse response = underTest.postBasicAuth("http://jenkins/createCredentials", new JSONObject(), null);
+        underTest.postBasicAuth("http://jenkins/createCredentials", new JSONObject(), null);
+
+        ArgumentCaptor<Map<String, String>> headers = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(transport, Mockito.times(3)).send(Mockito.eq("POST"), Mockito.anyString(), headers.capture(), Mockito.anyString());
+        Mockito.verify(transport, Mockito.times(2)).send(Mockito.eq("GET"), Mockito.anyString(), Mockito.anyMap(), Mockito.isNull());
+        Assertions.assertEquals(200, response.getStatus());
+        Assertions.assertEquals("old", headers.getAllValues().get(0).get("Jenkins-Crumb"));
+        Assertions.assertEquals("new", headers.getAllValues().get(1).get("Jenkins-Crumb"));
+        Assertions.assertEquals("new", headers.getAllValues().get(2).get("Jenkins-Crumb"));
+    }
+
+    @Test
+    public void given_permission_denied_when_post_then_not_sent_again() throws Exception {
+        underTest = new JenkinsRestService("kathra", "token", transport, "http://jenkins/");
+        Mockito.when(transport.send(Mockito.eq("GET"), Mockito.eq("http://jenkins/crumbIssuer/api/json"), Mockito.anyMap(), Mockito.isNull()))
+                .thenReturn(CompletableFuture.completedFuture(new JenkinsHttpResponse(200, "OK", null, "{\"crumbRequestField\":\"Jenkins-Crumb\",\"crumb\":\"c1\"}")));
+        Mockito.when(transport.send(Mockito.eq("POST"), Mockito.anyString(), Mockito.anyMap(), Mockito.anyString()))
+                .thenReturn(CompletableFuture.completedFuture(new JenkinsHttpResponse(403, "Forbidden", null, "kathra is missing the Job/Create permission")));
+
+        JenkinsHttpResponse response = underTest.postBasicAuth("http://jenkins/createItem", new JSONObject(), null);
+
+        Assertions.assertEquals(403, response.getStatus());
+        Mockito.verify(transport, Mockito.times(1)).send(Mockito.eq("POST"), Mockito.anyString(), Mockito.anyMap(), Mockito.anyString());
+        Mockito.verify(transport, Mockito.times(1)).send(Mockito.eq("GET"), Mockito.anyString(), Mockito.anyMap(), Mockito.isNull());
+    }
+
+    @Test
+    public void given_transport_error_when_get_then_throws_cause() {
+        CompletableFuture<JenkinsHttpResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException("connection refused"));
+        Mockito.when(transport.send(Mockito.eq("GET"), Mockito.anyString(), Mockito.anyMap(), Mockito.isNull())).thenReturn(failed);
+
+        IOException error = Assertions.assertThrows(IOException.class, () -> underTest.getBasicAuth("http://jenkins/api/json", null));
+        Assertions.assertEquals("connection refused", error.getMessage());
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import javassist.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kathra.core.model.Build;
+import org.kathra.core.model.Membership;
+import org.kathra.core.model.Pipeline;
+import org.kathra.core.model.Resource;
+import org.kathra.core.model.SourceRepository;
+import org.kathra.pipelinemanager.Config;
+import org.kathra.pipelinemanager.model.Credential;
+import org.mockito.Mockito;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Test class {@linkplain JenkinsService} over HTTP, against {@linkplain FakeJenkins}
+ */
+class JenkinsServiceHttpTest {
+
+    private static final String REPOSITORY = "git@git.kathra.org:KATHRA/example.git";
+
+    private FakeJenkins jenkins;
+    private Config config;
+    private JenkinsService underTest;
+
+    @BeforeEach
+    void setUpEach() throws Exception {
+        jenkins = new FakeJenkins();
+        config = Mockito.mock(Config.class);
+        Mockito.when(config.getJenkinsUrl()).thenReturn(jenkins.getUrl());
+        Mockito.when(config.getJenkinsAccountName()).thenReturn("kathra");
+        Mockito.when(config.getJenkinsAccountApiToken()).thenReturn("token");
+        Mockito.when(config.getJenkinsHttpConnectTimeoutMs()).thenReturn(1000);
+        Mockito.when(config.getJenkinsHttpReadTimeoutMs()).thenReturn(5000);
+    }
+
+    @AfterEach
+    void tearDownEach() {
+        if (underTest != null) {
+            underTest.close();
+        }
+        jenkins.close();
+    }
+
+    private JenkinsService newService() throws Exception {
+        underTest = new JenkinsService(config);
+        return underTest;
+    }
+
+    @Test
+    public void given_folder_acl_when_getMemberships_then_reads_folder_and_config_once() throws Exception {
+        jenkins.folder("team", FakeJenkins.folderXml(Arrays.asList("hudson.model.Item.Read:devs", "hudson.model.View.Read:devs")));
+
+        List<Membership> memberships = newService().getMemberships("team");
+
+        Assertions.assertEquals(1, memberships.size());
+        Assertions.assertEquals("devs", memberships.get(0).getMemberName());
+        Assertions.assertEquals(Membership.RoleEnum.GUEST, memberships.get(0).getRole());
+        Assertions.assertEquals(1, jenkins.getRequests(FakeJenkins.GET_ITEM));
+        Assertions.assertEquals(1, jenkins.getRequests(FakeJenkins.GET_CONFIG));
+    }
+
+    @Test
+    public void given_membership_when_addMembership_then_updates_folder_and_parent() throws Exception {
+        jenkins.folder("team/services");
+
+        newService().addMembership(new Membership().path("team/services").memberType(Membership.MemberTypeEnum.GROUP)
+                .memberName("devs").role(Membership.RoleEnum.CONTRIBUTOR));
+
+        Assertions.assertEquals(4, FolderConfigXml.readPermissions(jenkins.getConfigXml("team/services")).size());
+        Assertions.assertEquals(4, FolderConfigXml.readPermissions(jenkins.getConfigXml("team")).size());
+        Assertions.assertEquals(2, jenkins.getRequests(FakeJenkins.UPDATE_CONFIG));
+    }
+
+    @Test
+    public void given_new_pipeline_when_createPipeline_then_creates_folders_and_job() throws Exception {
+        Pipeline pipeline = newService().createPipeline(new Pipeline().path("team/services/app")
+                .template(Pipeline.TemplateEnum.JAVA_LIBRARY)
+                .sourceRepository(new SourceRepository().sshUrl(REPOSITORY))
+                .credentialId("pull-key"));
+
+        Assertions.assertEquals(Resource.StatusEnum.READY, pipeline.getStatus());
+        Assertions.assertTrue(jenkins.isFolder("team"));
+        Assertions.assertTrue(jenkins.isFolder("team/services"));
+        Assertions.assertTrue(jenkins.exists("team/services/app"));
+        Assertions.assertTrue(jenkins.getConfigXml("team/services/app").contains(REPOSITORY));
+    }
+
+    @Test
+    public void given_job_when_createBuild_then_returns_started_build() throws Exception {
+        jenkins.job("team/app", "<flow-definition/>").queueDelay(200);
+
+        Build build = newService().createBuild(new Build().path("team/app"));
+
+        Assertions.assertEquals("1", build.getBuildNumber());
+        Assertions.assertEquals(1, jenkins.getBuildCount("team/app"));
+        Assertions.assertEquals(1, jenkins.getRequests(FakeJenkins.TRIGGER_BUILD));
+        Assertions.assertTrue(jenkins.getRequests(FakeJenkins.GET_QUEUE_ITEM) >= 2);
+    }
+
+    @Test
+    public void given_long_log_when_getBuild_with_tail_then_transfers_only_the_tail() throws Exception {
+        StringBuilder log = new StringBuilder();
+        for (int line = 0; line < 5000; line++) {
+            log.append("line ").append(line).append('\n');
+        }
+        jenkins.job("team/app", "<flow-definition/>");
+        int number = jenkins.build("team/app", "SUCCESS", log.toString());
+
+        Build build = newService().getBuild("team/app", String.valueOf(number), LogSelection.tailLines(3));
+
+        Assertions.assertEquals("line 4997\nline 4998\nline 4999\n", build.getLogs());
+        Assertions.assertEquals(Build.StatusEnum.SUCCESS, build.getStatus());
+        Assertions.assertEquals(0, jenkins.getRequests(FakeJenkins.CONSOLE_TEXT));
+        Assertions.assertEquals(2, jenkins.getRequests(FakeJenkins.PROGRESSIVE_TEXT));
+    }
+
+    @Test
+    public void given_concurrent_reads_when_getMemberships_then_share_jenkins_calls() throws Exception {
+        jenkins.folder("team").latency(200, 0);
+        JenkinsService service = newService();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<Membership>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return service.getMemberships("team");
+                }));
+            }
+            start.countDown();
+            for (Future<List<Membership>> result : results) {
+                Assertions.assertNotNull(result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertTrue(jenkins.getRequests(FakeJenkins.GET_ITEM) < 8);
+    }
+
+    @Test
+    public void given_rotated_crumb_when_addCredential_then_refreshes_crumb() throws Exception {
+        jenkins.folder("team");
+        JenkinsService service = newService();
+
+        service.addCredential(new Credential().credentialId("key-1").path("team").privateKey("key").username("git"));
+        jenkins.rotateCrumb("crumb-2");
+        service.addCredential(new Credential().credentialId("key-2").path("team").privateKey("key").username("git"));
+
+        Assertions.assertEquals(Arrays.asList("key-1", "key-2"), jenkins.getCredentials("team"));
+        Assertions.assertEquals(2, jenkins.getRequests(FakeJenkins.CRUMB));
+        Assertions.assertEquals(3, jenkins.getRequests(FakeJenkins.CREATE_CREDENTIALS));
+    }
+
+    @Test
+    public void given_latency_above_read_timeout_when_addCredential_then_fails() throws Exception {
+        jenkins.folder("team");
+        Mockito.when(config.getJenkinsHttpReadTimeoutMs()).thenReturn(200);
+        JenkinsService service = newService();
+        jenkins.latency(1000, 0);
+
+        Assertions.assertThrows(Exception.class,
+                () -> service.addCredential(new Credential().credentialId("key-1").path("team").privateKey("key").username("git")));
+    }
+
+    @Test
+    public void given_injected_error_when_getMemberships_then_fails() throws Exception {
+        jenkins.folder("team").failNext(FakeJenkins.GET_ITEM, 1, 500);
+
+        Assertions.assertThrows(Exception.class, () -> newService().getMemberships("team"));
+        Assertions.assertEquals(1, jenkins.getInjectedFailures());
+    }
+
+    @Test
+    public void given_running_build_when_getLogChunk_from_end_then_returns_only_new_bytes() throws Exception {
+        jenkins.job("team/app", "<flow-definition/>");
+        int number = jenkins.startBuild("team/app");
+        jenkins.appendLog("team/app", number, "Started\n");
+        JenkinsService service = newService();
+
+        LogChunk first = service.getLogChunk("team/app", String.valueOf(number), 0);
+        jenkins.appendLog("team/app", number, "Finished: SUCCESS\n");
+        jenkins.finish("team/app", number, "SUCCESS");
+        LogChunk second = service.getLogChunk("team/app", String.valueOf(number), first.getEnd());
+
+        Assertions.assertEquals("Started\n", first.getText());
+        Assertions.assertTrue(first.isMoreData());
+        Assertions.assertEquals(8, first.getEnd());
+        Assertions.assertEquals("Finished: SUCCESS\n", second.getText());
+        Assertions.assertFalse(second.isMoreData());
+        Assertions.assertEquals(26, second.getEnd());
+    }
+
+    @Test
+    public void given_running_build_when_followLog_then_streams_log_until_build_finishes() throws Exception {
+        jenkins.job("team/app", "<flow-definition/>");
+        int number = jenkins.startBuild("team/app");
+        jenkins.appendLog("team/app", number, "Started\n");
+        InputStream stream = newService().followLog("team/app", String.valueOf(number), 0, 10000);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> log = executor.submit(() -> new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+            Thread.sleep(200);
+            jenkins.appendLog("team/app", number, "Finished: SUCCESS\n");
+            jenkins.finish("team/app", number, "SUCCESS");
+
+            Assertions.assertEquals("Started\nFinished: SUCCESS\n", log.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void given_missing_build_when_followLog_then_not_found() throws Exception {
+        jenkins.job("team/app", "<flow-definition/>");
+
+        Assertions.assertThrows(NotFoundException.class, () -> newService().followLog("team/app", "7", 0, 10000));
+    }
+
+    @Test
+    public void given_finished_build_when_getLogChunk_twice_then_second_read_from_log_store() throws Exception {
+        Path logStore = Files.createTempDirectory("build-logs");
+        Mockito.when(config.getJenkinsLogStoreDirectory()).thenReturn(logStore.toString());
+        Mockito.when(config.getJenkinsLogStoreMaxMb()).thenReturn(16);
+        jenkins.job("team/app", "<flow-definition/>");
+        int number = jenkins.build("team/app", "SUCCESS", "Started\nFinished: SUCCESS\n");
+        JenkinsService service = newService();
+
+        service.getLogChunk("team/app", String.valueOf(number), 0);
+        LogChunk stored = service.getLogChunk("team/app", String.valueOf(number), 8);
+
+        Assertions.assertEquals("Finished: SUCCESS\n", stored.getText());
+        Assertions.assertEquals(26, stored.getEnd());
+        Assertions.assertFalse(stored.isMoreData());
+        Assertions.assertEquals(1, jenkins.getRequests(FakeJenkins.PROGRESSIVE_TEXT));
+        try (Stream<Path> files = Files.walk(logStore)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void given_notification_received_when_getBuilds_then_answers_without_jenkins() throws Exception {
+        Mockito.when(config.getJenkinsBuildStateReconcileSeconds()).thenReturn(300);
+        Mockito.when(config.getJenkinsWebhookToken()).thenReturn("secret");
+        jenkins.job("team/app", "<flow-definition/>");
+        jenkins.build("team/app", "SUCCESS", "Finished: SUCCESS\n");
+        int running = jenkins.startBuild("team/app");
+        JenkinsService service = newService();
+
+        service.onNotification("{\"name\":\"app\",\"url\":\"job/team/job/app/\",\"build\":{\"number\":" + running + ",\"phase\":\"STARTED\"}}", "secret");
+        service.onNotification("{\"name\":\"app\",\"url\":\"job/team/job/app/\",\"build\":{\"number\":" + running + ",\"phase\":\"COMPLETED\",\"status\":\"FAILURE\"}}", "secret");
+        List<Build> builds;
+        long deadline = System.currentTimeMillis() + 5000;
+        do {
+            Thread.sleep(20);
+            jenkins.resetStatistics();
+            builds = service.getBuilds("team/app", null, 10);
+        } while (jenkins.getTotalRequests() > 0 && System.currentTimeMillis() < deadline);
+
+        Assertions.assertEquals(2, builds.size());
+        Assertions.assertEquals(String.valueOf(running), builds.get(0).getBuildNumber());
+        Assertions.assertEquals(Build.StatusEnum.FAILED, builds.get(0).getStatus());
+        Assertions.assertEquals(0, jenkins.getTotalRequests());
+    }
+
+    @Test
+    public void given_webhook_token_when_notification_with_wrong_token_then_rejected() throws Exception {
+        Mockito.when(config.getJenkinsWebhookToken()).thenReturn("secret");
+
+        Assertions.assertThrows(IllegalAccessException.class,
+                () -> newService().onNotification("{\"url\":\"job/team/job/app/\",\"build\":{\"number\":1,\"phase\":\"STARTED\"}}", "wrong"));
+    }
+
+    @Test
+    public void given_no_webhook_token_when_notification_then_rejected() {
+        Assertions.assertThrows(IllegalAccessException.class,
+                () -> newService().onNotification("{\"url\":\"job/team/job/app/\",\"build\":{\"number\":1,\"phase\":\"STARTED\"}}", null));
+    }
+}
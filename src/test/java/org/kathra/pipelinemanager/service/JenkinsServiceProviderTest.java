@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.kathra.pipelinemanager.Config;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test class {@linkplain JenkinsServiceProvider}
+ */
+class JenkinsServiceProviderTest {
+
+    private JenkinsServiceProvider underTest;
+    private Config config;
+
+    @BeforeEach
+    void setUpEach() {
+        underTest = new JenkinsServiceProvider();
+        config = Mockito.mock(Config.class);
+        Mockito.when(config.getJenkinsUrl()).thenReturn("http://jenkins");
+        Mockito.when(config.getJenkinsAccountName()).thenReturn("kathra");
+        Mockito.when(config.getJenkinsAccountApiToken()).thenReturn("token");
+    }
+
+    @AfterEach
+    void tearDownEach() {
+        underTest.close();
+    }
+
+    @Test
+    public void given_same_config_when_get_then_returns_shared_service() throws Exception {
+        JenkinsService first = underTest.get(config);
+        JenkinsService second = underTest.get(config);
+
+        Assertions.assertSame(first, second);
+    }
+
+    @Test
+    public void given_config_changed_when_get_then_rebuilds_service() throws Exception {
+        JenkinsService first = underTest.get(config);
+        Mockito.when(config.getJenkinsAccountApiToken()).thenReturn("new-token");
+        JenkinsService second = underTest.get(config);
+
+        Assertions.assertNotSame(first, second);
+        Assertions.assertSame(second, underTest.get(config));
+    }
+
+    @Test
+    public void given_config_changed_when_get_then_shares_disk_stores() throws Exception {
+        JenkinsService first = underTest.get(config);
+        Mockito.when(config.getJenkinsAccountApiToken()).thenReturn("new-token");
+        JenkinsService second = underTest.get(config);
+
+        Assertions.assertNotSame(first, second);
+        Assertions.assertSame(first.getLogStore(), second.getLogStore());
+    }
+
+    @Test
+    public void given_http_setting_changed_when_get_then_rebuilds_service() throws Exception {
+        JenkinsService first = underTest.get(config);
+        Mockito.when(config.getJenkinsHttpReadTimeoutMs()).thenReturn(5000);
+        JenkinsService second = underTest.get(config);
+
+        Assertions.assertNotSame(first, second);
+        Assertions.assertSame(first.getLogStore(), second.getLogStore());
+    }
+}
@@ -22,14 +22,15 @@ package org.kathra.pipelinemanager.service;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.mashape.unirest.http.HttpResponse;
 
 import com.offbytwo.jenkins.JenkinsServer;
+import com.offbytwo.jenkins.client.JenkinsHttpConnection;
 import com.offbytwo.jenkins.model.*;
 import org.kathra.core.model.Build;
 import org.kathra.core.model.BuildArgument;
 import org.kathra.core.model.Membership;
 import org.kathra.core.model.Pipeline;
+import org.kathra.core.model.Resource;
 import org.kathra.core.model.SourceRepository;
 import org.kathra.pipelinemanager.Config;
 import org.kathra.pipelinemanager.model.Credential;
@@ -53,10 +54,13 @@ import org.mockito.quality.Strictness;
 import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mockitoSession;
@@ -237,6 +241,75 @@ class JenkinsServiceTest {
 
     }
 
+    /**
+     * Check bulk creation reports each pipeline and creates the missing jobs only
+     */
+    @Test
+    public void given_pipelines_when_createPipelines_then_returns_result_for_each() throws Exception {
+        // Jobs created during the batch, answered without stubbing from worker threads
+        Map<String, JobWithDetails> jobsCreated = new ConcurrentHashMap<>();
+        Map<String, JobWithDetails> jobs = new HashMap<>();
+        for (String name : ImmutableList.of(ARTIFACT_ID, "other-artifact")) {
+            JobWithDetails job = Mockito.mock(JobWithDetails.class);
+            Mockito.when(job.getName()).thenReturn(name);
+            jobs.put(name, job);
+        }
+        Mockito.when(client.getJob(Mockito.any(FolderJob.class), Mockito.anyString())).thenAnswer(invocation -> jobsCreated.get(invocation.<String>getArgument(1)));
+        Mockito.doAnswer(invocation -> {
+            String name = invocation.getArgument(1);
+            jobsCreated.put(name, jobs.get(name));
+            return null;
+        }).when(client).createJob(Mockito.any(FolderJob.class), Mockito.anyString(), Mockito.anyString());
+
+        FolderJob group1Folder = mockFolderExisting("MY-GROUP1", null);
+        FolderJob group2Folder = mockFolderExisting("my-group2", group1Folder);
+        mockJob("existing", group2Folder);
+
+        List<PipelineCreation> results = underTest.createPipelines(ImmutableList.of(
+                new Pipeline().path(ARTIFACT_ID_PATH).template(Pipeline.TemplateEnum.JAVA_LIBRARY).sourceRepository(new SourceRepository().sshUrl(REPOSITORY)),
+                new Pipeline().path(GROUP + "/other-artifact").template(Pipeline.TemplateEnum.JAVA_LIBRARY).sourceRepository(new SourceRepository().sshUrl(REPOSITORY)),
+                new Pipeline().path(GROUP + "/existing").template(Pipeline.TemplateEnum.JAVA_LIBRARY).sourceRepository(new SourceRepository().sshUrl(REPOSITORY)),
+                new Pipeline().path(GROUP + "/invalid").template(null).sourceRepository(new SourceRepository().sshUrl(REPOSITORY))));
+
+        Assertions.assertEquals(4, results.size());
+        Assertions.assertEquals(PipelineCreation.Status.CREATED, results.get(0).getStatus());
+        Assertions.assertEquals("MY-GROUP1/my-group2/my-artifact", results.get(0).getPipeline().getProviderId());
+        Assertions.assertEquals(PipelineCreation.Status.CREATED, results.get(1).getStatus());
+        Assertions.assertEquals(PipelineCreation.Status.EXISTING, results.get(2).getStatus());
+        Assertions.assertEquals(Resource.StatusEnum.READY, results.get(2).getPipeline().getStatus());
+        Assertions.assertEquals(PipelineCreation.Status.FAILED, results.get(3).getStatus());
+        Assertions.assertFalse(results.get(3).isSuccess());
+        Assertions.assertEquals("Pipeline template is null", results.get(3).getError());
+
+        // Same template and values, same configuration
+        ArgumentCaptor<String> jobXmls = ArgumentCaptor.forClass(String.class);
+        verify(client, times(2)).createJob(Mockito.any(FolderJob.class), Mockito.anyString(), jobXmls.capture());
+        Assertions.assertEquals(jobXmls.getAllValues().get(0), jobXmls.getAllValues().get(1));
+        verify(client, Mockito.never()).createFolder(Mockito.anyString());
+    }
+
+    /**
+     * Check bulk creation fails the pipelines of a folder that cannot be created, and only them
+     */
+    @Test
+    public void given_folder_creation_error_when_createPipelines_then_fails_pipelines_of_folder() throws Exception {
+        mockJobCreation();
+        FolderJob group1Folder = mockFolderExisting("MY-GROUP1", null);
+        mockFolderExisting("my-group2", group1Folder);
+        Mockito.doThrow(new IOException("folder refused")).when(client).createFolder(Mockito.eq("OTHER"));
+
+        List<PipelineCreation> results = underTest.createPipelines(ImmutableList.of(
+                new Pipeline().path("other/a").template(Pipeline.TemplateEnum.JAVA_LIBRARY).sourceRepository(new SourceRepository().sshUrl(REPOSITORY)),
+                new Pipeline().path(ARTIFACT_ID_PATH).template(Pipeline.TemplateEnum.JAVA_LIBRARY).sourceRepository(new SourceRepository().sshUrl(REPOSITORY)),
+                new Pipeline().path("other/b").template(Pipeline.TemplateEnum.JAVA_LIBRARY).sourceRepository(new SourceRepository().sshUrl(REPOSITORY))));
+
+        Assertions.assertEquals(PipelineCreation.Status.FAILED, results.get(0).getStatus());
+        Assertions.assertEquals(PipelineCreation.Status.CREATED, results.get(1).getStatus());
+        Assertions.assertEquals(PipelineCreation.Status.FAILED, results.get(2).getStatus());
+        verify(client, times(1)).createFolder(Mockito.eq("OTHER"));
+        verifyJobCreation(ARTIFACT_ID, "my-group2");
+    }
+
     /**
      * When empty arg should throw IllegalArgumentException
      * @throws IOException
@@ -294,7 +367,8 @@ class JenkinsServiceTest {
 
         Mockito.verify(job).build();
         Assertions.assertEquals("5", build.getBuildNumber(), "Build number is not the same");
-        Assertions.assertEquals("", build.getLogs());
+        // Triggered builds are returned without their console log
+        Assertions.assertNull(build.getLogs());
         Assertions.assertEquals(Build.StatusEnum.PROCESSING, build.getStatus());
 
     }
@@ -319,6 +393,43 @@ class JenkinsServiceTest {
         Assertions.assertEquals("5", build.getBuildNumber(), "Build number is not the same");
     }
 
+    /**
+     * When existing pipeline when build async then returns queue id and resolves build number from queue item
+     * @throws Exception
+     */
+    @Test
+    public void given_existing_pipeline_when_build_async_then_resolves_build_from_queue_item() throws Exception {
+        FolderJob group1Folder = mockFolderExisting("my-group1", null);
+        FolderJob group2Folder = mockFolderExisting("my-group2", group1Folder);
+        JobWithDetails job = mockJob(ARTIFACT_ID, group2Folder,GROUP);
+        mockJobBuild(job, Long.valueOf(7));
+
+        QueuedBuild queuedBuild = underTest.createBuildAsync(new Build().path(ARTIFACT_ID_PATH));
+
+        Assertions.assertEquals(7, queuedBuild.getQueueId());
+        Build build = queuedBuild.future().get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals("7", build.getBuildNumber());
+        Assertions.assertSame(queuedBuild, underTest.getQueuedBuild(7));
+    }
+
+    /**
+     * When queue item is cancelled when build then throws Exception
+     * @throws Exception
+     */
+    @Test
+    public void given_cancelled_queue_item_when_build_then_throws_Exception() throws Exception {
+        FolderJob group1Folder = mockFolderExisting("my-group1", null);
+        FolderJob group2Folder = mockFolderExisting("my-group2", group1Folder);
+        JobWithDetails job = mockJob(ARTIFACT_ID, group2Folder,GROUP);
+        QueueItem queueItem = mockJobBuild(job, Long.valueOf(5));
+        Mockito.when(queueItem.getExecutable()).thenReturn(null);
+        Mockito.when(queueItem.isCancelled()).thenReturn(true);
+
+        assertThrows(Exception.class,()-> {
+            underTest.createBuild(new Build().path(ARTIFACT_ID_PATH));
+        });
+    }
+
     /**
      * When no existing pipeline when build then throws NotFoundException
      * @throws Exception
@@ -392,22 +503,83 @@ class JenkinsServiceTest {
         JobWithDetails job = mockJob(ARTIFACT_ID, group2Folder);
         Mockito.when(client.getJob(GROUP + "/" + ARTIFACT_ID)).thenReturn(job);
 
-        mockJobBuild(job, Long.valueOf(4) );
-        com.offbytwo.jenkins.model.Build build3 = mockJobBuildResult(job, Long.valueOf(4), BuildResult.SUCCESS);
-        mockJobBuild(job, Long.valueOf(3) );
-        com.offbytwo.jenkins.model.Build build4 = mockJobBuildResult(job, Long.valueOf(3), BuildResult.FAILURE);
-
-        List<com.offbytwo.jenkins.model.Build> buildList = new LinkedList<>();
-        buildList.add(build3);
-        buildList.add(build4);
-        mockJobBuildResults(job,buildList);
+        JenkinsHttpConnection connection = mockJobBuildSummaries(job,
+                buildSummary(4, BuildResult.SUCCESS, null),
+                buildSummary(3, BuildResult.FAILURE, null));
 
         List<Build> listBuild = underTest.getBuilds(GROUP + "/" + ARTIFACT_ID, null, null);
         Assertions.assertEquals(2, listBuild.size());
 
         Assertions.assertEquals("4", listBuild.get(0).getBuildNumber());
+        Assertions.assertEquals(Build.StatusEnum.SUCCESS, listBuild.get(0).getStatus());
         Assertions.assertEquals("3", listBuild.get(1).getBuildNumber());
+        Assertions.assertEquals(Build.StatusEnum.FAILED, listBuild.get(1).getStatus());
+
+        // Builds are listed in a single request, without details request per build
+        verify(connection, times(1)).get(Mockito.anyString(), Mockito.eq(BuildSummaries.class));
+        verify(job, Mockito.never()).details();
+        // and without logs by default
+        Assertions.assertNull(listBuild.get(0).getLogs());
+        Mockito.verifyZeroInteractions(jenkinsRestService);
+    }
+
+    @Test
+    public void given_pipeline_built_with_logs_tail_when_getBuilds_then_reads_only_log_end() throws Exception {
+        FolderJob group1Folder = mockFolderExisting("my-group1", null);
+        FolderJob group2Folder = mockFolderExisting("my-group2", group1Folder);
+        JobWithDetails job = mockJob(ARTIFACT_ID, group2Folder);
+        Mockito.when(client.getJob(GROUP + "/" + ARTIFACT_ID)).thenReturn(job);
+        Mockito.when(config.getJenkinsUrl()).thenReturn("http://jenkins");
+
+        BuildSummary summary = buildSummary(4, BuildResult.SUCCESS, null);
+        summary.setUrl("http://jenkins.kathra.org/job/my-group1/job/my-group2/job/" + ARTIFACT_ID + "/4/");
+        mockJobBuildSummaries(job, summary);
 
+        String progressiveText = "http://jenkins/job/my-group1/job/my-group2/job/" + ARTIFACT_ID + "/4/logText/progressiveText";
+        JenkinsHttpResponse head = mockLogResponse(null, "10000");
+        Mockito.when(jenkinsRestService.headBasicAuth(progressiveText, null)).thenReturn(head);
+        // 2 lines => 320 bytes read from the end of the log
+        JenkinsHttpResponse tail = mockLogResponse("ine 97\nline 98\nline 99\n", null);
+        Mockito.when(jenkinsRestService.getBasicAuth(progressiveText + "?start=9680", null)).thenReturn(tail);
+
+        List<Build> listBuild = underTest.getBuilds(GROUP + "/" + ARTIFACT_ID, null, null, LogSelection.tailLines(2));
+
+        Assertions.assertEquals(1, listBuild.size());
+        Assertions.assertEquals("line 98\nline 99\n", listBuild.get(0).getLogs());
+        verify(jenkinsRestService, times(1)).getBasicAuth(Mockito.anyString(), Mockito.any());
+    }
+
+    @Test
+    public void given_finished_build_read_when_getBuild_then_served_from_cache() throws Exception {
+        Mockito.when(config.getJenkinsBuildCacheMaxEntries()).thenReturn(10);
+        Mockito.when(config.getJenkinsBuildCacheMaxBytes()).thenReturn(1024 * 1024);
+        underTest = new JenkinsService(client, jenkinsRestService, config);
+
+        FolderJob group1Folder = mockFolderExisting("my-group1", null);
+        FolderJob group2Folder = mockFolderExisting("my-group2", group1Folder);
+        JobWithDetails job = mockJob(ARTIFACT_ID, group2Folder);
+        Mockito.when(client.getJob(GROUP + "/" + ARTIFACT_ID)).thenReturn(job);
+        mockJobBuildResult(job, Long.valueOf(3), BuildResult.SUCCESS);
+        mockJobBuildResult(job, Long.valueOf(4), BuildResult.BUILDING);
+
+        Build first = underTest.getBuild(GROUP + "/" + ARTIFACT_ID, "3");
+        Build second = underTest.getBuild(GROUP + "/" + ARTIFACT_ID, "3");
+        Assertions.assertEquals(first.getBuildNumber(), second.getBuildNumber());
+        Assertions.assertEquals(Build.StatusEnum.SUCCESS, second.getStatus());
+        verify(client, times(1)).getJob(GROUP + "/" + ARTIFACT_ID);
+
+        // Running builds are read from Jenkins each time
+        underTest.getBuild(GROUP + "/" + ARTIFACT_ID, "4");
+        underTest.getBuild(GROUP + "/" + ARTIFACT_ID, "4");
+        verify(client, times(3)).getJob(GROUP + "/" + ARTIFACT_ID);
+    }
+
+    private JenkinsHttpResponse mockLogResponse(String body, String textSize) {
+        Map<String, List<String>> headers = new HashMap<>();
+        if (textSize != null) {
+            headers.put("x-text-size", ImmutableList.of(textSize));
+        }
+        return new JenkinsHttpResponse(200, "OK", headers, body);
     }
 
     @Test
@@ -420,15 +592,9 @@ class JenkinsServiceTest {
         Map<String, String> params3 = new HashMap<>();
         params3.put("GIT_BRANCH","dev");
 
-        mockJobBuild(job, Long.valueOf(3));
-        com.offbytwo.jenkins.model.Build build3 = mockJobBuildResult(job, Long.valueOf(3), BuildResult.SUCCESS,params3);
-        mockJobBuild(job, Long.valueOf(4));
-        com.offbytwo.jenkins.model.Build build4 = mockJobBuildResult(job, Long.valueOf(4), BuildResult.FAILURE);
-
-        List<com.offbytwo.jenkins.model.Build> buildList = new LinkedList<>();
-        buildList.add(build3);
-        buildList.add(build4);
-        mockJobBuildResults(job,buildList);
+        mockJobBuildSummaries(job,
+                buildSummary(3, BuildResult.SUCCESS, params3),
+                buildSummary(4, BuildResult.FAILURE, null));
 
         List<Build> listBuild = underTest.getBuilds(GROUP + "/" + ARTIFACT_ID, "dev", null);
         Assertions.assertEquals(1, listBuild.size());
@@ -446,20 +612,15 @@ class JenkinsServiceTest {
         Map<String, String> params3 = new HashMap<>();
         params3.put("GIT_BRANCH","dev");
 
-        mockJobBuild(job, Long.valueOf(4));
-        com.offbytwo.jenkins.model.Build build3 = mockJobBuildResult(job, Long.valueOf(4), BuildResult.SUCCESS,params3);
-        mockJobBuild(job, Long.valueOf(3));
-        com.offbytwo.jenkins.model.Build build4 = mockJobBuildResult(job, Long.valueOf(3), BuildResult.FAILURE);
-
-        List<com.offbytwo.jenkins.model.Build> buildList = new LinkedList<>();
-        buildList.add(build3);
-        buildList.add(build4);
-        mockJobBuildResults(job,buildList);
+        JenkinsHttpConnection connection = mockJobBuildSummaries(job,
+                buildSummary(4, BuildResult.SUCCESS, params3),
+                buildSummary(3, BuildResult.FAILURE, null));
 
         List<Build> listBuild = underTest.getBuilds(GROUP + "/" + ARTIFACT_ID, null, 1);
         Assertions.assertEquals(1, listBuild.size());
 
         Assertions.assertEquals("4", listBuild.get(0).getBuildNumber());
+        verify(connection).get(Mockito.endsWith("%7B0,1%7D"), Mockito.eq(BuildSummaries.class));
     }
 
     @Test
@@ -472,15 +633,9 @@ class JenkinsServiceTest {
         Map<String, String> params3 = new HashMap<>();
         params3.put("GIT_BRANCH","dev");
 
-        mockJobBuild(job, Long.valueOf(4));
-        com.offbytwo.jenkins.model.Build build3 = mockJobBuildResult(job, Long.valueOf(4), BuildResult.SUCCESS,params3);
-        mockJobBuild(job, Long.valueOf(3));
-        com.offbytwo.jenkins.model.Build build4 = mockJobBuildResult(job, Long.valueOf(3), BuildResult.FAILURE, params3);
-
-        List<com.offbytwo.jenkins.model.Build> buildList = new LinkedList<>();
-        buildList.add(build3);
-        buildList.add(build4);
-        mockJobBuildResults(job,buildList);
+        mockJobBuildSummaries(job,
+                buildSummary(4, BuildResult.SUCCESS, params3),
+                buildSummary(3, BuildResult.FAILURE, params3));
 
         List<Build> listBuild = underTest.getBuilds(GROUP + "/" + ARTIFACT_ID, "dev", 1);
         Assertions.assertEquals(1, listBuild.size());
@@ -537,6 +692,20 @@ class JenkinsServiceTest {
         verifyFolderCreation("C", "B");
     }
 
+    @Test
+    public void given_folder_known_when_create_then_no_jenkins_call () throws Exception {
+        mockFolderCreation();
+        FolderJob folderB = mockFolderExisting("B", null);
+        mockFolderExisting("C", folderB);
+
+        underTest.createFolder("B/C");
+        underTest.createFolder("B/C");
+
+        verify(client, times(1)).getJob("B");
+        verify(client, times(1)).getJob(folderB, "C");
+        verify(client, Mockito.never()).createFolder(Mockito.anyString());
+    }
+
     @Test
     public void given_folder_with_no_path_when_create_then_thows_Exception () throws Exception {
         mockFolderCreation();
@@ -628,6 +797,56 @@ class JenkinsServiceTest {
 
     }
 
+    @Test
+    public void given_memberships_when_add_memberships_then_writes_each_folder_once () throws Exception {
+        FolderJob group1Folder = mockFolderExisting("my-group1", null);
+        FolderJob group2Folder = mockFolderExisting("my-group2", group1Folder);
+        JobWithDetails job = mockJob(ARTIFACT_ID, group2Folder,GROUP);
+        JobWithDetails jobGroup2 = mockJob("my-group2", group1Folder,"my-group1");
+        JobWithDetails jobGroup1 = mockJob("my-group1", null,null);
+        String relativeUrl="my-group1/job/my-group2/job/my-artifact";
+
+        Mockito.when(job.getUrl()).thenReturn("http://jenkins/job/"+relativeUrl);
+        Mockito.when(jobGroup1.getUrl()).thenReturn("http://jenkins/job/my-group1");
+        Mockito.when(jobGroup2.getUrl()).thenReturn("http://jenkins/job/my-group1/job/my-group2");
+
+        mockJobConfigurationExisting(relativeUrl,genericJenkinsXml);
+        mockJobConfigurationExisting("my-group1/job/my-group2",genericJenkinsXml);
+        mockJobConfigurationExisting("my-group1",genericJenkinsXml);
+
+        underTest.addMemberships(ImmutableList.of(
+                new Membership().memberName("user1").memberType(Membership.MemberTypeEnum.GROUP).path(ARTIFACT_ID_PATH).role(Membership.RoleEnum.GUEST),
+                new Membership().memberName("user2").memberType(Membership.MemberTypeEnum.GROUP).path(ARTIFACT_ID_PATH).role(Membership.RoleEnum.CONTRIBUTOR),
+                new Membership().memberName("user3").memberType(Membership.MemberTypeEnum.GROUP).path(GROUP).role(Membership.RoleEnum.GUEST)));
+
+        verify(client, times(1)).updateJob(Mockito.eq(relativeUrl), Mockito.contains("<permission>hudson.model.Item.Build:user2</permission>"));
+        verify(client, times(1)).updateJob(Mockito.eq("my-group1/job/my-group2"), Mockito.contains("<permission>hudson.model.Item.Read:user3</permission>"));
+        verify(client, times(1)).updateJob(Mockito.eq("my-group1"), Mockito.contains("<permission>hudson.model.Item.Read:user1</permission>"));
+        verify(client, times(3)).updateJob(Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    public void given_membership_already_granted_when_add_memberships_then_no_write () throws Exception {
+        FolderJob group1Folder = mockFolderExisting("my-group1", null);
+        FolderJob group2Folder = mockFolderExisting("my-group2", group1Folder);
+        JobWithDetails job = mockJob(ARTIFACT_ID, group2Folder,GROUP);
+        JobWithDetails jobGroup2 = mockJob("my-group2", group1Folder,"my-group1");
+        JobWithDetails jobGroup1 = mockJob("my-group1", null,null);
+        String relativeUrl="my-group1/job/my-group2/job/my-artifact";
+
+        Mockito.when(job.getUrl()).thenReturn("http://jenkins/job/"+relativeUrl);
+        Mockito.when(jobGroup1.getUrl()).thenReturn("http://jenkins/job/my-group1");
+        Mockito.when(jobGroup2.getUrl()).thenReturn("http://jenkins/job/my-group1/job/my-group2");
+
+        mockJobConfigurationExisting(relativeUrl,genericJenkinsXml);
+        mockJobConfigurationExisting("my-group1/job/my-group2",genericJenkinsXml);
+        mockJobConfigurationExisting("my-group1",genericJenkinsXml);
+
+        underTest.addMembership(new Membership().memberName("guestMember").memberType(Membership.MemberTypeEnum.GROUP).path(ARTIFACT_ID_PATH).role(Membership.RoleEnum.GUEST));
+
+        verify(client, Mockito.never()).updateJob(Mockito.anyString(), Mockito.anyString());
+    }
+
     @Test
     public void given_membership_null_when_add_memberships_then_throws_exception () throws Exception {
         FolderJob group1Folder = mockFolderExisting("my-group1", null);
@@ -743,6 +962,9 @@ class JenkinsServiceTest {
 
 
         Mockito.when(queueItem.getId()).thenReturn(buildNumber);
+        Executable executable = Mockito.mock(Executable.class);
+        Mockito.when(executable.getNumber()).thenReturn(buildNumber);
+        Mockito.when(queueItem.getExecutable()).thenReturn(executable);
 
         Answer<QueueReference> answer = invocation -> {
             mockJobBuildResult(job, buildNumber, BuildResult.BUILDING, withDetails);
@@ -811,6 +1033,39 @@ class JenkinsServiceTest {
         return mockJobBuildResult(job,buildNumber,buildResult,null ,withDetails);
     }
 
+    /**
+     * Mock builds listed with a tree query
+     * @param job
+     * @param summaries
+     * @return
+     * @throws IOException
+     */
+    private JenkinsHttpConnection mockJobBuildSummaries(Job job, BuildSummary... summaries) throws IOException {
+        JenkinsHttpConnection connection = Mockito.mock(JenkinsHttpConnection.class);
+        Mockito.when(job.getClient()).thenReturn(connection);
+        Mockito.when(job.getUrl()).thenReturn("http://jenkins/job/my-group1/job/my-group2/job/" + ARTIFACT_ID + "/");
+        BuildSummaries page = new BuildSummaries();
+        page.setBuilds(new LinkedList<>(Arrays.asList(summaries)));
+        Mockito.when(connection.get(Mockito.contains("tree=builds"), Mockito.eq(BuildSummaries.class))).thenReturn(page);
+        return connection;
+    }
+
+    private BuildSummary buildSummary(int buildNumber, BuildResult buildResult, Map<String, String> buildParams) {
+        BuildSummary summary = new BuildSummary();
+        summary.setNumber(buildNumber);
+        summary.setResult(buildResult.name());
+        summary.setDuration(1000);
+        summary.setTimestamp(1500000000000L);
+        if (buildParams != null) {
+            BuildSummary.Action action = new BuildSummary.Action();
+            List<BuildSummary.Parameter> parameters = new LinkedList<>();
+            buildParams.forEach((name, value) -> parameters.add(new BuildSummary.Parameter(name, value)));
+            action.setParameters(parameters);
+            summary.setActions(new LinkedList<>(Arrays.asList(action)));
+        }
+        return summary;
+    }
+
     private void mockJobBuildResults(Job job, List<com.offbytwo.jenkins.model.Build> allBuilds) throws IOException {
         JobWithDetails details = job.details() == null ? Mockito.mock(JobWithDetails.class) : job.details();
         if (job.details() == null) {
@@ -974,9 +1229,7 @@ class JenkinsServiceTest {
     }
 
     public void mockCredentialCreation(Integer httpResponseStatus) throws Exception {
-        HttpResponse<String> httpResponse = Mockito.mock(HttpResponse.class);
-        Mockito.when(httpResponse.getStatus()).thenReturn(httpResponseStatus);
-        Mockito.when(httpResponse.getStatusText()).thenReturn(String.valueOf(httpResponseStatus));
+        JenkinsHttpResponse httpResponse = new JenkinsHttpResponse(httpResponseStatus, String.valueOf(httpResponseStatus), null, null);
         Mockito.when(jenkinsRestService.postBasicAuth(Mockito.anyString(),Mockito.any(), Mockito.anyMap())).thenReturn(httpResponse);
     }
 
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Test class {@linkplain LogFollowStream}
+ */
+class LogFollowStreamTest {
+
+    /**
+     * Log growing by one part on each read
+     */
+    private static class GrowingLog implements LogFollowStream.ChunkReader {
+        private final Iterator<String> parts;
+        private final StringBuilder log = new StringBuilder();
+        private final List<Long> starts = new ArrayList<>();
+
+        private GrowingLog(String... parts) {
+            this.parts = Arrays.asList(parts).iterator();
+        }
+
+        @Override
+        public LogChunk read(long start) {
+            starts.add(start);
+            if (parts.hasNext()) {
+                log.append(parts.next());
+            }
+            byte[] bytes = log.toString().getBytes(StandardCharsets.UTF_8);
+            String text = new String(bytes, (int) start, bytes.length - (int) start, StandardCharsets.UTF_8);
+            return new LogChunk(start, bytes.length, parts.hasNext(), text);
+        }
+    }
+
+    private static String readAll(InputStream stream) throws IOException {
+        return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void given_growing_log_when_read_then_reads_each_byte_once() throws Exception {
+        GrowingLog log = new GrowingLog("Started\n", "", "Stage é\n", "Finished: SUCCESS\n");
+        LogFollowStream underTest = new LogFollowStream(log, log.read(0), 10000);
+
+        Assertions.assertEquals("Started\nStage é\nFinished: SUCCESS\n", readAll(underTest));
+        Assertions.assertEquals(Arrays.asList(0L, 8L, 8L, 17L), log.starts);
+        Assertions.assertEquals(35, underTest.getOffset());
+    }
+
+    @Test
+    public void given_offset_when_read_then_starts_at_offset() throws Exception {
+        GrowingLog log = new GrowingLog("Started\nFinished: SUCCESS\n");
+        LogFollowStream underTest = new LogFollowStream(log, log.read(8), 10000);
+
+        Assertions.assertEquals("Finished: SUCCESS\n", readAll(underTest));
+    }
+
+    @Test
+    public void given_running_build_when_deadline_reached_then_ends_with_offset_to_resume() throws Exception {
+        LogFollowStream.ChunkReader running = start -> new LogChunk(start, 8, true, start == 0 ? "Started\n" : "");
+        LogFollowStream underTest = new LogFollowStream(running, running.read(0), 300);
+
+        long begin = System.currentTimeMillis();
+        Assertions.assertEquals("Started\n", readAll(underTest));
+        Assertions.assertTrue(System.currentTimeMillis() - begin < 2000);
+        Assertions.assertEquals(8, underTest.getOffset());
+    }
+
+    @Test
+    public void given_read_error_when_read_then_throws_io_exception() {
+        LogFollowStream.ChunkReader failing = start -> {
+            if (start > 0) {
+                throw new IllegalStateException("Jenkins unavailable");
+            }
+            return new LogChunk(0, 8, true, "Started\n");
+        };
+
+        Assertions.assertThrows(IOException.class, () -> readAll(new LogFollowStream(failing, failing.read(0), 10000)));
+    }
+}
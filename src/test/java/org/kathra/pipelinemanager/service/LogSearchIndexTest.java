@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Test class {@linkplain LogSearchIndex}
+ */
+class LogSearchIndexTest {
+
+    private static final String UPLOAD_FAILED = "[ERROR] Failed to deploy artifacts: Could not transfer artifact org.kathra:app:jar:1.0 from/to nexus\n";
+
+    private Path directory;
+    private LogSearchIndex underTest;
+
+    @BeforeEach
+    void setUpEach() throws IOException {
+        directory = Files.createTempDirectory("log-index");
+        underTest = newIndex(1000);
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        underTest.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private LogSearchIndex newIndex(int maxBuilds) {
+        return new LogSearchIndex(directory, maxBuilds, new MetricsRegistry());
+    }
+
+    private static List<String> builds(List<LogSearchHit> hits) {
+        return hits.stream().map(hit -> hit.getPath() + "#" + hit.getBuildNumber()).collect(Collectors.toList());
+    }
+
+    private void addBuilds() throws IOException {
+        underTest.add("team/app", "1", "master", 1000, "Started\n" + UPLOAD_FAILED + "Finished: FAILURE\n");
+        underTest.add("team/app", "2", "develop", 2000, "Started\nFinished: SUCCESS\n");
+        underTest.add("team/lib", "7", "develop", 3000, "Started\n" + UPLOAD_FAILED + "Finished: FAILURE\n");
+        underTest.add("other/app", "3", "master", 4000, "Started\n" + UPLOAD_FAILED + "Finished: FAILURE\n");
+    }
+
+    @Test
+    public void given_logs_when_search_terms_then_returns_builds_holding_every_term_most_recent_first() throws Exception {
+        addBuilds();
+
+        List<LogSearchHit> hits = underTest.search(LogSearchQuery.parse("transfer ARTIFACT failure"));
+
+        Assertions.assertEquals(Arrays.asList("other/app#3", "team/lib#7", "team/app#1"), builds(hits));
+        Assertions.assertTrue(underTest.search(LogSearchQuery.parse("transfer success")).isEmpty());
+    }
+
+    @Test
+    public void given_logs_when_search_with_filters_then_returns_filtered_builds() throws Exception {
+        addBuilds();
+
+        Assertions.assertEquals(Arrays.asList("team/lib#7", "team/app#1"), builds(underTest.search(LogSearchQuery.parse("nexus").folder("/team/"))));
+        Assertions.assertEquals(Arrays.asList("team/lib#7"), builds(underTest.search(LogSearchQuery.parse("nexus").branch("develop"))));
+        Assertions.assertEquals(Arrays.asList("team/lib#7"), builds(underTest.search(LogSearchQuery.parse("nexus").from(2000L).to(3500L))));
+        Assertions.assertTrue(underTest.search(LogSearchQuery.parse("nexus").folder("tea")).isEmpty());
+    }
+
+    @Test
+    public void given_flushed_segments_when_reopened_then_searches_them() throws Exception {
+        for (int build = 1; build <= LogSearchIndex.MAX_SEGMENTS + 2; build++) {
+            underTest.add("team/app", String.valueOf(build), "master", build, build % 2 == 0 ? UPLOAD_FAILED : "Finished: SUCCESS\n");
+            underTest.flush();
+        }
+        underTest.add("team/app", "100", "master", 100, UPLOAD_FAILED);
+        StringBuilder manyTerms = new StringBuilder();
+        for (int term = 0; term < 10 * LogSearchIndex.SPARSE_INTERVAL; term++) {
+            manyTerms.append("step").append(term).append('\n');
+        }
+        underTest.add("team/app", "101", "master", 101, manyTerms.toString());
+        underTest.close();
+
+        underTest = newIndex(1000);
+
+        Assertions.assertTrue(underTest.getSegments() <= LogSearchIndex.MAX_SEGMENTS);
+        Assertions.assertEquals(LogSearchIndex.MAX_SEGMENTS + 4, underTest.size());
+        Assertions.assertEquals(Arrays.asList("team/app#101"), builds(underTest.search(LogSearchQuery.parse("step321"))));
+        Assertions.assertTrue(underTest.search(LogSearchQuery.parse("step3210")).isEmpty());
+        Assertions.assertEquals(Arrays.asList("team/app#100", "team/app#10", "team/app#8", "team/app#6", "team/app#4", "team/app#2"),
+                builds(underTest.search(LogSearchQuery.parse("\"could not transfer\""))));
+    }
+
+    @Test
+    public void given_removed_pipeline_when_reopened_then_builds_stay_dropped_and_reindexed() throws Exception {
+        addBuilds();
+        underTest.flush();
+        underTest.add("team/app", "3", "master", 5000, UPLOAD_FAILED);
+        underTest.remove("/team/app/");
+
+        Assertions.assertFalse(underTest.contains("team/app", "1"));
+        Assertions.assertEquals(Arrays.asList("other/app#3", "team/lib#7"), builds(underTest.search(LogSearchQuery.parse("nexus"))));
+        underTest.close();
+
+        underTest = newIndex(1000);
+        Assertions.assertEquals(2, underTest.size());
+        Assertions.assertFalse(underTest.contains("team/app", "1"));
+
+        // a job created again at the same path is indexed from build 1
+        underTest.add("team/app", "1", "master", 6000, "Started\nFinished: SUCCESS\n");
+        Assertions.assertEquals(Arrays.asList("team/app#1"), builds(underTest.search(LogSearchQuery.parse("success").folder("team"))));
+        Assertions.assertEquals(Arrays.asList("other/app#3", "team/lib#7"), builds(underTest.search(LogSearchQuery.parse("nexus"))));
+    }
+
+    @Test
+    public void given_max_builds_reached_when_add_then_drops_oldest_builds() throws Exception {
+        underTest.close();
+        underTest = newIndex(2);
+        addBuilds();
+
+        Assertions.assertEquals(2, underTest.size());
+        Assertions.assertFalse(underTest.contains("team/app", "1"));
+        Assertions.assertEquals(Arrays.asList("other/app#3", "team/lib#7"), builds(underTest.search(LogSearchQuery.parse("nexus"))));
+    }
+
+    @Test
+    public void given_text_when_terms_then_splits_words_in_lower_case() {
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("error", "org", "kathra", "app_1", "jar")),
+                LogSearchIndex.terms("[ERROR] org.kathra:app_1:jar a"));
+    }
+
+    @Test
+    public void given_blank_text_when_parse_then_throws_illegal_argument() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LogSearchQuery.parse(" \"-\" "));
+    }
+}
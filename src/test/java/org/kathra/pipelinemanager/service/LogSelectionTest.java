@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class {@linkplain LogSelection}
+ */
+class LogSelectionTest {
+
+    @Test
+    public void given_values_when_parse_then_works() {
+        Assertions.assertSame(LogSelection.FULL, LogSelection.parse(null, LogSelection.FULL));
+        Assertions.assertSame(LogSelection.NONE, LogSelection.parse("none", LogSelection.FULL));
+        Assertions.assertSame(LogSelection.FULL, LogSelection.parse("FULL", LogSelection.NONE));
+
+        LogSelection lines = LogSelection.parse("tail:50", LogSelection.NONE);
+        Assertions.assertEquals(LogSelection.Mode.TAIL_LINES, lines.getMode());
+        Assertions.assertEquals(50, lines.getLimit());
+
+        LogSelection bytes = LogSelection.parse("bytes:4096", LogSelection.NONE);
+        Assertions.assertEquals(LogSelection.Mode.TAIL_BYTES, bytes.getMode());
+        Assertions.assertEquals(4096, bytes.getLimit());
+    }
+
+    @Test
+    public void given_malformed_value_when_parse_then_throws_IllegalArgumentException() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LogSelection.parse("tail:", LogSelection.NONE));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LogSelection.parse("tail:0", LogSelection.NONE));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LogSelection.parse("head:10", LogSelection.NONE));
+    }
+
+    @Test
+    public void given_log_part_when_lastLines_then_keeps_complete_lines() {
+        Assertions.assertEquals("b\nc\n", LogSelection.lastLines("a\nb\nc\n", 2, false));
+        Assertions.assertEquals("b\nc", LogSelection.lastLines("a\nb\nc", 2, false));
+        Assertions.assertEquals("a\nb\nc\n", LogSelection.lastLines("a\nb\nc\n", 5, false));
+        // first line of a partial log part may be truncated
+        Assertions.assertNull(LogSelection.lastLines("a\nb\nc\n", 3, true));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.service;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class {@linkplain PipelineTemplate}
+ */
+class PipelineTemplateTest {
+
+    @Test
+    public void given_template_when_render_then_replaces_placeholders() {
+        PipelineTemplate underTest = PipelineTemplate.compile("test", "<a>${repoUrl}</a><b>${credentialId}</b>${repoUrl}");
+
+        Assertions.assertIterableEquals(ImmutableMap.of("repoUrl", "", "credentialId", "").keySet(), underTest.getPlaceholders());
+        Assertions.assertEquals("<a>git@host:a/b.git</a><b>key</b>git@host:a/b.git",
+                underTest.render(ImmutableMap.of("repoUrl", "git@host:a/b.git", "credentialId", "key", "unused", "x")));
+    }
+
+    @Test
+    public void given_values_with_xml_characters_when_render_then_escapes_values() {
+        PipelineTemplate underTest = PipelineTemplate.compile("test", "<a attr=\"${value}\">${value}</a>");
+
+        Assertions.assertEquals("<a attr=\"a&amp;b&lt;c&gt;&quot;d&apos;\">a&amp;b&lt;c&gt;&quot;d&apos;</a>",
+                underTest.render(ImmutableMap.of("value", "a&b<c>\"d'")));
+    }
+
+    @Test
+    public void given_missing_value_when_render_then_keeps_placeholder() {
+        PipelineTemplate underTest = PipelineTemplate.compile("test", "<a>${repoUrl}</a><b>${credentialId}</b>");
+
+        Assertions.assertEquals("<a>url</a><b>${credentialId}</b>", underTest.render(ImmutableMap.of("repoUrl", "url")));
+    }
+
+    @Test
+    public void given_malformed_placeholder_when_compile_then_throws_IllegalArgumentException() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PipelineTemplate.compile("test", "<a>${repoUrl</a>"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PipelineTemplate.compile("test", "<a>${repo url}</a>"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PipelineTemplate.compile("test", "<a>${}</a>"));
+    }
+
+    @Test
+    public void given_templates_when_compile_then_all_are_valid() throws Exception {
+        for (JenkinsTemplate template : JenkinsTemplate.values()) {
+            String source = org.apache.commons.io.IOUtils.toString(getClass().getClassLoader().getResourceAsStream("templates/" + template.name + ".template"), "UTF-8");
+            Assertions.assertTrue(PipelineTemplate.compile(template.name, source).getPlaceholders().contains("repoUrl"));
+        }
+    }
+}
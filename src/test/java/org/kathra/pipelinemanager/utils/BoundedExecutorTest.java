@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class {@linkplain BoundedExecutor}
+ */
+class BoundedExecutorTest {
+
+    @Test
+    public void given_items_when_submitAll_then_runs_at_most_max_concurrency_tasks() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            BoundedExecutor underTest = new BoundedExecutor(2, executor);
+            AtomicInteger inFlight = new AtomicInteger();
+            AtomicInteger maxInFlight = new AtomicInteger();
+
+            List<CompletableFuture<Integer>> results = underTest.submitAll(Arrays.asList(1, 2, 3, 4, 5, 6), item -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                inFlight.decrementAndGet();
+                return item * 10;
+            });
+
+            Assertions.assertEquals(Arrays.asList(10, 20, 30, 40, 50, 60), BoundedExecutor.awaitAll(results));
+            Assertions.assertTrue(maxInFlight.get() <= 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void given_failing_task_when_awaitAll_then_throws_its_error_after_all_tasks() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BoundedExecutor underTest = new BoundedExecutor(1, executor);
+            AtomicInteger done = new AtomicInteger();
+
+            List<CompletableFuture<Integer>> results = underTest.submitAll(Arrays.asList(1, 2, 3), item -> {
+                done.incrementAndGet();
+                if (item == 2) {
+                    throw new IllegalStateException("failure " + item);
+                }
+                return item;
+            });
+
+            IllegalStateException error = Assertions.assertThrows(IllegalStateException.class, () -> BoundedExecutor.awaitAll(results));
+            Assertions.assertEquals("failure 2", error.getMessage());
+            Assertions.assertEquals(3, done.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
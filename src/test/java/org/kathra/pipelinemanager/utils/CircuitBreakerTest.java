@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.utils;
+
+import org.apache.http.client.HttpResponseException;
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test class {@linkplain CircuitBreaker}
+ */
+class CircuitBreakerTest {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    private CircuitBreaker newCircuitBreaker(int failureThreshold, long openDurationMs, int probeCalls) {
+        return new CircuitBreaker("test", failureThreshold, openDurationMs, probeCalls, Errors::isRetryable, registry);
+    }
+
+    private void fail(CircuitBreaker circuitBreaker) {
+        assertThrows(IOException.class, () -> circuitBreaker.call(() -> {
+            throw new IOException("Connection refused");
+        }));
+    }
+
+    @Test
+    public void given_consecutive_failures_when_call_then_opens_and_rejects_without_calling() throws Exception {
+        CircuitBreaker underTest = newCircuitBreaker(3, 60000, 1);
+        fail(underTest);
+        fail(underTest);
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, underTest.getState());
+        fail(underTest);
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, underTest.getState());
+
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(CircuitBreakerOpenException.class, () -> underTest.call(calls::incrementAndGet));
+        Assertions.assertEquals(0, calls.get());
+        Assertions.assertEquals(1, registry.counter("kathra_circuit_breaker_rejected_total", "", "name", "test").get());
+    }
+
+    @Test
+    public void given_open_breaker_when_call_then_rejects_with_retry_after() {
+        CircuitBreaker underTest = newCircuitBreaker(1, 60000, 1);
+        fail(underTest);
+
+        CircuitBreakerOpenException e = assertThrows(CircuitBreakerOpenException.class, () -> underTest.call(() -> "OK"));
+        Assertions.assertTrue(e.getRetryAfterMs() > 0 && e.getRetryAfterMs() <= 60000);
+        Assertions.assertTrue(e.getRetryAfterSeconds() >= 59 && e.getRetryAfterSeconds() <= 60);
+    }
+
+    @Test
+    public void given_success_between_failures_when_call_then_stays_closed() throws Exception {
+        CircuitBreaker underTest = newCircuitBreaker(2, 60000, 1);
+        fail(underTest);
+        underTest.call(() -> "OK");
+        fail(underTest);
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, underTest.getState());
+    }
+
+    @Test
+    public void given_client_errors_when_call_then_stays_closed() {
+        CircuitBreaker underTest = newCircuitBreaker(1, 60000, 1);
+        assertThrows(HttpResponseException.class, () -> underTest.call(() -> {
+            throw new HttpResponseException(404, "Not Found");
+        }));
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, underTest.getState());
+    }
+
+    @Test
+    public void given_open_duration_elapsed_when_probes_succeed_then_closes() throws Exception {
+        CircuitBreaker underTest = newCircuitBreaker(1, 10, 2);
+        fail(underTest);
+        Thread.sleep(20);
+
+        Assertions.assertEquals("OK", underTest.call(() -> "OK"));
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, underTest.getState());
+        underTest.call(() -> "OK");
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, underTest.getState());
+    }
+
+    @Test
+    public void given_open_duration_elapsed_when_probe_fails_then_opens_again() throws Exception {
+        CircuitBreaker underTest = newCircuitBreaker(1, 10, 2);
+        fail(underTest);
+        Thread.sleep(20);
+
+        fail(underTest);
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, underTest.getState());
+    }
+
+    @Test
+    public void given_probe_of_previous_half_open_period_when_completes_then_ignored() throws Exception {
+        CircuitBreaker underTest = newCircuitBreaker(1, 10, 2);
+        fail(underTest);
+        Thread.sleep(20);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> staleProbe = CompletableFuture.supplyAsync(() -> {
+            try {
+                return underTest.call(() -> {
+                    release.await();
+                    return "OK";
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (underTest.getState() != CircuitBreaker.State.HALF_OPEN) {
+            Thread.sleep(1);
+        }
+        fail(underTest);
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, underTest.getState());
+        Thread.sleep(20);
+
+        underTest.call(() -> "OK");
+        release.countDown();
+        Assertions.assertEquals("OK", staleProbe.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, underTest.getState());
+        underTest.call(() -> "OK");
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, underTest.getState());
+    }
+
+    @Test
+    public void given_disabled_circuit_breaker_when_failures_then_never_opens() {
+        CircuitBreaker underTest = newCircuitBreaker(0, 60000, 1);
+        for (int i = 0; i < 10; i++) {
+            fail(underTest);
+        }
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, underTest.getState());
+    }
+}
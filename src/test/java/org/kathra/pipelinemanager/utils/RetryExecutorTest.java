@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.utils;
+
+import org.apache.http.client.HttpResponseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test class {@linkplain RetryExecutor}
+ */
+class RetryExecutorTest {
+
+    @Test
+    public void given_transient_errors_when_execute_then_retries_until_success() throws Exception {
+        RetryExecutor underTest = new RetryExecutor(5, 10, 20, 5000);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = underTest.execute("test", () -> {
+            if (attempts.incrementAndGet() < 3) throw new IOException("Jenkins unavailable");
+            return "OK";
+        }).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals("OK", result);
+        Assertions.assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void given_client_error_when_execute_then_does_not_retry() {
+        RetryExecutor underTest = new RetryExecutor(5, 10, 20, 5000);
+        AtomicInteger attempts = new AtomicInteger();
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () ->
+                underTest.execute("test", () -> {
+                    attempts.incrementAndGet();
+                    throw new HttpResponseException(400, "Bad Request");
+                }).get(5, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(HttpResponseException.class, exception.getCause().getClass());
+        Assertions.assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void given_illegal_argument_when_execute_then_does_not_retry() {
+        RetryExecutor underTest = new RetryExecutor(5, 10, 20, 5000);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ExecutionException.class, () ->
+                underTest.execute("test", () -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalArgumentException("Arg error");
+                }).get(5, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void given_persistent_errors_when_execute_then_stops_after_max_attempts() {
+        RetryExecutor underTest = new RetryExecutor(3, 10, 20, 5000);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ExecutionException.class, () ->
+                underTest.execute("test", () -> {
+                    attempts.incrementAndGet();
+                    throw new IOException("Jenkins unavailable");
+                }).get(5, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void given_max_duration_exceeded_when_execute_then_stops_retrying() {
+        RetryExecutor underTest = new RetryExecutor(10, 200, 200, 150);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ExecutionException.class, () ->
+                underTest.execute("test", () -> {
+                    attempts.incrementAndGet();
+                    throw new IOException("Jenkins unavailable");
+                }).get(5, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void given_max_pending_tasks_in_progress_when_execute_then_rejects() throws Exception {
+        RetryExecutor underTest = new RetryExecutor(5, 10, 20, 5000, 1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> first = underTest.execute("test", () -> {
+            release.await();
+            return "OK";
+        });
+        ExecutionException rejected = assertThrows(ExecutionException.class, () ->
+                underTest.execute("test", () -> "OK").get(5, TimeUnit.SECONDS));
+        release.countDown();
+
+        Assertions.assertTrue(rejected.getCause() instanceof RejectedExecutionException);
+        Assertions.assertEquals("OK", first.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void given_attempts_when_delay_then_grows_exponentially_with_jitter() {
+        RetryExecutor underTest = new RetryExecutor(10, 100, 1000, 5000);
+
+        for (int attempt = 0; attempt < 6; attempt++) {
+            long expected = Math.min(1000, 100L << attempt);
+            long delay = underTest.delay(attempt);
+            Assertions.assertTrue(delay >= expected / 2 && delay <= expected, "delay " + delay + " for attempt " + attempt);
+        }
+    }
+}
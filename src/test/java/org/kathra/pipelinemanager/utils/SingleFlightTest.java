@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra.pipelinemanager.utils;
+
+import org.kathra.pipelinemanager.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class {@linkplain SingleFlight}
+ */
+class SingleFlightTest {
+
+    private MetricsRegistry registry;
+    private SingleFlight<String, String> underTest;
+
+    @BeforeEach
+    void setUpEach() {
+        registry = new MetricsRegistry();
+        underTest = new SingleFlight<>("test", registry);
+    }
+
+    @Test
+    public void given_identical_concurrent_calls_when_execute_then_call_once() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AtomicInteger calls = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+
+            Future<String> first = executor.submit(() -> underTest.execute("path", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return "result";
+            }));
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+            List<Future<String>> followers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                followers.add(executor.submit(() -> underTest.execute("path", () -> {
+                    calls.incrementAndGet();
+                    return "other";
+                })));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (coalesced() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            Assertions.assertEquals("result", first.get(5, TimeUnit.SECONDS));
+            for (Future<String> follower : followers) {
+                Assertions.assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+            }
+            Assertions.assertEquals(1, calls.get());
+            Assertions.assertEquals(3, coalesced());
+            Assertions.assertEquals(0, underTest.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void given_call_completed_when_execute_then_call_again() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        underTest.execute("path", () -> "r" + calls.incrementAndGet());
+        String second = underTest.execute("path", () -> "r" + calls.incrementAndGet());
+
+        Assertions.assertEquals("r2", second);
+        Assertions.assertEquals(0, coalesced());
+    }
+
+    @Test
+    public void given_failing_call_when_coalesced_then_followers_get_error() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+
+            Future<String> first = executor.submit(() -> underTest.execute("path", () -> {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                throw new IllegalStateException("jenkins down");
+            }));
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> follower = executor.submit(() -> underTest.execute("path", () -> "other"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (coalesced() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            ExecutionException error = Assertions.assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(error.getCause() instanceof IllegalStateException);
+            Assertions.assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long coalesced() {
+        return registry.counter("kathra_single_flight_coalesced_total", "", "operation", "test").get();
+    }
+}